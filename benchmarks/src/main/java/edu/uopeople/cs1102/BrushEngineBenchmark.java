@@ -0,0 +1,79 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of one point of a brush stroke, as it arrives from a
+ * 1000 Hz mouse: the width is computed from the speed, the point is stored,
+ * and the piece it completes is tessellated. The cost should not depend on
+ * the length of the stroke drawn so far.
+ * <p>
+ * The stroke is cut back to its initial length every {@code BATCH} points, so
+ * that its length stays the parameter whatever the number of invocations.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BrushEngineBenchmark {
+    private static final int WIDTH = 1920, HEIGHT = 1080;
+    private static final int BATCH = 1024;
+
+    // One mouse event per millisecond.
+    private static final long PERIOD = 1_000_000;
+
+    /** The number of points of the stroke before the measured point. */
+    @Param({ "100", "10000", "100000" })
+    public int length;
+
+    private final BrushEngine brush = new BrushEngine();
+    private final StrokeStore store = new StrokeStore();
+    private DragTrace trace;
+    private int first, next;
+    private long time;
+
+    @Setup
+    public void setup() {
+        trace = new DragTrace(length + BATCH, WIDTH, HEIGHT, 42);
+        store.beginStroke(0, 1);
+        first = store.getStrokeStart(0);
+        store.addPoint((float)trace.x(0), (float)trace.y(0), brush.begin(trace.x(0), trace.y(0), 0, Double.NaN));
+        for (int i = 1; i < length; i++) {
+            time += PERIOD;
+            store.addPoint((float)trace.x(i), (float)trace.y(i), brush.next(trace.x(i), trace.y(i), time, Double.NaN));
+        }
+        next = length;
+    }
+
+    @Benchmark
+    public int addPoint() {
+        if (next == length + BATCH) {
+            store.truncateLastStroke(length);
+            next = length;
+        }
+        double x = trace.x(next), y = trace.y(next);
+        next++;
+        time += PERIOD;
+        store.addPoint((float)x, (float)y, brush.next(x, y, time, Double.NaN));
+
+        int end = store.getPointCount();
+        return brush.outline(store, first, end, end - 3);
+    }
+}
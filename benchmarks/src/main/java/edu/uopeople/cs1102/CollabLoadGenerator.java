@@ -0,0 +1,226 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates headless collaboration clients and reports the throughput and
+ * the end-to-end lag of a {@code CollabServer}.
+ * <p>
+ * All clients are non-blocking channels of one selector. Once per network
+ * tick, each drawing client sends a frame with the points of a synthetic
+ * stroke; every client decodes the frames it receives and records, for each,
+ * the time elapsed since the sender built it. The lag is measured with
+ * {@code System.nanoTime()}, so it is only meaningful when the server runs
+ * on the same machine.
+ * </p>
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar edu.uopeople.cs1102.CollabLoadGenerator
+ * [clients [drawers [seconds [host:port]]]]}. Without an address, the
+ * generator starts its own server on a free port.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class CollabLoadGenerator {
+    // The points added to a stroke per tick, and per stroke.
+    private static final int POINTS_PER_TICK = 4;
+    private static final int POINTS_PER_STROKE = 200;
+
+    private final Selector selector = Selector.open();
+    private final Client[] clients;
+    private final int drawers;
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final CountingListener listener = new CountingListener();
+    private long framesSent, pointsSent, bytesSent, framesReceived, bytesReceived;
+
+    private CollabLoadGenerator(InetSocketAddress address, int clientCount, int drawers) throws IOException {
+        this.drawers = drawers;
+        clients = new Client[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            clients[i] = new Client(channel, i);
+            clients[i].key = channel.register(selector, SelectionKey.OP_READ, clients[i]);
+        }
+    }
+
+    /**
+     * Runs the generator.
+     * @param args The number of clients (100), of drawing clients (10),
+     * the duration in seconds (10) and the address of the server.
+     * @throws Exception The clients cannot connect.
+     */
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int drawers = Math.min(clientCount, args.length > 1 ? Integer.parseInt(args[1]) : 10);
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        CollabServer server = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            int colon = args[3].lastIndexOf(':');
+            address = new InetSocketAddress(args[3].substring(0, colon), Integer.parseInt(args[3].substring(colon + 1)));
+        } else {
+            server = new CollabServer(0);
+            server.start();
+            address = new InetSocketAddress("localhost", server.getPort());
+        }
+
+        try {
+            CollabLoadGenerator generator = new CollabLoadGenerator(address, clientCount, drawers);
+            System.out.printf("%d clients, %d drawing, %d s, server %s%n", clientCount, drawers, seconds, address);
+            generator.run(TimeUnit.SECONDS.toNanos(seconds));
+            generator.report(seconds);
+            if (server != null) {
+                System.out.printf("server: %d frames relayed, %d bytes in, %d bytes out, %d clients dropped%n",
+                    server.getFramesRelayed(), server.getBytesReceived(), server.getBytesSent(), server.getPeersDropped());
+            }
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    private void run(long duration) throws IOException {
+        long tick = TimeUnit.MILLISECONDS.toNanos(CollabServer.TICK_MILLIS);
+        long start = System.nanoTime(), nextTick = start;
+
+        while (System.nanoTime() - start < duration) {
+            long now = System.nanoTime();
+            if (now - nextTick >= 0) {
+                nextTick += tick;
+                for (int i = 0; i < drawers; i++) {
+                    clients[i].draw();
+                }
+            }
+
+            long wait = TimeUnit.NANOSECONDS.toMillis(nextTick - System.nanoTime());
+            if (wait > 0) selector.select(wait); else selector.selectNow();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client)key.attachment();
+                if (key.isReadable()) client.read();
+                if (key.isValid() && key.isWritable()) client.write();
+            }
+        }
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        selector.close();
+    }
+
+    private void report(int seconds) {
+        LatencyHistogram.Snapshot s = lag.snapshot();
+        System.out.printf("sent: %d frames, %.0f frames/s, %.0f points/s, %.1f KB/s%n", framesSent,
+            framesSent / (double)seconds, pointsSent / (double)seconds,
+            bytesSent / 1024.0 / seconds);
+        System.out.printf("received: %d frames, %.0f frames/s, %.0f points/s, %.1f KB/s%n", framesReceived,
+            framesReceived / (double)seconds, listener.points / (double)seconds, bytesReceived / 1024.0 / seconds);
+        System.out.printf("lag (ms): mean %.2f, p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+            s.getMean() / 1e6, s.getP50() / 1e6, s.getP99() / 1e6, s.getP999() / 1e6, s.getMax() / 1e6);
+    }
+
+    /**
+     * A simulated client.
+     */
+    private final class Client {
+        final SocketChannel channel;
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        final CollabBatch batch = new CollabBatch();
+        final DragTrace trace;
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        SelectionKey key;
+        int stroke, point;
+
+        Client(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.trace = new DragTrace(POINTS_PER_STROKE, 1600, 1200, id);
+        }
+
+        /**
+         * Adds the points of a tick to the stroke in progress and sends them.
+         */
+        void draw() throws IOException {
+            for (int i = 0; i < POINTS_PER_TICK; i++) {
+                if (point == 0) {
+                    batch.begin(++stroke, 0xFF000000 | stroke * 0x10101, 2, trace.x(0), trace.y(0));
+                } else {
+                    batch.point(stroke, trace.x(point), trace.y(point));
+                }
+                if (++point == trace.size()) {
+                    batch.end(stroke);
+                    point = 0;
+                }
+            }
+            pointsSent += POINTS_PER_TICK;
+            ByteBuffer frame = batch.finish(System.nanoTime());
+            framesSent++;
+            bytesSent += frame.remaining();
+            out.add(frame);
+            if (out.size() == 1) write();
+        }
+
+        void write() throws IOException {
+            while (!out.isEmpty()) {
+                channel.write(out.peek());
+                if (out.peek().hasRemaining()) break;
+                out.poll();
+            }
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                key.cancel();
+                return;
+            }
+            bytesReceived += n;
+            long now = System.nanoTime();
+
+            in.flip();
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (in.remaining() < Integer.BYTES + length) break;
+                int end = in.position() + Integer.BYTES + length, limit = in.limit();
+                in.position(in.position() + Integer.BYTES).limit(end);
+                lag.record(now - CollabProtocol.decode(in, listener));
+                in.limit(limit).position(end);
+                framesReceived++;
+            }
+            in.compact();
+        }
+    }
+
+    /**
+     * Counts the points decoded.
+     */
+    private static final class CountingListener implements CollabListener {
+        long points;
+
+        @Override
+        public void strokeBegin(int client, int stroke, int argb, float lineWidth, float x, float y) {
+            points++;
+        }
+
+        @Override
+        public void strokePoint(int client, int stroke, float x, float y) {
+            points++;
+        }
+
+        @Override
+        public void strokeEnd(int client, int stroke) {
+        }
+    }
+}
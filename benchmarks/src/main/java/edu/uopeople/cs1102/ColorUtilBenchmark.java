@@ -0,0 +1,91 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Measures the color conversions of {@code ColorUtil} that run on every palette click.
+ * <p>
+ * The packed-int benchmarks ({@code parseHex}, {@code formatHex}, {@code appendHex},
+ * {@code toArgb}, {@code blend}) don't allocate; run them with the GC profiler to
+ * check that {@code gc.alloc.rate.norm} stays at 0 B/op:
+ * </p>
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ColorUtilBenchmark -prof gc
+ * </pre>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColorUtilBenchmark {
+    private final Color color = ColorUtil.standardPalette[2];
+    private final double channel = 0.53;
+    private final String hex = "#88FF15";
+    private final int argb = ColorUtil.toArgb(color);
+    private final int translucent = 0x80336699;
+    private final char[] chars = new char[7];
+    private final StringBuilder builder = new StringBuilder(16);
+
+    @Benchmark
+    public String toHexStringColor() {
+        return ColorUtil.toHexString(color);
+    }
+
+    @Benchmark
+    public String toHexStringDouble() {
+        return ColorUtil.toHexString(channel);
+    }
+
+    @Benchmark
+    public Color hexToColor() {
+        return ColorUtil.hexToColor(hex);
+    }
+
+    @Benchmark
+    public int toArgb() {
+        return ColorUtil.toArgb(color);
+    }
+
+    @Benchmark
+    public int parseHex() {
+        return ColorUtil.parseHex(hex);
+    }
+
+    @Benchmark
+    public char[] formatHex() {
+        ColorUtil.formatHex(argb, chars, 0);
+        return chars;
+    }
+
+    @Benchmark
+    public StringBuilder appendHex() {
+        builder.setLength(0);
+        return ColorUtil.appendHex(argb, builder);
+    }
+
+    @Benchmark
+    public int blend() {
+        return ColorUtil.blend(translucent, argb);
+    }
+
+    @Benchmark
+    public int blendCoverage() {
+        return ColorUtil.blend(translucent, argb, 0.6f);
+    }
+}
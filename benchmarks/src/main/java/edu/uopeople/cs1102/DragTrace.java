@@ -0,0 +1,63 @@
+package edu.uopeople.cs1102;
+
+import java.util.Random;
+
+/**
+ * A synthetic drag trace: the successive mouse locations of a freehand stroke,
+ * generated as a smooth random walk that stays within a canvas.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+final class DragTrace {
+    private final double[] xy;
+
+    /**
+     * Generates a trace.
+     * @param points The number of mouse locations.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     * @param seed The seed of the random walk, so that runs are comparable.
+     */
+    DragTrace(int points, int width, int height, long seed) {
+        Random random = new Random(seed);
+        xy = new double[points * 2];
+
+        double x = width / 2.0, y = height / 2.0, angle = 0;
+        for (int i = 0; i < points; i++) {
+            // about one pixel per event, like a slow drag with a high-rate mouse
+            angle += random.nextGaussian() * 0.2;
+            x = Math.max(3, Math.min(width - 4, x + Math.cos(angle) * 1.5));
+            y = Math.max(3, Math.min(height - 4, y + Math.sin(angle) * 1.5));
+            xy[i << 1] = Math.rint(x);
+            xy[(i << 1) + 1] = Math.rint(y);
+        }
+    }
+
+    /** @return The number of mouse locations. */
+    int size() {
+        return xy.length / 2;
+    }
+
+    /** @return The x-coordinate of the i-th location. */
+    double x(int i) {
+        return xy[i << 1];
+    }
+
+    /** @return The y-coordinate of the i-th location. */
+    double y(int i) {
+        return xy[(i << 1) + 1];
+    }
+
+    /**
+     * Records the trace as a stroke.
+     * @param store The store to which the stroke is appended.
+     * @param colorIndex The palette index of the stroke's color.
+     */
+    void appendTo(StrokeStore store, int colorIndex) {
+        store.beginStroke(colorIndex, 2);
+        for (int i = 0; i < size(); i++) {
+            store.addPoint((float)x(i), (float)y(i));
+        }
+        store.endStroke();
+    }
+}
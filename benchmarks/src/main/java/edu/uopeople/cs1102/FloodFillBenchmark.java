@@ -0,0 +1,81 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a flood fill of a 3840x2160 image crossed by random lines, which
+ * splits the filled region into many spans.
+ * <p>
+ * With {@code "nearColor"}, the fill color is within the tolerance of the
+ * seed's color, so the fill also has to keep its bit mask up to date. The
+ * pixels are restored before every invocation.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FloodFillBenchmark {
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+    private static final int LINES = 400;
+
+    /** The fill color, relative to the seed's color. */
+    @Param({ "farColor", "nearColor" })
+    public String color;
+
+    private final FloodFill fill = new FloodFill();
+    private int[] image, pixels;
+    private int fillColor;
+
+    @Setup
+    public void setup() {
+        image = new int[WIDTH * HEIGHT];
+        Arrays.fill(image, 0xFFFFFFFF);
+
+        // one-pixel lines in random directions
+        Random random = new Random(42);
+        for (int i = 0; i < LINES; i++) {
+            double x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+            double angle = random.nextDouble() * Math.PI;
+            double dx = Math.cos(angle), dy = Math.sin(angle);
+            for (int step = 0; step < 600; step++) {
+                int px = (int)(x + dx * step), py = (int)(y + dy * step);
+                if (px < 0 || py < 0 || px >= WIDTH || py >= HEIGHT) break;
+                image[py * WIDTH + px] = 0xFF000000;
+            }
+        }
+        pixels = new int[image.length];
+        fillColor = "nearColor".equals(color) ? 0xFFF0F0F0 : 0xFF00A0FF;
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        System.arraycopy(image, 0, pixels, 0, image.length);
+    }
+
+    @Benchmark
+    public int fill() {
+        int x = 0, y = 0;
+        while (pixels[y * WIDTH + x] != 0xFFFFFFFF) x++; // the first white pixel
+        return fill.fill(pixels, WIDTH, HEIGHT, x, y, fillColor, 32);
+    }
+}
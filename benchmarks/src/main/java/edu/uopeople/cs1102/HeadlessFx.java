@@ -0,0 +1,69 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+
+/**
+ * Starts the JavaFX toolkit without a display, on Monocle's headless platform
+ * with the software rendering pipeline, for the benchmarks that need controls
+ * or a {@code Canvas}.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+final class HeadlessFx {
+    private static boolean started;
+
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private HeadlessFx() {
+    }
+
+    /**
+     * Starts the toolkit, if it isn't started yet.
+     */
+    static synchronized void start() {
+        if (started) return;
+
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("prism.text", "t2k");
+        System.setProperty("java.awt.headless", "true");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    /**
+     * Runs an action on the JavaFX application thread and waits for it to complete.
+     * @param action The action to run.
+     */
+    static void runAndWait(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<>(action, null);
+        Platform.runLater(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
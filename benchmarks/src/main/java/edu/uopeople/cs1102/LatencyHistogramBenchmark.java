@@ -0,0 +1,67 @@
+package edu.uopeople.cs1102;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of the latency instrumentation: recording a value in a
+ * {@code LatencyHistogram}, timestamping an event and closing a pulse of
+ * four events in a {@code LatencyMonitor}, and taking a snapshot.
+ * <p>
+ * Run with {@code -prof gc} to check that recording doesn't allocate.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LatencyHistogramBenchmark {
+    private static final int VALUES = 1024;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LatencyMonitor monitor = new LatencyMonitor();
+    private long[] values;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        values = new long[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = (long)Math.exp(random.nextDouble() * 25); // up to ~70 ms
+            histogram.record(values[i]);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.record(values[next++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public void eventReceived() {
+        monitor.eventReceived();
+        if ((++next & 3) == 0) monitor.pulse();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long snapshot() {
+        return histogram.snapshot().getP99();
+    }
+}
@@ -0,0 +1,79 @@
+package edu.uopeople.cs1102;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing on the middle layer of a 1920x1080 {@code LayerStack}
+ * whose layers are all covered with translucent rectangles: a 16x16 dab is
+ * written to the active layer, then the composite is updated. With the
+ * cached composites, the cost should not depend on the number of layers.
+ * <p>
+ * {@code switchLayer} measures the full rebuild that follows a change of
+ * the active layer.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerStackBenchmark {
+    private static final int WIDTH = 1920, HEIGHT = 1080;
+    private static final int DAB = 16;
+
+    /** The number of layers of the document. */
+    @Param({ "1", "50" })
+    public int layers;
+
+    private LayerStack stack;
+    private int x, y;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        stack = new LayerStack(WIDTH, HEIGHT);
+        for (int i = 1; i < layers; i++) {
+            stack.addLayer("Layer " + (i + 1));
+        }
+        for (int i = 0; i < layers; i++) {
+            TiledRaster raster = stack.getLayer(i).getRaster();
+            for (int r = 0; r < 20; r++) {
+                raster.fillRect(random.nextInt(WIDTH), random.nextInt(HEIGHT), 400, 300, 0x80000000 | random.nextInt(0x1000000));
+            }
+        }
+        stack.setActiveIndex(layers / 2);
+        stack.update();
+    }
+
+    @Benchmark
+    public int drawDab() {
+        x = (x + 7) % (WIDTH - DAB);
+        y = (y + 3) % (HEIGHT - DAB);
+        stack.getActiveLayer().getRaster().fillRect(x, y, DAB, DAB, 0xFF2060C0);
+        return stack.update();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int switchLayer() {
+        stack.setActiveIndex((stack.getActiveIndex() + 1) % layers);
+        if (layers == 1) stack.getLayer(0).setVisible(!stack.getLayer(0).isVisible()); // force a rebuild
+        return stack.update();
+    }
+}
@@ -0,0 +1,61 @@
+package edu.uopeople.cs1102;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the incremental update of a 3840x2160 {@code MipPyramid} after a
+ * stroke segment lands (a 24x24 rectangle) with rebuilding the whole pyramid,
+ * which is what resampling the full-resolution image every frame would cost.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MipPyramidBenchmark {
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+    private static final int SEGMENT = 24;
+
+    private final MipPyramid pyramid = new MipPyramid(WIDTH, HEIGHT, 7);
+    private int x, y;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int[] pixels = pyramid.getLevel(0);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        pyramid.update(0, 0, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public MipPyramid updateSegment() {
+        x = (x + 37) % (WIDTH - SEGMENT);
+        y = (y + 11) % (HEIGHT - SEGMENT);
+        pyramid.update(x, y, SEGMENT, SEGMENT);
+        return pyramid;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MipPyramid updateAll() {
+        pyramid.update(0, 0, WIDTH, HEIGHT);
+        return pyramid;
+    }
+}
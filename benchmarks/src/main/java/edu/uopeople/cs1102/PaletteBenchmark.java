@@ -0,0 +1,55 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.Button;
+
+/**
+ * Measures the construction of the palette buttons and the generation of
+ * their highlight styles. Runs on Monocle's headless platform.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaletteBenchmark {
+    private static final String STYLE =
+        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 2px; -fx-border-color: white;";
+
+    private AdvancedPaint paint;
+    private Button button;
+
+    @Setup
+    public void setup() {
+        HeadlessFx.start();
+        paint = new AdvancedPaint(new Canvas(600, 400));
+        button = paint.getPaletteButtons()[2];
+    }
+
+    @Benchmark
+    public Button[] createPalette() {
+        paint.createPalette();
+        return paint.getPaletteButtons();
+    }
+
+    @Benchmark
+    public String setHighLightCore() {
+        return paint.setHighLightCore(button, STYLE);
+    }
+}
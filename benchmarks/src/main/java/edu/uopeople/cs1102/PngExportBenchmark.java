@@ -0,0 +1,76 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the export of a 3840x2160 drawing of 200 strokes as a PNG file,
+ * with a given number of compression threads. On a machine with enough
+ * cores, the time should go down nearly in proportion to the threads.
+ * <p>
+ * The drawing is rasterized once by the {@code SoftwareRasterizer}; the
+ * source copies its rows, as the {@code PixelBufferRenderer} does.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PngExportBenchmark {
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+    private static final int STROKES = 200, POINTS = 2000;
+
+    /** The number of bands compressed at the same time. */
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private int[] image;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        StrokeStore store = new StrokeStore();
+        for (int s = 0; s < STROKES; s++) {
+            DragTrace trace = new DragTrace(POINTS, WIDTH, HEIGHT, s);
+            store.beginStroke(s % ColorUtil.standardPalette.length, 2 + s % 4);
+            for (int i = 0; i < trace.size(); i++) {
+                store.addPoint((float)trace.x(i), (float)trace.y(i));
+            }
+            store.endStroke();
+        }
+        image = new SoftwareRasterizer().render(store, WIDTH, HEIGHT);
+        file = Files.createTempFile("export", ".png");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return PngExport.write(file, WIDTH, HEIGHT,
+            (y, rows, argb) -> System.arraycopy(image, y * WIDTH, argb, 0, rows * WIDTH),
+            Deflater.DEFAULT_COMPRESSION, threads);
+    }
+}
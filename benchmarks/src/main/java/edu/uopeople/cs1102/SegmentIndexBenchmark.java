@@ -0,0 +1,112 @@
+package edu.uopeople.cs1102;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the queries of a {@code SegmentIndex} with a linear scan of every
+ * segment, on a 1920x1080 drawing of freehand strokes.
+ * <p>
+ * The linear scan is a {@code SegmentIndex} made of a single cell, so both
+ * sides run exactly the same distance and clipping tests; only the number of
+ * candidates differs.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SegmentIndexBenchmark {
+    private static final int WIDTH = 1920, HEIGHT = 1080;
+    private static final int POINTS_PER_STROKE = 50;
+    private static final int QUERIES = 1024;
+
+    /** The total number of segments of the drawing. */
+    @Param({ "10000", "100000", "400000" })
+    public int segments;
+
+    private final StrokeStore store = new StrokeStore();
+    private final BitSet result = new BitSet();
+    private SegmentIndex grid, linear;
+    private double[] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int strokes = segments / (POINTS_PER_STROKE - 1);
+        for (int s = 0; s < strokes; s++) {
+            double x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+            store.beginStroke(s % ColorUtil.standardPalette.length, 2);
+            for (int i = 0; i < POINTS_PER_STROKE; i++) {
+                x = Math.max(3, Math.min(WIDTH - 4, x + random.nextGaussian() * 4));
+                y = Math.max(3, Math.min(HEIGHT - 4, y + random.nextGaussian() * 4));
+                store.addPoint((float)x, (float)y);
+            }
+            store.endStroke();
+        }
+
+        grid = new SegmentIndex(WIDTH, HEIGHT);
+        grid.build(store);
+        linear = new SegmentIndex(WIDTH, HEIGHT, Math.max(WIDTH, HEIGHT));
+        linear.build(store);
+
+        queries = new double[QUERIES * 2];
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = random.nextInt(WIDTH);
+            queries[i + 1] = random.nextInt(HEIGHT);
+        }
+    }
+
+    @Benchmark
+    public int hitTestIndex() {
+        int q = next++ & (QUERIES - 1);
+        return grid.hitTest(store, queries[q << 1], queries[(q << 1) + 1], 6);
+    }
+
+    @Benchmark
+    public int hitTestLinear() {
+        int q = next++ & (QUERIES - 1);
+        return linear.hitTest(store, queries[q << 1], queries[(q << 1) + 1], 6);
+    }
+
+    @Benchmark
+    public int queryRectIndex() {
+        int q = next++ & (QUERIES - 1);
+        double x = queries[q << 1], y = queries[(q << 1) + 1];
+        result.clear();
+        return grid.queryRect(store, x, y, x + 200, y + 150, result);
+    }
+
+    @Benchmark
+    public int queryRectLinear() {
+        int q = next++ & (QUERIES - 1);
+        double x = queries[q << 1], y = queries[(q << 1) + 1];
+        result.clear();
+        return linear.queryRect(store, x, y, x + 200, y + 150, result);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SegmentIndex build() {
+        grid.build(store);
+        return grid;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the headless replay of a session: a recording of synthetic drags
+ * (one palette click per stroke and one pulse every 8 events, with
+ * coalescing and simplification on) replayed as fast as possible against a
+ * new {@code AdvancedPaint}, then rasterized by the software rasterizer.
+ * <p>
+ * A saved recording of a real session can be replayed the same way with
+ * {@code SessionReplay <file> --repeat <n>}.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionReplayBenchmark {
+    private static final int WIDTH = 800, HEIGHT = 600;
+    private static final int EVENTS_PER_PULSE = 8;
+
+    /** The number of strokes of the session. */
+    @Param({ "20" })
+    public int strokes;
+
+    /** The number of mouse events per stroke. */
+    @Param({ "500" })
+    public int points;
+
+    private SessionRecording recording;
+
+    @Setup
+    public void setup() {
+        recording = new SessionRecording(WIDTH, HEIGHT);
+        recording.command(SessionRecording.COALESCE, 1);
+        recording.command(SessionRecording.SIMPLIFY, 0.5);
+        for (int s = 0; s < strokes; s++) {
+            DragTrace trace = new DragTrace(points, WIDTH, HEIGHT, s);
+            recording.command(SessionRecording.COLOR, s % 26);
+            recording.mouse(SessionRecording.PRESS, trace.x(0), trace.y(0));
+            for (int i = 1; i < trace.size(); i++) {
+                recording.mouse(SessionRecording.DRAG, trace.x(i), trace.y(i));
+                if (i % EVENTS_PER_PULSE == 0) {
+                    recording.command(SessionRecording.PULSE, 0);
+                }
+            }
+            recording.mouse(SessionRecording.RELEASE, trace.x(trace.size() - 1), trace.y(trace.size() - 1));
+        }
+    }
+
+    @Benchmark
+    public int[] render() {
+        return SessionReplay.render(recording);
+    }
+}
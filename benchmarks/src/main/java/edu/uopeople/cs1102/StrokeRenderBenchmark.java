@@ -0,0 +1,99 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.canvas.Canvas;
+
+/**
+ * Measures the rendering of strokes driven by synthetic drag traces: through
+ * {@code AdvancedPaint}'s mouse handlers on a {@code Canvas} (one line per
+ * event, or coalesced once per simulated pulse), and through the software
+ * rasterizer.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StrokeRenderBenchmark {
+    private static final int WIDTH = 600, HEIGHT = 400;
+
+    /** The number of mouse events of the stroke. */
+    @Param({ "1000" })
+    public int points;
+
+    /** The number of mouse events per simulated pulse, in coalesced mode. */
+    @Param({ "8" })
+    public int eventsPerPulse;
+
+    private DragTrace trace;
+    private AdvancedPaint paint;
+    private StrokeStore store;
+    private SoftwareRasterizer rasterizer;
+    private int[] image;
+
+    @Setup
+    public void setup() {
+        HeadlessFx.start();
+        trace = new DragTrace(points, WIDTH, HEIGHT, 42);
+
+        store = new StrokeStore();
+        for (int i = 0; i < 16; i++) {
+            new DragTrace(points, WIDTH, HEIGHT, i).appendTo(store, i % 26);
+        }
+        rasterizer = new SoftwareRasterizer();
+        image = new int[WIDTH * HEIGHT];
+    }
+
+    /**
+     * Uses a fresh canvas for every iteration, so that its command buffer doesn't grow without bounds.
+     */
+    @Setup(Level.Iteration)
+    public void newCanvas() {
+        HeadlessFx.runAndWait(() -> paint = new AdvancedPaint(new Canvas(WIDTH, HEIGHT)));
+    }
+
+    @Benchmark
+    public void canvasDirect() {
+        HeadlessFx.runAndWait(() -> drag(false));
+    }
+
+    @Benchmark
+    public void canvasCoalesced() {
+        HeadlessFx.runAndWait(() -> drag(true));
+    }
+
+    @Benchmark
+    public int[] softwareRasterizer() {
+        rasterizer.render(store, image, WIDTH, HEIGHT);
+        return image;
+    }
+
+    private void drag(boolean coalescing) {
+        paint.setCoalescing(coalescing);
+        paint.onMousePressed(trace.x(0), trace.y(0));
+        for (int i = 1; i < trace.size(); i++) {
+            paint.onMouseDragged(trace.x(i), trace.y(i));
+            if (i % eventsPerPulse == 0) {
+                paint.onPulse(0);
+            }
+        }
+        paint.onMouseReleased(trace.x(trace.size() - 1), trace.y(trace.size() - 1));
+    }
+}
@@ -0,0 +1,64 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the export of a drawing of a million points as an SVG document,
+ * with and without simplification, into a writer that discards the
+ * characters, so that only the formatting is measured. The target is about
+ * a second per million points.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SvgExportBenchmark {
+    private static final int WIDTH = 3840, HEIGHT = 2160;
+    private static final int STROKES = 500, POINTS = 2000;
+
+    /** The simplification tolerance, in pixels; 0 keeps all the points. */
+    @Param({ "0", "0.5" })
+    public double tolerance;
+
+    /** The number of decimals of the coordinates. */
+    @Param({ "0", "2" })
+    public int decimals;
+
+    private StrokeStore store;
+
+    @Setup
+    public void setup() {
+        store = new StrokeStore();
+        for (int s = 0; s < STROKES; s++) {
+            DragTrace trace = new DragTrace(POINTS, WIDTH, HEIGHT, s);
+            store.beginStroke(s % ColorUtil.standardPalette.length, 2 + s % 4);
+            for (int i = 0; i < trace.size(); i++) {
+                store.addPoint((float)trace.x(i), (float)trace.y(i));
+            }
+            store.endStroke();
+        }
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        return SvgExport.write(Writer.nullWriter(), store, WIDTH, HEIGHT, tolerance, decimals);
+    }
+}
@@ -0,0 +1,104 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.layout.GridPane;
+
+/**
+ * Compares a palette of styled {@code Button} objects with a {@code SwatchPalette}
+ * for palettes of increasing size, and measures the hit-test of a click.
+ * <p>
+ * The swatch palette is measured up to its first rendering in a 400-pixel-high
+ * scene. The buttons are only created and styled, as in
+ * {@code AdvancedPaint.createPalette()}: laying out labeled controls needs a font
+ * library that a headless machine may lack, so the CSS and layout passes, which
+ * also grow with the number of buttons, are not included.
+ * </p>
+ * Runs on Monocle's headless platform.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SwatchPaletteBenchmark {
+    private static final String STYLE =
+        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 1px; -fx-border-color: gray;";
+
+    private static final int COLUMNS = 8;
+    private static final int HEIGHT = 400;
+
+    @Param({ "27", "1024", "4096" })
+    public int colorCount;
+
+    private int[] colors;
+    private SwatchPalette palette;
+
+    @Setup
+    public void setup() {
+        HeadlessFx.start();
+        colors = new int[colorCount];
+        for (int i = 0; i < colorCount; i++) {
+            colors[i] = 0xFF000000 | i * 0x9E3779B1 >>> 8;
+        }
+        HeadlessFx.runAndWait(() -> palette = show(new SwatchPalette(colors, COLUMNS, SwatchPalette.DEFAULT_SWATCH_SIZE)));
+    }
+
+    @Benchmark
+    public GridPane buttonPalette() {
+        GridPane[] result = new GridPane[1];
+        HeadlessFx.runAndWait(() -> {
+            GridPane grid = new GridPane();
+            for (int i = 0; i < colors.length; i++) {
+                String hex = ColorUtil.toHexString(colors[i]);
+                Button btn = new Button(Integer.toString(i));
+                btn.setStyle(String.format(STYLE, hex, hex));
+                btn.setPrefWidth(28);
+                btn.setPrefHeight(28);
+                grid.add(btn, i % COLUMNS, i / COLUMNS);
+            }
+            result[0] = grid;
+        });
+        return result[0];
+    }
+
+    @Benchmark
+    public SwatchPalette swatchPalette() {
+        SwatchPalette[] result = new SwatchPalette[1];
+        HeadlessFx.runAndWait(() -> result[0] = show(new SwatchPalette(colors, COLUMNS, SwatchPalette.DEFAULT_SWATCH_SIZE)));
+        return result[0];
+    }
+
+    @Benchmark
+    public int hitTest() {
+        return palette.indexAt(3 * SwatchPalette.DEFAULT_SWATCH_SIZE + 5, HEIGHT / 2);
+    }
+
+    /**
+     * Puts a palette in a scene of a fixed height and lays it out, like a stage would.
+     */
+    private static <T extends Parent> T show(T palette) {
+        new Scene(palette, 300, HEIGHT);
+        palette.applyCss();
+        palette.layout();
+        return palette;
+    }
+}
@@ -1,9 +1,32 @@
 package edu.uopeople.cs1102;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Priority;
 import javafx.scene.paint.Color;
 
 /**
@@ -19,153 +42,1802 @@ import javafx.scene.paint.Color;
 public class AdvancedPaint extends MouseDraggedBase {
     private final int LINE_WIDTH_2 = 2;
     private final int LINE_WIDTH_3 = 3;
+    private final int ERASER_RADIUS = 6;
 
     private final Canvas canvas;
     private final GridPane grid;
     private final GraphicsContext g;
 
     // The currently selected drawing color, coded as an index into the above array
+    // (or StrokeStore.CUSTOM_COLOR when the color is currentArgb)
     private int currentColorNum = 0; 
 
-    /*
-     * Array of colors corresponding to available colors in the palette.
-     * (The last color is a slightly darker version of yellow for
-     * better visibility on a white background.)
+    // The drawing color selected outside the standard palette, as a packed ARGB value.
+    private int currentArgb;
+
+    /*
+     * Array of colors corresponding to available colors in the palette.
+     * (The last color is a slightly darker version of yellow for
+     * better visibility on a white background.)
+     */
+    private static final Color[] palette = ColorUtil.standardPalette;
+    
+    /**
+     * Array of buttons to change the drawing color.
+     */
+    private final Button[] paletteButtons = new Button[palette.length];
+    
+    private boolean paletteButtonsCreated;
+
+    // The canvas-rendered palette, when created by createWithSwatchPalette().
+    private SwatchPalette swatchPalette;
+    
+    // This style removes the rounded borders from the button 
+    // and sets the same color for a button's text and background.
+    private static final String BUTTON_STYLE_FORMAT = 
+        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 1px; -fx-border-color: gray;";
+    
+    private static final String BUTTON__HIGHLIGHT_STYLE_FORMAT = 
+        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 2px; -fx-border-color: white;";
+
+    /**
+     * The retained model of the strokes drawn on the canvas.
+     */
+    private final StrokeStore strokes = new StrokeStore();
+
+    /**
+     * Finds the strokes under the cursor or inside the selection rectangle.
+     */
+    private final SegmentIndex index;
+
+    // The tool selected, and the one used by the current drag.
+    private PaintTool tool = PaintTool.Pen;
+    private PaintTool activeTool = PaintTool.Pen;
+
+    // The strokes erased by the current eraser drag.
+    private int[] erasedStrokes = new int[16];
+    private int erasedCount;
+
+    // The selected strokes, and the rubber-band rectangle that selected them.
+    private final BitSet selection = new BitSet();
+    private double bandX0, bandY0, bandX1, bandY1;
+    private boolean bandVisible;
+
+    // The pixels of the canvas when the rubber band appeared, put back under its edges
+    // when it moves; the renderer saves them itself.
+    private int[] bandBackground;
+
+    // Reused by the queries.
+    private final BitSet hits = new BitSet();
+    private final BitSet regionHits = new BitSet();
+
+    /**
+     * Runs the fills off the JavaFX application thread.
+     */
+    private static final ExecutorService FILL_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AdvancedPaint fill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FloodFill floodFill = new FloodFill();
+    private int fillTolerance = 32;
+
+    // The pixels painted by the fills, transparent elsewhere. The strokes can
+    // be drawn again from the model, but not the fills: the redraws of erased
+    // strokes put these pixels back under the strokes.
+    private final TiledRaster fillLayer;
+
+    // true while a fill runs in the background; mouse presses are ignored meanwhile.
+    private boolean fillPending;
+
+    // Incremented when the drawing is replaced, so that a fill in progress is discarded.
+    private int fillGeneration;
+
+    // true while a PNG export reads the drawing; the edits are refused meanwhile,
+    // and the remote strokes are deferred until the export ends.
+    private boolean exporting;
+    private final ArrayDeque<Runnable> deferredRemote = new ArrayDeque<>();
+
+    /**
+     * The undo/redo log of the strokes drawn and of the clear and erase commands.
+     */
+    private final UndoHistory history = new UndoHistory(new HistoryTarget());
+
+    // Reused to capture the canvas for the undo checkpoints.
+    private WritableImage snapshot;
+
+    /**
+     * Collects the points dragged between two pulses and keeps the per-frame counters.
+     */
+    private final PathCoalescer coalescer = new PathCoalescer();
+
+    // When true, drag points are rendered once per pulse as a single path.
+    private boolean coalescing;
+
+    // Drops redundant points while drawing; null when simplification is off.
+    private StrokeSimplifier simplifier;
+
+    // Smooths the strokes of the Brush tool and gives the width of their points.
+    private final BrushEngine brush = new BrushEngine();
+
+    /**
+     * The counters and gauges published as a JMX MBean.
+     */
+    private final PaintStats stats = new PaintStats();
+
+    // The timestamp of the previous pulse of the stroke in progress, or 0.
+    private long lastPulseTime;
+
+    // The zoomable view of the canvas, when created by createWithViewport(); otherwise, null.
+    private ViewportPane viewportPane;
+
+    // The view rendered off the application thread, when created by
+    // createWithPixelBuffer(), and its renderer; otherwise, null. When set,
+    // the drawing commands go to the renderer instead of the canvas.
+    private PixelBufferView pixelBufferView;
+    private PixelBufferRenderer renderer;
+
+    // The document, when created by createWithTiles(), and its view; otherwise,
+    // null. When set, each stroke is rasterized into the tiles of its layer,
+    // clipped to a rectangle, and the canvas only shows the view of the composite.
+    private LayerStack layers;
+    private TiledView tiledView;
+    private final SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+    private int clipX0, clipY0, clipX1, clipY1;
+
+    // In a tiled document, the number of tiles around the tile of its seed that a fill can reach.
+    private static final int FILL_TILES = 4;
+
+    // The rectangle of the canvas drawn on since the last call to takeDirtyRegion().
+    private double dirtyX0 = Double.POSITIVE_INFINITY, dirtyY0 = Double.POSITIVE_INFINITY;
+    private double dirtyX1 = Double.NEGATIVE_INFINITY, dirtyY1 = Double.NEGATIVE_INFINITY;
+
+    // The connection to the collaboration server, or null.
+    private CollabClient collab;
+
+    // The messages of the local stroke not sent yet, and the id of the last local stroke.
+    private final CollabBatch collabBatch = new CollabBatch();
+    private int collabStroke;
+
+    // The strokes of the other clients in progress, by client and stroke id.
+    private final Map<Long, StrokeStore> remoteStrokes = new HashMap<>();
+
+    // The remote strokes ended while the user draws, added to the drawing at the release.
+    private final ArrayDeque<StrokeStore> remoteEnded = new ArrayDeque<>();
+
+    // Saves the drawing continuously, or null.
+    private AutosaveJournal journal;
+
+    // The image shown under the strokes by the viewport, or null.
+    private ImageUnderlay underlay;
+
+    // Set by SessionReplay: the pulses come from the recording and fills are synchronous.
+    private boolean replaying;
+
+    /**
+     * Runs once per JavaFX pulse while the user is drawing.
+     */
+    private final AnimationTimer pulseTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            record(SessionRecording.PULSE, 0, 0);
+            onPulse(now);
+        }
+    };
+
+    /**
+     * Initializes a new instance of the {@code AdvancedPaint}
+     * class using the specified {@code Canvas} object.
+     * @param canvas The canvas on which to draw graphics.
+     */
+    public AdvancedPaint(Canvas canvas) {
+        this(canvas, null);
+    }
+    
+    /**
+     * Initializes a new instance of the {@code AdvancedPaint} class
+     * using the specified {@code Canvas} and {@code GridPane} objects.
+     * @param canvas The canvas on which to draw graphics. Cannot be null.
+     * @param grid A {@code GridPane} object. Can be null.
+     */
+    public AdvancedPaint(Canvas canvas, GridPane grid) {
+        this(canvas, grid, null);
+    }
+
+    /**
+     * Initializes a new instance of the {@code AdvancedPaint} class whose
+     * document is the specified stack of tiled layers, if any, rather than the canvas.
+     */
+    private AdvancedPaint(Canvas canvas, GridPane grid, LayerStack layers) {
+        this.canvas = canvas;
+        this.grid =grid;
+        this.layers = layers;
+        if (layers != null) {
+            resetClip();
+        }
+        this.index = new SegmentIndex(Math.max(1, getCanvasWidth()), Math.max(1, getCanvasHeight()));
+        this.fillLayer = new TiledRaster(Math.max(1, getCanvasWidth()), Math.max(1, getCanvasHeight()), 0);
+        floodFill.setMarking(true); // the fill layer only takes the pixels filled
+        
+        g = canvas.getGraphicsContext2D();
+        
+        /* Draw the canvas's content for the first time. The palette
+           buttons are created on demand by getPaletteButtons(). */
+        clearCanvas();
+        
+        /* Publish the statistics of this instance. */
+        updateStats();
+        stats.register();
+        
+        /* Respond to mouse events on the canvas, by calling methods in this class. */
+        canvas.setOnMousePressed(this::mousePressed);
+        canvas.setOnMouseDragged(this::mouseDragged);
+        canvas.setOnMouseReleased(this::mouseReleased);
+    }
+    
+    /**
+     * This is called when the user presses the mouse anywhere in the canvas.  
+     * There are three possible responses, depending on where the user clicked:  
+     * Change the current color, clear the drawing, or start drawing a curve.  
+     * (Or do nothing if user clicks on the border.)
+     */
+    @Override
+    protected boolean onMousePressed(double x, double y) {
+
+        if (super.onMousePressed(x, y)) // Ignore mouse presses that occur
+            return true; // when user is already drawing a curve.
+                         // (This can happen if the user presses
+                         // two mouse buttons at the same time.)
+        
+        if (fillPending || exporting)
+            return true; // Wait for the fill or the export in progress.
+        
+        // The user has clicked on the white drawing area.
+        // Start drawing a curve from the point (x,y).
+        clearSelection();
+        prevX =  getCurrentX();
+        prevY = getCurrentY();
+        dragging = true;
+        activeTool = tool;
+        
+        if (activeTool == PaintTool.Eraser) {
+            erasedCount = 0;
+            eraseAt(prevX, prevY);
+            return false;
+        } else if (activeTool == PaintTool.Select) {
+            return false; // (prevX, prevY) is the first corner of the rubber band
+        } else if (activeTool == PaintTool.Fill) {
+            dragging = false; // a fill is a click, not a drag
+            startFill(getCurrentX(), getCurrentY());
+            return false;
+        }
+        
+        Color color = currentColorNum == StrokeStore.CUSTOM_COLOR
+            ? ColorUtil.toColor(currentArgb) : palette[currentColorNum];
+        if (activeTool == PaintTool.Brush) {
+            g.setFill(color); // the pieces of a brush stroke are filled outlines
+            float width = brush.begin(prevX, prevY, getEventTime(), Double.NaN);
+            beginStroke(width);
+            strokes.addPoint((float)prevX, (float)prevY, width);
+        } else {
+            g.setLineWidth(LINE_WIDTH_2);  // Use a 2-pixel-wide line for drawing.
+            g.setStroke(color);
+            beginStroke(LINE_WIDTH_2);
+            strokes.addPoint((float)prevX, (float)prevY);
+        }
+        
+        if (collab != null) {
+            // the other clients draw brush strokes with a constant, average width
+            double width = activeTool == PaintTool.Brush ? (brush.getMinWidth() + brush.getMaxWidth()) / 2 : LINE_WIDTH_2;
+            collabBatch.begin(++collabStroke, getCurrentArgb(), (float)width, prevX, prevY);
+        }
+        
+        if (simplifier != null && activeTool == PaintTool.Pen) {
+            simplifier.begin(prevX, prevY);
+        }
+        
+        coalescer.begin(prevX, prevY);
+        lastPulseTime = 0;
+        if (!replaying) {
+            pulseTimer.start(); // a replay provides the recorded pulses
+        }
+        
+        return false;
+    }
+
+    /**
+     * Called whenever the user moves the mouse while a mouse button is held down.  
+     * If the user is drawing, draw a line segment from the previous mouse location 
+     * to the current mouse location, and set up prevX and prevY for the next call.  
+     * Note that in case the user drags outside of the drawing area, the values of
+     * x and y are "clamped" to lie within this area.  This avoids drawing on the color 
+     * palette or clear button.
+     */
+    @Override
+    protected boolean onMouseDragged(double x, double y) {
+
+        if (!super.onMouseDragged(x, y))
+            return false;  // Nothing to do because the user isn't drawing.
+
+        // (x, y) is in document space, i.e. in the coordinates of the canvas,
+        // whatever the zoom and scroll position of the view.
+        if (x < 3) // Adjust the value of x, to make sure it's in the drawing area.
+            x = 3;
+        
+        if (x > getCanvasWidth() - 4)
+            x = getCanvasWidth() - 4;
+
+        if (y < 3) // Adjust the value of y, to make sure it's in the drawing area.
+            y = 3;
+        
+        if (y > getCanvasHeight() - 4)   
+            y = getCanvasHeight() - 4;
+
+        if (activeTool == PaintTool.Eraser) {
+            eraseAt(x, y);
+            return true;
+        } else if (activeTool == PaintTool.Select) {
+            moveBand(x, y);
+            return true;
+        }
+
+        if (activeTool == PaintTool.Brush) {
+            brushTo(x, y);
+            return true;
+        }
+
+        if (simplifier != null) {
+            switch (simplifier.add(x, y)) {
+                case StrokeSimplifier.REJECT:
+                    return true; // too close to the previous point
+                case StrokeSimplifier.REPLACE:
+                    strokes.setPoint(strokes.getPointCount() - 1, (float)x, (float)y);
+                    break;
+                default:
+                    strokes.addPoint((float)x, (float)y);
+            }
+        } else {
+            strokes.addPoint((float)x, (float)y);
+        }
+        
+        // index the segment that ends with the new (or moved) point
+        index.insertSegment(strokes, strokes.getStrokeCount() - 1, strokes.getPointCount() - 2);
+
+        int end = strokes.getPointCount();
+        if (drawOffCanvas(strokes, strokes.getStrokeCount() - 1, end - 2, end)) {
+            coalescer.countDirect();
+        } else if (coalescing) {
+            coalescer.add(x, y); // Draw the line on the next pulse.
+        } else {
+            g.strokeLine(prevX, prevY, x, y);  // Draw the line.
+            coalescer.countDirect();
+        }
+        stats.segmentIssued();
+        if (collab != null) {
+            collabBatch.point(collabStroke, x, y); // sent on the next pulse
+        }
+        invalidate(Math.min(prevX, x) - LINE_WIDTH_3, Math.min(prevY, y) - LINE_WIDTH_3,
+            Math.max(prevX, x) + LINE_WIDTH_3, Math.max(prevY, y) + LINE_WIDTH_3);
+
+        prevX = x;  // Get ready for the next line segment in the curve.
+        prevY = y;
+
+        return true;
+    }
+
+    /**
+     * Called whenever the user releases the mouse button. Renders the
+     * points that are still waiting for the next pulse, if any.
+     */
+    @Override
+    protected boolean onMouseReleased(double x, double y) {
+
+        if (!super.onMouseReleased(x, y))
+            return false;  // Nothing to do because the user wasn't drawing.
+
+        if (activeTool == PaintTool.Eraser) {
+            history.recordErase(erasedStrokes, erasedCount);
+            autosave();
+            erasedCount = 0;
+            updateStats();
+            return true;
+        } else if (activeTool == PaintTool.Select) {
+            selectBand();
+            return true;
+        }
+
+        pulseTimer.stop();
+        coalescer.flush(g);
+        coalescer.endFrame();
+
+        int stroke = strokes.getStrokeCount() - 1;
+        if (activeTool == PaintTool.Brush) {
+            finishBrush(stroke);
+        } else if (simplifier != null) {
+            if (simplifier.end(strokes)) {
+                drawEnd(stroke);
+            }
+            simplifier.finish(strokes, stroke);
+            
+            // the points have been compacted: index the stroke again
+            index.truncate(stroke);
+            index.insertStroke(strokes, stroke);
+        }
+        strokes.endStroke();
+        history.recordStroke(strokes, stroke);
+        autosave();
+        stats.strokeDrawn();
+        
+        if (collab != null) {
+            collabBatch.end(collabStroke);
+            collab.send(collabBatch);
+        }
+        while (!remoteEnded.isEmpty()) {
+            commitRemoteStroke(remoteEnded.poll());
+        }
+        updateStats();
+
+        return true;
+    }
+
+    /**
+     * Draws and sends the last segment of a simplified stroke, which ends at
+     * the last point dragged when the simplifier has rejected it.
+     */
+    private void drawEnd(int stroke) {
+        int end = strokes.getPointCount();
+        double x = strokes.getX(end - 1), y = strokes.getY(end - 1);
+        if (!drawOffCanvas(strokes, stroke, end - 2, end)) {
+            g.strokeLine(prevX, prevY, x, y);
+        }
+        coalescer.countDirect();
+        stats.segmentIssued();
+        if (collab != null) {
+            collabBatch.point(collabStroke, x, y);
+        }
+        invalidate(Math.min(prevX, x) - LINE_WIDTH_3, Math.min(prevY, y) - LINE_WIDTH_3,
+            Math.max(prevX, x) + LINE_WIDTH_3, Math.max(prevY, y) + LINE_WIDTH_3);
+        prevX = x;
+        prevY = y;
+    }
+
+    /**
+     * Starts recording a stroke of the current color.
+     */
+    private void beginStroke(float lineWidth) {
+        int s;
+        if (currentColorNum == StrokeStore.CUSTOM_COLOR) {
+            s = strokes.beginCustomStroke(currentArgb, lineWidth);
+        } else {
+            s = strokes.beginStroke(currentColorNum, lineWidth);
+        }
+        if (layers != null) {
+            strokes.setLayer(s, layers.getActiveIndex());
+        }
+    }
+
+    /**
+     * Adds a point to the brush stroke in progress and draws the piece that
+     * the point completes: the one that ends with the previous point, whose
+     * shape depends on the new point.
+     */
+    private void brushTo(double x, double y) {
+        float width = brush.next(x, y, getEventTime(), Double.NaN);
+        strokes.addPoint((float)x, (float)y, width);
+
+        int stroke = strokes.getStrokeCount() - 1;
+        int first = strokes.getStrokeStart(stroke), end = strokes.getPointCount();
+        index.insertSegment(strokes, stroke, end - 2);
+
+        if (end - first >= 3) {
+            if (!drawOffCanvas(strokes, stroke, end - 3, end - 1)) {
+                drawBrushPiece(strokes, first, end, end - 3);
+            }
+            invalidatePoints(Math.max(first, end - 4), end, brush.getMaxWidth());
+        }
+        stats.segmentIssued();
+        if (collab != null) {
+            collabBatch.point(collabStroke, x, y); // sent on the next pulse
+        }
+        prevX = x;
+        prevY = y;
+    }
+
+    /**
+     * Draws the last piece of the brush stroke in progress and its end.
+     */
+    private void finishBrush(int stroke) {
+        int first = strokes.getStrokeStart(stroke), end = strokes.getPointCount();
+        if (!drawOffCanvas(strokes, stroke, Math.max(first, end - 2), end)) {
+            if (end - first >= 2) {
+                drawBrushPiece(strokes, first, end, end - 2);
+            }
+            drawBrushCap(strokes, end - 1);
+        }
+        invalidatePoints(Math.max(first, end - 3), end, brush.getMaxWidth());
+    }
+
+    /**
+     * Fills the outline of a piece of a variable-width stroke, and the round join at its start.
+     */
+    private void drawBrushPiece(StrokeStore store, int first, int end, int point) {
+        int n = brush.outline(store, first, end, point);
+        g.fillPolygon(brush.getOutlineX(), brush.getOutlineY(), n);
+        drawBrushCap(store, point);
+    }
+
+    private void drawBrushCap(StrokeStore store, int point) {
+        double width = store.getWidth(point);
+        g.fillOval(store.getX(point) - width / 2, store.getY(point) - width / 2, width, width);
+    }
+
+    /**
+     * Invalidates the bounding box of a run of points, padded by a width.
+     */
+    private void invalidatePoints(int from, int to, double pad) {
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            x0 = Math.min(x0, strokes.getX(i));
+            y0 = Math.min(y0, strokes.getY(i));
+            x1 = Math.max(x1, strokes.getX(i));
+            y1 = Math.max(y1, strokes.getY(i));
+        }
+        invalidate(x0 - pad, y0 - pad, x1 + pad, y1 + pad);
+    }
+
+    /**
+     * Called once per JavaFX pulse while the user is drawing. Renders the
+     * points collected since the previous pulse when coalescing is enabled,
+     * and closes the frame counters.
+     * @param now The timestamp of the current frame, in nanoseconds.
+     */
+    protected void onPulse(long now) {
+        coalescer.flush(g);
+        coalescer.endFrame();
+        
+        if (collab != null) {
+            collab.send(collabBatch); // one frame per pulse
+        }
+        
+        if (lastPulseTime != 0) {
+            stats.frameRendered(now - lastPulseTime);
+        }
+        lastPulseTime = now;
+    }
+
+    /**
+     * Indicates whether drag points are rendered once per pulse as a single path.
+     * @return true if coalescing is enabled; otherwise, false.
+     */
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Enables or disables the coalescing mode. When enabled, the points received
+     * between two JavaFX pulses are rendered with a single path instead of one
+     * {@code strokeLine} call per MouseDragged event.
+     * @param value true to enable coalescing; false to draw each segment immediately.
+     */
+    public void setCoalescing(boolean value) {
+        if (!value) {
+            coalescer.flush(g); // don't lose the points of a stroke in progress
+        }
+        coalescing = value;
+        record(SessionRecording.COALESCE, value ? 1 : 0, 0);
+    }
+
+    /**
+     * Gets the object that smooths the strokes of the {@code Brush} tool.
+     * @return The {@code BrushEngine} of this instance.
+     */
+    public BrushEngine getBrush() {
+        return brush;
+    }
+
+    /**
+     * Gets the object that drops redundant points while drawing.
+     * @return The {@code StrokeSimplifier} in use, or null if simplification is off.
+     */
+    public StrokeSimplifier getSimplifier() {
+        return simplifier;
+    }
+
+    /**
+     * Turns the simplification of strokes on or off. When on, points closer than
+     * {@code tolerance} to the previous one are dropped and collinear points
+     * are merged as they arrive, and each stroke gets a final
+     * Ramer-Douglas-Peucker pass when the mouse button is released.
+     * @param tolerance The tolerance, in pixels; 0 or less turns simplification off.
+     */
+    public void setSimplification(double tolerance) {
+        if (tolerance <= 0) {
+            simplifier = null;
+        } else if (simplifier == null) {
+            simplifier = new StrokeSimplifier(tolerance);
+        } else {
+            simplifier.setTolerance(tolerance);
+        }
+        record(SessionRecording.SIMPLIFY, Math.max(0, tolerance), 0);
+    }
+
+    /**
+     * Gets the retained model of the strokes drawn since the canvas was last cleared.
+     * @return The {@code StrokeStore} that records the strokes of this instance.
+     */
+    public StrokeStore getStrokes() {
+        return strokes;
+    }
+
+    /**
+     * Gets the tool used by the mouse on the canvas.
+     * @return The selected {@code PaintTool}.
+     */
+    public PaintTool getTool() {
+        return tool;
+    }
+
+    /**
+     * Selects the tool used by the mouse on the canvas. The selection
+     * is cleared. The current drag, if any, keeps its tool.
+     * @param tool The tool to use. Cannot be null.
+     */
+    public void setTool(PaintTool tool) {
+        if (tool == null) {
+            throw new IllegalArgumentException("The tool cannot be null.");
+        }
+        if (!dragging) {
+            clearSelection();
+        }
+        this.tool = tool;
+        record(SessionRecording.TOOL, tool.ordinal(), 0);
+    }
+
+    /**
+     * Gets the strokes selected with the {@code Select} tool.
+     * @return A copy of the set of the indices of the selected strokes.
+     */
+    public BitSet getSelection() {
+        return (BitSet)selection.clone();
+    }
+
+    /**
+     * Erases the selected strokes, as a single command of the undo history.
+     * Does nothing while the user is drawing or while the drawing is exported.
+     * @return true if strokes have been erased; otherwise, false.
+     */
+    public boolean eraseSelection() {
+        if (dragging || exporting || selection.isEmpty()) return false;
+
+        int[] ids = selection.stream().toArray();
+        clearSelection();
+        eraseStrokes(ids, 0, ids.length, true);
+        history.recordErase(ids, ids.length);
+        record(SessionRecording.ERASE_SELECTION, 0, 0);
+        autosave();
+        updateStats();
+        return true;
+    }
+
+    /**
+     * Gets the largest difference, on any channel, between the color of the
+     * clicked pixel and the colors replaced by a fill.
+     * @return The tolerance, between 0 and 255.
+     */
+    public int getFillTolerance() {
+        return fillTolerance;
+    }
+
+    /**
+     * Sets the largest difference, on any channel, between the color of the
+     * clicked pixel and the colors replaced by a fill.
+     * @param tolerance The tolerance, between 0 and 255.
+     */
+    public void setFillTolerance(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("The tolerance must be between 0 and 255.");
+        }
+        fillTolerance = tolerance;
+        record(SessionRecording.FILL_TOLERANCE, tolerance, 0);
+    }
+
+    /**
+     * Indicates whether a fill is running in the background.
+     * @return true if a fill hasn't been written to the canvas yet; otherwise, false.
+     */
+    public boolean isFillPending() {
+        return fillPending;
+    }
+
+    /**
+     * Gets the spatial index of the segments of the strokes.
+     * @return The {@code SegmentIndex} used to find strokes on the canvas.
+     */
+    public SegmentIndex getSegmentIndex() {
+        return index;
+    }
+
+    /**
+     * Fills the region under (x, y) with the current color. The fill runs on a
+     * copy of the canvas in the background; only the bounding rectangle of
+     * the filled pixels is written back, on the JavaFX application thread.
+     */
+    private void startFill(int x, int y) {
+        int width = getCanvasWidth(), height = getCanvasHeight();
+        if (x < LINE_WIDTH_3 || y < LINE_WIDTH_3 || x >= width - LINE_WIDTH_3 || y >= height - LINE_WIDTH_3)
+            return; // don't fill the border
+
+        if (replaying) {
+            // a replay must not depend on when the background fill completes
+            fill(x, y, getCurrentArgb(), fillTolerance);
+            history.recordFill(x, y, getCurrentArgb(), fillTolerance);
+            autosave();
+            updateStats();
+            return;
+        }
+
+        int[] window = fillWindow(x, y);
+        int[] argb = captureWindow(window);
+        int color = getCurrentArgb(), tolerance = fillTolerance, generation = fillGeneration;
+        fillPending = true;
+
+        FILL_EXECUTOR.execute(() -> {
+            int count = 0;
+            try {
+                count = floodFill.fill(argb, window[2] - window[0], window[3] - window[1],
+                    x - window[0], y - window[1], color, tolerance);
+            } finally {
+                int filled = count;
+                Platform.runLater(() -> {
+                    fillPending = false;
+                    if (filled == 0 || generation != fillGeneration)
+                        return; // nothing filled, or the drawing has been replaced
+                    writeFill(argb, window);
+                    history.recordFill(x, y, color, tolerance);
+                    autosave();
+                    updateStats();
+                });
+            }
+        });
+    }
+
+    /**
+     * Fills a region right away, on the calling thread.
+     */
+    private void fill(int x, int y, int color, int tolerance) {
+        int[] window = fillWindow(x, y);
+        int[] argb = captureWindow(window);
+        if (floodFill.fill(argb, window[2] - window[0], window[3] - window[1],
+                x - window[0], y - window[1], color, tolerance) > 0) {
+            writeFill(argb, window);
+        }
+    }
+
+    /**
+     * Gets the rectangle {x0, y0, x1, y1} that a fill seeded at (x, y) can
+     * reach: the whole canvas, or the tiles around the seed's in a tiled
+     * document, so that a fill doesn't load all the tiles of the document.
+     */
+    private int[] fillWindow(int x, int y) {
+        if (layers == null) {
+            return new int[] { 0, 0, getCanvasWidth(), getCanvasHeight() };
+        }
+        int reach = FILL_TILES << TiledRaster.TILE_SHIFT;
+        int tx = x >>> TiledRaster.TILE_SHIFT << TiledRaster.TILE_SHIFT;
+        int ty = y >>> TiledRaster.TILE_SHIFT << TiledRaster.TILE_SHIFT;
+        return new int[] {
+            Math.max(0, tx - reach), Math.max(0, ty - reach),
+            Math.min(layers.getWidth(), tx + TiledRaster.TILE_SIZE + reach),
+            Math.min(layers.getHeight(), ty + TiledRaster.TILE_SIZE + reach)
+        };
+    }
+
+    /**
+     * Copies the pixels of a fill window: a fill sees the composite of a tiled document.
+     */
+    private int[] captureWindow(int[] window) {
+        if (layers == null) {
+            return capturePixels();
+        }
+        int width = window[2] - window[0], height = window[3] - window[1];
+        int[] argb = new int[width * height];
+        layers.update();
+        layers.getComposite().getPixels(window[0], window[1], width, height, argb, 0, width);
+        return argb;
+    }
+
+    /**
+     * Writes the bounding rectangle of the last fill back to the canvas, and
+     * the pixels filled into the fill layer. The pixels of a tiled document
+     * that aren't filled come from the composite, so only the pixels filled
+     * are written there.
+     * @param argb The pixels of the fill window.
+     * @param window The fill window, whose origin is the origin of the fill's coordinates.
+     */
+    private void writeFill(int[] argb, int[] window) {
+        int width = window[2] - window[0];
+        int minX = floodFill.getMinX(), minY = floodFill.getMinY();
+        int maxX = floodFill.getMaxX(), maxY = floodFill.getMaxY();
+        if (layers == null) {
+            writePixels(window[0] + minX, window[1] + minY, maxX - minX + 1, maxY - minY + 1,
+                argb, minY * width + minX, width);
+        }
+
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; ) {
+                if (!floodFill.isFilled(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x <= maxX && floodFill.isFilled(x, y)) x++;
+                fillLayer.fillRect(window[0] + start, window[1] + y, x - start, 1, argb[y * width + start]);
+                if (layers != null) {
+                    writePixels(window[0] + start, window[1] + y, x - start, 1, argb, y * width + start, width);
+                }
+            }
+        }
+        invalidate(window[0] + minX, window[1] + minY, window[0] + maxX + 1, window[1] + maxY + 1);
+    }
+
+    /**
+     * Copies a rectangle of pixels to the canvas, the renderer or the bottom
+     * layer of the tiled document, which the fills paint.
+     */
+    private void writePixels(int x, int y, int w, int h, int[] argb, int offset, int stride) {
+        if (layers != null) {
+            layers.getLayer(0).getRaster().setPixels(x, y, w, h, argb, offset, stride);
+        } else if (renderer != null) {
+            renderer.setPixels(x, y, w, h, argb, offset, stride);
+        } else {
+            g.getPixelWriter().setPixels(x, y, w, h, PixelFormat.getIntArgbInstance(), argb, offset, stride);
+        }
+    }
+
+    /**
+     * Copies the pixels of the fill layer that lie in a rectangle, and aren't
+     * transparent, to the canvas.
+     */
+    private void drawFills(int x0, int y0, int x1, int y1) {
+        if (fillLayer.getAllocatedTileCount() == 0) return; // no fills
+
+        int width = x1 - x0, height = y1 - y0;
+        int[] argb = new int[width * height];
+        fillLayer.getPixels(x0, y0, width, height, argb, 0, width);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; ) {
+                if (argb[row + x] == 0) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width && argb[row + x] != 0) x++;
+                writePixels(x0 + start, y0 + y, x - start, 1, argb, row + start, width);
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the canvas, or of the renderer once all its commands are applied.
+     */
+    private int[] capturePixels() {
+        if (renderer != null) {
+            return renderer.capture();
+        }
+        int width = getCanvasWidth(), height = getCanvasHeight();
+        if (snapshot == null || (int)snapshot.getWidth() != width || (int)snapshot.getHeight() != height) {
+            snapshot = new WritableImage(width, height);
+        }
+        canvas.snapshot(null, snapshot);
+
+        int[] argb = new int[width * height];
+        snapshot.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+        return argb;
+    }
+
+    /**
+     * Erases the strokes under the eraser and remembers them for the undo history.
+     */
+    private void eraseAt(double x, double y) {
+        hits.clear();
+        int found = index.queryPoint(strokes, x, y, ERASER_RADIUS, hits);
+        if (found == 0) return;
+
+        if (erasedCount + found > erasedStrokes.length) {
+            erasedStrokes = Arrays.copyOf(erasedStrokes, Math.max(erasedStrokes.length * 2, erasedCount + found));
+        }
+        int from = erasedCount;
+        for (int s = hits.nextSetBit(0); s >= 0; s = hits.nextSetBit(s + 1)) {
+            erasedStrokes[erasedCount++] = s;
+        }
+        eraseStrokes(erasedStrokes, from, erasedCount, true);
+    }
+
+    /**
+     * Marks strokes as erased and, optionally, redraws the regions they covered.
+     */
+    private void eraseStrokes(int[] ids, int from, int to, boolean render) {
+        for (int i = from; i < to; i++) {
+            strokes.setErased(ids[i], true);
+        }
+        if (!render) return;
+
+        for (int i = from; i < to; i++) {
+            int s = ids[i];
+            double pad = reach(strokes.getLineWidth(s));
+            redrawRegion(strokes.getMinX(s) - pad, strokes.getMinY(s) - pad,
+                strokes.getMaxX(s) + pad, strokes.getMaxY(s) + pad);
+        }
+    }
+
+    /**
+     * Repaints a rectangle of the canvas from the strokes: the rectangle is
+     * cleared, the pixels of the fill layer are put back, and only the strokes
+     * that cross it are drawn again, clipped to it.
+     */
+    private void redrawRegion(double minX, double minY, double maxX, double maxY) {
+        double x0 = Math.max(0, Math.floor(minX)), y0 = Math.max(0, Math.floor(minY));
+        double x1 = Math.min(getCanvasWidth(), Math.ceil(maxX)), y1 = Math.min(getCanvasHeight(), Math.ceil(maxY));
+        if (x1 <= x0 || y1 <= y0) return;
+
+        if (layers != null) {
+            clipX0 = (int)x0;
+            clipY0 = (int)y0;
+            clipX1 = (int)x1;
+            clipY1 = (int)y1;
+        } else if (renderer != null) {
+            renderer.setClip((int)x0, (int)y0, (int)x1, (int)y1);
+        } else {
+            g.save();
+            g.beginPath();
+            g.rect(x0, y0, x1 - x0, y1 - y0);
+            g.clip();
+        }
+        clearRaster();
+        drawFills((int)x0, (int)y0, (int)x1, (int)y1);
+
+        // the index only widens the segments by half the line width
+        double margin = reach(LINE_WIDTH_3) - LINE_WIDTH_3 / 2.0;
+        regionHits.clear();
+        index.queryRect(strokes, x0 - margin, y0 - margin, x1 + margin, y1 + margin, regionHits);
+        for (int s = regionHits.nextSetBit(0); s >= 0; s = regionHits.nextSetBit(s + 1)) {
+            drawStroke(strokes, s);
+        }
+        if (layers != null) {
+            resetClip();
+        } else if (renderer != null) {
+            renderer.resetClip();
+        } else {
+            g.restore();
+        }
+        invalidate(x0, y0, x1, y1);
+    }
+
+    /**
+     * Gets how far the pixels of a line can reach from its points: the miter
+     * joins of sharp turns stick out up to {@code miterLimit * lineWidth / 2},
+     * plus one pixel of anti-aliasing. (The strokes drawn by this class are
+     * at most {@code LINE_WIDTH_3} wide.)
+     */
+    private double reach(double lineWidth) {
+        return Math.max(g.getMiterLimit(), 1.5) * lineWidth / 2 + 1;
+    }
+
+    /**
+     * Draws the rubber band from the point where the mouse was pressed to (x, y).
+     */
+    private void moveBand(double x, double y) {
+        hideBand();
+        bandX0 = Math.min(prevX, x);
+        bandY0 = Math.min(prevY, y);
+        bandX1 = Math.max(prevX, x);
+        bandY1 = Math.max(prevY, y);
+        showBand();
+    }
+
+    /**
+     * Draws the rubber band at its current position. The pixels it covers are
+     * saved first: by the renderer, or in a copy of the canvas taken when the
+     * band appears, since they may come from fills that the strokes can't
+     * repaint. A tiled view draws the band over the document instead.
+     */
+    private void showBand() {
+        if (tiledView != null) {
+            tiledView.showBand((int)Math.floor(bandX0), (int)Math.floor(bandY0), (int)Math.floor(bandX1), (int)Math.floor(bandY1));
+        } else if (renderer != null) {
+            renderer.drawBand((int)Math.floor(bandX0), (int)Math.floor(bandY0), (int)Math.floor(bandX1), (int)Math.floor(bandY1));
+        } else {
+            if (bandBackground == null) {
+                bandBackground = capturePixels();
+            }
+            g.save();
+            g.setStroke(Color.BLACK);
+            g.setLineWidth(1);
+            g.setLineDashes(4);
+            g.strokeRect(Math.floor(bandX0) + 0.5, Math.floor(bandY0) + 0.5,
+                Math.floor(bandX1) - Math.floor(bandX0), Math.floor(bandY1) - Math.floor(bandY0));
+            g.restore();
+        }
+        bandVisible = true;
+        invalidate(bandX0 - 2, bandY0 - 2, bandX1 + 2, bandY1 + 2);
+    }
+
+    /**
+     * Puts back the pixels under the edges of the rubber band.
+     */
+    private void hideBand() {
+        if (!bandVisible) return;
+        bandVisible = false;
+
+        if (tiledView != null) {
+            tiledView.hideBand();
+        } else if (renderer != null) {
+            renderer.hideBand();
+        } else {
+            restoreBand(bandX0 - 2, bandY0 - 2, bandX1 + 2, bandY0 + 2); // top
+            restoreBand(bandX0 - 2, bandY1 - 2, bandX1 + 2, bandY1 + 2); // bottom
+            restoreBand(bandX0 - 2, bandY0 - 2, bandX0 + 2, bandY1 + 2); // left
+            restoreBand(bandX1 - 2, bandY0 - 2, bandX1 + 2, bandY1 + 2); // right
+        }
+        invalidate(bandX0 - 2, bandY0 - 2, bandX1 + 2, bandY1 + 2);
+    }
+
+    /**
+     * Copies a rectangle of the pixels saved under the rubber band back to the canvas.
+     */
+    private void restoreBand(double minX, double minY, double maxX, double maxY) {
+        int width = getCanvasWidth();
+        int x0 = (int)Math.max(0, Math.floor(minX)), y0 = (int)Math.max(0, Math.floor(minY));
+        int x1 = (int)Math.min(width, Math.ceil(maxX)), y1 = (int)Math.min(getCanvasHeight(), Math.ceil(maxY));
+        if (x1 <= x0 || y1 <= y0) return;
+        g.getPixelWriter().setPixels(x0, y0, x1 - x0, y1 - y0, PixelFormat.getIntArgbInstance(),
+            bandBackground, y0 * width + x0, width);
+    }
+
+    /**
+     * Removes the rubber band and forgets the pixels saved under it.
+     */
+    private void dropBand() {
+        hideBand();
+        bandBackground = null;
+    }
+
+    /**
+     * Selects the strokes inside or across the rubber band. The band stays
+     * visible while the selection isn't empty.
+     */
+    private void selectBand() {
+        selection.clear();
+        if (bandVisible) {
+            index.queryRect(strokes, bandX0, bandY0, bandX1, bandY1, selection);
+        }
+        if (selection.isEmpty()) {
+            dropBand();
+        }
+    }
+
+    /**
+     * Empties the selection and removes the rubber band from the canvas.
+     */
+    private void clearSelection() {
+        dropBand();
+        selection.clear();
+    }
+
+    /**
+     * Gets the object that collects drag points and counts
+     * events and render commands per frame.
+     * @return The {@code PathCoalescer} used by this instance.
+     */
+    public PathCoalescer getPathCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Fills the canvas with white and draws the color palette and (simulated)
+     * "Clear" button on the right edge of the canvas.  This method is called when
+     * the canvas is created and when the user clicks "Clear."
+     */
+    public void clearAndDrawPalette() {
+        clearCanvas();
+        createPalette();
+    }
+
+    /**
+     * Clears the drawing on the canvas.
+     */
+    public void clearCanvas() {
+        clearRaster();
+        fillLayer.clear();
+        currentColorNum = 0; // reset the stroke
+        strokes.clear();
+        index.clear();
+        selection.clear();
+        bandVisible = false;
+        bandBackground = null;
+        fillGeneration++;
+        invalidateAll();
+    }
+
+    /**
+     * Fills the canvas with white and draws its border, without touching the
+     * strokes. The layers of a tiled document are cleared instead, and it has
+     * no border: it would load the tiles of its edges.
+     */
+    private void clearRaster() {
+        if (layers != null) {
+            boolean all = clipX0 == 0 && clipY0 == 0 && clipX1 == layers.getWidth() && clipY1 == layers.getHeight();
+            for (int i = 0; i < layers.getLayerCount(); i++) {
+                TiledRaster raster = layers.getLayer(i).getRaster();
+                if (all) {
+                    raster.clear(); // releases the tiles
+                } else {
+                    raster.fillRect(clipX0, clipY0, clipX1 - clipX0, clipY1 - clipY0, raster.getBackground());
+                }
+            }
+            return;
+        }
+        if (renderer != null) {
+            renderer.clear(); // clipped like the canvas
+            return;
+        }
+        int width = getCanvasWidth();    // Width of the canvas.
+        int height = getCanvasHeight();  // Height of the canvas.
+
+        g.setFill(Color.WHITE);
+        g.fillRect(0,0,width,height);
+
+        /* Draw a 3-pixel border around the canvas in gray.  This has to be
+            done by drawing three rectangles of different sizes. */
+
+        g.setStroke(Color.GRAY);
+        g.setLineWidth(LINE_WIDTH_3);
+        g.strokeRect(1.5, 1.5, width-LINE_WIDTH_3, height-LINE_WIDTH_3);
+    }
+
+    /**
+     * Draws a recorded stroke on the canvas with its own color and line width.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke in {@code store}.
+     */
+    protected void drawStroke(StrokeStore store, int stroke) {
+        if (store.isErased(stroke)) return;
+
+        int first = store.getStrokeStart(stroke);
+        int end = first + store.getStrokePointCount(stroke);
+        if (drawOffCanvas(store, stroke, first, end)) return;
+
+        int colorIndex = store.getColorIndex(stroke);
+        Color color = colorIndex == StrokeStore.CUSTOM_COLOR ? ColorUtil.toColor(store.getArgb(stroke)) : palette[colorIndex];
+        if (store.isVariableWidth(stroke)) {
+            // the same pieces as the ones drawn while dragging
+            g.setFill(color);
+            for (int i = first; i < end - 1; i++) {
+                drawBrushPiece(store, first, end, i);
+            }
+            drawBrushCap(store, end - 1);
+            return;
+        }
+        g.setStroke(color);
+        g.setLineWidth(store.getLineWidth(stroke));
+        g.beginPath();
+        g.moveTo(store.getX(first), store.getY(first));
+
+        for (int i = first + 1; i < end; i++) {
+            g.lineTo(store.getX(i), store.getY(i));
+        }
+        g.stroke();
+    }
+
+    /**
+     * Draws the points [from, to) of a stroke on the renderer or into its
+     * layer of the tiled document, clipped to the clip rectangle, if the
+     * drawing is there. The strokes of a layer that no longer exists go to the top layer.
+     * @return false if the drawing is on the canvas, where the caller draws.
+     */
+    private boolean drawOffCanvas(StrokeStore store, int stroke, int from, int to) {
+        if (renderer != null) {
+            renderer.drawStroke(store, stroke, from, to);
+            return true;
+        }
+        if (layers != null) {
+            Layer layer = layers.getLayer(Math.min(store.getLayer(stroke), layers.getLayerCount() - 1));
+            rasterizer.draw(store, stroke, from, to, layer.getRaster(), clipX0, clipY0, clipX1, clipY1);
+            return true;
+        }
+        return false;
+    }
+
+    private void resetClip() {
+        clipX0 = clipY0 = 0;
+        clipX1 = layers.getWidth();
+        clipY1 = layers.getHeight();
+    }
+
+    /**
+     * Clears the drawing and records the clear in the undo history. Does
+     * nothing while the drawing is exported.
+     */
+    public void clear() {
+        if (exporting) return;
+        record(SessionRecording.CLEAR, 0, 0);
+        clearCanvas();
+        history.recordClear();
+        autosave();
+        stats.cleared();
+        updateStats();
+    }
+
+    /**
+     * Cancels the last stroke, clear, erase or fill. Does nothing while the user is drawing,
+     * while a fill is pending or while the drawing is exported.
+     * @return true if something has been undone; otherwise, false.
+     */
+    public boolean undo() {
+        if (dragging || fillPending || exporting) return false;
+        clearSelection();
+        boolean undone = history.undo();
+        if (undone) {
+            record(SessionRecording.UNDO, 0, 0);
+            autosave();
+        }
+        updateStats();
+        return undone;
+    }
+
+    /**
+     * Applies again the last stroke, clear, erase or fill undone. Does nothing while the user
+     * is drawing, while a fill is pending or while the drawing is exported.
+     * @return true if something has been redone; otherwise, false.
+     */
+    public boolean redo() {
+        if (dragging || fillPending || exporting) return false;
+        clearSelection();
+        boolean redone = history.redo();
+        if (redone) {
+            record(SessionRecording.REDO, 0, 0);
+            autosave();
+        }
+        updateStats();
+        return redone;
+    }
+
+    /**
+     * Saves the strokes of the drawing to a file.
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException An I/O error occurs.
+     */
+    public void save(Path path) throws IOException {
+        DrawingFile.save(strokes, getCanvasWidth(), getCanvasHeight(), path);
+    }
+
+    /**
+     * Replaces the drawing with the strokes of a file and starts a new undo history.
+     * @param path The file to read.
+     * @throws IOException An I/O error occurs, or the file is not a drawing.
+     * @throws IllegalStateException The drawing is being exported.
+     */
+    public void load(Path path) throws IOException, IllegalStateException {
+        if (exporting) {
+            throw new IllegalStateException("The drawing cannot be replaced while it is exported.");
+        }
+        // read everything first, so a bad file leaves the drawing untouched
+        StrokeStore loaded = new StrokeStore();
+        DrawingFile.load(path, loaded);
+        load(loaded);
+    }
+
+    /**
+     * Replaces the drawing with copies of the specified strokes and starts a
+     * new undo history. The strokes are recorded with the session, if any.
+     * @param loaded The strokes of the new drawing.
+     */
+    void load(StrokeStore loaded) {
+        SessionRecording recording = getRecording();
+        if (recording != null) {
+            recording.load(loaded);
+        }
+        strokes.clear();
+        selection.clear();
+        bandVisible = false;
+        bandBackground = null;
+        fillGeneration++;
+        clearRaster();
+        for (int s = 0; s < loaded.getStrokeCount(); s++) {
+            drawStroke(strokes, strokes.appendStroke(loaded, s));
+        }
+        index.build(strokes);
+        history.recordLoad(strokes);
+        if (journal != null) {
+            journal.snapshot(history);
+        }
+        invalidateAll();
+        updateStats();
+    }
+
+    /**
+     * Exports the drawing as a PNG file, in the background. The drawing is
+     * read one band of rows at a time (on the JavaFX application thread,
+     * unless it is rendered by a {@code PixelBufferRenderer}) and the bands
+     * are compressed in parallel (see {@code PngExport}), so the UI only
+     * stops for the copy of a band. The selection is cleared, and the drawing
+     * can't be edited until the export ends, so that all the bands show the
+     * same drawing: the mouse presses, undo, redo, clear and erase commands
+     * are ignored meanwhile, and the remote strokes are drawn after it.
+     * @param path The file to write, which is replaced if it exists.
+     * @param done Called on the JavaFX application thread when the export
+     * ends, with null or the error that stopped it.
+     * @return true if the export has started; false if the user is drawing,
+     * a fill is pending or another export is running.
+     */
+    public boolean exportPng(Path path, Consumer<IOException> done) {
+        if (dragging || fillPending || exporting) return false;
+
+        clearSelection(); // the rubber band isn't part of the drawing
+        if (layers != null) {
+            layers.update();
+        }
+        exporting = true;
+        int width = getCanvasWidth(), height = getCanvasHeight();
+        Thread thread = new Thread(() -> {
+            IOException error = null;
+            try {
+                PngExport.write(path, width, height, this::readRows);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e.getMessage(), e);
+            }
+            IOException result = error;
+            Platform.runLater(() -> {
+                exporting = false;
+                while (!deferredRemote.isEmpty()) {
+                    deferredRemote.poll().run();
+                }
+                done.accept(result);
+            });
+        }, "AdvancedPaint export");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Indicates whether a PNG export is reading the drawing.
+     * @return true if the drawing can't be edited until the export ends; otherwise, false.
+     */
+    public boolean isExporting() {
+        return exporting;
+    }
+
+    private void readRows(int y, int rows, int[] argb) throws IOException {
+        if (layers != null) {
+            // brought up to date by exportPng(), the tiles don't change meanwhile
+            layers.getComposite().getPixels(0, y, getCanvasWidth(), rows, argb, 0, getCanvasWidth());
+            return;
+        }
+        if (renderer != null) {
+            renderer.copyRows(y, rows, argb);
+            return;
+        }
+        int width = getCanvasWidth();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            SnapshotParameters params = new SnapshotParameters();
+            params.setViewport(new Rectangle2D(0, y, width, rows));
+            WritableImage band = canvas.snapshot(params, null);
+            band.getPixelReader().getPixels(0, 0, width, rows, PixelFormat.getIntArgbInstance(), argb, 0, width);
+            return null;
+        });
+        if (Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            Platform.runLater(task);
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the drawing.");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read the drawing.", e.getCause());
+        }
+    }
+
+    /**
+     * Exports the strokes of the drawing as an SVG file, for print. The file
+     * is streamed as it is formatted (see {@code SvgExport}); the flood fills,
+     * which are pixels, aren't exported.
+     * @param path The file to write, which is replaced if it exists.
+     * @param tolerance The largest distance, in pixels, between a stroke and
+     * its simplified path, or 0 to keep all the points.
+     * @param decimals The number of decimals of the coordinates, from 0 to {@code SvgExport.MAX_DECIMALS}.
+     * @return The number of characters written.
+     * @throws IOException An I/O error occurs.
+     */
+    public long exportSvg(Path path, double tolerance, int decimals) throws IOException {
+        return SvgExport.write(path, strokes, getCanvasWidth(), getCanvasHeight(), tolerance, decimals);
+    }
+
+    /**
+     * Shows an image under the strokes, to trace over it, in place of the
+     * previous one, if any. The image is decoded a region at a time, as its
+     * tiles come into view, at the level of detail of the zoom (see
+     * {@code ImageUnderlay}); the memory of the decoded tiles is published
+     * by the statistics. The drawing itself doesn't change.
+     * @param path The image file, in a format supported by {@code ImageIO}.
+     * @throws IOException The file cannot be read, or its format isn't supported.
+     * @throws IllegalStateException The drawing isn't shown by a {@code ViewportPane}.
+     */
+    public void importImage(Path path) throws IOException, IllegalStateException {
+        if (viewportPane == null) {
+            throw new IllegalStateException("An image can only be imported into a drawing created by createWithViewport().");
+        }
+        ImageUnderlay imported = new ImageUnderlay(path, getCanvasWidth(), getCanvasHeight(),
+            ImageUnderlay.DEFAULT_CACHE_BYTES);
+        removeImage();
+        underlay = imported;
+        underlay.setOnTilesDecoded(() -> {
+            viewportPane.requestRefresh();
+            updateStats();
+        });
+        viewportPane.requestRefresh();
+    }
+
+    /**
+     * Removes the image shown under the strokes and releases its tiles. Does
+     * nothing if no image is imported.
+     */
+    public void removeImage() {
+        if (underlay == null) return;
+        underlay.close();
+        underlay = null;
+        updateStats();
+        if (viewportPane != null) {
+            viewportPane.requestRefresh();
+        }
+    }
+
+    /**
+     * Gets the image shown under the strokes.
+     * @return The {@code ImageUnderlay} created by {@code importImage()}, or null.
+     */
+    public ImageUnderlay getImageUnderlay() {
+        return underlay;
+    }
+
+    /**
+     * Starts saving the drawing continuously into an {@code AutosaveJournal}.
+     * If the files already hold a drawing, for instance after a crash, it
+     * replaces the current one first. Stops the previous autosave, if any.
+     * @param base The path of the journal files, without their extension.
+     * @return The number of commands recovered.
+     * @throws IOException The files cannot be locked, for instance because
+     * another instance uses them, or they cannot be recovered.
+     */
+    public int startAutosave(Path base) throws IOException {
+        stopAutosave();
+        AutosaveJournal started = new AutosaveJournal(base, getCanvasWidth(), getCanvasHeight());
+        int recovered = 0;
+        try {
+            if (AutosaveJournal.exists(base)) {
+                recovered = recover(base);
+            }
+        } catch (IOException | RuntimeException e) {
+            started.close(); // keep the files for another attempt
+            throw e;
+        }
+        journal = started;
+        journal.snapshot(history);
+        return recovered;
+    }
+
+    /**
+     * Folds the journal into a snapshot, waits for it to be written and
+     * stops the autosave. Does nothing if the autosave isn't started.
+     */
+    public void stopAutosave() {
+        if (journal == null) return;
+        journal.snapshot(history);
+        journal.close();
+        journal = null;
+    }
+
+    /**
+     * Gets the journal that saves the drawing continuously.
+     * @return The {@code AutosaveJournal} started by {@code startAutosave()}, or null.
+     */
+    public AutosaveJournal getAutosaveJournal() {
+        return journal;
+    }
+
+    /**
+     * Replaces the drawing with the one saved by an {@code AutosaveJournal}.
+     * The commands recovered can be undone.
+     * @param base The path of the journal files, without their extension.
+     * @return The number of commands recovered.
+     * @throws IOException An I/O error occurs, or the files are not autosave files.
+     */
+    public int recover(Path base) throws IOException {
+        clearSelection();
+        clearCanvas();
+        history.reset();
+        int count = AutosaveJournal.recover(base, new RecoveryTarget());
+        if (journal != null) {
+            journal.snapshot(history);
+        }
+        invalidateAll();
+        updateStats();
+        return count;
+    }
+
+    /**
+     * Appends the commands just recorded in the undo history to the autosave journal, if any.
+     */
+    private void autosave() {
+        if (journal != null) {
+            journal.append(history);
+        }
+    }
+
+    /**
+     * Sets the object that records the input of the session, and records the
+     * current tool, color and settings first, so that a replay starts from
+     * the same state.
+     * @param recording A {@code SessionRecording} object, or null to stop recording.
+     */
+    @Override
+    public void setRecording(SessionRecording recording) {
+        super.setRecording(recording);
+        if (recording == null) return;
+        record(SessionRecording.TOOL, tool.ordinal(), 0);
+        if (currentColorNum == StrokeStore.CUSTOM_COLOR) {
+            record(SessionRecording.ARGB, currentArgb, 0);
+        } else {
+            record(SessionRecording.COLOR, currentColorNum, 0);
+        }
+        record(SessionRecording.SIMPLIFY, simplifier == null ? 0 : simplifier.getTolerance(), 0);
+        record(SessionRecording.COALESCE, coalescing ? 1 : 0, 0);
+        record(SessionRecording.FILL_TOLERANCE, fillTolerance, 0);
+    }
+
+    /**
+     * Called by {@code SessionReplay}: while replaying, the pulse timer isn't
+     * started, since the recording contains the pulses, and fills run on the
+     * calling thread.
+     */
+    void setReplaying(boolean value) {
+        replaying = value;
+    }
+
+    /**
+     * Gets the zoomable view of the canvas.
+     * @return The {@code ViewportPane} created by {@code createWithViewport()}, or null.
+     */
+    public ViewportPane getViewportPane() {
+        return viewportPane;
+    }
+
+    /**
+     * Called by the {@code ViewportPane} that shows the canvas.
+     */
+    void setViewportPane(ViewportPane pane) {
+        viewportPane = pane;
+        invalidateAll();
+    }
+
+    /**
+     * Gets the view rendered off the JavaFX application thread.
+     * @return The {@code PixelBufferView} created by {@code createWithPixelBuffer()}, or null.
+     */
+    public PixelBufferView getPixelBufferView() {
+        return pixelBufferView;
+    }
+
+    /**
+     * Called by the {@code PixelBufferView} that shows the drawing: the
+     * renderer starts from the pixels of the canvas, which isn't drawn on anymore.
+     */
+    void setPixelBufferView(PixelBufferView view) {
+        int[] argb = capturePixels();
+        pixelBufferView = view;
+        renderer = view.getRenderer();
+        renderer.setPixels(0, 0, getCanvasWidth(), getCanvasHeight(), argb, 0, getCanvasWidth());
+        invalidateAll();
+    }
+
+    /**
+     * Gets the layers of the tiled document. After changing the properties of
+     * a layer, call {@code refresh()} on the view to show the result.
+     * @return The {@code LayerStack} created by {@code createWithTiles()}, or null.
+     */
+    public LayerStack getLayerStack() {
+        return layers;
+    }
+
+    /**
+     * Adds an empty layer on top of the layers of the tiled document, and
+     * draws the next strokes on it.
+     * @param name The name of the new layer.
+     * @return The new {@code Layer} object.
+     * @throws IllegalStateException The drawing has no tiled document.
      */
-    private static final Color[] palette = ColorUtil.standardPalette;
-    
+    public Layer addLayer(String name) throws IllegalStateException {
+        if (layers == null) {
+            throw new IllegalStateException("The drawing must be created by createWithTiles().");
+        }
+        Layer layer = layers.addLayer(name);
+        setActiveLayer(layers.getLayerCount() - 1);
+        return layer;
+    }
+
     /**
-     * Array of buttons to change the drawing color.
+     * Selects the layer of the tiled document that the next strokes are drawn
+     * on. The fills always paint the bottom layer.
+     * @param index The index of the layer, 0 being the bottom layer.
+     * @throws IllegalStateException The drawing has no tiled document.
+     * @throws IndexOutOfBoundsException {@code index} is out of range.
      */
-    private final Button[] paletteButtons = new Button[palette.length];
-    
-    private boolean paletteButtonsCreated;
-    
-    // This style removes the rounded borders from the button 
-    // and sets the same color for a button's text and background.
-    private static final String BUTTON_STYLE_FORMAT = 
-        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 1px; -fx-border-color: gray;";
-    
-    private static final String BUTTON__HIGHLIGHT_STYLE_FORMAT = 
-        "-fx-background-radius: 0; -fx-text-fill: %s; -fx-background-color: %s; -fx-border-width: 2px; -fx-border-color: white;";
+    public void setActiveLayer(int index) throws IllegalStateException, IndexOutOfBoundsException {
+        if (layers == null) {
+            throw new IllegalStateException("The drawing must be created by createWithTiles().");
+        }
+        layers.setActiveIndex(index);
+        tiledView.requestUpdate();
+        updateStats();
+    }
 
     /**
-     * Initializes a new instance of the {@code AdvancedPaint}
-     * class using the specified {@code Canvas} object.
-     * @param canvas The canvas on which to draw graphics.
+     * Gets the view of the tiled document.
+     * @return The {@code TiledView} created by {@code createWithTiles()}, or null.
      */
-    public AdvancedPaint(Canvas canvas) {
-        this(canvas, null);
+    public TiledView getTiledView() {
+        return tiledView;
     }
-    
+
     /**
-     * Initializes a new instance of the {@code AdvancedPaint} class
-     * using the specified {@code Canvas} and {@code GridPane} objects.
-     * @param canvas The canvas on which to draw graphics. Cannot be null.
-     * @param grid A {@code GridPane} object. Can be null.
+     * Called by the {@code TiledView} that shows the tiled document.
      */
-    public AdvancedPaint(Canvas canvas, GridPane grid) {
-        this.canvas = canvas;
-        this.grid =grid;
-        
-        g = canvas.getGraphicsContext2D();
-        
-        /* Draw the canvas's content for the first time. */
-        clearAndDrawPalette();
-        
-        /* Respond to mouse events on the canvas, by calling methods in this class. */
-        canvas.setOnMousePressed(this::mousePressed);
-        canvas.setOnMouseDragged(this::mouseDragged);
-        canvas.setOnMouseReleased(this::mouseReleased);
+    void setTiledView(TiledView view) {
+        tiledView = view;
     }
-    
+
     /**
-     * This is called when the user presses the mouse anywhere in the canvas.  
-     * There are three possible responses, depending on where the user clicked:  
-     * Change the current color, clear the drawing, or start drawing a curve.  
-     * (Or do nothing if user clicks on the border.)
+     * Converts the x-coordinate of a mouse event on the view into document space.
      */
     @Override
-    protected boolean onMousePressed(double x, double y) {
-
-        if (super.onMousePressed(x, y)) // Ignore mouse presses that occur
-            return true; // when user is already drawing a curve.
-                         // (This can happen if the user presses
-                         // two mouse buttons at the same time.)
-        
-        // The user has clicked on the white drawing area.
-        // Start drawing a curve from the point (x,y).
-        prevX =  getCurrentX();
-        prevY = getCurrentY();
-        dragging = true;
-        g.setLineWidth(LINE_WIDTH_2);  // Use a 2-pixel-wide line for drawing.
-        g.setStroke( palette[currentColorNum] );
-        
-        return false;
+    protected double toDocumentX(double x) {
+        if (tiledView != null) return tiledView.toDocumentX(x);
+        return viewportPane == null ? x : viewportPane.getViewport().toDocumentX(x);
     }
 
     /**
-     * Called whenever the user moves the mouse while a mouse button is held down.  
-     * If the user is drawing, draw a line segment from the previous mouse location 
-     * to the current mouse location, and set up prevX and prevY for the next call.  
-     * Note that in case the user drags outside of the drawing area, the values of
-     * x and y are "clamped" to lie within this area.  This avoids drawing on the color 
-     * palette or clear button.
+     * Converts the y-coordinate of a mouse event on the view into document space.
      */
     @Override
-    protected boolean onMouseDragged(double x, double y) {
+    protected double toDocumentY(double y) {
+        if (tiledView != null) return tiledView.toDocumentY(y);
+        return viewportPane == null ? y : viewportPane.getViewport().toDocumentY(y);
+    }
 
-        if (!super.onMouseDragged(x, y))
-            return false;  // Nothing to do because the user isn't drawing.
+    /**
+     * Gets the rectangle of the canvas drawn on since the previous call, and
+     * starts a new one.
+     * @return The rectangle, in whole pixels within the canvas, or null if nothing has been drawn.
+     */
+    public Rectangle2D takeDirtyRegion() {
+        int x0 = (int)Math.max(0, Math.floor(dirtyX0)), y0 = (int)Math.max(0, Math.floor(dirtyY0));
+        int x1 = (int)Math.min(getCanvasWidth(), Math.ceil(dirtyX1));
+        int y1 = (int)Math.min(getCanvasHeight(), Math.ceil(dirtyY1));
+        dirtyX0 = dirtyY0 = Double.POSITIVE_INFINITY;
+        dirtyX1 = dirtyY1 = Double.NEGATIVE_INFINITY;
+        return x0 < x1 && y0 < y1 ? new Rectangle2D(x0, y0, x1 - x0, y1 - y0) : null;
+    }
 
-        if (x < 3) // Adjust the value of x, to make sure it's in the drawing area.
-            x = 3;
-        
-        if (x > canvas.getWidth() - 4)
-            x = getCanvasWidth() - 4;
+    /**
+     * Adds a rectangle to the region of the canvas drawn on, and lets the view know.
+     */
+    private void invalidate(double x0, double y0, double x1, double y1) {
+        dirtyX0 = Math.min(dirtyX0, x0);
+        dirtyY0 = Math.min(dirtyY0, y0);
+        dirtyX1 = Math.max(dirtyX1, x1);
+        dirtyY1 = Math.max(dirtyY1, y1);
+        if (viewportPane != null) {
+            viewportPane.requestUpdate();
+        } else if (tiledView != null) {
+            tiledView.requestUpdate();
+        }
+    }
 
-        if (y < 3) // Adjust the value of y, to make sure it's in the drawing area.
-            y = 3;
-        
-        if (y > canvas.getHeight() - 4)   
-            y = canvas.getHeight() - 4;
+    private void invalidateAll() {
+        invalidate(0, 0, getCanvasWidth(), getCanvasHeight());
+    }
 
-        g.strokeLine(prevX, prevY, x, y);  // Draw the line.
+    /**
+     * Connects to a collaboration server: the strokes drawn from now on are
+     * sent to the other clients, once per pulse, and theirs are drawn as
+     * they arrive. Stops the previous collaboration, if any.
+     * @param host The host name of the server.
+     * @param port The port of the server.
+     * @throws IOException The connection failed.
+     */
+    public void startCollaboration(String host, int port) throws IOException {
+        stopCollaboration();
+        collab = new CollabClient(host, port, new RemoteStrokes(), Platform::runLater);
+    }
 
-        prevX = x;  // Get ready for the next line segment in the curve.
-        prevY = y;
+    /**
+     * Disconnects from the collaboration server. The remote strokes in progress are discarded.
+     */
+    public void stopCollaboration() {
+        if (collab == null) return;
+        try {
+            collab.close();
+        } catch (IOException e) {
+            // disconnected anyway
+        }
+        collab = null;
+        collabBatch.finish(0); // empty the batch
+        remoteStrokes.clear(); // the strokes ended are kept, at the latest at the release
+    }
 
-        return true;
+    /**
+     * Indicates whether this instance is connected to a collaboration server.
+     * @return true if the strokes are shared; otherwise, false.
+     */
+    public boolean isCollaborating() {
+        return collab != null && collab.isConnected();
     }
 
     /**
-     * Fills the canvas with white and draws the color palette and (simulated)
-     * "Clear" button on the right edge of the canvas.  This method is called when
-     * the canvas is created and when the user clicks "Clear."
+     * Adds a remote stroke, already drawn, to the strokes of the drawing and to the undo history.
      */
-    public void clearAndDrawPalette() {
-        clearCanvas();
-        createPalette();
+    private void commitRemoteStroke(StrokeStore remote) {
+        int s = strokes.appendStroke(remote, 0);
+        index.insertStroke(strokes, s);
+        history.recordStroke(strokes, s);
+        autosave();
+        updateStats();
     }
 
     /**
-     * Clears the drawing on the canvas.
+     * Gets the statistics of this instance, which are also published as a JMX MBean.
+     * @return The {@code PaintStats} object of this instance.
      */
-    public void clearCanvas() {
-        int width = getCanvasWidth();    // Width of the canvas.
-        int height = getCanvasHeight();  // Height of the canvas.
+    public PaintStats getStats() {
+        return stats;
+    }
 
-        g.setFill(Color.WHITE);
-        g.fillRect(0,0,width,height);
+    /**
+     * Removes the statistics MBean of this instance from the platform MBean server.
+     * Call this when the instance is no longer used, so that it can be garbage-collected.
+     */
+    public void unregisterStats() {
+        stats.unregister();
+    }
 
-        /* Draw a 3-pixel border around the canvas in gray.  This has to be
-            done by drawing three rectangles of different sizes. */
+    /**
+     * Publishes the size of the canvas and the estimated memory of the drawing:
+     * the pixels of the canvas, the strokes, their index and the undo history,
+     * and the memory of the tiles of the imported image.
+     */
+    private void updateStats() {
+        int width = getCanvasWidth(), height = getCanvasHeight();
+        stats.setCanvasSize(width, height);
+        long pixels = layers != null ? layers.getMemoryUsage() : 4L * width * height;
+        stats.setEstimatedMemoryBytes(pixels + strokes.getMemoryUsage()
+            + index.getMemoryUsage() + history.getMemoryUsage());
+        stats.setImageMemoryBytes(underlay == null ? 0 : underlay.getMemoryUsage());
+    }
 
-        g.setStroke(Color.GRAY);
-        g.setLineWidth(LINE_WIDTH_3);
-        g.strokeRect(1.5, 1.5, width-LINE_WIDTH_3, height-LINE_WIDTH_3);
-        
-        currentColorNum = 0; // reset the stroke
+    /**
+     * Gets the undo/redo log of this instance.
+     * @return The {@code UndoHistory} that records the strokes and clear commands.
+     */
+    public UndoHistory getHistory() {
+        return history;
     }
 
     /**
@@ -173,14 +1845,19 @@ public class AdvancedPaint extends MouseDraggedBase {
      * @return An initialized array of {@code Button} objects.
      */
     public Button[] getPaletteButtons() {
-        if (paletteButtonsCreated) {
-            return paletteButtons;
+        if (!paletteButtonsCreated) {
+            createPalette();
         }
-        
-        createPalette();
-        paletteButtonsCreated = true;
         return paletteButtons;
     }
+
+    /**
+     * Gets the canvas-rendered palette of this instance.
+     * @return The {@code SwatchPalette} created by {@code createWithSwatchPalette()}, or null.
+     */
+    public SwatchPalette getSwatchPalette() {
+        return swatchPalette;
+    }
     
     /**
      * Creates the color palette and wires up the appropriate event handlers.
@@ -225,6 +1902,8 @@ public class AdvancedPaint extends MouseDraggedBase {
         // revert the button's text to black (otherwise, we wouldn't 
         // be able to read white text on a white background)
         unsetHightLight(btn);
+        
+        paletteButtonsCreated = true;
     }
     
     /**
@@ -247,10 +1926,12 @@ public class AdvancedPaint extends MouseDraggedBase {
         String buttonText = btn.getText();
         
         if (buttonText.equals("CLEAR")) {
-            clearCanvas();
+            clear();
         } else {
             // parse the color index
             currentColorNum = Integer.parseInt(buttonText);
+            record(SessionRecording.COLOR, currentColorNum, 0);
+            stats.paletteChanged();
         }
         
         // highlight the newly selected button
@@ -259,12 +1940,54 @@ public class AdvancedPaint extends MouseDraggedBase {
         // System.out.println("Color changed to " + color);
     }
 
+    /**
+     * Selects a drawing color that is not part of the standard palette.
+     * @param argb The color, as a packed ARGB value.
+     */
+    public void setCurrentArgb(int argb) {
+        // remove highlight from the previously clicked button
+        unsetHightLight(getCurrentButton());
+        
+        currentColorNum = StrokeStore.CUSTOM_COLOR;
+        currentArgb = argb;
+        record(SessionRecording.ARGB, argb, 0);
+        stats.paletteChanged();
+    }
+
+    /**
+     * Selects a color of the standard palette, as if its button had been clicked.
+     * @param colorIndex The index of the color in {@code ColorUtil.standardPalette}.
+     * @throws IllegalArgumentException {@code colorIndex} is not the index of a color.
+     */
+    public void selectColor(int colorIndex) throws IllegalArgumentException {
+        if (colorIndex < 0 || colorIndex >= palette.length - 1) { // the last button clears
+            throw new IllegalArgumentException("Invalid palette index: " + colorIndex);
+        }
+        if (paletteButtonsCreated) {
+            changeColor(paletteButtons[colorIndex]); // highlights the button
+        } else if (currentColorNum != colorIndex) {
+            currentColorNum = colorIndex;
+            record(SessionRecording.COLOR, colorIndex, 0);
+            stats.paletteChanged();
+        }
+    }
+
+    /**
+     * Gets the last-selected color as a packed ARGB value.
+     * @return The drawing color, in ARGB format.
+     */
+    protected int getCurrentArgb() {
+        return currentColorNum == StrokeStore.CUSTOM_COLOR ? currentArgb : ColorUtil.standardPaletteArgb[currentColorNum];
+    }
+
     /**
      * Gets the last-selected color.
      * @return A {@code Color} object, or null.
      */
     protected Color getCurrentColor() {
-        if (currentColorNum > -1 && currentColorNum < paletteButtons.length)
+        if (currentColorNum == StrokeStore.CUSTOM_COLOR)
+            return ColorUtil.toColor(currentArgb);
+        else if (currentColorNum > -1 && currentColorNum < paletteButtons.length)
             return palette[currentColorNum];
         else
             return null;
@@ -361,18 +2084,18 @@ public class AdvancedPaint extends MouseDraggedBase {
 
     /**
      * Gets the width of the canvas as an integer.
-     * @return An integer that represents the width of the canvas.
+     * @return An integer that represents the width of the canvas, or of the tiled document.
      */
     protected int getCanvasWidth() {
-        return (int)canvas.getWidth();
+        return layers != null ? layers.getWidth() : (int)canvas.getWidth();
     }
 
     /**
      * Gets the height of the canvas as an integer.
-     * @return An integer that represents the height of the canvas.
+     * @return An integer that represents the height of the canvas, or of the tiled document.
      */
     protected int getCanvasHeight() {
-        return (int)canvas.getHeight();
+        return layers != null ? layers.getHeight() : (int)canvas.getHeight();
     }
 
     /**
@@ -429,6 +2152,101 @@ public class AdvancedPaint extends MouseDraggedBase {
         GridPane grid = new GridPane();
         
         AdvancedPaint paint = new AdvancedPaint(canvas, grid);
+        addPaletteButtons(paint, canvas, position);
+        return paint;
+    }
+
+    /**
+     * Creates and initializes an instance of the {@code AdvancedPaint} class whose
+     * drawing can be zoomed and scrolled, with the color palette at the specified position.
+     * <p>
+     * The internal {@code Canvas} object holds the document at full resolution
+     * and is not added to the grid; a {@code ViewportPane}, which grows with
+     * the grid, shows it instead. The caller may retrieve the view by invoking
+     * the {@code getViewportPane()} method.
+     * </p>
+     * @param documentWidth The width of the document, in pixels.
+     * @param documentHeight The height of the document, in pixels.
+     * @param position The position of the color palette relative to the view.
+     * @return An initialized instance of the {@code AdvancedPaint} class.
+     */
+    public static AdvancedPaint createWithViewport(int documentWidth, int documentHeight, PalettePos position) {
+        Canvas canvas = new Canvas(documentWidth, documentHeight);
+        GridPane grid = new GridPane();
+        
+        AdvancedPaint paint = new AdvancedPaint(canvas, grid);
+        ViewportPane view = new ViewportPane(paint);
+        GridPane.setHgrow(view, Priority.ALWAYS);
+        GridPane.setVgrow(view, Priority.ALWAYS);
+        addPaletteButtons(paint, view, position);
+        return paint;
+    }
+
+    /**
+     * Creates a new instance of the {@code AdvancedPaint} class whose drawing
+     * is rendered off the JavaFX application thread and shown at its actual
+     * size in a scroll pane (see {@code PixelBufferView}). Must be called on
+     * the JavaFX application thread.
+     * @param documentWidth The width of the drawing.
+     * @param documentHeight The height of the drawing.
+     * @param position The position of the palette relative to the view.
+     * @return An initialized instance of the {@code AdvancedPaint} class, whose
+     * view may be retrieved with the {@code getPixelBufferView()} method.
+     */
+    public static AdvancedPaint createWithPixelBuffer(int documentWidth, int documentHeight, PalettePos position) {
+        Canvas canvas = new Canvas(documentWidth, documentHeight);
+        GridPane grid = new GridPane();
+        
+        AdvancedPaint paint = new AdvancedPaint(canvas, grid);
+        ScrollPane scroll = new ScrollPane(new PixelBufferView(paint));
+        GridPane.setHgrow(scroll, Priority.ALWAYS);
+        GridPane.setVgrow(scroll, Priority.ALWAYS);
+        addPaletteButtons(paint, scroll, position);
+        return paint;
+    }
+
+    /**
+     * Creates a new instance of the {@code AdvancedPaint} class whose document
+     * is a {@code LayerStack} of tiled layers, which can be far larger than a
+     * {@code Canvas}: their tiles are allocated as they are drawn on, so the
+     * memory it uses is proportional to the area painted. The internal
+     * {@code Canvas} object is only as large as the view, a {@code TiledView}
+     * that shows the part of the composite it scrolls to.
+     * <p>
+     * The strokes are drawn on the active layer (see {@code addLayer()} and
+     * {@code setActiveLayer()}) and keep it; the strokes of the other clients
+     * and of the drawings opened are drawn on the bottom layer. A fill sees
+     * the composite, paints the bottom layer and doesn't spread farther than
+     * {@code FILL_TILES} tiles from the tile of its seed. The undo history
+     * replays the commands from the last clear instead of restoring snapshots
+     * of the document.
+     * </p>
+     * @param documentWidth The width of the document, in pixels.
+     * @param documentHeight The height of the document, in pixels.
+     * @param viewWidth The preferred width of the view.
+     * @param viewHeight The preferred height of the view.
+     * @param position The position of the palette relative to the view.
+     * @return An initialized instance of the {@code AdvancedPaint} class, whose
+     * view may be retrieved with the {@code getTiledView()} method.
+     */
+    public static AdvancedPaint createWithTiles(int documentWidth, int documentHeight,
+            int viewWidth, int viewHeight, PalettePos position) {
+        Canvas canvas = new Canvas(Math.min(viewWidth, documentWidth), Math.min(viewHeight, documentHeight));
+        GridPane grid = new GridPane();
+        
+        AdvancedPaint paint = new AdvancedPaint(canvas, grid, new LayerStack(documentWidth, documentHeight));
+        TiledView view = new TiledView(paint);
+        GridPane.setHgrow(view, Priority.ALWAYS);
+        GridPane.setVgrow(view, Priority.ALWAYS);
+        addPaletteButtons(paint, view, position);
+        return paint;
+    }
+
+    /**
+     * Adds the color palette buttons and the node that shows the drawing to the grid of an instance.
+     */
+    private static void addPaletteButtons(AdvancedPaint paint, Node canvas, PalettePos position) {
+        GridPane grid = paint.getGridPane();
         Button[] buttons = paint.getPaletteButtons();
         int rowCount = buttons.length;
         
@@ -464,7 +2282,226 @@ public class AdvancedPaint extends MouseDraggedBase {
         clearButton.setPrefHeight(34);
         
         grid.add(clearButton, buttonColIndex, rowCount - 1, colspan, rowspan);
+    }
+
+    /**
+     * Creates and initializes an instance of the {@code AdvancedPaint} class whose
+     * color palette is a {@code SwatchPalette}: a single canvas that can hold
+     * thousands of colors, with a "Clear" button under it.
+     * <p>
+     * The caller may retrieve the grid pane by invoking the {@code getGridPane()}
+     * method, and the palette with the {@code getSwatchPalette()} method.
+     * </p>
+     * @param canvasWidth The width of the internal {@code Canvas} object to create.
+     * @param canvasHeight The height of the internal {@code Canvas} object to create.
+     * @param position The position of the color palette relative to the canvas.
+     * @param colors The colors of the palette, as packed ARGB values.
+     * @param columns The number of swatches per row of the palette.
+     * @return An initialized instance of the {@code AdvancedPaint} class.
+     */
+    public static AdvancedPaint createWithSwatchPalette(int canvasWidth, int canvasHeight, PalettePos position,
+            int[] colors, int columns) {
+        final int clearHeight = 34;
+        
+        Canvas canvas = new Canvas(canvasWidth, canvasHeight);
+        GridPane grid = new GridPane();
+        AdvancedPaint paint = new AdvancedPaint(canvas, grid);
+        
+        SwatchPalette swatches = new SwatchPalette(colors, columns, SwatchPalette.DEFAULT_SWATCH_SIZE);
+        swatches.setPrefHeight(canvasHeight - clearHeight);
+        swatches.setOnSelect(index -> paint.setCurrentArgb(swatches.getColor(index)));
+        swatches.setSelectedIndex(0);
+        paint.swatchPalette = swatches;
+        
+        // black text on white background, like the "CLEAR" palette button
+        Button clearButton = new Button("CLEAR");
+        clearButton.setStyle(String.format(BUTTON_STYLE_FORMAT, "#000000", "white"));
+        clearButton.setMaxWidth(Double.MAX_VALUE);
+        clearButton.setPrefHeight(clearHeight);
+        clearButton.setOnMouseClicked(e -> {
+            paint.clear();
+            swatches.setSelectedIndex(0);
+            paint.setCurrentArgb(swatches.getColor(0)); // clear() resets the color
+        });
+        
+        boolean isright = position == PalettePos.Right;
+        int canvasColIndex = isright ? 0 : 1;
+        int paletteColIndex = isright ? 1 : 0;
+        
+        grid.add(canvas, canvasColIndex, 0, 1, 2);
+        grid.add(swatches, paletteColIndex, 0);
+        grid.add(clearButton, paletteColIndex, 1);
         
         return paint;
     }
+
+    /**
+     * Draws the strokes of the other clients, segment by segment, as they arrive.
+     */
+    private final class RemoteStrokes implements CollabListener {
+        @Override
+        public void strokeBegin(int client, int stroke, int argb, float lineWidth, float x, float y) {
+            if (exporting) {
+                deferredRemote.add(() -> strokeBegin(client, stroke, argb, lineWidth, x, y));
+                return;
+            }
+            StrokeStore remote = new StrokeStore();
+            remote.beginCustomStroke(argb, lineWidth);
+            remote.addPoint(x, y);
+            remoteStrokes.put(key(client, stroke), remote);
+        }
+
+        @Override
+        public void strokePoint(int client, int stroke, float x, float y) {
+            if (exporting) {
+                deferredRemote.add(() -> strokePoint(client, stroke, x, y));
+                return;
+            }
+            StrokeStore remote = remoteStrokes.get(key(client, stroke));
+            if (remote == null) return; // begun before this client connected
+            
+            int last = remote.getPointCount() - 1;
+            double x0 = remote.getX(last), y0 = remote.getY(last);
+            remote.addPoint(x, y);
+            
+            // the pixels saved under the rubber band must include the segment
+            boolean band = bandVisible;
+            if (band) dropBand();
+
+            // keep the settings of the local stroke in progress
+            double width = remote.getLineWidth(0);
+            if (!drawOffCanvas(remote, 0, last, last + 2)) {
+                g.save();
+                g.setStroke(ColorUtil.toColor(remote.getArgb(0)));
+                g.setLineWidth(width);
+                g.strokeLine(x0, y0, x, y);
+                g.restore();
+            }
+            invalidate(Math.min(x0, x) - width, Math.min(y0, y) - width,
+                Math.max(x0, x) + width, Math.max(y0, y) + width);
+            if (band) showBand();
+        }
+
+        @Override
+        public void strokeEnd(int client, int stroke) {
+            if (exporting) {
+                deferredRemote.add(() -> strokeEnd(client, stroke));
+                return;
+            }
+            StrokeStore remote = remoteStrokes.remove(key(client, stroke));
+            if (remote == null) return;
+            remote.endStroke();
+            
+            // the local stroke in progress must stay the last stroke
+            if (strokes.isRecording()) {
+                remoteEnded.add(remote);
+            } else {
+                commitRemoteStroke(remote);
+            }
+        }
+
+        private long key(int client, int stroke) {
+            return (long)client << 32 | (stroke & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Lets the undo history rebuild the strokes and the canvas.
+     */
+    private class HistoryTarget implements UndoHistory.Target {
+        @Override
+        public void clear(boolean render) {
+            strokes.clear();
+            index.clear();
+            if (render) {
+                clearRaster();
+                fillLayer.clear();
+                invalidateAll();
+            }
+        }
+
+        @Override
+        public void truncate(int count) {
+            strokes.truncate(count);
+            index.truncate(count);
+        }
+
+        @Override
+        public void stroke(StrokeStore log, int stroke, boolean render) {
+            int s = strokes.appendStroke(log, stroke);
+            index.insertStroke(strokes, s);
+            if (render) {
+                drawStroke(strokes, s);
+                double pad = reach(strokes.getLineWidth(s));
+                invalidate(strokes.getMinX(s) - pad, strokes.getMinY(s) - pad,
+                    strokes.getMaxX(s) + pad, strokes.getMaxY(s) + pad);
+            }
+        }
+
+        @Override
+        public void erase(int[] ids, int from, int to, boolean render) {
+            eraseStrokes(ids, from, to, render);
+        }
+
+        @Override
+        public void fill(int x, int y, int argb, int tolerance) {
+            AdvancedPaint.this.fill(x, y, argb, tolerance);
+        }
+
+        /**
+         * Captures the pixels of the canvas, followed by those of the fill layer if there are fills.
+         */
+        @Override
+        public int[] capture() {
+            if (layers != null) return null; // the tiled document may be huge
+
+            int[] argb = capturePixels();
+            if (fillLayer.getAllocatedTileCount() == 0) return argb;
+
+            int width = getCanvasWidth(), height = getCanvasHeight();
+            argb = Arrays.copyOf(argb, 2 * width * height);
+            fillLayer.getPixels(0, 0, width, height, argb, width * height, width);
+            return argb;
+        }
+
+        @Override
+        public void restore(int[] argb) {
+            int width = getCanvasWidth(), height = getCanvasHeight();
+            writePixels(0, 0, width, height, argb, 0, width);
+            fillLayer.clear();
+            if (argb.length > width * height) {
+                fillLayer.setPixels(0, 0, width, height, argb, width * height, width);
+            }
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Applies the commands recovered from an {@code AutosaveJournal} and records them in the undo history.
+     */
+    private final class RecoveryTarget extends HistoryTarget {
+        @Override
+        public void clear(boolean render) {
+            super.clear(render);
+            history.recordClear();
+        }
+
+        @Override
+        public void stroke(StrokeStore log, int stroke, boolean render) {
+            super.stroke(log, stroke, render);
+            history.recordStroke(strokes, strokes.getStrokeCount() - 1);
+        }
+
+        @Override
+        public void erase(int[] ids, int from, int to, boolean render) {
+            super.erase(ids, from, to, render);
+            history.recordErase(Arrays.copyOfRange(ids, from, to), to - from);
+        }
+
+        @Override
+        public void fill(int x, int y, int argb, int tolerance) {
+            super.fill(x, y, argb, tolerance);
+            history.recordFill(x, y, argb, tolerance);
+        }
+    }
 }
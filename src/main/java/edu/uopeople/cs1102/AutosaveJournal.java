@@ -0,0 +1,702 @@
+package edu.uopeople.cs1102;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a drawing continuously, so that it can be recovered after a crash.
+ * <p>
+ * The commands of the {@code UndoHistory} of the drawing (strokes, clears,
+ * erases and fills) are appended to a journal file as they are applied. The
+ * JavaFX application thread only encodes them, when a stroke is finished;
+ * a background thread writes them and forces them to the disk. The thread
+ * waits {@code COMMIT_WINDOW} milliseconds after a command before writing,
+ * so that the commands of a burst are committed together, with a single
+ * {@code force()}.
+ * </p>
+ * <p>
+ * Once the journal is larger than the last snapshot (and than
+ * {@code MIN_COMPACTION} bytes), it is folded into a new snapshot: the
+ * commands since the last clear, which rebuild the drawing. The snapshot is
+ * written to a temporary file and renamed, then the journal starts again,
+ * empty. Undoing also takes a snapshot, since the journal can only grow. On
+ * recovery, the snapshot is replayed, then the journal, if it follows that
+ * snapshot; a record torn by a crash ends the replay.
+ * </p>
+ * <pre>
+ * file    := "APJL" u16:version u8:kind i32:width i32:height i64:generation record*
+ * record  := i32:length i32:crc32 payload
+ * payload := STROKE varint:color [i32:argb if color == 0] f32:lineWidth u8:variable varint:pointCount
+ *            (f32:x f32:y [f32:width if variable])*
+ *          | CLEAR | ERASE varint:count varint:stroke* | FILL i32:x i32:y i32:argb u8:tolerance
+ * </pre>
+ * <p>
+ * The files are {@code base + ".snapshot"} and {@code base + ".journal"};
+ * {@code base + ".lock"} keeps a second instance from using them.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class AutosaveJournal implements Closeable {
+    /** The first four bytes of a snapshot or journal file: "APJL". */
+    public static final int MAGIC = 0x41504A4C;
+
+    /** The version of the format written by this class. */
+    public static final int VERSION = 1;
+
+    /** The time, in milliseconds, during which the commands are grouped into one commit. */
+    public static final int COMMIT_WINDOW = 20;
+
+    /** The smallest journal, in bytes, that is folded into a snapshot. */
+    public static final int MIN_COMPACTION = 1 << 20;
+
+    // The kinds of files.
+    private static final byte SNAPSHOT = 0, JOURNAL = 1;
+
+    // The kinds of records.
+    private static final byte STROKE = 1, CLEAR = 2, ERASE = 3, FILL = 4;
+
+    private static final int HEADER = 4 + 2 + 1 + 4 + 4 + 8;
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+    private final Path snapshotPath, journalPath, tempPath;
+    private final int width, height;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private final Thread thread;
+
+    // Used by the application thread only.
+    private final RecordEncoder encoder = new RecordEncoder();
+    private int journaled;
+    private long tailBytes, snapshotBytes;
+
+    // Guards everything below; the writer thread waits on it for work.
+    private final Object lock = new Object();
+    private final ArrayDeque<Batch> queue = new ArrayDeque<>();
+    private long firstQueued;
+    private boolean busy, hurry, closed;
+    private IOException lastError;
+    private long recordsWritten, bytesWritten, commits, snapshots;
+
+    // Used by the writer thread only.
+    private FileChannel journal;
+    private long generation;
+
+    /**
+     * Encoded records: either a snapshot or records to append to the journal.
+     */
+    private static final class Batch {
+        final boolean snapshot;
+        final ByteBuffer data;
+        final int records;
+
+        Batch(boolean snapshot, ByteBuffer data, int records) {
+            this.snapshot = snapshot;
+            this.data = data;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Initializes a new instance of the {@code AutosaveJournal} class and
+     * starts its writer thread. Nothing is written before the first call to
+     * {@code snapshot()} or {@code append()}; the existing files are kept
+     * until then, so they can still be recovered.
+     * @param base The path of the files, without their extension.
+     * @param width The width of the drawing.
+     * @param height The height of the drawing.
+     * @throws IOException The lock file cannot be created, or another instance uses the files.
+     */
+    public AutosaveJournal(Path base, int width, int height) throws IOException {
+        this.snapshotPath = snapshotPath(base);
+        this.journalPath = journalPath(base);
+        this.tempPath = base.resolveSibling(base.getFileName() + ".tmp");
+        this.width = width;
+        this.height = height;
+
+        lockChannel = FileChannel.open(base.resolveSibling(base.getFileName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("The autosave files are used by another instance: " + base);
+        }
+        this.fileLock = fileLock;
+        generation = readGeneration(snapshotPath, SNAPSHOT);
+
+        thread = new Thread(this::run, "AutosaveJournal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the path of the snapshot file.
+     * @param base The path of the files, without their extension.
+     * @return The path of the snapshot.
+     */
+    public static Path snapshotPath(Path base) {
+        return base.resolveSibling(base.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Gets the path of the journal file.
+     * @param base The path of the files, without their extension.
+     * @return The path of the journal.
+     */
+    public static Path journalPath(Path base) {
+        return base.resolveSibling(base.getFileName() + ".journal");
+    }
+
+    /**
+     * Indicates whether there is a drawing to recover.
+     * @param base The path of the files, without their extension.
+     * @return true if a snapshot has been saved; otherwise, false.
+     */
+    public static boolean exists(Path base) {
+        return Files.isRegularFile(snapshotPath(base));
+    }
+
+    /**
+     * Rebuilds a drawing: applies the commands of the snapshot, then those of
+     * the journal that follows it, to a target that renders them. The target
+     * should start from an empty drawing.
+     * @param base The path of the files, without their extension.
+     * @param target The drawing that receives the commands.
+     * @return The number of commands applied.
+     * @throws IOException An I/O error occurs, or the snapshot is not a snapshot.
+     */
+    public static int recover(Path base, UndoHistory.Recorder target) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath(base)));
+        long generation = readHeader(snapshot, SNAPSHOT);
+        int count = replay(snapshot, target);
+
+        Path journalPath = journalPath(base);
+        if (Files.isRegularFile(journalPath)) {
+            ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+            try {
+                // a journal of an older snapshot has been folded into this one
+                if (readHeader(journal, JOURNAL) == generation) {
+                    count += replay(journal, target);
+                }
+            } catch (IOException e) {
+                // torn while it was started again: it has no record
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends the commands applied since the last call to the journal, or
+     * takes a snapshot if commands have been undone or if the journal is
+     * large enough to be folded. Called on the application thread after each
+     * change to the history.
+     * @param history The history of the drawing.
+     */
+    public void append(UndoHistory history) {
+        int cursor = history.getCursor();
+        if (cursor < journaled) {
+            snapshot(history); // the journal cannot remove commands
+            return;
+        }
+        if (cursor == journaled) return;
+
+        history.replay(journaled, cursor, encoder);
+        journaled = cursor;
+        tailBytes += encoder.size();
+        if (tailBytes > Math.max(MIN_COMPACTION, snapshotBytes)) {
+            snapshot(history);
+            return;
+        }
+        enqueue(false);
+    }
+
+    /**
+     * Replaces the snapshot with the current drawing, and empties the journal.
+     * Called on the application thread when the drawing is replaced, for
+     * instance by {@code undo()} or {@code load()}.
+     * @param history The history of the drawing.
+     */
+    public void snapshot(UndoHistory history) {
+        encoder.reset();
+        history.replay(history.getDrawingStart(), history.getCursor(), encoder);
+        journaled = history.getCursor();
+        snapshotBytes = encoder.size();
+        tailBytes = 0;
+        enqueue(true);
+    }
+
+    private void enqueue(boolean snapshot) {
+        Batch batch = new Batch(snapshot, encoder.take(), encoder.getRecords());
+        encoder.reset();
+        synchronized (lock) {
+            if (closed) return;
+            if (snapshot) {
+                queue.clear(); // folded into the snapshot
+            }
+            if (queue.isEmpty() && !busy) {
+                firstQueued = System.nanoTime();
+            }
+            queue.add(batch);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the commands queued so far are on the disk.
+     * @throws IllegalStateException The thread is interrupted.
+     */
+    public void flush() throws IllegalStateException {
+        synchronized (lock) {
+            try {
+                while (!queue.isEmpty() || busy) {
+                    hurry = true; // don't wait for the end of the window
+                    lock.notifyAll();
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the last error of the writer thread.
+     * @return The {@code IOException} thrown by the last failed commit, or null.
+     */
+    public IOException getLastError() {
+        synchronized (lock) {
+            return lastError;
+        }
+    }
+
+    /**
+     * Gets the number of records written, snapshots included.
+     * @return The number of records.
+     */
+    public long getRecordsWritten() {
+        synchronized (lock) {
+            return recordsWritten;
+        }
+    }
+
+    /**
+     * Gets the number of bytes written, snapshots included.
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        synchronized (lock) {
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * Gets the number of times the files have been forced to the disk.
+     * @return The number of commits.
+     */
+    public long getCommitCount() {
+        synchronized (lock) {
+            return commits;
+        }
+    }
+
+    /**
+     * Gets the number of snapshots written.
+     * @return The number of snapshots.
+     */
+    public long getSnapshotCount() {
+        synchronized (lock) {
+            return snapshots;
+        }
+    }
+
+    /**
+     * Writes the commands queued, stops the writer thread and releases the files.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            fileLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            // released by the system anyway
+        }
+    }
+
+    /**
+     * The loop of the writer thread.
+     */
+    private void run() {
+        List<Batch> batches = new ArrayList<>();
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (!closed && queue.isEmpty()) {
+                        lock.wait();
+                    }
+                    // group the commands of the window into one commit
+                    long wait;
+                    while (!closed && !hurry && (wait = firstQueued + COMMIT_WINDOW * 1_000_000L - System.nanoTime()) > 0) {
+                        lock.wait(wait / 1_000_000 + 1);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (queue.isEmpty()) break; // closed
+                batches.addAll(queue);
+                queue.clear();
+                busy = true;
+                hurry = false;
+            }
+
+            long bytes = 0;
+            int records = 0;
+            IOException error = null;
+            try {
+                int from = 0;
+                for (int i = batches.size() - 1; i >= 0; i--) {
+                    if (batches.get(i).snapshot) {
+                        Batch snapshot = batches.get(i);
+                        writeSnapshot(snapshot.data);
+                        bytes += snapshot.data.limit();
+                        records += snapshot.records;
+                        from = i + 1;
+                        break;
+                    }
+                }
+                if (from < batches.size()) {
+                    ByteBuffer[] data = new ByteBuffer[batches.size() - from];
+                    for (int i = from; i < batches.size(); i++) {
+                        data[i - from] = batches.get(i).data;
+                        bytes += batches.get(i).data.limit();
+                        records += batches.get(i).records;
+                    }
+                    appendJournal(data);
+                }
+            } catch (IOException e) {
+                error = e; // reported by getLastError()
+                closeJournal(); // started again by the next snapshot
+            }
+
+            synchronized (lock) {
+                if (error != null) {
+                    lastError = error;
+                } else {
+                    recordsWritten += records;
+                    bytesWritten += bytes;
+                    commits++;
+                    if (!queue.isEmpty()) {
+                        firstQueued = System.nanoTime();
+                    }
+                }
+                for (Batch batch : batches) {
+                    if (batch.snapshot && error == null) snapshots++;
+                }
+                busy = false;
+                lock.notifyAll();
+            }
+            batches.clear();
+        }
+        closeJournal();
+    }
+
+    /**
+     * Writes a snapshot and starts an empty journal that follows it.
+     */
+    private void writeSnapshot(ByteBuffer records) throws IOException {
+        closeJournal();
+        long next = generation + 1;
+        writeFile(SNAPSHOT, next, records);
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generation = next;
+
+        writeFile(JOURNAL, generation, null);
+        Files.move(tempPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void appendJournal(ByteBuffer[] data) throws IOException {
+        if (journal == null) {
+            throw new IOException("The journal has no snapshot.");
+        }
+        long remaining = 0;
+        for (ByteBuffer buffer : data) remaining += buffer.remaining();
+        while (remaining > 0) {
+            remaining -= journal.write(data);
+        }
+        journal.force(false);
+    }
+
+    /**
+     * Writes the temporary file, forced to the disk.
+     */
+    private void writeFile(byte kind, long generation, ByteBuffer records) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putShort((short)VERSION).put(kind).putInt(width).putInt(height).putLong(generation).flip();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] data = records == null ? new ByteBuffer[] { header } : new ByteBuffer[] { header, records };
+            long remaining = HEADER + (records == null ? 0 : records.remaining());
+            while (remaining > 0) {
+                remaining -= channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // nothing left to write
+        }
+        journal = null;
+    }
+
+    /**
+     * Reads the generation of a file, or 0 if it cannot be read.
+     */
+    private static long readGeneration(Path path, byte kind) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            return readHeader(header, kind);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Checks the header of a file and returns its generation.
+     */
+    private static long readHeader(ByteBuffer data, byte kind) throws IOException {
+        if (data.remaining() < HEADER || data.getInt() != MAGIC) {
+            throw new IOException("Not an AdvancedPaint autosave file.");
+        }
+        int version = data.getShort() & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Unsupported autosave version: " + version);
+        }
+        if (data.get() != kind) {
+            throw new IOException(kind == SNAPSHOT ? "Not a snapshot." : "Not a journal.");
+        }
+        data.getInt(); // width
+        data.getInt(); // height
+        return data.getLong();
+    }
+
+    /**
+     * Applies the records of a file to a target, up to the first torn or corrupted one.
+     */
+    private static int replay(ByteBuffer data, UndoHistory.Recorder target) {
+        StrokeStore store = new StrokeStore();
+        CRC32 crc = new CRC32();
+        int[] ids = new int[16];
+        int count = 0;
+
+        while (data.remaining() >= RECORD_HEADER) {
+            int length = data.getInt(), checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) break; // torn
+
+            ByteBuffer payload = data.slice();
+            payload.limit(length);
+            data.position(data.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int)crc.getValue() != checksum) break;
+
+            try {
+                byte kind = payload.get();
+                switch (kind) {
+                    case STROKE: {
+                        int color = CollabProtocol.getVarint(payload);
+                        int argb = color == 0 ? payload.getInt() : 0;
+                        float lineWidth = payload.getFloat();
+                        boolean variable = payload.get() != 0;
+                        int points = CollabProtocol.getVarint(payload);
+
+                        store.clear();
+                        if (color == 0) {
+                            store.beginCustomStroke(argb, lineWidth);
+                        } else {
+                            store.beginStroke(color - 1, lineWidth);
+                        }
+                        for (int i = 0; i < points; i++) {
+                            float x = payload.getFloat(), y = payload.getFloat();
+                            if (variable) {
+                                store.addPoint(x, y, payload.getFloat());
+                            } else {
+                                store.addPoint(x, y);
+                            }
+                        }
+                        store.endStroke();
+                        target.stroke(store, 0, true);
+                        break;
+                    }
+                    case CLEAR:
+                        target.clear(true);
+                        break;
+                    case ERASE: {
+                        int n = CollabProtocol.getVarint(payload);
+                        if (ids.length < n) ids = new int[n];
+                        for (int i = 0; i < n; i++) {
+                            ids[i] = CollabProtocol.getVarint(payload);
+                        }
+                        target.erase(ids, 0, n, true);
+                        break;
+                    }
+                    case FILL:
+                        target.fill(payload.getInt(), payload.getInt(), payload.getInt(), payload.get() & 0xFF);
+                        break;
+                    default:
+                        return count; // written by a newer version
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                break; // malformed despite its checksum
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Encodes the commands replayed by an {@code UndoHistory} as records.
+     */
+    private static final class RecordEncoder implements UndoHistory.Recorder {
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+        private final CRC32 crc = new CRC32();
+        private int records, recordStart;
+
+        int size() {
+            return buffer.position();
+        }
+
+        int getRecords() {
+            return records;
+        }
+
+        void reset() {
+            buffer.clear();
+            records = 0;
+        }
+
+        /**
+         * Copies the records encoded since the last reset into a new buffer.
+         */
+        ByteBuffer take() {
+            ByteBuffer data = ByteBuffer.allocate(buffer.position());
+            buffer.flip();
+            data.put(buffer).flip();
+            buffer.clear();
+            return data;
+        }
+
+        @Override
+        public void clear(boolean render) {
+            begin(CLEAR, 0);
+            end();
+        }
+
+        @Override
+        public void stroke(StrokeStore log, int stroke, boolean render) {
+            boolean variable = log.isVariableWidth(stroke);
+            int first = log.getStrokeStart(stroke), end = first + log.getStrokePointCount(stroke);
+            begin(STROKE, 5 + 4 + 4 + 1 + 5 + (end - first) * (variable ? 12 : 8));
+
+            int colorIndex = log.getColorIndex(stroke);
+            if (colorIndex == StrokeStore.CUSTOM_COLOR) {
+                CollabProtocol.putVarint(buffer, 0);
+                buffer.putInt(log.getArgb(stroke));
+            } else {
+                CollabProtocol.putVarint(buffer, colorIndex + 1);
+            }
+            buffer.putFloat(log.getLineWidth(stroke));
+            buffer.put((byte)(variable ? 1 : 0));
+            CollabProtocol.putVarint(buffer, end - first);
+            for (int i = first; i < end; i++) {
+                buffer.putFloat(log.getX(i)).putFloat(log.getY(i));
+                if (variable) buffer.putFloat(log.getWidth(i));
+            }
+            end();
+        }
+
+        @Override
+        public void erase(int[] strokes, int from, int to, boolean render) {
+            begin(ERASE, 5 + (to - from) * 5);
+            CollabProtocol.putVarint(buffer, to - from);
+            for (int i = from; i < to; i++) {
+                CollabProtocol.putVarint(buffer, strokes[i]);
+            }
+            end();
+        }
+
+        @Override
+        public void fill(int x, int y, int argb, int tolerance) {
+            begin(FILL, 3 * 4 + 1);
+            buffer.putInt(x).putInt(y).putInt(argb).put((byte)tolerance);
+            end();
+        }
+
+        /**
+         * Starts a record, with room for its payload after the kind.
+         */
+        private void begin(byte kind, int payload) {
+            int needed = RECORD_HEADER + 1 + payload;
+            if (buffer.remaining() < needed) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            recordStart = buffer.position();
+            buffer.position(recordStart + RECORD_HEADER);
+            buffer.put(kind);
+        }
+
+        /**
+         * Writes the length and the checksum of the record.
+         */
+        private void end() {
+            int payloadStart = recordStart + RECORD_HEADER, length = buffer.position() - payloadStart;
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(payloadStart).limit(payloadStart + length);
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(recordStart, length);
+            buffer.putInt(recordStart + Integer.BYTES, (int)crc.getValue());
+            records++;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Draws smooth strokes whose width follows the speed of the mouse, or the
+ * pressure of a pen when it is available.
+ * <p>
+ * The points of a stroke are the control points of a centripetal
+ * Catmull-Rom spline, which goes through all of them without the loops and
+ * cusps that the uniform parameterization makes when the points are unevenly
+ * spaced, as they are during a fast drag. The piece between two points only
+ * depends on the point before and the point after them, so it is final as
+ * soon as the next point arrives: each new point tessellates exactly one
+ * piece, whatever the length of the stroke. The ends of a stroke use phantom
+ * points, reflected from the last two points.
+ * </p>
+ * <p>
+ * The width of a point is computed when the point arrives, from the speed
+ * since the previous point, and smoothed with a time constant, so that it
+ * doesn't depend on the rate of the input device. It is stored with the point
+ * (see {@code StrokeStore.addPoint(float, float, float)}), so that redrawing a
+ * stroke gives the same shape.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class BrushEngine {
+    /** The largest number of steps of a tessellated piece. */
+    public static final int MAX_STEPS = 16;
+
+    // The length of a tessellation step, in pixels.
+    private static final double STEP = 2;
+
+    // The time constant of the width smoothing, in nanoseconds.
+    private static final double SMOOTHING_NANOS = 20e6;
+
+    private final double minWidth, maxWidth, speedScale;
+
+    // The previous point of the stroke in progress, its time and its width.
+    private double lastX, lastY, width;
+    private long lastTime;
+
+    // The samples of the last piece, as x, y, width, and its outline.
+    private final float[] samples = new float[3 * (MAX_STEPS + 1)];
+    private final double[] outlineX = new double[2 * (MAX_STEPS + 1)];
+    private final double[] outlineY = new double[2 * (MAX_STEPS + 1)];
+
+    /**
+     * Initializes a new instance of the {@code BrushEngine} class whose width
+     * goes from 6 pixels, when the mouse is still, down to 1.5 pixels.
+     */
+    public BrushEngine() {
+        this(1.5, 6, 1.5);
+    }
+
+    /**
+     * Initializes a new instance of the {@code BrushEngine} class.
+     * @param minWidth The width of the stroke when the mouse moves fast.
+     * @param maxWidth The width of the stroke when the mouse moves slowly.
+     * @param speedScale The speed, in pixels per millisecond, at which the
+     * width has lost about two thirds of the way from the largest width to the smallest.
+     * @throws IllegalArgumentException A width or the speed scale is not positive,
+     * or {@code minWidth} is greater than {@code maxWidth}.
+     */
+    public BrushEngine(double minWidth, double maxWidth, double speedScale) throws IllegalArgumentException {
+        if (!(minWidth > 0) || !(maxWidth >= minWidth)) {
+            throw new IllegalArgumentException("The widths must be positive, the smallest first.");
+        }
+        if (!(speedScale > 0)) {
+            throw new IllegalArgumentException("The speed scale must be positive.");
+        }
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        this.speedScale = speedScale;
+    }
+
+    /**
+     * Gets the width of the stroke when the mouse moves fast.
+     * @return The smallest width, in pixels.
+     */
+    public double getMinWidth() {
+        return minWidth;
+    }
+
+    /**
+     * Gets the width of the stroke when the mouse moves slowly.
+     * @return The largest width, in pixels.
+     */
+    public double getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Starts a stroke.
+     * @param x The x-coordinate of the first point.
+     * @param y The y-coordinate of the first point.
+     * @param nanos The time of the first point, in nanoseconds.
+     * @param pressure The pressure of the pen, between 0 and 1, or {@code Double.NaN}.
+     * @return The width of the first point.
+     */
+    public float begin(double x, double y, long nanos, double pressure) {
+        lastX = x;
+        lastY = y;
+        lastTime = nanos;
+        width = Double.isNaN(pressure) ? maxWidth : pressureWidth(pressure);
+        return (float)width;
+    }
+
+    /**
+     * Computes the width of the next point of the stroke.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param nanos The time of the point, in nanoseconds.
+     * @param pressure The pressure of the pen, between 0 and 1, or {@code Double.NaN}.
+     * @return The width of the point.
+     */
+    public float next(double x, double y, long nanos, double pressure) {
+        long dt = nanos - lastTime;
+        double target;
+        if (!Double.isNaN(pressure)) {
+            target = pressureWidth(pressure);
+        } else if (dt > 0) {
+            double speed = Math.hypot(x - lastX, y - lastY) / (dt / 1e6); // pixels per millisecond
+            target = minWidth + (maxWidth - minWidth) * Math.exp(-speed / speedScale);
+        } else {
+            target = width; // no time has elapsed, e.g. without timestamps
+        }
+        if (dt > 0) {
+            width += (target - width) * (1 - Math.exp(-dt / SMOOTHING_NANOS));
+        }
+        lastX = x;
+        lastY = y;
+        lastTime = nanos;
+        return (float)width;
+    }
+
+    private double pressureWidth(double pressure) {
+        return minWidth + (maxWidth - minWidth) * Math.max(0, Math.min(1, pressure));
+    }
+
+    /**
+     * Computes the outline of the piece of a stroke between two consecutive
+     * points. The outline is available through {@code getOutlineX()} and
+     * {@code getOutlineY()} until the next call.
+     * @param store The store that contains the stroke, whose points have widths.
+     * @param first The index of the first point of the stroke.
+     * @param end The index that follows the last point of the stroke, so far.
+     * @param point The index of the point where the piece starts; the piece
+     * ends at {@code point + 1}, which must be less than {@code end}.
+     * @return The number of vertices of the outline.
+     */
+    public int outline(StrokeStore store, int first, int end, int point) {
+        int n = samplePiece(store, first, end, point, samples);
+
+        for (int j = 0; j < n; j++) {
+            // the direction of the curve, from the neighboring samples
+            int a = Math.max(0, j - 1) * 3, b = Math.min(n - 1, j + 1) * 3;
+            double dx = samples[b] - samples[a], dy = samples[b + 1] - samples[a + 1];
+            double length = Math.hypot(dx, dy);
+            double half = samples[j * 3 + 2] / 2;
+            double nx = length == 0 ? 0 : -dy / length * half, ny = length == 0 ? 0 : dx / length * half;
+
+            double x = samples[j * 3], y = samples[j * 3 + 1];
+            outlineX[j] = x + nx;
+            outlineY[j] = y + ny;
+            outlineX[2 * n - 1 - j] = x - nx;
+            outlineY[2 * n - 1 - j] = y - ny;
+        }
+        return 2 * n;
+    }
+
+    /**
+     * Gets the x-coordinates of the vertices of the last outline.
+     * @return An array whose first {@code outline()} values are the x-coordinates.
+     */
+    public double[] getOutlineX() {
+        return outlineX;
+    }
+
+    /**
+     * Gets the y-coordinates of the vertices of the last outline.
+     * @return An array whose first {@code outline()} values are the y-coordinates.
+     */
+    public double[] getOutlineY() {
+        return outlineY;
+    }
+
+    /**
+     * Samples the piece of a stroke between two consecutive points.
+     * @param store The store that contains the stroke, whose points have widths.
+     * @param first The index of the first point of the stroke.
+     * @param end The index that follows the last point of the stroke, so far.
+     * @param point The index of the point where the piece starts.
+     * @param out The samples, as x, y, width; room for {@code 3 * (MAX_STEPS + 1)} values.
+     * @return The number of samples, the first at {@code point} and the last at {@code point + 1}.
+     */
+    public static int samplePiece(StrokeStore store, int first, int end, int point, float[] out) {
+        double x1 = store.getX(point), y1 = store.getY(point);
+        double x2 = store.getX(point + 1), y2 = store.getY(point + 1);
+        float w1 = store.getWidth(point), w2 = store.getWidth(point + 1);
+
+        // the neighbors, or phantom points at the ends of the stroke
+        double x0, y0, x3, y3;
+        if (point > first) {
+            x0 = store.getX(point - 1);
+            y0 = store.getY(point - 1);
+        } else {
+            x0 = 2 * x1 - x2;
+            y0 = 2 * y1 - y2;
+        }
+        if (point + 2 < end) {
+            x3 = store.getX(point + 2);
+            y3 = store.getY(point + 2);
+        } else {
+            x3 = 2 * x2 - x1;
+            y3 = 2 * y2 - y1;
+        }
+
+        // centripetal parameterization: the knot intervals are the square roots of the distances
+        double d2 = Math.sqrt(Math.hypot(x2 - x1, y2 - y1));
+        if (d2 < 1e-3) {
+            put(out, 0, x1, y1, w1);
+            put(out, 1, x2, y2, w2);
+            return 2;
+        }
+        double d1 = Math.sqrt(Math.hypot(x1 - x0, y1 - y0));
+        double d3 = Math.sqrt(Math.hypot(x3 - x2, y3 - y2));
+        if (d1 < 1e-3) d1 = d2;
+        if (d3 < 1e-3) d3 = d2;
+
+        // the Bezier control points of the piece
+        double a = 2 * d1 * d1 + 3 * d1 * d2 + d2 * d2, na = 3 * d1 * (d1 + d2);
+        double bx1 = (d1 * d1 * x2 - d2 * d2 * x0 + a * x1) / na;
+        double by1 = (d1 * d1 * y2 - d2 * d2 * y0 + a * y1) / na;
+        double b = 2 * d3 * d3 + 3 * d3 * d2 + d2 * d2, nb = 3 * d3 * (d3 + d2);
+        double bx2 = (d3 * d3 * x1 - d2 * d2 * x3 + b * x2) / nb;
+        double by2 = (d3 * d3 * y1 - d2 * d2 * y3 + b * y2) / nb;
+
+        // the length of the control polygon bounds the length of the curve
+        double length = Math.hypot(bx1 - x1, by1 - y1) + Math.hypot(bx2 - bx1, by2 - by1) + Math.hypot(x2 - bx2, y2 - by2);
+        int steps = Math.max(1, Math.min(MAX_STEPS, (int)Math.ceil(length / STEP)));
+
+        for (int j = 0; j <= steps; j++) {
+            double t = (double)j / steps, u = 1 - t;
+            double c0 = u * u * u, c1 = 3 * u * u * t, c2 = 3 * u * t * t, c3 = t * t * t;
+            put(out, j, c0 * x1 + c1 * bx1 + c2 * bx2 + c3 * x2, c0 * y1 + c1 * by1 + c2 * by2 + c3 * y2,
+                w1 + (w2 - w1) * t);
+        }
+        return steps + 1;
+    }
+
+    private static void put(float[] out, int sample, double x, double y, double width) {
+        out[sample * 3] = (float)x;
+        out[sample * 3 + 1] = (float)y;
+        out[sample * 3 + 2] = (float)width;
+    }
+}
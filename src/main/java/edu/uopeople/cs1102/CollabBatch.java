@@ -0,0 +1,145 @@
+package edu.uopeople.cs1102;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Collects the stroke messages of one network tick and encodes them as a
+ * frame (see {@code CollabProtocol}).
+ * <p>
+ * The points added to a stroke during the tick are sent as a single
+ * {@code POINTS} message, each point as its difference from the previous one.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class CollabBatch {
+    // Room for the length and the timestamp of the frame.
+    private static final int HEADER = Integer.BYTES + Long.BYTES;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private int messages;
+
+    // The points of the current stroke not written yet, quantized, as x0, y0, x1, y1, ...
+    private int[] points = new int[128];
+    private int pointCount;
+    private int pointStroke;
+
+    /**
+     * Initializes a new instance of the {@code CollabBatch} class.
+     */
+    public CollabBatch() {
+        buffer.position(HEADER);
+    }
+
+    /**
+     * Starts a stroke.
+     * @param stroke The id of the stroke, unique for this client.
+     * @param argb The color of the stroke, in ARGB format.
+     * @param lineWidth The line width of the stroke.
+     * @param x The x-coordinate of the first point.
+     * @param y The y-coordinate of the first point.
+     */
+    public void begin(int stroke, int argb, double lineWidth, double x, double y) {
+        writePoints();
+        ensure(1 + 5 + 4 + 5 + 10);
+        buffer.put(CollabProtocol.BEGIN);
+        CollabProtocol.putVarint(buffer, stroke);
+        buffer.putInt(argb);
+        CollabProtocol.putVarint(buffer, CollabProtocol.quantize(lineWidth));
+        CollabProtocol.putVarint(buffer, CollabProtocol.encodeZigzag(CollabProtocol.quantize(x)));
+        CollabProtocol.putVarint(buffer, CollabProtocol.encodeZigzag(CollabProtocol.quantize(y)));
+        messages++;
+        pointStroke = stroke;
+    }
+
+    /**
+     * Adds a point to a stroke.
+     * @param stroke The id of the stroke.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     */
+    public void point(int stroke, double x, double y) {
+        if (stroke != pointStroke) {
+            writePoints();
+            pointStroke = stroke;
+        }
+        if (pointCount * 2 + 2 > points.length) {
+            int[] grown = new int[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, pointCount * 2);
+            points = grown;
+        }
+        points[pointCount * 2] = CollabProtocol.quantize(x);
+        points[pointCount * 2 + 1] = CollabProtocol.quantize(y);
+        pointCount++;
+    }
+
+    /**
+     * Ends a stroke.
+     * @param stroke The id of the stroke.
+     */
+    public void end(int stroke) {
+        writePoints();
+        ensure(1 + 5);
+        buffer.put(CollabProtocol.END);
+        CollabProtocol.putVarint(buffer, stroke);
+        messages++;
+    }
+
+    /**
+     * Indicates whether the batch has no message.
+     * @return true if nothing has been added since the last call to {@code finish()}; otherwise, false.
+     */
+    public boolean isEmpty() {
+        return messages == 0 && pointCount == 0;
+    }
+
+    /**
+     * Encodes the messages of the batch as a frame and empties the batch.
+     * @param timestamp The timestamp of the frame, for instance {@code System.nanoTime()}.
+     * @return A new buffer that contains the frame, length included, ready to be written.
+     */
+    public ByteBuffer finish(long timestamp) {
+        writePoints();
+        int end = buffer.position();
+        buffer.putInt(0, end - Integer.BYTES);
+        buffer.putLong(Integer.BYTES, timestamp);
+
+        ByteBuffer frame = ByteBuffer.allocate(end);
+        buffer.flip();
+        frame.put(buffer).flip();
+
+        buffer.clear().position(HEADER);
+        messages = 0;
+        return frame;
+    }
+
+    /**
+     * Writes the pending points of the current stroke as a {@code POINTS} message.
+     */
+    private void writePoints() {
+        if (pointCount == 0) return;
+        ensure(1 + 5 + 5 + pointCount * 10);
+        buffer.put(CollabProtocol.POINTS);
+        CollabProtocol.putVarint(buffer, pointStroke);
+        CollabProtocol.putVarint(buffer, pointCount);
+
+        int qx = 0, qy = 0;
+        for (int i = 0; i < pointCount; i++) {
+            int x = points[i * 2], y = points[i * 2 + 1];
+            CollabProtocol.putVarint(buffer, CollabProtocol.encodeZigzag(x - qx));
+            CollabProtocol.putVarint(buffer, CollabProtocol.encodeZigzag(y - qy));
+            qx = x;
+            qy = y;
+        }
+        pointCount = 0;
+        messages++;
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
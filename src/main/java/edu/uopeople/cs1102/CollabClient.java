@@ -0,0 +1,144 @@
+package edu.uopeople.cs1102;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Connects to a {@code CollabServer}, sends the local strokes and decodes
+ * the strokes of the other clients.
+ * <p>
+ * Frames are read on a daemon thread and decoded on the specified executor,
+ * for instance {@code Platform::runLater}, so the listener runs on the
+ * thread that owns the drawing. Frames are written on a second daemon
+ * thread, so {@code send()} never blocks the caller on the network.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class CollabClient implements Closeable {
+    private final SocketChannel channel;
+    private final CollabListener listener;
+    private final Executor callbacks;
+    private final ExecutorService writer;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    /**
+     * Initializes a new instance of the {@code CollabClient} class and connects to a server.
+     * @param host The host name of the server.
+     * @param port The port of the server.
+     * @param listener The object that receives the strokes of the other clients.
+     * @param callbacks The executor that runs the listener.
+     * @throws IOException The connection failed.
+     */
+    public CollabClient(String host, int port, CollabListener listener, Executor callbacks) throws IOException {
+        this.listener = listener;
+        this.callbacks = callbacks;
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "CollabClient writer");
+            t.setDaemon(true);
+            return t;
+        });
+        reader = new Thread(this::read, "CollabClient reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Indicates whether the client is connected.
+     * @return true if the connection is open; otherwise, false.
+     */
+    public boolean isConnected() {
+        return !closed && channel.isOpen();
+    }
+
+    /**
+     * Encodes the messages of a batch and sends them as one frame, then empties the batch.
+     * Does nothing if the batch is empty.
+     * @param batch The batch to send.
+     */
+    public void send(CollabBatch batch) {
+        if (batch.isEmpty() || !isConnected()) return;
+        ByteBuffer frame = batch.finish(System.nanoTime());
+        try {
+            writer.execute(() -> {
+                try {
+                    while (frame.hasRemaining()) {
+                        channel.write(frame);
+                    }
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile
+        }
+    }
+
+    /**
+     * Disconnects from the server.
+     * @throws IOException An I/O error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        writer.shutdown();
+        channel.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // nothing more to do
+        }
+    }
+
+    /**
+     * Reads the frames relayed by the server until the connection is closed.
+     */
+    private void read() {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length < Long.BYTES || length > CollabProtocol.MAX_FRAME + 5) {
+                    throw new IOException("Invalid collaboration frame length: " + length);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+                callbacks.execute(() -> {
+                    try {
+                        CollabProtocol.decode(frame, listener);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("CollabClient: " + e.getMessage());
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (!closed) System.err.println("CollabClient: " + e.getMessage());
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException("Disconnected from the collaboration server.");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Receives the stroke messages decoded by {@code CollabProtocol.decode()}.
+ * Stroke ids are chosen by each client, so a stroke is identified by the
+ * pair (client, stroke).
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public interface CollabListener {
+    /**
+     * Called when a remote client starts a stroke.
+     * @param client The id of the client, assigned by the server.
+     * @param stroke The id of the stroke, assigned by the client.
+     * @param argb The color of the stroke, in ARGB format.
+     * @param lineWidth The line width of the stroke.
+     * @param x The x-coordinate of the first point.
+     * @param y The y-coordinate of the first point.
+     */
+    void strokeBegin(int client, int stroke, int argb, float lineWidth, float x, float y);
+
+    /**
+     * Called for each point that a remote client adds to a stroke.
+     * @param client The id of the client.
+     * @param stroke The id of the stroke.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     */
+    void strokePoint(int client, int stroke, float x, float y);
+
+    /**
+     * Called when a remote client ends a stroke.
+     * @param client The id of the client.
+     * @param stroke The id of the stroke.
+     */
+    void strokeEnd(int client, int stroke);
+}
@@ -0,0 +1,153 @@
+package edu.uopeople.cs1102;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Defines the wire format of the collaboration mode and decodes it.
+ * <p>
+ * A client sends one frame per network tick: a 4-byte length, then an
+ * 8-byte timestamp and the messages of the tick. The server relays the
+ * frame to the other clients with the sender's id inserted, as a varint,
+ * before the timestamp. The messages are:
+ * </p>
+ * <ul>
+ * <li>{@code BEGIN}: stroke id, ARGB color (4 bytes), line width, first point;</li>
+ * <li>{@code POINTS}: stroke id, point count, first point, then the
+ * difference between each point and the previous one;</li>
+ * <li>{@code END}: stroke id.</li>
+ * </ul>
+ * <p>
+ * Ids and counts are unsigned varints; coordinates are quantized to 1/16
+ * of a pixel and written as zigzag varints, so a typical mouse move takes
+ * two bytes. Every frame can be decoded on its own: the points of a
+ * {@code POINTS} message start from an absolute position.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class CollabProtocol {
+    /** Starts a stroke. */
+    public static final byte BEGIN = 1;
+
+    /** Adds points to a stroke. */
+    public static final byte POINTS = 2;
+
+    /** Ends a stroke. */
+    public static final byte END = 3;
+
+    /** The largest frame accepted, length excluded. */
+    public static final int MAX_FRAME = 1 << 20;
+
+    /** The number of quantization steps per pixel. */
+    static final float SCALE = 16;
+
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private CollabProtocol() {
+    }
+
+    /**
+     * Decodes a frame received from the server.
+     * @param frame The frame, length excluded, from its position to its limit.
+     * @param listener The object that receives the messages of the frame.
+     * @return The timestamp of the frame, as set by its sender.
+     * @throws IllegalArgumentException The frame is malformed.
+     */
+    public static long decode(ByteBuffer frame, CollabListener listener) throws IllegalArgumentException {
+        try {
+            int client = getVarint(frame);
+            long timestamp = frame.getLong();
+
+            while (frame.hasRemaining()) {
+                byte type = frame.get();
+                int stroke = getVarint(frame);
+                switch (type) {
+                    case BEGIN: {
+                        int argb = frame.getInt();
+                        float width = getVarint(frame) / SCALE;
+                        float x = decodeZigzag(getVarint(frame)) / SCALE, y = decodeZigzag(getVarint(frame)) / SCALE;
+                        listener.strokeBegin(client, stroke, argb, width, x, y);
+                        break;
+                    }
+                    case POINTS: {
+                        int count = getVarint(frame);
+                        int qx = 0, qy = 0;
+                        for (int i = 0; i < count; i++) {
+                            qx += decodeZigzag(getVarint(frame));
+                            qy += decodeZigzag(getVarint(frame));
+                            listener.strokePoint(client, stroke, qx / SCALE, qy / SCALE);
+                        }
+                        break;
+                    }
+                    case END:
+                        listener.strokeEnd(client, stroke);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown collaboration message: " + type);
+                }
+            }
+            return timestamp;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated collaboration frame.", e);
+        }
+    }
+
+    /**
+     * Writes an unsigned varint: 7 bits per byte, the high bit set on all bytes but the last.
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte)(value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     */
+    static int getVarint(ByteBuffer buffer) throws IllegalArgumentException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    /**
+     * Gets the number of bytes of an unsigned varint.
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Maps a signed integer to an unsigned one, small magnitudes first: 0, -1, 1, -2, ...
+     */
+    static int encodeZigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Maps a value produced by {@code encodeZigzag()} back to the signed integer.
+     */
+    static int decodeZigzag(int encoded) {
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    /**
+     * Quantizes a coordinate.
+     */
+    static int quantize(double value) {
+        return (int)Math.round(value * SCALE);
+    }
+}
@@ -0,0 +1,393 @@
+package edu.uopeople.cs1102;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Relays the frames of the collaboration mode (see {@code CollabProtocol})
+ * between the connected clients.
+ * <p>
+ * The server runs a single thread around a {@code Selector}, so the number
+ * of clients is not limited by the number of threads. The frames read from a
+ * client are queued, with the client's id inserted, for all the other
+ * clients; the queues are written once per network tick with gathering
+ * writes, so a client receives the frames of all the senders of a tick in
+ * as few packets as possible. A client that doesn't read its frames fast
+ * enough to keep its queue under {@code MAX_PENDING} bytes is disconnected.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class CollabServer implements Closeable {
+    /** The default duration of a network tick, in milliseconds. */
+    public static final int TICK_MILLIS = 16;
+
+    /** The largest number of bytes queued for a client before it's disconnected. */
+    public static final int MAX_PENDING = 8 << 20;
+
+    // The largest number of buffers per gathering write.
+    private static final int GATHER = 64;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final ByteBuffer[] gather = new ByteBuffer[GATHER];
+    private Thread thread;
+    private int nextId;
+
+    private volatile long framesRelayed, bytesReceived, bytesSent, peersDropped;
+
+    /**
+     * Initializes a new instance of the {@code CollabServer} class that
+     * listens on the loopback address.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException The port cannot be bound.
+     */
+    public CollabServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Initializes a new instance of the {@code CollabServer} class.
+     * @param address The address to listen on.
+     * @throws IOException The address cannot be bound.
+     */
+    public CollabServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address, 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The local port of the server socket.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Starts the selector loop on a new thread.
+     * @throws IllegalStateException The server has already been started.
+     */
+    public synchronized void start() throws IllegalStateException {
+        if (thread != null) {
+            throw new IllegalStateException("The server has already been started.");
+        }
+        thread = new Thread(this::run, "CollabServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the server and disconnects all the clients.
+     * @throws IOException An I/O error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        selector.close(); // wakes up and ends the loop
+        server.close();
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of connected clients.
+     * @return The number of clients.
+     */
+    public synchronized int getClientCount() {
+        return peers.size();
+    }
+
+    /**
+     * Gets the number of frames received and relayed.
+     * @return The number of frames, each counted once whatever the number of receivers.
+     */
+    public long getFramesRelayed() {
+        return framesRelayed;
+    }
+
+    /**
+     * Gets the number of bytes received from the clients.
+     * @return The number of bytes.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Gets the number of bytes sent to the clients.
+     * @return The number of bytes.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Gets the number of clients disconnected for a malformed frame or a full queue.
+     * @return The number of clients.
+     */
+    public long getPeersDropped() {
+        return peersDropped;
+    }
+
+    /**
+     * The selector loop.
+     */
+    private void run() {
+        long nextTick = System.nanoTime();
+        try {
+            while (selector.isOpen()) {
+                long wait = (nextTick - System.nanoTime()) / 1_000_000;
+                if (wait > 0) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Peer peer = (Peer)key.attachment();
+                        if (key.isReadable()) read(peer);
+                        if (key.isValid() && key.isWritable()) write(peer);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    nextTick = now + TICK_MILLIS * 1_000_000L;
+                    flush();
+                }
+            }
+        } catch (ClosedSelectorException | CancelledKeyException e) {
+            // closed by close(), which cancels all the keys
+        } catch (IOException e) {
+            System.err.println("CollabServer: " + e);
+        } finally {
+            synchronized (this) {
+                for (Peer peer : peers) {
+                    closeQuietly(peer.channel);
+                }
+                peers.clear();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Peer peer = new Peer(channel, ++nextId);
+            peer.key = channel.register(selector, SelectionKey.OP_READ, peer);
+            synchronized (this) {
+                peers.add(peer);
+            }
+        }
+    }
+
+    /**
+     * Reads the available bytes of a client and queues its complete frames for the others.
+     */
+    private void read(Peer peer) {
+        int n;
+        try {
+            n = peer.channel.read(peer.in);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            drop(peer, false);
+            return;
+        }
+        bytesReceived += n;
+
+        ByteBuffer in = peer.in;
+        in.flip();
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt(in.position());
+            if (length < Long.BYTES || length > CollabProtocol.MAX_FRAME) {
+                drop(peer, true);
+                return;
+            }
+            if (in.remaining() < Integer.BYTES + length) break;
+            in.position(in.position() + Integer.BYTES);
+            relay(peer, in, length);
+        }
+        in.compact();
+
+        // make room for the frame being read
+        if (in.position() >= Integer.BYTES) {
+            int needed = Integer.BYTES + in.getInt(0);
+            if (needed > in.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(needed);
+                in.flip();
+                grown.put(in);
+                peer.in = grown;
+            }
+        }
+    }
+
+    /**
+     * Queues a frame for all the clients but its sender.
+     */
+    private void relay(Peer sender, ByteBuffer in, int length) {
+        int id = sender.id;
+        int relayedLength = CollabProtocol.varintSize(id) + length;
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + relayedLength);
+        frame.putInt(relayedLength);
+        CollabProtocol.putVarint(frame, id);
+        int limit = in.limit();
+        in.limit(in.position() + length);
+        frame.put(in);
+        in.limit(limit);
+        frame.flip();
+        framesRelayed++;
+
+        for (int i = 0; i < peers.size(); i++) {
+            Peer peer = peers.get(i);
+            if (peer == sender) continue;
+            if (peer.pending + frame.limit() > MAX_PENDING) {
+                drop(peer, true);
+                i--;
+                continue;
+            }
+            peer.out.add(frame.duplicate());
+            peer.pending += frame.limit();
+        }
+    }
+
+    /**
+     * Writes the queue of every client; called once per tick.
+     */
+    private void flush() {
+        for (int i = 0; i < peers.size(); i++) {
+            Peer peer = peers.get(i);
+            if (!peer.out.isEmpty() && (peer.key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                if (!write(peer)) i--;
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the queue of a client as its socket accepts.
+     * @return false if the client has been disconnected.
+     */
+    private boolean write(Peer peer) {
+        try {
+            while (!peer.out.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : peer.out) {
+                    gather[count++] = buffer;
+                    if (count == GATHER) break;
+                }
+                long n = peer.channel.write(gather, 0, count);
+                bytesSent += n;
+                peer.pending -= n;
+                while (!peer.out.isEmpty() && !peer.out.peek().hasRemaining()) {
+                    peer.out.poll();
+                }
+                if (n == 0 || gather[count - 1].hasRemaining()) break; // the socket is full
+            }
+        } catch (IOException e) {
+            drop(peer, false);
+            return false;
+        } finally {
+            Arrays.fill(gather, null);
+        }
+
+        // wait for the socket to drain before writing the rest
+        int ops = peer.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (peer.key.interestOps() != ops) peer.key.interestOps(ops);
+        return true;
+    }
+
+    private void drop(Peer peer, boolean misbehaved) {
+        if (misbehaved) peersDropped++;
+        peer.key.cancel();
+        closeQuietly(peer.channel);
+        synchronized (this) {
+            peers.remove(peer);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the client is gone anyway
+        }
+    }
+
+    /**
+     * Runs a standalone server.
+     * @param args The port to listen on, 7070 by default.
+     * @throws Exception The server cannot be started.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        try (CollabServer server = new CollabServer(port)) {
+            server.start();
+            System.out.println("Collaboration server listening on port " + server.getPort());
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.printf("%d clients, %d frames, %d bytes in, %d bytes out%n", server.getClientCount(),
+                    server.getFramesRelayed(), server.getBytesReceived(), server.getBytesSent());
+            }
+        }
+    }
+
+    /**
+     * The state of a connected client.
+     */
+    private static class Peer {
+        final SocketChannel channel;
+        final int id;
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        SelectionKey key;
+        long pending;
+
+        Peer(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.id = id;
+        }
+    }
+}
@@ -61,13 +61,27 @@ public final class ColorUtil {
         Color.WHITE
     };
 
+    /**
+     * The standard color palette, as packed 32-bit ARGB values.
+     */
+    public static final int[] standardPaletteArgb = new int[standardPalette.length];
+
+    static {
+        for (int i = 0; i < standardPalette.length; i++) {
+            standardPaletteArgb[i] = toArgb(standardPalette[i]);
+        }
+    }
+
+    // Lowercase hexadecimal digits, as produced by Integer.toHexString().
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * Converts the specified {@code Color} to its hexadecimal string representation.
      * @param c The {@code Color} object to convert.
      * @return A String representing the hexadecimal value of the specified color.
      */
     public static String toHexString(Color c) {
-        return "#" + toHexString(c.getRed()) + toHexString(c.getGreen()) + toHexString(c.getBlue());
+        return toHexString(toArgb(c));
     }
     
     /**
@@ -76,8 +90,11 @@ public final class ColorUtil {
      * @return The hexadecimal string representation of the specified value.
      */
     public static String toHexString(double value) {
-        String colorHex = Integer.toHexString((int)Math.round(255 * value));
-        return (colorHex.length() == 1 ? "0" + colorHex : colorHex);
+        int channel = toChannel(value);
+        if (channel < 0 || channel > 0xFF) {
+            return Integer.toHexString(channel); // out of range, keep the legacy output
+        }
+        return new String(new char[] { HEX_DIGITS[channel >>> 4], HEX_DIGITS[channel & 0xF] });
     }
     
     /**
@@ -87,16 +104,251 @@ public final class ColorUtil {
      * @throws IllegalArgumentException The length of {@code s} (without the # symbol) is different from 6.
      */
     public static Color hexToColor(String s) throws IllegalArgumentException {
-        // Expected format: s = "#00FF66"
-        if (s.startsWith("#")) {
-            s = s.substring(1); // remove the # symbol
+        return toColor(parseHex(s));
+    }
+
+    /**
+     * Packs the specified {@code Color} into a 32-bit ARGB value.
+     * @param c The {@code Color} object to convert.
+     * @return The color as 0xAARRGGBB.
+     */
+    public static int toArgb(Color c) {
+        return argb(toChannel(c.getOpacity()), toChannel(c.getRed()), toChannel(c.getGreen()), toChannel(c.getBlue()));
+    }
+
+    /**
+     * Converts a packed 32-bit ARGB value to its {@code Color} equivalent.
+     * @param argb The color as 0xAARRGGBB.
+     * @return An initialized instance of {@code Color}.
+     */
+    public static Color toColor(int argb) {
+        return Color.rgb(red(argb), green(argb), blue(argb), alpha(argb) / 255.0);
+    }
+
+    /**
+     * Packs four channels into a 32-bit ARGB value.
+     * @param a The alpha channel, between 0 and 255.
+     * @param r The red channel, between 0 and 255.
+     * @param g The green channel, between 0 and 255.
+     * @param b The blue channel, between 0 and 255.
+     * @return The color as 0xAARRGGBB.
+     */
+    public static int argb(int a, int r, int g, int b) {
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Gets the alpha channel of a packed ARGB color.
+     * @param argb The color as 0xAARRGGBB.
+     * @return The alpha channel, between 0 and 255.
+     */
+    public static int alpha(int argb) {
+        return argb >>> 24;
+    }
+
+    /**
+     * Gets the red channel of a packed ARGB color.
+     * @param argb The color as 0xAARRGGBB.
+     * @return The red channel, between 0 and 255.
+     */
+    public static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    /**
+     * Gets the green channel of a packed ARGB color.
+     * @param argb The color as 0xAARRGGBB.
+     * @return The green channel, between 0 and 255.
+     */
+    public static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    /**
+     * Gets the blue channel of a packed ARGB color.
+     * @param argb The color as 0xAARRGGBB.
+     * @return The blue channel, between 0 and 255.
+     */
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    /**
+     * Parses a hexadecimal color such as "#00FF66" or "00ff66", without creating
+     * substrings or boxed integers.
+     * @param s The characters to parse.
+     * @return The opaque color as 0xFFRRGGBB.
+     * @throws IllegalArgumentException The length of {@code s} (without the # symbol)
+     * is different from 6, or {@code s} contains a character that is not a hexadecimal digit.
+     */
+    public static int parseHex(CharSequence s) throws IllegalArgumentException {
+        return parseHex(s, 0, s.length());
+    }
+
+    /**
+     * Parses a hexadecimal color such as "#00FF66" or "00ff66" from a range of characters.
+     * @param s The characters to parse.
+     * @param start The index of the first character to parse.
+     * @param end The index that follows the last character to parse.
+     * @return The opaque color as 0xFFRRGGBB.
+     * @throws IllegalArgumentException The length of the range (without the # symbol)
+     * is different from 6, or the range contains a character that is not a hexadecimal digit.
+     */
+    public static int parseHex(CharSequence s, int start, int end) throws IllegalArgumentException {
+        if (start < end && s.charAt(start) == '#') {
+            start++; // skip the # symbol
         }
-        if (s.length() != 6) {
+        if (end - start != 6) {
             throw new IllegalArgumentException();
         }
-        double r = Integer.valueOf(s.substring(0, 2), 16) / 255.0;
-        double g = Integer.valueOf(s.substring(2, 4), 16) / 255.0;
-        double b = Integer.valueOf(s.substring(4, 6), 16) / 255.0;
-        return Color.color(r, g, b);
+        int rgb = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException();
+            }
+            rgb = rgb << 4 | digit;
+        }
+        return 0xFF000000 | rgb;
+    }
+
+    /**
+     * Writes the hexadecimal representation "#rrggbb" of a packed color into an array.
+     * The alpha channel is ignored.
+     * @param argb The color as 0xAARRGGBB.
+     * @param dst The destination array, which must have room for 7 characters.
+     * @param offset The index in {@code dst} of the # symbol.
+     * @return The index that follows the last character written.
+     */
+    public static int formatHex(int argb, char[] dst, int offset) {
+        dst[offset++] = '#';
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            dst[offset++] = HEX_DIGITS[(argb >> shift) & 0xF];
+        }
+        return offset;
+    }
+
+    /**
+     * Appends the hexadecimal representation "#rrggbb" of a packed color to a
+     * {@code StringBuilder}. The alpha channel is ignored.
+     * @param argb The color as 0xAARRGGBB.
+     * @param sb The builder to append to.
+     * @return The {@code sb} argument.
+     */
+    public static StringBuilder appendHex(int argb, StringBuilder sb) {
+        sb.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(argb >> shift) & 0xF]);
+        }
+        return sb;
+    }
+
+    /**
+     * Converts a packed color to its hexadecimal string representation "#rrggbb".
+     * @param argb The color as 0xAARRGGBB.
+     * @return A String representing the hexadecimal value of the specified color.
+     */
+    public static String toHexString(int argb) {
+        char[] chars = new char[7];
+        formatHex(argb, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Blends a color over another (Porter-Duff source-over), both non-premultiplied.
+     * @param src The color drawn on top, as 0xAARRGGBB.
+     * @param dst The color underneath, as 0xAARRGGBB.
+     * @return The blended color, non-premultiplied.
+     */
+    public static int blend(int src, int dst) {
+        int sa = alpha(src);
+        if (sa == 0xFF) return src;
+        if (sa == 0) return dst;
+        return unpremultiply(blendPremultiplied(premultiply(src), premultiply(dst)));
+    }
+
+    /**
+     * Blends a color over an opaque pixel, with a given coverage of the pixel
+     * (the anti-aliasing factor).
+     * @param src The color drawn on top, as 0xAARRGGBB.
+     * @param dst The opaque pixel, as 0xFFRRGGBB.
+     * @param coverage The fraction of the pixel covered, between 0.0 and 1.0.
+     * @return The blended opaque pixel.
+     */
+    public static int blend(int src, int dst, float coverage) {
+        int a = (int)(coverage * alpha(src) + 0.5f);
+        if (a >= 0xFF) return src | 0xFF000000;
+
+        int ia = 0xFF - a;
+        int r = (red(src) * a + red(dst) * ia + 127) / 255;
+        int g = (green(src) * a + green(dst) * ia + 127) / 255;
+        int b = (blue(src) * a + blue(dst) * ia + 127) / 255;
+        return argb(0xFF, r, g, b);
+    }
+
+    /**
+     * Blends a color over a pixel that may be transparent, with a given
+     * coverage of the pixel (the anti-aliasing factor).
+     * @param src The color drawn on top, as 0xAARRGGBB.
+     * @param dst The pixel underneath, as 0xAARRGGBB, non-premultiplied.
+     * @param coverage The fraction of the pixel covered, between 0.0 and 1.0.
+     * @return The blended pixel, non-premultiplied.
+     */
+    public static int blendOver(int src, int dst, float coverage) {
+        if (alpha(dst) == 0xFF) return blend(src, dst, coverage);
+
+        int a = Math.min(0xFF, (int)(coverage * alpha(src) + 0.5f));
+        if (a == 0) return dst;
+        return blend((src & 0xFFFFFF) | a << 24, dst);
+    }
+
+    /**
+     * Blends a color over another (Porter-Duff source-over), both premultiplied.
+     * @param src The color drawn on top, premultiplied.
+     * @param dst The color underneath, premultiplied.
+     * @return The blended color, premultiplied.
+     */
+    public static int blendPremultiplied(int src, int dst) {
+        int ia = 0xFF - alpha(src);
+        if (ia == 0) return src;
+
+        int a = alpha(src) + (alpha(dst) * ia + 127) / 255;
+        int r = red(src) + (red(dst) * ia + 127) / 255;
+        int g = green(src) + (green(dst) * ia + 127) / 255;
+        int b = blue(src) + (blue(dst) * ia + 127) / 255;
+        return argb(a, r, g, b);
+    }
+
+    /**
+     * Multiplies the color channels of a packed color by its alpha channel.
+     * @param argb The color as 0xAARRGGBB, non-premultiplied.
+     * @return The premultiplied color.
+     */
+    public static int premultiply(int argb) {
+        int a = alpha(argb);
+        if (a == 0xFF) return argb;
+        if (a == 0) return 0;
+        return argb(a, (red(argb) * a + 127) / 255, (green(argb) * a + 127) / 255, (blue(argb) * a + 127) / 255);
+    }
+
+    /**
+     * Divides the color channels of a premultiplied color by its alpha channel.
+     * @param argb The premultiplied color.
+     * @return The color as 0xAARRGGBB, non-premultiplied.
+     */
+    public static int unpremultiply(int argb) {
+        int a = alpha(argb);
+        if (a == 0xFF) return argb;
+        if (a == 0) return 0;
+        int half = a / 2;
+        return argb(a, Math.min(0xFF, (red(argb) * 255 + half) / a),
+            Math.min(0xFF, (green(argb) * 255 + half) / a), Math.min(0xFF, (blue(argb) * 255 + half) / a));
+    }
+
+    /**
+     * Converts a channel between 0.0 and 1.0 to an integer between 0 and 255.
+     */
+    private static int toChannel(double value) {
+        return (int)Math.round(255 * value);
     }
 }
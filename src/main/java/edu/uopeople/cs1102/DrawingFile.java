@@ -0,0 +1,475 @@
+package edu.uopeople.cs1102;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes drawings in a compact, versioned binary format.
+ * <p>
+ * A file starts with a header (magic number, version, coordinate scale,
+ * canvas size and number of strokes), followed by the strokes. Each stroke
+ * stores its color as a palette index into {@code ColorUtil.standardPalette}
+ * (with an escape for an arbitrary ARGB color), its line width and its points.
+ * Coordinates are quantized to {@code 1 / scale} of a pixel and every point is
+ * stored as the difference from the previous one (across strokes), packed as a
+ * zig-zag varint; a freehand point usually takes 2 or 3 bytes. The points
+ * of a variable-width stroke (version 2) also store their width, as the
+ * difference from the previous point's.
+ * </p>
+ * <p>
+ * Files are written and read through {@code FileChannel} and memory-mapped
+ * buffers, so opening a large session doesn't copy the file onto the heap,
+ * and a {@code Reader} can stream the strokes one at a time.
+ * </p>
+ * <pre>
+ * header := "APNT" u16:version varint:scale varint:width varint:height varint:strokeCount
+ * stroke := varint:color [u32:argb if color == 0] varint:width varint:pointCount point*
+ * color  := 0 (custom ARGB follows) | paletteIndex + 1
+ * width  := width*scale &lt;&lt; 1 | variable (version 1: width*scale, never variable)
+ * point  := zigzag-varint:dx zigzag-varint:dy [zigzag-varint:dw*scale if variable]
+ * </pre>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class DrawingFile {
+    /** The first four bytes of a drawing file: "APNT". */
+    public static final int MAGIC = 0x41504E54;
+
+    /** The version of the format written by this class. */
+    public static final int VERSION = 2;
+
+    /** The default number of coordinate steps per pixel. */
+    public static final int DEFAULT_SCALE = 16;
+
+    // The largest region of a file that is mapped at once.
+    private static final int WINDOW = 1 << 30;
+
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private DrawingFile() {
+    }
+
+    /**
+     * Saves the specified strokes, replacing the file if it exists.
+     * @param store The strokes to save.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     * @param path The file to write.
+     * @return The number of bytes written.
+     * @throws IOException An I/O error occurs.
+     */
+    public static long save(StrokeStore store, int width, int height, Path path) throws IOException {
+        return save(store, width, height, DEFAULT_SCALE, path);
+    }
+
+    /**
+     * Saves the specified strokes, replacing the file if it exists.
+     * @param store The strokes to save.
+     * @param width The width of the canvas.
+     * @param height The height of the canvas.
+     * @param scale The number of coordinate steps per pixel.
+     * @param path The file to write.
+     * @return The number of bytes written.
+     * @throws IOException An I/O error occurs.
+     */
+    public static long save(StrokeStore store, int width, int height, int scale, Path path) throws IOException {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("The scale must be positive.");
+        }
+        int end = store.getStrokeCount();
+        if (store.isRecording()) end--; // don't save a stroke in progress
+
+        // erased strokes are not saved
+        int strokeCount = 0;
+        for (int s = 0; s < end; s++) {
+            if (!store.isErased(s)) strokeCount++;
+        }
+
+        // First pass: compute the exact size, so the file can be mapped once.
+        Encoder sizer = new Encoder(null, scale, 0);
+        sizer.header(width, height, strokeCount);
+        for (int s = 0; s < end; s++) {
+            if (!store.isErased(s)) sizer.stroke(store, s);
+        }
+        long size = sizer.position;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Encoder encoder = new Encoder(channel, scale, size);
+            encoder.header(width, height, strokeCount);
+            for (int s = 0; s < end; s++) {
+                if (!store.isErased(s)) encoder.stroke(store, s);
+            }
+            encoder.flush();
+        }
+        return size;
+    }
+
+    /**
+     * Loads all strokes of a file into the specified store.
+     * @param path The file to read.
+     * @param store The store to which the strokes are appended.
+     * @return A {@code Reader} positioned after the last stroke, which gives
+     * access to the header. The reader is already closed.
+     * @throws IOException An I/O error occurs, or the file is not a drawing.
+     */
+    public static Reader load(Path path, StrokeStore store) throws IOException {
+        try (Reader reader = open(path)) {
+            while (reader.next()) {
+                reader.appendTo(store);
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * Opens a file to stream its strokes.
+     * @param path The file to read.
+     * @return A {@code Reader} positioned before the first stroke.
+     * @throws IOException An I/O error occurs, or the file is not a drawing.
+     */
+    public static Reader open(Path path) throws IOException {
+        return new Reader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Writes the format, either into a mapped file or nowhere (to compute the size).
+     */
+    private static final class Encoder {
+        private final FileChannel channel;
+        private final int scale;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long position, mapped;
+        private int prevX, prevY;
+
+        Encoder(FileChannel channel, int scale, long size) {
+            this.channel = channel;
+            this.scale = scale;
+            this.size = size;
+        }
+
+        void header(int width, int height, int strokeCount) throws IOException {
+            putInt(MAGIC);
+            put(VERSION >>> 8);
+            put(VERSION);
+            putVarint(scale);
+            putVarint(width);
+            putVarint(height);
+            putVarint(strokeCount);
+        }
+
+        void stroke(StrokeStore store, int s) throws IOException {
+            int colorIndex = store.getColorIndex(s);
+            if (colorIndex == StrokeStore.CUSTOM_COLOR) {
+                putVarint(0);
+                putInt(store.getArgb(s));
+            } else {
+                putVarint(colorIndex + 1);
+            }
+            boolean variable = store.isVariableWidth(s);
+            putVarint(Math.round(store.getLineWidth(s) * scale) << 1 | (variable ? 1 : 0));
+
+            int first = store.getStrokeStart(s);
+            int end = first + store.getStrokePointCount(s);
+            putVarint(end - first);
+
+            int prevWidth = 0;
+            for (int i = first; i < end; i++) {
+                int x = Math.round(store.getX(i) * scale);
+                int y = Math.round(store.getY(i) * scale);
+                putVarint((x - prevX) << 1 ^ (x - prevX) >> 31);
+                putVarint((y - prevY) << 1 ^ (y - prevY) >> 31);
+                prevX = x;
+                prevY = y;
+                if (variable) {
+                    int w = Math.round(store.getWidth(i) * scale);
+                    putVarint((w - prevWidth) << 1 ^ (w - prevWidth) >> 31);
+                    prevWidth = w;
+                }
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            put(value >>> 24);
+            put(value >>> 16);
+            put(value >>> 8);
+            put(value);
+        }
+
+        void putVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                put((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            put(value);
+        }
+
+        void put(int b) throws IOException {
+            if (channel != null) {
+                if (position == mapped) {
+                    remap();
+                }
+                buffer.put((byte)b);
+            }
+            position++;
+        }
+
+        private void remap() throws IOException {
+            flush();
+            long length = Math.min(WINDOW, size - position);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            mapped = position + length;
+        }
+
+        void flush() throws IOException {
+            if (buffer != null) {
+                buffer.force();
+                buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Streams the strokes of a drawing file, one at a time.
+     * <p>
+     * After {@code next()} has returned true, the getters describe the current
+     * stroke; its points are decoded into a buffer reused from stroke to stroke.
+     * </p>
+     */
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long position, mapped;
+
+        private final int version, scale, width, height, strokeCount;
+        private int strokesRead;
+        private int prevX, prevY;
+
+        // The current stroke.
+        private int colorIndex, argb, pointCount;
+        private float lineWidth;
+        private boolean variableWidth;
+        private float[] points = new float[256];
+        private float[] widths;
+
+        Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            try {
+                if (size < 6 || getInt() != MAGIC) {
+                    throw new IOException("Not an AdvancedPaint drawing.");
+                }
+                version = get() << 8 | get();
+                if (version > VERSION) {
+                    throw new IOException("Unsupported drawing version: " + version);
+                }
+                scale = getVarint();
+                width = getVarint();
+                height = getVarint();
+                strokeCount = getVarint();
+                if (scale <= 0) {
+                    throw new IOException("Invalid coordinate scale: " + scale);
+                }
+                if (width < 0 || height < 0 || strokeCount < 0) {
+                    throw new IOException("Invalid drawing header.");
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Decodes the next stroke.
+         * @return true if a stroke has been decoded; false if there is no stroke left.
+         * @throws IOException An I/O error occurs, or the file is truncated or corrupt.
+         */
+        public boolean next() throws IOException {
+            if (strokesRead == strokeCount) return false;
+
+            int color = getVarint();
+            if (color < 0 || color > ColorUtil.standardPaletteArgb.length) {
+                throw new IOException("Invalid color index " + (color - 1) + " in stroke " + strokesRead);
+            }
+            if (color == 0) {
+                colorIndex = StrokeStore.CUSTOM_COLOR;
+                argb = getInt();
+            } else {
+                colorIndex = color - 1;
+                argb = ColorUtil.standardPaletteArgb[colorIndex];
+            }
+            int width = getVarint();
+            if (version >= 2) {
+                variableWidth = (width & 1) != 0;
+                width >>>= 1;
+            } else if (width < 0) {
+                throw new IOException("Invalid line width in stroke " + strokesRead);
+            }
+            lineWidth = (float)width / scale;
+            pointCount = getVarint();
+
+            // every point takes at least one byte per coordinate, and one for its width
+            long remaining = size - position;
+            if (pointCount < 0 || pointCount > remaining / (variableWidth ? 3 : 2)) {
+                throw new IOException("Invalid point count " + pointCount + " in stroke " + strokesRead);
+            }
+
+            if (points.length < pointCount * 2) {
+                points = new float[Math.max(pointCount * 2, points.length * 2)];
+            }
+            if (variableWidth && (widths == null || widths.length < pointCount)) {
+                widths = new float[Math.max(pointCount, points.length / 2)];
+            }
+            float inv = 1f / scale;
+            int w = 0;
+            for (int i = 0; i < pointCount; i++) {
+                int dx = getVarint(), dy = getVarint();
+                prevX += dx >>> 1 ^ -(dx & 1);
+                prevY += dy >>> 1 ^ -(dy & 1);
+                points[i << 1] = prevX * inv;
+                points[(i << 1) + 1] = prevY * inv;
+                if (variableWidth) {
+                    int dw = getVarint();
+                    w += dw >>> 1 ^ -(dw & 1);
+                    widths[i] = w * inv;
+                }
+            }
+            strokesRead++;
+            return true;
+        }
+
+        /**
+         * Appends the current stroke to a store.
+         * @param store The store to which the stroke is appended.
+         * @return The index of the new stroke in {@code store}.
+         */
+        public int appendTo(StrokeStore store) {
+            if (colorIndex == StrokeStore.CUSTOM_COLOR) {
+                store.beginCustomStroke(argb, lineWidth);
+            } else {
+                store.beginStroke(colorIndex, lineWidth);
+            }
+            for (int i = 0; i < pointCount; i++) {
+                if (variableWidth) {
+                    store.addPoint(points[i << 1], points[(i << 1) + 1], widths[i]);
+                } else {
+                    store.addPoint(points[i << 1], points[(i << 1) + 1]);
+                }
+            }
+            store.endStroke();
+            return store.getStrokeCount() - 1;
+        }
+
+        /** @return The version of the file's format. */
+        public int getVersion() {
+            return version;
+        }
+
+        /** @return The width of the canvas on which the drawing was made. */
+        public int getWidth() {
+            return width;
+        }
+
+        /** @return The height of the canvas on which the drawing was made. */
+        public int getHeight() {
+            return height;
+        }
+
+        /** @return The number of strokes in the file. */
+        public int getStrokeCount() {
+            return strokeCount;
+        }
+
+        /** @return The palette index of the current stroke's color, or {@code StrokeStore.CUSTOM_COLOR}. */
+        public int getColorIndex() {
+            return colorIndex;
+        }
+
+        /** @return The current stroke's color, in ARGB format. */
+        public int getArgb() {
+            return argb;
+        }
+
+        /** @return The line width of the current stroke. */
+        public float getLineWidth() {
+            return lineWidth;
+        }
+
+        /** @return true if the points of the current stroke have their own width; otherwise, false. */
+        public boolean isVariableWidth() {
+            return variableWidth;
+        }
+
+        /** @return The number of points of the current stroke. */
+        public int getPointCount() {
+            return pointCount;
+        }
+
+        /**
+         * Gets the x-coordinate of a point of the current stroke.
+         * @param i The index of the point within the stroke.
+         * @return The x-coordinate of the point.
+         */
+        public float getX(int i) {
+            return points[i << 1];
+        }
+
+        /**
+         * Gets the y-coordinate of a point of the current stroke.
+         * @param i The index of the point within the stroke.
+         * @return The y-coordinate of the point.
+         */
+        public float getY(int i) {
+            return points[(i << 1) + 1];
+        }
+
+        /**
+         * Gets the width of a point of the current stroke, if it is a variable-width stroke.
+         * @param i The index of the point within the stroke.
+         * @return The width of the stroke at the point, or its line width.
+         */
+        public float getWidth(int i) {
+            return variableWidth ? widths[i] : lineWidth;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            channel.close();
+        }
+
+        private int getInt() throws IOException {
+            return get() << 24 | get() << 16 | get() << 8 | get();
+        }
+
+        private int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = get();
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) return value;
+            }
+            throw new IOException("Malformed varint.");
+        }
+
+        private int get() throws IOException {
+            if (position == mapped) {
+                if (position >= size) {
+                    throw new IOException("Unexpected end of file.");
+                }
+                long length = Math.min(WINDOW, size - position);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                mapped = position + length;
+            }
+            position++;
+            return buffer.get() & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+
+/**
+ * Fills the region of an ARGB image that is connected to a seed pixel and
+ * whose color is close to the seed's color (the "paint bucket").
+ * <p>
+ * The fill is span-based: every row of the region is filled as horizontal
+ * runs, and only the runs that remain to be scanned (x1, x2, y, direction)
+ * are pushed on a stack, never individual pixels. When the fill color is
+ * itself within the tolerance of the seed's color, a bit mask records the
+ * pixels already filled so that the fill doesn't loop; otherwise the filled
+ * pixels are told apart by their color alone. The stack and the mask are
+ * reused from one fill to the next; an instance must not be used by two
+ * threads at the same time.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class FloodFill {
+    // Runs to scan, stored as x1, x2, y, dy.
+    private int[] stack = new int[256];
+    private int top;
+
+    // One bit per pixel of the image, set once the pixel is filled (when useMask is true).
+    private long[] mask = new long[0];
+    private boolean useMask, marking;
+
+    private int[] argb;
+    private int width, height;
+    private int seedColor, tolerance;
+
+    // The bounding rectangle of the last fill.
+    private int minX, minY, maxX, maxY;
+
+    /**
+     * Fills the region connected to a pixel.
+     * @param argb The pixels of the image, row by row, in ARGB format.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param x The x-coordinate of the seed pixel.
+     * @param y The y-coordinate of the seed pixel.
+     * @param color The fill color, in ARGB format.
+     * @param tolerance The largest difference, on any channel (alpha included),
+     * between the seed's color and the color of a pixel to fill; between 0 and 255.
+     * @return The number of pixels filled; 0 if the seed is outside of the image.
+     * @throws IllegalArgumentException {@code argb} is smaller than the image,
+     * or {@code tolerance} is out of range.
+     */
+    public int fill(int[] argb, int width, int height, int x, int y, int color, int tolerance)
+            throws IllegalArgumentException {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("The pixel array is smaller than the image.");
+        }
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("The tolerance must be between 0 and 255.");
+        }
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+        if (x < 0 || y < 0 || x >= width || y >= height) return 0;
+
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+        this.seedColor = argb[y * width + x];
+        this.tolerance = tolerance;
+
+        useMask = marking || matches(color);
+        if (useMask) {
+            int words = (width * height + 63) >>> 6;
+            if (mask.length < words) {
+                mask = new long[words];
+            } else {
+                Arrays.fill(mask, 0, words, 0);
+            }
+        }
+
+        int count = 0;
+        top = 0;
+        push(x, x, y, 1);
+        push(x, x, y - 1, -1);
+
+        while (top > 0) {
+            int dy = stack[--top];
+            y = stack[--top];
+            int x2 = stack[--top];
+            int x1 = stack[--top];
+            if (y < 0 || y >= height) continue;
+
+            // extend the run to the left of x1
+            x = x1;
+            if (inside(x, y)) {
+                while (inside(x - 1, y)) x--;
+                if (x < x1) {
+                    count += fillSpan(x, x1 - 1, y, color);
+                    push(x, x1 - 1, y - dy, -dy); // the part that overhangs the previous row
+                }
+            }
+
+            // fill the runs within [x1, x2], and the one that extends past x2
+            while (x1 <= x2) {
+                int start = x1;
+                while (inside(x1, y)) x1++;
+                if (x1 > start) count += fillSpan(start, x1 - 1, y, color);
+
+                if (x1 > x) push(x, x1 - 1, y + dy, dy);
+                if (x1 - 1 > x2) push(x2 + 1, x1 - 1, y - dy, -dy);
+
+                x1++;
+                while (x1 < x2 && !inside(x1, y)) x1++;
+                x = x1;
+            }
+        }
+        this.argb = null;
+        return count;
+    }
+
+    /**
+     * Indicates whether the filled pixels are always marked, so that
+     * {@code isFilled()} can tell them apart from the pixels that already had
+     * the fill color.
+     * @return true if the filled pixels are marked; otherwise, false.
+     */
+    public boolean isMarking() {
+        return marking;
+    }
+
+    /**
+     * Sets whether the filled pixels are always marked.
+     * @param value true to mark the filled pixels of the next fills.
+     */
+    public void setMarking(boolean value) {
+        marking = value;
+    }
+
+    /**
+     * Indicates whether a pixel has been filled by the last fill, which must
+     * have been made with marking on.
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return true if the pixel has been filled; otherwise, false.
+     * @throws IllegalStateException The last fill didn't mark the pixels.
+     */
+    public boolean isFilled(int x, int y) throws IllegalStateException {
+        if (!useMask) {
+            throw new IllegalStateException("The last fill didn't mark the pixels.");
+        }
+        if (x < 0 || y < 0 || x >= width || y >= height) return false;
+        int i = y * width + x;
+        return (mask[i >>> 6] & 1L << i) != 0;
+    }
+
+    /** @return The left edge of the last fill's bounding rectangle. */
+    public int getMinX() {
+        return minX;
+    }
+
+    /** @return The top edge of the last fill's bounding rectangle. */
+    public int getMinY() {
+        return minY;
+    }
+
+    /** @return The right edge (inclusive) of the last fill's bounding rectangle, or -1 if nothing was filled. */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /** @return The bottom edge (inclusive) of the last fill's bounding rectangle, or -1 if nothing was filled. */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Checks whether a pixel is in the image, not filled yet, and close enough to the seed's color.
+     */
+    private boolean inside(int x, int y) {
+        if (x < 0 || x >= width) return false;
+        int i = y * width + x;
+        if (useMask && (mask[i >>> 6] & 1L << i) != 0) return false;
+        return matches(argb[i]);
+    }
+
+    /**
+     * Checks whether a color is within the tolerance of the seed's color.
+     */
+    private boolean matches(int p) {
+        int s = seedColor, t = tolerance;
+        if (p == s) return true;
+        return Math.abs((p >>> 24) - (s >>> 24)) <= t
+            && Math.abs(((p >> 16) & 0xFF) - ((s >> 16) & 0xFF)) <= t
+            && Math.abs(((p >> 8) & 0xFF) - ((s >> 8) & 0xFF)) <= t
+            && Math.abs((p & 0xFF) - (s & 0xFF)) <= t;
+    }
+
+    /**
+     * Fills the pixels [x1, x2] of a row and marks them.
+     */
+    private int fillSpan(int x1, int x2, int y, int color) {
+        int row = y * width;
+        Arrays.fill(argb, row + x1, row + x2 + 1, color);
+        if (useMask) {
+            // set the bits [from, to) a word at a time
+            int from = row + x1, to = row + x2 + 1;
+            int first = from >>> 6, last = (to - 1) >>> 6;
+            long head = -1L << from, tail = -1L >>> -to;
+            if (first == last) {
+                mask[first] |= head & tail;
+            } else {
+                mask[first] |= head;
+                Arrays.fill(mask, first + 1, last, -1L);
+                mask[last] |= tail;
+            }
+        }
+        if (x1 < minX) minX = x1;
+        if (x2 > maxX) maxX = x2;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        return x2 - x1 + 1;
+    }
+
+    private void push(int x1, int x2, int y, int dy) {
+        if (top + 4 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = x1;
+        stack[top++] = x2;
+        stack[top++] = y;
+        stack[top++] = dy;
+    }
+}
@@ -0,0 +1,528 @@
+package edu.uopeople.cs1102;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import javafx.application.Platform;
+
+/**
+ * An image shown under the strokes of a drawing, for instance a photo to
+ * trace over, decoded region by region so that a very large image never
+ * has its full-resolution raster on the heap.
+ * <p>
+ * The image is fitted into the document and centered, without being
+ * enlarged. It is split into tiles of {@code TILE_SIZE} pixels for each
+ * level of detail: a pixel of level {@code L} covers {@code 2^L} document
+ * pixels, so the positive levels are used when the view is zoomed out and
+ * the negative ones, down to the resolution of the image, when it is zoomed
+ * in. A tile is decoded only when it comes into view, by a background
+ * thread, with {@code ImageReadParam.setSourceRegion()} restricted to the
+ * tile and {@code setSourceSubsampling()} skipping the image pixels that
+ * the level doesn't need: only the tiles of one row are decoded at a time.
+ * Until a tile is decoded, a coarser one is shown in its place.
+ * </p>
+ * <p>
+ * The decoded tiles are kept in a least-recently-used cache of a bounded
+ * size. For formats without random access, such as JPEG and PNG, the reader
+ * still goes through the rows above a region to reach it, but it doesn't
+ * keep them.
+ * </p>
+ * <p>
+ * The tiles are read and drawn on the JavaFX application thread only. The
+ * image is a guide: it isn't part of the drawing, and is neither saved nor
+ * exported with it.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class ImageUnderlay implements Closeable {
+    /** The width and height of a tile, in pixels of its level. */
+    public static final int TILE_SIZE = TiledRaster.TILE_SIZE;
+
+    /** The most detailed level: 32 level pixels per document pixel, for the largest zoom factor. */
+    public static final int MIN_LEVEL = -5;
+
+    /** The least detailed level: a level pixel per 64 document pixels, for the smallest zoom factor. */
+    public static final int MAX_LEVEL = 6;
+
+    /** The default size of the tile cache, in bytes. */
+    public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+    private static final int TILE_SHIFT = Integer.numberOfTrailingZeros(TILE_SIZE);
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int imageWidth, imageHeight;
+    private final int documentWidth, documentHeight;
+
+    // The number of document pixels per image pixel, and the position of the image in the document.
+    private final double scale, offsetX, offsetY;
+    private final int minLevel;
+
+    // The decoded tiles by key, least recently drawn first (application thread only).
+    private final LinkedHashMap<Long, int[]> tiles;
+    private Runnable onTilesDecoded;
+
+    // The tiles to decode, and the ones being decoded (guarded by wanted).
+    private final ArrayDeque<Long> wanted = new ArrayDeque<>();
+    private final Set<Long> decoding = new HashSet<>();
+    private boolean closed;
+
+    // The level coordinate of each column and row of the last view drawn, or -1 outside the image.
+    private int[] columns = new int[0], rows = new int[0];
+
+    private final Thread decoder;
+    private volatile IOException lastError;
+    private volatile long tilesDecoded, decodeNanos, peakDecodeBytes;
+
+    /**
+     * Initializes a new instance of the {@code ImageUnderlay} class. Only
+     * the header of the image is read.
+     * @param path The image file, in a format supported by {@code ImageIO}.
+     * @param documentWidth The width of the document, in pixels.
+     * @param documentHeight The height of the document, in pixels.
+     * @param maxCacheBytes The largest memory of the decoded tiles, at least the size of one tile.
+     * @throws IOException The file cannot be read, or its format isn't supported.
+     * @throws IllegalArgumentException A size is not positive.
+     */
+    public ImageUnderlay(Path path, int documentWidth, int documentHeight, long maxCacheBytes)
+        throws IOException, IllegalArgumentException {
+        if (documentWidth <= 0 || documentHeight <= 0 || maxCacheBytes < TILE_BYTES) {
+            throw new IllegalArgumentException("The document size and the cache size must be positive.");
+        }
+        input = ImageIO.createImageInputStream(path.toFile());
+        if (input == null) {
+            throw new IOException("Could not open " + path + ".");
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("The format of " + path + " is not supported.");
+            }
+            reader = readers.next();
+            reader.setInput(input, false, true);
+            imageWidth = reader.getWidth(0);
+            imageHeight = reader.getHeight(0);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+        this.documentWidth = documentWidth;
+        this.documentHeight = documentHeight;
+        scale = Math.min(1, Math.min(documentWidth / (double)imageWidth, documentHeight / (double)imageHeight));
+        offsetX = (documentWidth - imageWidth * scale) / 2;
+        offsetY = (documentHeight - imageHeight * scale) / 2;
+        // the level whose pixels are no larger than the pixels of the image
+        minLevel = Math.max(MIN_LEVEL, Math.min(0, Math.getExponent(scale)));
+
+        int maxTiles = (int)Math.min(Integer.MAX_VALUE, maxCacheBytes / TILE_BYTES);
+        tiles = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > maxTiles;
+            }
+        };
+
+        decoder = new Thread(this::decodeLoop, "ImageUnderlay");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    /**
+     * Gets the width of the image.
+     * @return The width, in pixels of the image.
+     */
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Gets the height of the image.
+     * @return The height, in pixels of the image.
+     */
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Gets the size of an image pixel in the document.
+     * @return The number of document pixels per image pixel, at most 1.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the action run on the JavaFX application thread when tiles have
+     * been decoded, typically to draw the view again.
+     * @param action A {@code Runnable}, or null.
+     */
+    public void setOnTilesDecoded(Runnable action) {
+        onTilesDecoded = action;
+    }
+
+    /**
+     * Gets the memory used by the decoded tiles. Call it on the JavaFX application thread.
+     * @return The number of bytes.
+     */
+    public long getMemoryUsage() {
+        return tiles.size() * TILE_BYTES;
+    }
+
+    /**
+     * Gets the largest memory used by the pixels of a region while it was decoded.
+     * @return The number of bytes.
+     */
+    public long getPeakDecodeBytes() {
+        return peakDecodeBytes;
+    }
+
+    /**
+     * Gets the number of tiles decoded.
+     * @return The number of tiles, evicted ones included.
+     */
+    public long getTilesDecoded() {
+        return tilesDecoded;
+    }
+
+    /**
+     * Gets the time spent decoding tiles.
+     * @return The time, in nanoseconds.
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Gets the last error of the decoder thread.
+     * @return An {@code IOException} object, or null.
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Gets the level of detail to draw at a zoom factor: the least detailed
+     * level that is still at least as detailed as the view, and not more
+     * detailed than the image.
+     * @param zoom The number of view pixels per document pixel.
+     * @return The level, between the level of the image resolution and {@code MAX_LEVEL}.
+     */
+    public int getLevel(double zoom) {
+        return Math.max(minLevel, Math.min(MAX_LEVEL, Math.getExponent(1 / zoom)));
+    }
+
+    /**
+     * Multiplies the pixels of a view by the image under them, so that the
+     * strokes look drawn on the image, and asks the decoder for the tiles in
+     * view that are missing.
+     * @param viewport The zoom factor and scroll position of the view.
+     * @param pixels The ARGB pixels of the view, row by row.
+     * @param width The width of the view, in pixels.
+     * @param height The height of the view, in pixels.
+     */
+    public void draw(Viewport viewport, int[] pixels, int width, int height) {
+        if (columns.length < width) columns = new int[width];
+        if (rows.length < height) rows = new int[height];
+        int level = getLevel(viewport.getZoom());
+
+        // the level coordinate of each column and row, or -1 outside the image
+        int x0 = Integer.MAX_VALUE, x1 = -1, y0 = Integer.MAX_VALUE, y1 = -1;
+        for (int x = 0; x < width; x++) {
+            double docX = viewport.toDocumentX(x + 0.5);
+            columns[x] = docX >= offsetX && docX < documentWidth - offsetX ? (int)Math.scalb(docX, -level) : -1;
+            if (columns[x] >= 0) {
+                x0 = Math.min(x0, columns[x]);
+                x1 = Math.max(x1, columns[x]);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            double docY = viewport.toDocumentY(y + 0.5);
+            rows[y] = docY >= offsetY && docY < documentHeight - offsetY ? (int)Math.scalb(docY, -level) : -1;
+            if (rows[y] >= 0) {
+                y0 = Math.min(y0, rows[y]);
+                y1 = Math.max(y1, rows[y]);
+            }
+        }
+        if (x1 < 0 || y1 < 0) return;
+        request(level, x0 >> TILE_SHIFT, y0 >> TILE_SHIFT, x1 >> TILE_SHIFT, y1 >> TILE_SHIFT);
+
+        for (int y = 0; y < height; y++) {
+            int uy = rows[y];
+            if (uy < 0) continue;
+            int out = y * width;
+            for (int x = 0; x < width; ) {
+                int ux = columns[x];
+                if (ux < 0) {
+                    x++;
+                    continue;
+                }
+                // the span of columns in the same tile
+                int tx = ux >> TILE_SHIFT, end = x + 1;
+                while (end < width && columns[end] >= 0 && columns[end] >> TILE_SHIFT == tx) end++;
+
+                // the tile, or a coarser one until it is decoded
+                int shift = 0;
+                int[] tile = tiles.get(key(level, tx, uy >> TILE_SHIFT));
+                while (tile == null && level + shift < MAX_LEVEL) {
+                    shift++;
+                    tile = tiles.get(key(level + shift, tx >> shift, uy >> (TILE_SHIFT + shift)));
+                }
+                if (tile != null) {
+                    int row = ((uy >> shift) & TILE_MASK) << TILE_SHIFT;
+                    for (int i = x; i < end; i++) {
+                        pixels[out + i] = multiply(pixels[out + i], tile[row | ((columns[i] >> shift) & TILE_MASK)]);
+                    }
+                }
+                x = end;
+            }
+        }
+    }
+
+    /**
+     * Stops the decoder thread and closes the image file. The tiles are released.
+     */
+    @Override
+    public void close() {
+        synchronized (wanted) {
+            if (closed) return;
+            closed = true;
+            wanted.clear();
+            wanted.notifyAll();
+        }
+        reader.abort();
+        try {
+            decoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.dispose();
+        try {
+            input.close();
+        } catch (IOException e) {
+            // nothing was written
+        }
+        tiles.clear();
+    }
+
+    /**
+     * Replaces the tiles to decode with the missing ones of a rectangle of tiles.
+     */
+    private void request(int level, int tx0, int ty0, int tx1, int ty1) {
+        synchronized (wanted) {
+            wanted.clear();
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    Long key = key(level, tx, ty);
+                    if (!tiles.containsKey(key) && !decoding.contains(key)) {
+                        wanted.add(key);
+                    }
+                }
+            }
+            if (!wanted.isEmpty()) {
+                wanted.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Decodes the wanted tiles, a row at a time, until the underlay is closed.
+     */
+    private void decodeLoop() {
+        while (true) {
+            int level, ty, tx0, tx1;
+            synchronized (wanted) {
+                while (wanted.isEmpty() && !closed) {
+                    try {
+                        wanted.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                long first = wanted.poll();
+                level = levelOf(first);
+                ty = yOf(first);
+                tx0 = tx1 = xOf(first);
+                for (Iterator<Long> it = wanted.iterator(); it.hasNext(); ) {
+                    long key = it.next();
+                    if (levelOf(key) == level && yOf(key) == ty) {
+                        tx0 = Math.min(tx0, xOf(key));
+                        tx1 = Math.max(tx1, xOf(key));
+                        it.remove();
+                    }
+                }
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    decoding.add(key(level, tx, ty));
+                }
+            }
+
+            int[][] decoded = null;
+            long start = System.nanoTime();
+            try {
+                decoded = decodeRow(level, ty, tx0, tx1);
+                tilesDecoded += tx1 - tx0 + 1;
+            } catch (IOException e) {
+                lastError = e;
+            } catch (RuntimeException e) {
+                lastError = new IOException(e.getMessage(), e);
+            }
+            decodeNanos += System.nanoTime() - start;
+
+            int[][] result = decoded;
+            int fromX = tx0, toX = tx1;
+            Platform.runLater(() -> store(level, ty, fromX, toX, result));
+        }
+    }
+
+    /**
+     * Adds the tiles of a row to the cache, on the JavaFX application thread.
+     */
+    private void store(int level, int ty, int tx0, int tx1, int[][] decoded) {
+        synchronized (wanted) {
+            if (closed) return;
+            for (int tx = tx0; tx <= tx1; tx++) {
+                decoding.remove(key(level, tx, ty));
+            }
+        }
+        if (decoded == null) return;
+        for (int tx = tx0; tx <= tx1; tx++) {
+            tiles.put(key(level, tx, ty), decoded[tx - tx0]);
+        }
+        if (onTilesDecoded != null) {
+            onTilesDecoded.run();
+        }
+    }
+
+    /**
+     * Decodes a row of tiles from one region of the image, subsampled for the level.
+     */
+    private int[][] decodeRow(int level, int ty, int tx0, int tx1) throws IOException {
+        int count = tx1 - tx0 + 1, span = count << TILE_SHIFT;
+
+        // the image column and row of each tile pixel, or -1 outside the image
+        int[] sourceX = new int[span], sourceY = new int[TILE_SIZE];
+        int ix0 = imageWidth, ix1 = -1, iy0 = imageHeight, iy1 = -1;
+        for (int i = 0; i < span; i++) {
+            sourceX[i] = toImage((tx0 << TILE_SHIFT) + i + 0.5, level, offsetX, imageWidth);
+            if (sourceX[i] >= 0) {
+                ix0 = Math.min(ix0, sourceX[i]);
+                ix1 = Math.max(ix1, sourceX[i]);
+            }
+        }
+        for (int i = 0; i < TILE_SIZE; i++) {
+            sourceY[i] = toImage((ty << TILE_SHIFT) + i + 0.5, level, offsetY, imageHeight);
+            if (sourceY[i] >= 0) {
+                iy0 = Math.min(iy0, sourceY[i]);
+                iy1 = Math.max(iy1, sourceY[i]);
+            }
+        }
+
+        int[][] decoded = new int[count][TILE_SIZE * TILE_SIZE];
+        for (int[] tile : decoded) {
+            Arrays.fill(tile, WHITE);
+        }
+        if (ix1 < 0 || iy1 < 0) return decoded;
+
+        // skip the image pixels finer than the level
+        int step = (int)Math.max(1, Math.floor(Math.scalb(1.0, level) / scale));
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(ix0, iy0, ix1 - ix0 + 1, iy1 - iy0 + 1));
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage region = reader.read(0, param);
+        DataBuffer buffer = region.getRaster().getDataBuffer();
+        peakDecodeBytes = Math.max(peakDecodeBytes,
+            (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+
+        int rw = region.getWidth(), rh = region.getHeight();
+        int[] line = new int[rw];
+        int lastRow = -1;
+        for (int py = 0; py < TILE_SIZE; py++) {
+            if (sourceY[py] < 0) continue;
+            int ry = Math.min(rh - 1, (sourceY[py] - iy0) / step);
+            if (ry != lastRow) {
+                region.getRGB(0, ry, rw, 1, line, 0, rw);
+                lastRow = ry;
+            }
+            int row = py << TILE_SHIFT;
+            for (int i = 0; i < span; i++) {
+                if (sourceX[i] < 0) continue;
+                int argb = line[Math.min(rw - 1, (sourceX[i] - ix0) / step)];
+                decoded[i >> TILE_SHIFT][row | (i & TILE_MASK)] = overWhite(argb);
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Converts the center of a level pixel into an image column or row.
+     * @return The image coordinate, or -1 outside the image.
+     */
+    private int toImage(double levelCoordinate, int level, double offset, int size) {
+        double image = Math.floor((Math.scalb(levelCoordinate, level) - offset) / scale);
+        return image >= 0 && image < size ? (int)image : -1;
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return ((long)(level - MIN_LEVEL) << 56) | ((long)ty << 28) | tx;
+    }
+
+    private static int levelOf(long key) {
+        return (int)(key >>> 56) + MIN_LEVEL;
+    }
+
+    private static int xOf(long key) {
+        return (int)(key & 0xFFFFFFF);
+    }
+
+    private static int yOf(long key) {
+        return (int)((key >>> 28) & 0xFFFFFFF);
+    }
+
+    /**
+     * Composites a color over white, so that transparent parts of the image don't darken the strokes.
+     */
+    private static int overWhite(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) return argb;
+        int r = ((argb >> 16) & 0xFF) * a / 255 + 255 - a;
+        int g = ((argb >> 8) & 0xFF) * a / 255 + 255 - a;
+        int b = (argb & 0xFF) * a / 255 + 255 - a;
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Multiplies two colors, channel by channel; the alpha of the first one is kept.
+     */
+    private static int multiply(int argb, int under) {
+        int r = ((argb >> 16) & 0xFF) * ((under >> 16) & 0xFF);
+        int g = ((argb >> 8) & 0xFF) * ((under >> 8) & 0xFF);
+        int b = (argb & 0xFF) * (under & 0xFF);
+        // x / 255, rounded, for x up to 255 * 255
+        r = (r + 128 + ((r + 128) >> 8)) >> 8;
+        g = (g + 128 + ((g + 128) >> 8)) >> 8;
+        b = (b + 128 + ((b + 128) >> 8)) >> 8;
+        return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+}
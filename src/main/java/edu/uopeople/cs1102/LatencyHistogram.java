@@ -0,0 +1,192 @@
+package edu.uopeople.cs1102;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts non-negative values, such as durations in nanoseconds, in
+ * logarithmic buckets, and computes their percentiles.
+ * <p>
+ * Values below 16 have a bucket of their own; above, every power of two is
+ * split into 16 buckets, so a percentile is off by at most 1/16 (6.25%) of
+ * its value. Recording a value is one atomic increment and needs neither a
+ * lock nor an allocation: a histogram can be recorded on one thread and read
+ * from any other through {@code snapshot()}.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * The number of buckets, enough for any positive {@code long}.
+     */
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Adds a value to the histogram.
+     * @param value The value to count; negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    /**
+     * Copies the counts of the histogram. Values recorded while the copy is
+     * made may or may not be included.
+     * @return A new {@code Snapshot} object.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum());
+    }
+
+    /**
+     * Removes all values from the histogram.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+    }
+
+    /**
+     * Gets the index of the bucket that counts a value.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int)value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int)((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * Gets the largest value counted by a bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long mantissa = SUB_COUNT + (bucket & (SUB_COUNT - 1));
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Represents the immutable content of a {@code LatencyHistogram} at a given time.
+     * @author https://github.com/bigabdoul
+     * @version 1.0
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count, sum;
+
+        private Snapshot(long[] counts, long sum) {
+            long total = 0;
+            for (long c : counts) total += c;
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+        }
+
+        /**
+         * Gets the number of values recorded.
+         * @return The number of values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the average of the values recorded.
+         * @return The mean value, or 0 if the histogram is empty.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double)sum / count;
+        }
+
+        /**
+         * Gets the value below which a given percentage of the values fall.
+         * @param percentile The percentage, between 0 and 100.
+         * @return The largest value of the bucket that holds the percentile,
+         * or 0 if the histogram is empty.
+         * @throws IllegalArgumentException {@code percentile} is out of range.
+         */
+        public long getValueAtPercentile(double percentile) throws IllegalArgumentException {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+            }
+            if (count == 0) return 0;
+
+            long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValueOf(i);
+            }
+            return getMax();
+        }
+
+        /**
+         * Gets the median of the values recorded.
+         * @return The 50th percentile.
+         */
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+
+        /**
+         * Gets the 99th percentile of the values recorded.
+         * @return The 99th percentile.
+         */
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+
+        /**
+         * Gets the 99.9th percentile of the values recorded.
+         * @return The 99.9th percentile.
+         */
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        /**
+         * Gets the largest value recorded.
+         * @return The largest value of the highest bucket in use, or 0 if the histogram is empty.
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) return highestValueOf(i);
+            }
+            return 0;
+        }
+
+        /**
+         * Gets the values recorded between an earlier snapshot of the same histogram and this one.
+         * @param earlier A snapshot taken before this one, and after the last reset.
+         * @return A new {@code Snapshot} object.
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < diff.length; i++) {
+                diff[i] = Math.max(0, counts[i] - earlier.counts[i]);
+            }
+            return new Snapshot(diff, Math.max(0, sum - earlier.sum));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p99=%d p999=%d max=%d",
+                count, getMean(), getP50(), getP99(), getP999(), getMax());
+        }
+    }
+}
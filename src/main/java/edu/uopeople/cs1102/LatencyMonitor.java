@@ -0,0 +1,223 @@
+package edu.uopeople.cs1102;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.Scene;
+
+/**
+ * Measures the time from a MouseDragged event to the JavaFX pulse that shows
+ * its segment.
+ * <p>
+ * {@code eventReceived()} timestamps each event when it reaches
+ * {@code MouseDraggedBase.mouseDragged}, and {@code pulse()}, called at the end
+ * of each pulse (see {@code attach(Scene)}), matches the events received
+ * since the previous pulse with this one. The end of a pulse is when the
+ * scene is handed to the renderer; the rendering itself, on the render
+ * thread, is not included. Three histograms are kept:
+ * </p>
+ * <ul>
+ * <li>the latency of each event, in nanoseconds;</li>
+ * <li>the frame time, i.e. the time between a pulse that shows at least one event and the previous pulse, in nanoseconds;</li>
+ * <li>the number of events shown by each of these pulses.</li>
+ * </ul>
+ * <p>
+ * The events and the pulses must be reported on the JavaFX application
+ * thread; the snapshots can be taken on any thread. The monitor is optional:
+ * a {@code MouseDraggedBase} without a monitor only tests a null field.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class LatencyMonitor {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram frameTime = new LatencyHistogram();
+    private final LatencyHistogram eventsPerPulse = new LatencyHistogram();
+
+    // The timestamps of the events not shown yet.
+    private long[] pending = new long[64];
+    private int pendingCount;
+
+    // The end of the previous pulse, or 0.
+    private long lastPulse;
+
+    private Scene scene;
+    private final Runnable pulseListener = this::pulse;
+
+    private ScheduledExecutorService logger;
+    private BufferedWriter log;
+    private volatile IOException lastError;
+
+    /**
+     * Timestamps an event whose effect will be shown by the next pulse.
+     */
+    public void eventReceived() {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = System.nanoTime();
+    }
+
+    /**
+     * Called at the end of each pulse. Records the latency of the events
+     * received since the previous pulse.
+     */
+    public void pulse() {
+        long now = System.nanoTime();
+        int count = pendingCount;
+        if (count > 0) {
+            for (int i = 0; i < count; i++) {
+                latency.record(now - pending[i]);
+            }
+            eventsPerPulse.record(count);
+            if (lastPulse != 0) {
+                frameTime.record(now - lastPulse);
+            }
+            pendingCount = 0;
+        }
+        lastPulse = now;
+    }
+
+    /**
+     * Calls {@code pulse()} at the end of each pulse of a scene, after its
+     * layout pass. Detaches the monitor from its previous scene, if any.
+     * @param scene The scene that shows the drawing, or null to detach.
+     */
+    public void attach(Scene scene) {
+        if (this.scene != null) {
+            this.scene.removePostLayoutPulseListener(pulseListener);
+        }
+        this.scene = scene;
+        if (scene != null) {
+            scene.addPostLayoutPulseListener(pulseListener);
+        }
+        pendingCount = 0;
+        lastPulse = 0;
+    }
+
+    /**
+     * Gets the latencies recorded, in nanoseconds.
+     * @return A new {@code Snapshot} object.
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    /**
+     * Gets the frame times recorded, in nanoseconds.
+     * @return A new {@code Snapshot} object.
+     */
+    public LatencyHistogram.Snapshot getFrameTime() {
+        return frameTime.snapshot();
+    }
+
+    /**
+     * Gets the numbers of events shown per pulse.
+     * @return A new {@code Snapshot} object.
+     */
+    public LatencyHistogram.Snapshot getEventsPerPulse() {
+        return eventsPerPulse.snapshot();
+    }
+
+    /**
+     * Removes the values recorded by the three histograms.
+     */
+    public void reset() {
+        latency.reset();
+        frameTime.reset();
+        eventsPerPulse.reset();
+    }
+
+    /**
+     * Appends one line to a file for each period during which events have
+     * been shown, with the percentiles of that period. Stops the previous
+     * log, if any.
+     * @param file The log file, created if needed.
+     * @param periodMillis The period, in milliseconds.
+     * @throws IOException The file could not be opened.
+     * @throws IllegalArgumentException {@code periodMillis} is not positive.
+     */
+    public synchronized void startLogging(Path file, long periodMillis) throws IOException, IllegalArgumentException {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("The period must be positive.");
+        }
+        stopLogging();
+        log = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LatencyMonitor log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LatencyHistogram.Snapshot[] previous = { getLatency(), getFrameTime(), getEventsPerPulse() };
+        logger.scheduleAtFixedRate(() -> writeLog(previous), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing to the log file and closes it.
+     */
+    public synchronized void stopLogging() {
+        if (logger == null) return;
+        logger.shutdownNow();
+        logger = null;
+        try {
+            log.close();
+        } catch (IOException e) {
+            lastError = e;
+        }
+        log = null;
+    }
+
+    /**
+     * Gets the last error that occurred while writing the log.
+     * @return An {@code IOException} object, or null.
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Writes the values recorded since the previous line, if any.
+     */
+    private synchronized void writeLog(LatencyHistogram.Snapshot[] previous) {
+        if (log == null) return; // stopped
+
+        LatencyHistogram.Snapshot latencyNow = getLatency(), frameNow = getFrameTime(), eventsNow = getEventsPerPulse();
+        LatencyHistogram.Snapshot latencyDiff = latencyNow.since(previous[0]);
+        if (latencyDiff.getCount() == 0) return; // nothing drawn
+
+        LatencyHistogram.Snapshot frameDiff = frameNow.since(previous[1]);
+        LatencyHistogram.Snapshot eventsDiff = eventsNow.since(previous[2]);
+        previous[0] = latencyNow;
+        previous[1] = frameNow;
+        previous[2] = eventsNow;
+
+        try {
+            log.write(String.format("%s events=%d latency_ms p50=%.3f p99=%.3f p999=%.3f max=%.3f"
+                + " frame_ms p50=%.3f p99=%.3f max=%.3f events_per_pulse p50=%d p99=%d max=%d%n",
+                Instant.now(), latencyDiff.getCount(),
+                millis(latencyDiff.getP50()), millis(latencyDiff.getP99()),
+                millis(latencyDiff.getP999()), millis(latencyDiff.getMax()),
+                millis(frameDiff.getP50()), millis(frameDiff.getP99()), millis(frameDiff.getMax()),
+                eventsDiff.getP50(), eventsDiff.getP99(), eventsDiff.getMax()));
+            log.flush();
+        } catch (IOException e) {
+            stopLogging();
+            lastError = e; // rather than the error of closing the log
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,132 @@
+package edu.uopeople.cs1102;
+
+/**
+ * A layer of a {@code LayerStack}: a transparent {@code TiledRaster} with a
+ * visibility, an opacity and a blend mode.
+ * <p>
+ * Draw on the layer through {@code getRaster()}; the tiles written are
+ * marked as dirty, and the next {@code LayerStack.update()} recomposites them.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class Layer {
+    private final TiledRaster raster;
+    private String name;
+    private boolean visible = true;
+    private double opacity = 1;
+    private int alpha = 0xFF;
+    private LayerBlend blend = LayerBlend.Normal;
+
+    // The stack that contains this layer, or null once removed.
+    LayerStack owner;
+
+    /**
+     * Initializes a new instance of the {@code Layer} class. Layers are created by {@code LayerStack}.
+     */
+    Layer(String name, int width, int height) {
+        this.name = name;
+        this.raster = new TiledRaster(width, height, 0);
+    }
+
+    /**
+     * Gets the pixels of the layer, in non-premultiplied ARGB format.
+     * @return A {@code TiledRaster} whose background is transparent.
+     */
+    public TiledRaster getRaster() {
+        return raster;
+    }
+
+    /**
+     * Gets the name of the layer.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name of the layer.
+     * @param name The new name.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Indicates whether the layer is part of the composite.
+     * @return true if the layer is visible; otherwise, false.
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Shows or hides the layer.
+     * @param value true to show the layer; false to hide it.
+     */
+    public void setVisible(boolean value) {
+        if (visible == value) return;
+        visible = value;
+        changed();
+    }
+
+    /**
+     * Gets the opacity of the layer.
+     * @return The opacity, between 0.0 (transparent) and 1.0 (opaque).
+     */
+    public double getOpacity() {
+        return opacity;
+    }
+
+    /**
+     * Sets the opacity of the layer, which multiplies the alpha of its pixels.
+     * @param value The opacity, between 0.0 (transparent) and 1.0 (opaque).
+     * @throws IllegalArgumentException {@code value} is out of range.
+     */
+    public void setOpacity(double value) throws IllegalArgumentException {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException("The opacity must be between 0.0 and 1.0.");
+        }
+        if (opacity == value) return;
+        opacity = value;
+        alpha = (int)Math.round(value * 0xFF);
+        changed();
+    }
+
+    /**
+     * Gets the opacity of the layer as an integer.
+     * @return The opacity, between 0 and 255.
+     */
+    public int getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Gets how the layer is blended with the layers below it.
+     * @return A {@code LayerBlend} value.
+     */
+    public LayerBlend getBlend() {
+        return blend;
+    }
+
+    /**
+     * Sets how the layer is blended with the layers below it.
+     * @param value A {@code LayerBlend} value. Cannot be null.
+     * @throws IllegalArgumentException {@code value} is null.
+     */
+    public void setBlend(LayerBlend value) throws IllegalArgumentException {
+        if (value == null) {
+            throw new IllegalArgumentException("The blend mode cannot be null.");
+        }
+        if (blend == value) return;
+        blend = value;
+        changed();
+    }
+
+    private void changed() {
+        if (owner != null) {
+            owner.layerChanged(this);
+        }
+    }
+}
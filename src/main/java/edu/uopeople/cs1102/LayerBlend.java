@@ -0,0 +1,25 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Provides enumerated values used to select how a layer is blended with the layers below it.
+ * @author https://github.com/bigabdoul
+ */
+public enum LayerBlend {
+    /** Draws the layer over the layers below. */
+    Normal,
+
+    /** Multiplies the colors; the result is never lighter. */
+    Multiply,
+
+    /** Multiplies the complements of the colors; the result is never darker. */
+    Screen,
+
+    /** Keeps the darker color, channel by channel. */
+    Darken,
+
+    /** Keeps the lighter color, channel by channel. */
+    Lighten,
+
+    /** Adds the colors, up to white. */
+    Add,
+}
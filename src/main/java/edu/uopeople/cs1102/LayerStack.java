@@ -0,0 +1,544 @@
+package edu.uopeople.cs1102;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.scene.image.PixelWriter;
+
+/**
+ * A document made of layers, flattened into an opaque composite that is
+ * updated one tile at a time.
+ * <p>
+ * The stack keeps two caches, split at the active layer (the one being
+ * drawn on): the flattened background and visible layers <em>below</em> it,
+ * and the visible layers <em>above</em> it grouped into a single
+ * premultiplied image. When a tile of the active layer changes, its
+ * composite is rebuilt from these two caches alone: the below cache, the
+ * active layer blended over it, and the above group drawn on top. Drawing
+ * therefore costs the same whatever the number of layers.
+ * </p>
+ * <p>
+ * Grouping the layers above is only exact for the {@code Normal} blend mode;
+ * when a visible layer above the active one uses another mode, those layers
+ * are blended one by one instead, and a dirty tile costs one blend per layer
+ * above. Changing a layer other than the active one (its pixels, visibility,
+ * opacity or blend mode) rebuilds the caches of the tiles it covers; adding,
+ * removing or moving a layer, or changing the active layer, rebuilds all of
+ * them on the next {@code update()}.
+ * </p>
+ * <p>
+ * Layer pixels are non-premultiplied ARGB. Rounding may make the composite
+ * differ by one or two units per channel from blending the layers one by one.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class LayerStack {
+    private static final int TILE_SHIFT = TiledRaster.TILE_SHIFT;
+    private static final int TILE_SIZE = TiledRaster.TILE_SIZE;
+
+    private final int width, height, background;
+    private final int tilesX, tileCount;
+    private final List<Layer> layers = new ArrayList<>();
+    private int active;
+
+    private final TiledRaster composite;
+
+    // The background and the visible layers under the active layer, opaque.
+    private final TiledRaster below;
+
+    // The visible layers over the active layer, premultiplied (when aboveGrouped).
+    private final TiledRaster above;
+    private boolean aboveGrouped = true;
+
+    // One bit per tile whose caches must be rebuilt.
+    private final long[] stale;
+    private boolean allStale;
+
+    /**
+     * Initializes a new instance of the {@code LayerStack} class with a white background and one layer.
+     * @param width The width of the document, in pixels.
+     * @param height The height of the document, in pixels.
+     */
+    public LayerStack(int width, int height) {
+        this(width, height, 0xFFFFFFFF);
+    }
+
+    /**
+     * Initializes a new instance of the {@code LayerStack} class with one layer.
+     * @param width The width of the document, in pixels.
+     * @param height The height of the document, in pixels.
+     * @param background The opaque ARGB color under all the layers.
+     * @throws IllegalArgumentException {@code width} or {@code height} is not
+     * positive, or {@code background} is not opaque.
+     */
+    public LayerStack(int width, int height, int background) throws IllegalArgumentException {
+        if ((background >>> 24) != 0xFF) {
+            throw new IllegalArgumentException("The background must be opaque.");
+        }
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.composite = new TiledRaster(width, height, background);
+        this.below = new TiledRaster(width, height, background);
+        this.above = new TiledRaster(width, height, 0);
+        this.tilesX = composite.getTilesX();
+        this.tileCount = tilesX * composite.getTilesY();
+        this.stale = new long[(tileCount + 63) >>> 6];
+        addLayer("Layer 1");
+    }
+
+    /**
+     * Gets the width of the document.
+     * @return The width, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the document.
+     * @return The height, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of layers.
+     * @return The number of layers, at least 1.
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * Gets a layer.
+     * @param index The index of the layer, 0 being the bottom layer.
+     * @return The {@code Layer} object.
+     */
+    public Layer getLayer(int index) {
+        return layers.get(index);
+    }
+
+    /**
+     * Adds an empty layer on top of the others. The active layer doesn't change.
+     * @param name The name of the new layer.
+     * @return The new {@code Layer} object.
+     */
+    public Layer addLayer(String name) {
+        Layer layer = new Layer(name, width, height);
+        layer.owner = this;
+        layers.add(layer);
+        return layer; // an empty Normal layer changes none of the caches
+    }
+
+    /**
+     * Removes a layer. The layer above it becomes active if it was the active one.
+     * @param index The index of the layer.
+     * @return The removed {@code Layer} object.
+     * @throws IllegalStateException The stack has a single layer.
+     */
+    public Layer removeLayer(int index) throws IllegalStateException {
+        if (layers.size() == 1) {
+            throw new IllegalStateException("Cannot remove the last layer.");
+        }
+        Layer layer = layers.remove(index);
+        layer.owner = null;
+        if (index < active || active == layers.size()) {
+            active--;
+        }
+        invalidateAll();
+        return layer;
+    }
+
+    /**
+     * Moves a layer up or down the stack. The active layer stays the same object.
+     * @param from The current index of the layer.
+     * @param to The new index of the layer.
+     */
+    public void moveLayer(int from, int to) {
+        if (from == to) return;
+        Layer activeLayer = layers.get(active);
+        layers.add(to, layers.remove(from));
+        active = layers.indexOf(activeLayer);
+        invalidateAll();
+    }
+
+    /**
+     * Gets the index of the layer being drawn on.
+     * @return The index of the active layer.
+     */
+    public int getActiveIndex() {
+        return active;
+    }
+
+    /**
+     * Gets the layer being drawn on.
+     * @return The active {@code Layer} object.
+     */
+    public Layer getActiveLayer() {
+        return layers.get(active);
+    }
+
+    /**
+     * Selects the layer to draw on. The caches are split at the active layer,
+     * so they are all rebuilt by the next {@code update()}.
+     * @param index The index of the layer.
+     * @throws IndexOutOfBoundsException {@code index} is out of range.
+     */
+    public void setActiveIndex(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= layers.size()) {
+            throw new IndexOutOfBoundsException("Layer index out of range: " + index);
+        }
+        if (index == active) return;
+        active = index;
+        invalidateAll();
+    }
+
+    /**
+     * Gets the flattened image of the document. Call {@code update()} first
+     * to bring it up to date.
+     * @return An opaque {@code TiledRaster}.
+     */
+    public TiledRaster getComposite() {
+        return composite;
+    }
+
+    /**
+     * Recomposites the tiles changed since the last update: the dirty tiles
+     * of the layers and the tiles of the layers whose properties have changed.
+     * The recomposited tiles are marked as dirty in the composite.
+     * @return The number of tiles recomposited.
+     */
+    public int update() {
+        int activeIndex = active;
+        int count = layers.size();
+
+        // changes outside the active layer invalidate the caches of their tiles
+        for (int j = 0; j < count; j++) {
+            TiledRaster raster = layers.get(j).getRaster();
+            if (j == activeIndex || raster.getDirtyCount() == 0) continue;
+            for (int t = raster.nextDirtyTile(0); t != -1; t = raster.nextDirtyTile(t + 1)) {
+                setStale(t);
+            }
+            raster.clearDirty();
+        }
+
+        int updated = 0;
+        if (allStale) {
+            aboveGrouped = isAboveNormal();
+            for (int t = 0; t < tileCount; t++) {
+                rebuild(t);
+                compose(t);
+            }
+            updated = tileCount;
+        } else {
+            for (int t = nextStale(0); t != -1; t = nextStale(t + 1)) {
+                rebuild(t);
+                compose(t);
+                updated++;
+            }
+        }
+
+        TiledRaster raster = layers.get(activeIndex).getRaster();
+        for (int t = raster.nextDirtyTile(0); t != -1; t = raster.nextDirtyTile(t + 1)) {
+            if (allStale || isStale(t)) continue; // already done
+            compose(t);
+            updated++;
+        }
+        raster.clearDirty();
+
+        Arrays.fill(stale, 0);
+        allStale = false;
+        return updated;
+    }
+
+    /**
+     * Brings the composite up to date and writes its dirty tiles that
+     * intersect the specified view to a {@code PixelWriter}.
+     * @param writer The destination, for instance the pixel writer of a {@code Canvas}.
+     * @param viewX The x-coordinate of the view's upper-left corner, in document space.
+     * @param viewY The y-coordinate of the view's upper-left corner, in document space.
+     * @param viewWidth The width of the view.
+     * @param viewHeight The height of the view.
+     * @return The number of tiles uploaded.
+     */
+    public int uploadDirtyTiles(PixelWriter writer, int viewX, int viewY, int viewWidth, int viewHeight) {
+        update();
+        return composite.uploadDirtyTiles(writer, viewX, viewY, viewWidth, viewHeight);
+    }
+
+    /**
+     * Gets the approximate number of bytes used by the layers, the caches and the composite.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = composite.getMemoryUsage() + below.getMemoryUsage() + above.getMemoryUsage();
+        for (Layer layer : layers) {
+            bytes += layer.getRaster().getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    /**
+     * Called by a layer whose visibility, opacity or blend mode has changed.
+     */
+    void layerChanged(Layer layer) {
+        if (isAboveNormal() != aboveGrouped) {
+            invalidateAll(); // the layers above switch between grouped and one by one
+            return;
+        }
+        TiledRaster raster = layer.getRaster();
+        for (int t = 0; t < tileCount; t++) {
+            if (raster.getTile(t % tilesX, t / tilesX, false) != null) {
+                setStale(t);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the below and above caches of a tile, and releases them when
+     * no layer covers the tile.
+     */
+    private void rebuild(int t) {
+        int tx = t % tilesX, ty = t / tilesX;
+
+        int[] tile = below.getTile(tx, ty, false);
+        boolean started = false;
+        for (int j = 0; j < active; j++) {
+            Layer layer = layers.get(j);
+            int[] src = layer.isVisible() ? layer.getRaster().getTile(tx, ty, false) : null;
+            if (src == null) continue;
+            if (!started) {
+                tile = below.getTile(tx, ty, true);
+                Arrays.fill(tile, background);
+                started = true;
+            }
+            blend(src, tile, layer.getBlend(), layer.getAlpha());
+        }
+        if (!started && tile != null) {
+            below.clearTile(tx, ty); // only the background is left
+        }
+
+        if (!aboveGrouped) return;
+        tile = above.getTile(tx, ty, false);
+        started = false;
+        for (int j = active + 1; j < layers.size(); j++) {
+            Layer layer = layers.get(j);
+            int[] src = layer.isVisible() ? layer.getRaster().getTile(tx, ty, false) : null;
+            if (src == null) continue;
+            if (!started) {
+                tile = above.getTile(tx, ty, true);
+                Arrays.fill(tile, 0);
+                started = true;
+            }
+            group(src, tile, layer.getAlpha());
+        }
+        if (!started && tile != null) {
+            above.clearTile(tx, ty);
+        }
+    }
+
+    /**
+     * Rebuilds the composite of a tile from the caches and the active layer.
+     * The tile is released when no layer covers it.
+     */
+    private void compose(int t) {
+        int tx = t % tilesX, ty = t / tilesX;
+        int[] base = below.getTile(tx, ty, false);
+        if (base == null && !isCovered(tx, ty)) {
+            composite.clearTile(tx, ty); // only the background
+            return;
+        }
+        int[] out = composite.getTile(tx, ty, true);
+
+        if (base == null) {
+            Arrays.fill(out, background);
+        } else {
+            System.arraycopy(base, 0, out, 0, out.length);
+        }
+
+        Layer layer = layers.get(active);
+        int[] src = layer.isVisible() ? layer.getRaster().getTile(tx, ty, false) : null;
+        if (src != null) {
+            blend(src, out, layer.getBlend(), layer.getAlpha());
+        }
+
+        if (aboveGrouped) {
+            int[] group = above.getTile(tx, ty, false);
+            if (group != null) {
+                drawGroup(group, out);
+            }
+        } else {
+            for (int j = active + 1; j < layers.size(); j++) {
+                layer = layers.get(j);
+                src = layer.isVisible() ? layer.getRaster().getTile(tx, ty, false) : null;
+                if (src != null) {
+                    blend(src, out, layer.getBlend(), layer.getAlpha());
+                }
+            }
+        }
+        composite.markDirty(tx << TILE_SHIFT, ty << TILE_SHIFT, TILE_SIZE, TILE_SIZE);
+    }
+
+    /**
+     * Indicates whether the active layer or a layer above it has pixels in a tile.
+     */
+    private boolean isCovered(int tx, int ty) {
+        if (aboveGrouped && above.getTile(tx, ty, false) != null) return true;
+        for (int j = active; j < (aboveGrouped ? active + 1 : layers.size()); j++) {
+            Layer layer = layers.get(j);
+            if (layer.isVisible() && layer.getRaster().getTile(tx, ty, false) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Blends the pixels of a layer over opaque pixels.
+     * @param src Non-premultiplied pixels.
+     * @param dst Opaque pixels, updated in place.
+     * @param mode The blend mode of the layer.
+     * @param opacity The opacity of the layer, between 0 and 255.
+     */
+    private static void blend(int[] src, int[] dst, LayerBlend mode, int opacity) {
+        if (opacity == 0) return;
+
+        if (mode == LayerBlend.Normal) {
+            for (int i = 0; i < src.length; i++) {
+                int s = src[i];
+                int a = s >>> 24;
+                if (a == 0) continue;
+                if (opacity != 0xFF) a = (a * opacity + 127) / 255;
+                if (a == 0xFF) {
+                    dst[i] = s;
+                } else if (a != 0) {
+                    int d = dst[i], ia = 0xFF - a;
+                    int r = (((s >> 16) & 0xFF) * a + ((d >> 16) & 0xFF) * ia + 127) / 255;
+                    int g = (((s >> 8) & 0xFF) * a + ((d >> 8) & 0xFF) * ia + 127) / 255;
+                    int b = ((s & 0xFF) * a + (d & 0xFF) * ia + 127) / 255;
+                    dst[i] = 0xFF000000 | r << 16 | g << 8 | b;
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < src.length; i++) {
+            int s = src[i];
+            int a = s >>> 24;
+            if (a == 0) continue;
+            if (opacity != 0xFF) a = (a * opacity + 127) / 255;
+            if (a == 0) continue;
+
+            int d = dst[i];
+            int r = mix((d >> 16) & 0xFF, (s >> 16) & 0xFF, mode, a);
+            int g = mix((d >> 8) & 0xFF, (s >> 8) & 0xFF, mode, a);
+            int b = mix(d & 0xFF, s & 0xFF, mode, a);
+            dst[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * Blends a channel of a layer with the channel underneath, then mixes
+     * the result with the channel underneath according to the layer's alpha.
+     */
+    private static int mix(int cb, int cs, LayerBlend mode, int a) {
+        int c;
+        switch (mode) {
+            case Multiply:
+                c = (cs * cb + 127) / 255;
+                break;
+            case Screen:
+                c = cs + cb - (cs * cb + 127) / 255;
+                break;
+            case Darken:
+                c = Math.min(cs, cb);
+                break;
+            case Lighten:
+                c = Math.max(cs, cb);
+                break;
+            case Add:
+                c = Math.min(0xFF, cs + cb);
+                break;
+            default:
+                c = cs;
+        }
+        return (c * a + cb * (0xFF - a) + 127) / 255;
+    }
+
+    /**
+     * Draws the pixels of a Normal layer over a premultiplied group.
+     */
+    private static void group(int[] src, int[] dst, int opacity) {
+        if (opacity == 0) return;
+        for (int i = 0; i < src.length; i++) {
+            int s = src[i];
+            int a = s >>> 24;
+            if (a == 0) continue;
+            if (opacity != 0xFF) {
+                a = (a * opacity + 127) / 255;
+                s = (s & 0xFFFFFF) | a << 24;
+            }
+            dst[i] = ColorUtil.blendPremultiplied(ColorUtil.premultiply(s), dst[i]);
+        }
+    }
+
+    /**
+     * Draws a premultiplied group over opaque pixels.
+     */
+    private static void drawGroup(int[] group, int[] dst) {
+        for (int i = 0; i < group.length; i++) {
+            int s = group[i];
+            int ia = 0xFF - (s >>> 24);
+            if (ia == 0xFF) continue;
+            if (ia == 0) {
+                dst[i] = s;
+                continue;
+            }
+            int d = dst[i];
+            int r = ((s >> 16) & 0xFF) + (((d >> 16) & 0xFF) * ia + 127) / 255;
+            int g = ((s >> 8) & 0xFF) + (((d >> 8) & 0xFF) * ia + 127) / 255;
+            int b = (s & 0xFF) + ((d & 0xFF) * ia + 127) / 255;
+            dst[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * Indicates whether every visible layer above the active one uses the Normal mode.
+     */
+    private boolean isAboveNormal() {
+        for (int j = active + 1; j < layers.size(); j++) {
+            Layer layer = layers.get(j);
+            if (layer.isVisible() && layer.getBlend() != LayerBlend.Normal) return false;
+        }
+        return true;
+    }
+
+    private void invalidateAll() {
+        allStale = true;
+    }
+
+    private void setStale(int t) {
+        stale[t >>> 6] |= 1L << t;
+    }
+
+    private boolean isStale(int t) {
+        return (stale[t >>> 6] & (1L << t)) != 0;
+    }
+
+    private int nextStale(int from) {
+        int word = from >>> 6;
+        if (word >= stale.length) return -1;
+
+        long bits = stale[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                int t = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return t < tileCount ? t : -1;
+            }
+            if (++word == stale.length) return -1;
+            bits = stale[word];
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package edu.uopeople.cs1102;
+
+/**
+ * A mip pyramid of an ARGB image: level 0 is the image itself, and each
+ * level is half the size of the previous one, each of its pixels being the
+ * average of a 2x2 block of the previous level.
+ * <p>
+ * The pyramid is updated incrementally: after writing pixels into level 0,
+ * {@code update()} recomputes only the pixels of the smaller levels that
+ * depend on the changed rectangle. Sampling a smaller level when the view
+ * is zoomed out avoids both the aliasing of point sampling and the cost of
+ * averaging the full-resolution image every frame.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class MipPyramid {
+    private final int[][] levels;
+    private final int[] widths, heights;
+
+    /**
+     * Initializes a new instance of the {@code MipPyramid} class, transparent.
+     * @param width The width of level 0, in pixels.
+     * @param height The height of level 0, in pixels.
+     * @param maxLevels The largest number of levels; fewer levels are created
+     * if a 1x1 level is reached first.
+     * @throws IllegalArgumentException An argument is not positive.
+     */
+    public MipPyramid(int width, int height, int maxLevels) throws IllegalArgumentException {
+        if (width <= 0 || height <= 0 || maxLevels <= 0) {
+            throw new IllegalArgumentException("The width, height and number of levels must be positive.");
+        }
+        int count = 1;
+        for (int w = width, h = height; count < maxLevels && (w > 1 || h > 1); count++) {
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+        }
+        levels = new int[count][];
+        widths = new int[count];
+        heights = new int[count];
+        for (int l = 0, w = width, h = height; l < count; l++) {
+            widths[l] = w;
+            heights[l] = h;
+            levels[l] = new int[w * h];
+            w = (w + 1) >> 1;
+            h = (h + 1) >> 1;
+        }
+    }
+
+    /**
+     * Gets the number of levels.
+     * @return The number of levels, level 0 included.
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Gets the pixels of a level, row by row. Write into level 0, then call {@code update()}.
+     * @param level The index of the level.
+     * @return The pixels of the level, in ARGB format.
+     */
+    public int[] getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Gets the width of a level.
+     * @param level The index of the level.
+     * @return The width, in pixels.
+     */
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * Gets the height of a level.
+     * @param level The index of the level.
+     * @return The height, in pixels.
+     */
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * Recomputes the levels above 0 where they depend on a rectangle of level 0.
+     * The rectangle is clipped to the image.
+     * @param x The x-coordinate of the rectangle's upper-left corner.
+     * @param y The y-coordinate of the rectangle's upper-left corner.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     */
+    public void update(int x, int y, int w, int h) {
+        int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, widths[0]), y1 = Math.min(y + h, heights[0]);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int l = 1; l < levels.length; l++) {
+            x0 >>= 1;
+            y0 >>= 1;
+            x1 = Math.min((x1 + 1) >> 1, widths[l]);
+            y1 = Math.min((y1 + 1) >> 1, heights[l]);
+            downsample(l, x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Gets the approximate number of bytes used by the pyramid.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (int[] level : levels) bytes += (long)level.length * Integer.BYTES;
+        return bytes;
+    }
+
+    /**
+     * Averages the 2x2 blocks of the previous level into the rectangle [x0, x1) x [y0, y1) of a level.
+     */
+    private void downsample(int level, int x0, int y0, int x1, int y1) {
+        int[] src = levels[level - 1], dst = levels[level];
+        int sw = widths[level - 1], sh = heights[level - 1], dw = widths[level];
+
+        for (int y = y0; y < y1; y++) {
+            int row0 = 2 * y * sw;
+            int row1 = Math.min(2 * y + 1, sh - 1) * sw; // repeat the last row of an odd height
+            int out = y * dw;
+            for (int x = x0; x < x1; x++) {
+                int sx0 = 2 * x, sx1 = Math.min(sx0 + 1, sw - 1);
+                int p0 = src[row0 + sx0], p1 = src[row0 + sx1];
+                int p2 = src[row1 + sx0], p3 = src[row1 + sx1];
+
+                // two channels per int: 10 bits are enough for the sum of four bytes
+                int rb = (p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF) + (p3 & 0xFF00FF);
+                int ag = ((p0 >>> 8) & 0xFF00FF) + ((p1 >>> 8) & 0xFF00FF)
+                    + ((p2 >>> 8) & 0xFF00FF) + ((p3 >>> 8) & 0xFF00FF);
+                rb = ((rb + 0x20002) >>> 2) & 0xFF00FF;
+                ag = ((ag + 0x20002) >>> 2) & 0xFF00FF;
+                dst[out + x] = ag << 8 | rb;
+            }
+        }
+    }
+}
@@ -20,12 +20,24 @@ public abstract class MouseDraggedBase {
      */
     protected boolean dragging;
     
+    // Timestamps the MouseDragged events; null when latency isn't measured.
+    private LatencyMonitor latencyMonitor;
+    
+    // Records the mouse events; null when the session isn't recorded.
+    private SessionRecording recording;
+    
+    // The time of the mouse event being handled, in nanoseconds.
+    private long eventTime;
+    
     /**
      * The handler for a MousePressed event.
      * @param evt The MousePressed event data.
      */
     protected void mousePressed(MouseEvent evt) {
-        onMousePressed(evt.getX(), evt.getY());
+        eventTime = System.nanoTime();
+        double x = toDocumentX(evt.getX()), y = toDocumentY(evt.getY());
+        record(SessionRecording.PRESS, x, y);
+        onMousePressed(x, y);
     }
     
     /**
@@ -52,7 +64,14 @@ public abstract class MouseDraggedBase {
      * @param evt The mouse event.
      */
     protected void mouseDragged(MouseEvent evt) {
-       onMouseDragged(evt.getX(), evt.getY());
+       LatencyMonitor monitor = latencyMonitor;
+       if (monitor != null) {
+           monitor.eventReceived();
+       }
+       eventTime = System.nanoTime();
+       double x = toDocumentX(evt.getX()), y = toDocumentY(evt.getY());
+       record(SessionRecording.DRAG, x, y);
+       onMouseDragged(x, y);
     }
     
     /**
@@ -73,13 +92,55 @@ public abstract class MouseDraggedBase {
     }
 
     /**
-     * Called whenever the user releases the mouse button. Just sets
-     * dragging to false.
+     * Called whenever the user releases the mouse button. What should happen
+     * during this event must be implemented in the onMouseReleased(double, double) method.
+     * @param evt The mouse event.
      */
     protected void mouseReleased(MouseEvent evt) {
+        eventTime = System.nanoTime();
+        double x = toDocumentX(evt.getX()), y = toDocumentY(evt.getY());
+        record(SessionRecording.RELEASE, x, y);
+        onMouseReleased(x, y);
+    }
+
+    /**
+     * The real handler for the MouseReleased event. Just sets dragging to false.
+     * This method should be overwritten and called by subclasses that intend
+     * to handle this event.
+     * @param x The x-coordinate of the mouse.
+     * @param y The y-coordinate of the mouse.
+     * @return false if no dragging was happening; otherwise, true.
+     */
+    protected boolean onMouseReleased(double x, double y) {
+        if (!dragging)
+            return false;  // Nothing to do because the user wasn't dragging.
+
         dragging = false;
+        return true;
     }
     
+    /**
+     * Converts the x-coordinate of a mouse event into the coordinate space of
+     * the drawing. This implementation returns {@code x} unchanged; subclasses
+     * whose drawing can be zoomed or scrolled override it.
+     * @param x The x-coordinate of the mouse, relative to the node that received the event.
+     * @return The x-coordinate in document space.
+     */
+    protected double toDocumentX(double x) {
+        return x;
+    }
+
+    /**
+     * Converts the y-coordinate of a mouse event into the coordinate space of
+     * the drawing. This implementation returns {@code y} unchanged; subclasses
+     * whose drawing can be zoomed or scrolled override it.
+     * @param y The y-coordinate of the mouse, relative to the node that received the event.
+     * @return The y-coordinate in document space.
+     */
+    protected double toDocumentY(double y) {
+        return y;
+    }
+
     /**
      * Indicates whether a drag operation is in progress.
      * @return true if the user is dragging with the mouse; otherwise, false.
@@ -88,6 +149,73 @@ public abstract class MouseDraggedBase {
         return dragging;
     }
 
+    /**
+     * Gets the object that measures the latency of the MouseDragged events.
+     * @return A {@code LatencyMonitor} object, or null if latency isn't measured.
+     */
+    public LatencyMonitor getLatencyMonitor() {
+        return latencyMonitor;
+    }
+
+    /**
+     * Sets the object that measures the latency of the MouseDragged events.
+     * The monitor must also be attached to the scene, to know when the pulses end.
+     * @param monitor A {@code LatencyMonitor} object, or null to stop measuring.
+     */
+    public void setLatencyMonitor(LatencyMonitor monitor) {
+        latencyMonitor = monitor;
+    }
+
+    /**
+     * Gets the object that records the input of the session.
+     * @return A {@code SessionRecording} object, or null if the session isn't recorded.
+     */
+    public SessionRecording getRecording() {
+        return recording;
+    }
+
+    /**
+     * Sets the object that records the input of the session.
+     * @param recording A {@code SessionRecording} object, or null to stop recording.
+     */
+    public void setRecording(SessionRecording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Records an event, if the session is recorded.
+     * @param type The type of the event, as defined by {@code SessionRecording}.
+     * @param x The x-coordinate of the event, or its value.
+     * @param y The y-coordinate of the event, or 0.
+     */
+    protected void record(byte type, double x, double y) {
+        SessionRecording rec = recording;
+        if (rec == null) return;
+        if (SessionRecording.isMouse(type)) {
+            rec.mouse(type, x, y, eventTime);
+        } else {
+            rec.command(type, x);
+        }
+    }
+
+    /**
+     * Gets the time of the mouse event being handled, which gives the speed of the mouse.
+     * @return The value of {@code System.nanoTime()} when the event was received,
+     * or the recorded time of the event during a replay.
+     */
+    protected long getEventTime() {
+        return eventTime;
+    }
+
+    /**
+     * Sets the time of the next mouse event handled, for the events that
+     * don't come from the mouse handlers, such as the replayed ones.
+     * @param nanos The time of the event, in nanoseconds.
+     */
+    void setEventTime(long nanos) {
+        eventTime = nanos;
+    }
+
     /**
      * Gets the current x-coordinate of the mouse as an integer.
      * @return An integer that represents the mouse's current x-coordinate.
@@ -0,0 +1,308 @@
+package edu.uopeople.cs1102;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the statistics of an {@code AdvancedPaint} instance and publishes
+ * them as a JMX MBean named {@code edu.uopeople.cs1102:type=AdvancedPaint,id=<n>}.
+ * <p>
+ * The counters are {@code LongAdder} objects and the frame times a
+ * {@code LatencyHistogram}, so the drawing code updates them without locks
+ * and without contention with the JMX threads that read them. The gauges
+ * are set by the JavaFX application thread when the drawing changes, so
+ * reading them never touches the drawing itself.
+ * </p>
+ * <p>
+ * The frame-time percentiles cover a recent window: the frames of the
+ * previous minute and of the current one.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class PaintStats implements PaintStatsMBean {
+    private static final long WINDOW_NANOS = 60_000_000_000L;
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final LongAdder strokes = new LongAdder();
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder clears = new LongAdder();
+    private final LongAdder paletteChanges = new LongAdder();
+    private final LatencyHistogram frameTime = new LatencyHistogram();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+    private final LongAccumulator longestStallNanos = new LongAccumulator(Math::max, 0);
+
+    // The start of the stall in progress, from System.nanoTime(), or 0.
+    private volatile long stallStart;
+
+    private volatile int canvasWidth, canvasHeight;
+    private volatile long memoryBytes, imageMemoryBytes;
+
+    // The frame times at the start of the previous and the current windows.
+    private LatencyHistogram.Snapshot previousWindow, currentWindow;
+    private long windowStart;
+
+    private ObjectName name;
+
+    /**
+     * Initializes a new instance of the {@code PaintStats} class.
+     */
+    public PaintStats() {
+        resetWindow();
+    }
+
+    /**
+     * Counts a stroke drawn.
+     */
+    public void strokeDrawn() {
+        strokes.increment();
+    }
+
+    /**
+     * Counts a line segment drawn.
+     */
+    public void segmentIssued() {
+        segments.increment();
+    }
+
+    /**
+     * Counts a clear of the drawing.
+     */
+    public void cleared() {
+        clears.increment();
+    }
+
+    /**
+     * Counts a change of the drawing color.
+     */
+    public void paletteChanged() {
+        paletteChanges.increment();
+    }
+
+    /**
+     * Records the time between two frames while drawing.
+     * @param nanos The frame time, in nanoseconds.
+     */
+    public void frameRendered(long nanos) {
+        frameTime.record(nanos);
+    }
+
+    /**
+     * Counts a stall of the JavaFX application thread, when it is detected.
+     * @param start The start of the stall, from {@code System.nanoTime()}.
+     */
+    public void stallStarted(long start) {
+        stalls.increment();
+        stallStart = start;
+    }
+
+    /**
+     * Records the duration of the stall in progress, when it ends.
+     * @param nanos The duration, in nanoseconds.
+     */
+    public void stallEnded(long nanos) {
+        stallNanos.add(nanos);
+        longestStallNanos.accumulate(nanos);
+        stallStart = 0;
+    }
+
+    /**
+     * Sets the size of the canvas.
+     * @param width The width, in pixels.
+     * @param height The height, in pixels.
+     */
+    public void setCanvasSize(int width, int height) {
+        canvasWidth = width;
+        canvasHeight = height;
+    }
+
+    /**
+     * Sets the estimated memory used by the drawing.
+     * @param bytes The number of bytes.
+     */
+    public void setEstimatedMemoryBytes(long bytes) {
+        memoryBytes = bytes;
+    }
+
+    /**
+     * Sets the memory used by the decoded tiles of the imported image.
+     * @param bytes The number of bytes.
+     */
+    public void setImageMemoryBytes(long bytes) {
+        imageMemoryBytes = bytes;
+    }
+
+    @Override
+    public long getStrokesDrawn() {
+        return strokes.sum();
+    }
+
+    @Override
+    public long getSegmentsIssued() {
+        return segments.sum();
+    }
+
+    @Override
+    public long getClears() {
+        return clears.sum();
+    }
+
+    @Override
+    public long getPaletteChanges() {
+        return paletteChanges.sum();
+    }
+
+    @Override
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    @Override
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public long getImageMemoryBytes() {
+        return imageMemoryBytes;
+    }
+
+    @Override
+    public long getFxStalls() {
+        return stalls.sum();
+    }
+
+    @Override
+    public double getFxStallTimeMillis() {
+        return stallNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getLongestFxStallMillis() {
+        return longestStallNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getCurrentFxStallMillis() {
+        long start = stallStart;
+        return start == 0 ? 0 : (System.nanoTime() - start) / 1e6;
+    }
+
+    @Override
+    public long getRecentFrameCount() {
+        return getRecentFrameTime().getCount();
+    }
+
+    @Override
+    public double getRecentFrameTimeP50Millis() {
+        return getRecentFrameTime().getP50() / 1e6;
+    }
+
+    @Override
+    public double getRecentFrameTimeP99Millis() {
+        return getRecentFrameTime().getP99() / 1e6;
+    }
+
+    @Override
+    public double getRecentFrameTimeP999Millis() {
+        return getRecentFrameTime().getP999() / 1e6;
+    }
+
+    /**
+     * Gets the frame times of the previous and the current windows.
+     * @return A new {@code Snapshot} object.
+     */
+    public synchronized LatencyHistogram.Snapshot getRecentFrameTime() {
+        LatencyHistogram.Snapshot now = frameTime.snapshot();
+        if (System.nanoTime() - windowStart >= WINDOW_NANOS) {
+            previousWindow = currentWindow;
+            currentWindow = now;
+            windowStart = System.nanoTime();
+        }
+        return now.since(previousWindow);
+    }
+
+    @Override
+    public void resetCounters() {
+        strokes.reset();
+        segments.reset();
+        clears.reset();
+        paletteChanges.reset();
+        frameTime.reset();
+        stalls.reset();
+        stallNanos.reset();
+        longestStallNanos.reset();
+        resetWindow();
+    }
+
+    @Override
+    public String dumpStats() {
+        LatencyHistogram.Snapshot frames = getRecentFrameTime();
+        return String.format("strokesDrawn=%d%nsegmentsIssued=%d%nclears=%d%npaletteChanges=%d%n"
+            + "canvas=%dx%d%nestimatedMemoryBytes=%d%nimageMemoryBytes=%d%n"
+            + "recentFrames=%d%nrecentFrameTimeMillis p50=%.3f p99=%.3f p999=%.3f max=%.3f%n"
+            + "fxStalls=%d%nfxStallTimeMillis=%.3f%nlongestFxStallMillis=%.3f%n",
+            getStrokesDrawn(), getSegmentsIssued(), getClears(), getPaletteChanges(),
+            canvasWidth, canvasHeight, memoryBytes, imageMemoryBytes, frames.getCount(),
+            frames.getP50() / 1e6, frames.getP99() / 1e6, frames.getP999() / 1e6, frames.getMax() / 1e6,
+            getFxStalls(), getFxStallTimeMillis(), getLongestFxStallMillis());
+    }
+
+    /**
+     * Registers this object with the platform MBean server, under a new name.
+     * Does nothing if it is already registered.
+     * @throws IllegalStateException The MBean server refused the registration.
+     */
+    public synchronized void register() throws IllegalStateException {
+        if (name != null) return;
+        try {
+            ObjectName candidate = new ObjectName("edu.uopeople.cs1102:type=AdvancedPaint,id=" + nextId.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            name = candidate;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the statistics MBean.", e);
+        }
+    }
+
+    /**
+     * Removes this object from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (name == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister the statistics MBean.", e);
+        } finally {
+            name = null;
+        }
+    }
+
+    /**
+     * Gets the name of the MBean.
+     * @return The name under which this object is registered, or null.
+     */
+    public synchronized ObjectName getObjectName() {
+        return name;
+    }
+
+    private synchronized void resetWindow() {
+        previousWindow = currentWindow = frameTime.snapshot();
+        windowStart = System.nanoTime();
+    }
+}
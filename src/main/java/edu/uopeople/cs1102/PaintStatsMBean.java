@@ -0,0 +1,116 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Defines the JMX management interface of the statistics of an {@code AdvancedPaint} instance.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public interface PaintStatsMBean {
+    /**
+     * Gets the number of strokes drawn since the last reset.
+     * @return The number of strokes.
+     */
+    long getStrokesDrawn();
+
+    /**
+     * Gets the number of line segments drawn since the last reset.
+     * @return The number of segments.
+     */
+    long getSegmentsIssued();
+
+    /**
+     * Gets the number of times the drawing has been cleared since the last reset.
+     * @return The number of clears.
+     */
+    long getClears();
+
+    /**
+     * Gets the number of times the drawing color has changed since the last reset.
+     * @return The number of color changes.
+     */
+    long getPaletteChanges();
+
+    /**
+     * Gets the width of the canvas.
+     * @return The width, in pixels.
+     */
+    int getCanvasWidth();
+
+    /**
+     * Gets the height of the canvas.
+     * @return The height, in pixels.
+     */
+    int getCanvasHeight();
+
+    /**
+     * Gets the estimated memory used by the pixels, the strokes, their index and the undo history.
+     * @return The number of bytes.
+     */
+    long getEstimatedMemoryBytes();
+
+    /**
+     * Gets the memory used by the decoded tiles of the imported image.
+     * @return The number of bytes, 0 when no image is imported.
+     */
+    long getImageMemoryBytes();
+
+    /**
+     * Gets the number of frames rendered while drawing, in the recent window.
+     * @return The number of frames.
+     */
+    long getRecentFrameCount();
+
+    /**
+     * Gets the median time between two frames while drawing, in the recent window.
+     * @return The frame time, in milliseconds.
+     */
+    double getRecentFrameTimeP50Millis();
+
+    /**
+     * Gets the 99th percentile of the time between two frames while drawing, in the recent window.
+     * @return The frame time, in milliseconds.
+     */
+    double getRecentFrameTimeP99Millis();
+
+    /**
+     * Gets the 99.9th percentile of the time between two frames while drawing, in the recent window.
+     * @return The frame time, in milliseconds.
+     */
+    double getRecentFrameTimeP999Millis();
+
+    /**
+     * Gets the number of stalls of the JavaFX application thread detected
+     * by a {@code StallWatchdog} since the last reset.
+     * @return The number of stalls, the one in progress included.
+     */
+    long getFxStalls();
+
+    /**
+     * Gets the total duration of the stalls ended since the last reset.
+     * @return The duration, in milliseconds.
+     */
+    double getFxStallTimeMillis();
+
+    /**
+     * Gets the duration of the longest stall ended since the last reset.
+     * @return The duration, in milliseconds.
+     */
+    double getLongestFxStallMillis();
+
+    /**
+     * Gets the duration of the stall in progress.
+     * @return The duration so far, in milliseconds, or 0 if the thread isn't stalled.
+     */
+    double getCurrentFxStallMillis();
+
+    /**
+     * Sets the counters and the frame times to zero.
+     */
+    void resetCounters();
+
+    /**
+     * Formats all the statistics, one per line.
+     * @return A multi-line string.
+     */
+    String dumpStats();
+}
@@ -0,0 +1,28 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Provides enumerated values used to select what the mouse does on the canvas.
+ * @author https://github.com/bigabdoul
+ */
+public enum PaintTool {
+    /** Draws freehand strokes. */
+    Pen,
+
+    /** Erases the strokes under the cursor. */
+    Eraser,
+
+    /** Selects the strokes inside a rubber-band rectangle. */
+    Select,
+
+    /**
+     * Fills the region under the cursor with the current color. A fill only
+     * changes the pixels: erasing strokes later repaints their region from
+     * the strokes alone.
+     */
+    Fill,
+
+    /**
+     * Draws smooth strokes whose width follows the speed of the mouse (see {@code BrushEngine}).
+     */
+    Brush,
+}
@@ -0,0 +1,168 @@
+package edu.uopeople.cs1102;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Collects the points of a stroke between two JavaFX pulses and emits them
+ * as a single path, instead of one {@code strokeLine} call per mouse event.
+ * <p>
+ * The points are kept in a primitive {@code double} array that is reused
+ * from frame to frame. The class also keeps the per-frame counters used to
+ * compare the coalesced mode with the direct (one line per event) mode.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class PathCoalescer {
+    // The pending points, stored as x0, y0, x1, y1, ...
+    private double[] points = new double[256];
+    private int size;
+
+    // The last point that has been rendered; the next path starts here.
+    private double anchorX, anchorY;
+
+    // Counters for the frame in progress.
+    private int frameEvents, frameCommands;
+
+    // Counters for the last completed frame.
+    private int lastFrameEvents, lastFrameCommands;
+
+    // Running totals.
+    private long totalEvents, totalCommands, frames;
+
+    /**
+     * Starts a new stroke at the specified location, dropping any pending point.
+     * @param x The x-coordinate where the stroke starts.
+     * @param y The y-coordinate where the stroke starts.
+     */
+    public void begin(double x, double y) {
+        anchorX = x;
+        anchorY = y;
+        size = 0;
+    }
+
+    /**
+     * Queues a point of the current stroke until the next flush.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     */
+    public void add(double x, double y) {
+        if (size + 2 > points.length) {
+            double[] grown = new double[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, size);
+            points = grown;
+        }
+        points[size++] = x;
+        points[size++] = y;
+        frameEvents++;
+    }
+
+    /**
+     * Records an event that has been rendered directly with its own
+     * {@code strokeLine} call, i.e. when coalescing is turned off.
+     */
+    public void countDirect() {
+        frameEvents++;
+        frameCommands++;
+    }
+
+    /**
+     * Renders the pending points as a single path with the current stroke
+     * settings of the specified graphics context.
+     * @param g The graphics context to draw on.
+     * @return The number of points that have been rendered.
+     */
+    public int flush(GraphicsContext g) {
+        if (size == 0) return 0;
+
+        // Building a path only records geometry; stroke() is the sole
+        // command that goes into the canvas's render buffer.
+        g.beginPath();
+        g.moveTo(anchorX, anchorY);
+
+        for (int i = 0; i < size; i += 2) {
+            g.lineTo(points[i], points[i + 1]);
+        }
+
+        g.stroke();
+        frameCommands++;
+
+        anchorX = points[size - 2];
+        anchorY = points[size - 1];
+
+        int count = size / 2;
+        size = 0;
+        return count;
+    }
+
+    /**
+     * Closes the frame in progress and makes its counters available
+     * through {@code getLastFrameEvents()} and {@code getLastFrameCommands()}.
+     */
+    public void endFrame() {
+        lastFrameEvents = frameEvents;
+        lastFrameCommands = frameCommands;
+        totalEvents += frameEvents;
+        totalCommands += frameCommands;
+        frames++;
+        frameEvents = 0;
+        frameCommands = 0;
+    }
+
+    /**
+     * Gets the number of pending (not yet rendered) points.
+     * @return The number of points waiting for the next flush.
+     */
+    public int getPendingCount() {
+        return size / 2;
+    }
+
+    /**
+     * Gets the number of mouse events received during the last completed frame.
+     * @return The number of events in the last frame.
+     */
+    public int getLastFrameEvents() {
+        return lastFrameEvents;
+    }
+
+    /**
+     * Gets the number of render commands issued during the last completed frame.
+     * @return The number of render commands in the last frame.
+     */
+    public int getLastFrameCommands() {
+        return lastFrameCommands;
+    }
+
+    /**
+     * Gets the average number of mouse events per frame since the last reset.
+     * @return The average number of events per frame.
+     */
+    public double getEventsPerFrame() {
+        return frames == 0 ? 0 : (double)totalEvents / frames;
+    }
+
+    /**
+     * Gets the average number of render commands per frame since the last reset.
+     * @return The average number of render commands per frame.
+     */
+    public double getCommandsPerFrame() {
+        return frames == 0 ? 0 : (double)totalCommands / frames;
+    }
+
+    /**
+     * Gets the number of frames counted since the last reset.
+     * @return The number of frames.
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void resetCounters() {
+        frameEvents = frameCommands = 0;
+        lastFrameEvents = lastFrameCommands = 0;
+        totalEvents = totalCommands = frames = 0;
+    }
+}
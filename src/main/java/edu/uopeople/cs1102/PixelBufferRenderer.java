@@ -0,0 +1,591 @@
+package edu.uopeople.cs1102;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Rasterizes the drawing commands of an {@code AdvancedPaint} object on a
+ * render thread, into images that share their memory with the renderer.
+ * <p>
+ * The JavaFX application thread only queues the commands: parts of
+ * strokes (whose points are copied), clears, pixel rectangles and the
+ * rubber band. The render thread applies them with the
+ * {@code SoftwareRasterizer} to a master raster, then copies the rectangle
+ * they changed into one of two {@code PixelBuffer}s backed by direct
+ * {@code IntBuffer}s. At the next pulse, the application thread calls
+ * {@code updateBuffer()} with the changed rectangle and shows that buffer;
+ * it does no pixel work at all.
+ * </p>
+ * <p>
+ * The buffer that is no longer shown is handed back to the render thread
+ * one pulse later, once the pulse that showed it has been rendered: the
+ * render thread never writes a buffer that the graphics pipeline may be
+ * reading, so the image never tears. Before a buffer is written again, the
+ * rectangles changed in the other buffer since then are copied into it from
+ * the master raster.
+ * </p>
+ * <p>
+ * The images are in premultiplied ARGB format, which is the plain ARGB of
+ * the drawing since all its pixels are opaque.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class PixelBufferRenderer implements Closeable {
+    // The kinds of commands.
+    private static final byte DRAW = 1, CLEAR = 2, CLIP = 3, PIXELS = 4, BAND = 5, UNBAND = 6;
+
+    // The length of the dashes of the rubber band.
+    private static final int DASH = 4;
+
+    private final int width, height;
+    private final int[] master;
+    private final IntBuffer[] buffers = new IntBuffer[2];
+    private final PixelBuffer<IntBuffer>[] pixelBuffers;
+    private final WritableImage[] images = new WritableImage[2];
+    private final SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+    private final Thread thread;
+
+    // Guards everything below; the render thread waits on it for work and for a free buffer.
+    private final Object lock = new Object();
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private boolean busy, unpublished, closed;
+
+    // The buffer shown, the one ready to be shown, the one released at the
+    // next pulse and the one the render thread may write; -1 for none.
+    private int shown, ready = -1, releasing = -1, free = 1;
+
+    // Per buffer: the rectangle {x0, y0, x1, y1} changed in the master raster
+    // since the buffer was last written, and the one written since it was last shown.
+    private final int[][] stale = new int[2][4], written = new int[2][4];
+
+    private long commandsApplied, framesPublished, framesShown;
+
+    // Used by the render thread only.
+    private final StrokeStore scratch = new StrokeStore();
+    private int clipX0, clipY0, clipX1, clipY1;
+
+    // Used by the render thread only: the pixels under the rubber band, by
+    // index in the master raster, and the rectangle they cover.
+    private int[] bandIndices = new int[0], bandValues = new int[0];
+    private int bandCount;
+    private final int[] bandRect = new int[4];
+
+    /**
+     * A queued command. The fields used depend on its kind.
+     */
+    private static final class Command {
+        final byte kind;
+        int x0, y0, x1, y1;
+        int argb;
+        float lineWidth;
+        boolean variable;
+        float[] points;        // x, y and, for a variable-width stroke, width
+        int count, from, to;   // the points, and those drawn
+        int[] pixels;
+
+        Command(byte kind) {
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * Initializes a new instance of the {@code PixelBufferRenderer} class and
+     * starts its render thread. Must be called with a running JavaFX toolkit.
+     * @param width The width of the drawing, in pixels.
+     * @param height The height of the drawing, in pixels.
+     * @throws IllegalArgumentException The width or the height is not positive.
+     */
+    public PixelBufferRenderer(int width, int height) throws IllegalArgumentException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and the height must be positive.");
+        }
+        this.width = width;
+        this.height = height;
+        this.master = new int[width * height];
+        @SuppressWarnings("unchecked") // an array of a generic type can't be created directly
+        PixelBuffer<IntBuffer>[] pixelBuffers = (PixelBuffer<IntBuffer>[])new PixelBuffer<?>[2];
+        this.pixelBuffers = pixelBuffers;
+        for (int i = 0; i < 2; i++) {
+            IntBuffer buffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            buffers[i] = buffer.duplicate(); // the render thread's position doesn't move the pipeline's
+            pixelBuffers[i] = new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+            images[i] = new WritableImage(pixelBuffers[i]);
+            empty(stale[i]);
+            empty(written[i]);
+        }
+        clipX1 = width;
+        clipY1 = height;
+
+        thread = new Thread(this::run, "PixelBufferRenderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the width of the images.
+     * @return The width of the drawing, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the images.
+     * @return The height of the drawing, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the image shown, which changes at the pulses where {@code pulse()} returns a new one.
+     * @return One of the two images of this renderer.
+     */
+    public WritableImage getImage() {
+        synchronized (lock) {
+            return images[shown];
+        }
+    }
+
+    /**
+     * Queues a part of a stroke: the segments between the points [from, to)
+     * of a constant-width stroke, or the pieces between them for a
+     * variable-width stroke. The points needed are copied.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke.
+     * @param from The index of the first point drawn.
+     * @param to The index that follows the last point drawn.
+     */
+    public void drawStroke(StrokeStore store, int stroke, int from, int to) {
+        Command command = new Command(DRAW);
+        command.argb = store.getArgb(stroke);
+        command.lineWidth = store.getLineWidth(stroke);
+        command.variable = store.isVariableWidth(stroke);
+
+        // the pieces of a variable-width stroke also depend on the points around them
+        int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+        int copyFrom = command.variable ? Math.max(first, from - 1) : from;
+        int copyTo = command.variable ? Math.min(end, to + 1) : to;
+        int stride = command.variable ? 3 : 2;
+        command.count = copyTo - copyFrom;
+        command.points = new float[command.count * stride];
+        for (int i = copyFrom, k = 0; i < copyTo; i++, k += stride) {
+            command.points[k] = store.getX(i);
+            command.points[k + 1] = store.getY(i);
+            if (command.variable) command.points[k + 2] = store.getWidth(i);
+        }
+        command.from = from - copyFrom;
+        command.to = to - copyFrom;
+        submit(command);
+    }
+
+    /**
+     * Queues a clear of the clip rectangle to the background and the border.
+     */
+    public void clear() {
+        submit(new Command(CLEAR));
+    }
+
+    /**
+     * Queues a change of the rectangle to which the next strokes and clears are clipped.
+     * @param x0 The left edge of the rectangle, inclusive.
+     * @param y0 The top edge of the rectangle, inclusive.
+     * @param x1 The right edge of the rectangle, exclusive.
+     * @param y1 The bottom edge of the rectangle, exclusive.
+     */
+    public void setClip(int x0, int y0, int x1, int y1) {
+        Command command = new Command(CLIP);
+        command.x0 = Math.max(0, x0);
+        command.y0 = Math.max(0, y0);
+        command.x1 = Math.min(width, x1);
+        command.y1 = Math.min(height, y1);
+        submit(command);
+    }
+
+    /**
+     * Queues the removal of the clip rectangle.
+     */
+    public void resetClip() {
+        setClip(0, 0, width, height);
+    }
+
+    /**
+     * Queues a rectangle of pixels, which is not clipped. The pixels are copied.
+     * @param x The left edge of the rectangle.
+     * @param y The top edge of the rectangle.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param argb The pixels, in ARGB format.
+     * @param offset The index of the upper-left pixel of the rectangle in {@code argb}.
+     * @param stride The distance between two rows in {@code argb}.
+     */
+    public void setPixels(int x, int y, int w, int h, int[] argb, int offset, int stride) {
+        Command command = new Command(PIXELS);
+        command.x0 = x;
+        command.y0 = y;
+        command.x1 = x + w;
+        command.y1 = y + h;
+        command.pixels = new int[w * h];
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(argb, offset + row * stride, command.pixels, row * w, w);
+        }
+        submit(command);
+    }
+
+    /**
+     * Queues a rubber band: a one-pixel dashed black rectangle. The pixels
+     * it covers are saved, and put back by {@code hideBand()}.
+     * @param x0 The left edge of the rectangle.
+     * @param y0 The top edge of the rectangle.
+     * @param x1 The right edge of the rectangle.
+     * @param y1 The bottom edge of the rectangle.
+     */
+    public void drawBand(int x0, int y0, int x1, int y1) {
+        Command command = new Command(BAND);
+        command.x0 = x0;
+        command.y0 = y0;
+        command.x1 = x1;
+        command.y1 = y1;
+        submit(command);
+    }
+
+    /**
+     * Queues the removal of the last rubber band: the pixels it covered are
+     * put back as they were before it was drawn.
+     */
+    public void hideBand() {
+        submit(new Command(UNBAND));
+    }
+
+    /**
+     * Waits until the render thread has applied all the queued commands.
+     * @throws IllegalStateException The renderer is closed, or the thread is interrupted.
+     */
+    public void awaitIdle() throws IllegalStateException {
+        synchronized (lock) {
+            awaitIdleLocked();
+        }
+    }
+
+    /**
+     * Waits for the queued commands, then copies the drawing.
+     * @return The pixels of the drawing, in ARGB format, row by row.
+     * @throws IllegalStateException The renderer is closed, or the thread is interrupted.
+     */
+    public int[] capture() throws IllegalStateException {
+        synchronized (lock) {
+            awaitIdleLocked();
+            return master.clone(); // the render thread cannot start a batch meanwhile
+        }
+    }
+
+    /**
+     * Waits for the queued commands, then copies rows of the drawing.
+     * @param y The index of the first row to copy.
+     * @param rows The number of rows to copy.
+     * @param argb The array that receives the pixels, in ARGB format, row by row.
+     * @throws IllegalStateException The renderer is closed, or the thread is interrupted.
+     */
+    public void copyRows(int y, int rows, int[] argb) throws IllegalStateException {
+        synchronized (lock) {
+            awaitIdleLocked();
+            System.arraycopy(master, y * width, argb, 0, rows * width);
+        }
+    }
+
+    private void awaitIdleLocked() throws IllegalStateException {
+        try {
+            while (!closed && (busy || !queue.isEmpty())) {
+                lock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the renderer.", e);
+        }
+        if (closed) {
+            throw new IllegalStateException("The renderer is closed.");
+        }
+    }
+
+    /**
+     * Shows the last frame rendered, if any. Must be called once per pulse on
+     * the JavaFX application thread, before the scene is rendered.
+     * @return The image to show from now on, or null if it hasn't changed.
+     */
+    public WritableImage pulse() {
+        synchronized (lock) {
+            if (releasing >= 0) {
+                // the pulse that stopped showing it has been rendered
+                free = releasing;
+                releasing = -1;
+                lock.notifyAll();
+            }
+            if (ready < 0) return null;
+
+            int b = ready;
+            ready = -1;
+            int[] r = written[b];
+            Rectangle2D dirty = new Rectangle2D(r[0], r[1], r[2] - r[0], r[3] - r[1]);
+            empty(r);
+            pixelBuffers[b].updateBuffer(buffer -> dirty);
+
+            releasing = shown;
+            shown = b;
+            framesShown++;
+            Platform.requestNextPulse(); // to release the other buffer
+            return images[b];
+        }
+    }
+
+    /**
+     * Gets the number of commands waiting for the render thread.
+     * @return The length of the queue.
+     */
+    public int getQueueLength() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Gets the number of commands applied by the render thread.
+     * @return The number of commands applied since the renderer started.
+     */
+    public long getCommandsApplied() {
+        synchronized (lock) {
+            return commandsApplied;
+        }
+    }
+
+    /**
+     * Gets the number of frames written into a buffer by the render thread.
+     * @return The number of frames published since the renderer started.
+     */
+    public long getFramesPublished() {
+        synchronized (lock) {
+            return framesPublished;
+        }
+    }
+
+    /**
+     * Gets the number of frames shown by {@code pulse()}.
+     * @return The number of frames shown since the renderer started.
+     */
+    public long getFramesShown() {
+        synchronized (lock) {
+            return framesShown;
+        }
+    }
+
+    /**
+     * Stops the render thread. The commands still queued are discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            queue.clear();
+            lock.notifyAll();
+        }
+    }
+
+    private void submit(Command command) {
+        synchronized (lock) {
+            if (closed) return;
+            queue.add(command);
+            if (queue.size() == 1) lock.notifyAll();
+        }
+    }
+
+    /**
+     * The loop of the render thread: applies the queued commands, then
+     * publishes the changes into the free buffer, if any.
+     */
+    private void run() {
+        Command[] batch = new Command[64];
+        int[] damage = new int[4];
+        while (true) {
+            int count;
+            synchronized (lock) {
+                try {
+                    while (!closed && queue.isEmpty() && !(unpublished && free >= 0)) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+                count = queue.size();
+                if (batch.length < count) batch = new Command[Math.max(count, batch.length * 2)];
+                for (int i = 0; i < count; i++) {
+                    batch[i] = queue.poll();
+                }
+                busy = count > 0;
+            }
+
+            empty(damage);
+            for (int i = 0; i < count; i++) {
+                apply(batch[i], damage);
+                batch[i] = null;
+            }
+
+            int b;
+            synchronized (lock) {
+                busy = false;
+                commandsApplied += count;
+                if (damage[0] < damage[2]) {
+                    union(stale[0], damage);
+                    union(stale[1], damage);
+                    unpublished = true;
+                }
+                lock.notifyAll();
+                if (!unpublished || free < 0) continue;
+                b = free;
+                free = -1;
+                unpublished = false;
+            }
+
+            // the buffer isn't read by the pipeline: bring it up to date
+            int[] r = stale[b];
+            copyToBuffer(b, r);
+
+            synchronized (lock) {
+                union(written[b], r);
+                empty(r);
+                ready = b;
+                framesPublished++;
+            }
+            Platform.requestNextPulse();
+        }
+    }
+
+    private void copyToBuffer(int b, int[] r) {
+        IntBuffer buffer = buffers[b];
+        int w = r[2] - r[0];
+        for (int y = r[1]; y < r[3]; y++) {
+            int offset = y * width + r[0];
+            buffer.position(offset);
+            buffer.put(master, offset, w);
+        }
+    }
+
+    /**
+     * Applies a command to the master raster and adds the pixels it changed to {@code damage}.
+     */
+    private void apply(Command command, int[] damage) {
+        switch (command.kind) {
+            case DRAW: {
+                scratch.clear();
+                scratch.beginCustomStroke(command.argb, command.lineWidth);
+                float[] p = command.points;
+                for (int i = 0; i < command.count; i++) {
+                    if (command.variable) {
+                        scratch.addPoint(p[i * 3], p[i * 3 + 1], p[i * 3 + 2]);
+                    } else {
+                        scratch.addPoint(p[i * 2], p[i * 2 + 1]);
+                    }
+                }
+                scratch.endStroke();
+                union(damage, rasterizer.draw(scratch, 0, command.from, command.to, master, width,
+                    clipX0, clipY0, clipX1, clipY1));
+                break;
+            }
+            case CLEAR:
+                if (clipX0 < clipX1 && clipY0 < clipY1) {
+                    SoftwareRasterizer.fillBackground(master, width, height, clipX0, clipY0, clipX1, clipY1);
+                    union(damage, new int[] { clipX0, clipY0, clipX1, clipY1 });
+                }
+                break;
+            case CLIP:
+                clipX0 = command.x0;
+                clipY0 = command.y0;
+                clipX1 = command.x1;
+                clipY1 = command.y1;
+                break;
+            case PIXELS: {
+                int x0 = Math.max(0, command.x0), y0 = Math.max(0, command.y0);
+                int x1 = Math.min(width, command.x1), y1 = Math.min(height, command.y1);
+                int w = command.x1 - command.x0;
+                for (int y = y0; y < y1; y++) {
+                    System.arraycopy(command.pixels, (y - command.y0) * w + x0 - command.x0, master, y * width + x0, x1 - x0);
+                }
+                if (x0 < x1 && y0 < y1) union(damage, new int[] { x0, y0, x1, y1 });
+                break;
+            }
+            case BAND:
+                drawBand(command, damage);
+                break;
+            case UNBAND:
+                // in reverse order, so a pixel saved twice gets its first value back
+                for (int i = bandCount - 1; i >= 0; i--) {
+                    master[bandIndices[i]] = bandValues[i];
+                }
+                if (bandCount > 0) union(damage, bandRect);
+                bandCount = 0;
+                break;
+            default:
+                throw new IllegalStateException("Unknown command: " + command.kind);
+        }
+    }
+
+    /**
+     * Draws the dashed edges of the rubber band, as the canvas strokes them,
+     * and saves the pixels they cover.
+     */
+    private void drawBand(Command command, int[] damage) {
+        int x0 = command.x0, y0 = command.y0, x1 = command.x1, y1 = command.y1;
+        int capacity = 2 * (Math.max(0, x1 - x0 + 1) + Math.max(0, y1 - y0 + 1));
+        if (bandIndices.length < capacity) {
+            bandIndices = new int[capacity];
+            bandValues = new int[capacity];
+        }
+        bandCount = 0;
+        for (int x = x0; x <= x1; x++) {
+            if ((x - x0) / DASH % 2 != 0) continue;
+            bandPixel(x, y0);
+            bandPixel(x, y1);
+        }
+        for (int y = y0; y <= y1; y++) {
+            if ((y - y0) / DASH % 2 != 0) continue;
+            bandPixel(x0, y);
+            bandPixel(x1, y);
+        }
+        bandRect[0] = Math.max(clipX0, x0);
+        bandRect[1] = Math.max(clipY0, y0);
+        bandRect[2] = Math.min(clipX1, x1 + 1);
+        bandRect[3] = Math.min(clipY1, y1 + 1);
+        union(damage, bandRect);
+    }
+
+    private void bandPixel(int x, int y) {
+        if (x >= clipX0 && x < clipX1 && y >= clipY0 && y < clipY1) {
+            int i = y * width + x;
+            bandIndices[bandCount] = i;
+            bandValues[bandCount++] = master[i];
+            master[i] = 0xFF000000;
+        }
+    }
+
+    private static void empty(int[] r) {
+        r[0] = r[1] = Integer.MAX_VALUE;
+        r[2] = r[3] = Integer.MIN_VALUE;
+    }
+
+    private static void union(int[] r, int[] other) {
+        if (other[0] >= other[2] || other[1] >= other[3]) return;
+        r[0] = Math.min(r[0], other[0]);
+        r[1] = Math.min(r[1], other[1]);
+        r[2] = Math.max(r[2], other[2]);
+        r[3] = Math.max(r[3], other[3]);
+    }
+}
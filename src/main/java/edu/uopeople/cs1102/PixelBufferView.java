@@ -0,0 +1,102 @@
+package edu.uopeople.cs1102;
+
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Region;
+
+/**
+ * Shows the drawing of an {@code AdvancedPaint} object at its actual size,
+ * rendered off the JavaFX application thread by a {@code PixelBufferRenderer}.
+ * <p>
+ * Once the view is created, the {@code AdvancedPaint} object sends its
+ * drawing commands to the renderer instead of its canvas, so heavy strokes
+ * and redraws don't delay the input events. At the end of each pulse, the
+ * view shows the last frame of the renderer, if any.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class PixelBufferView extends Region {
+    private final AdvancedPaint paint;
+    private final PixelBufferRenderer renderer;
+    private final ImageView view = new ImageView();
+    private final Runnable pulseListener = this::onPulse;
+
+    /**
+     * Initializes a new instance of the {@code PixelBufferView} class, which
+     * becomes the view of the specified {@code AdvancedPaint} object. Must be
+     * called on the JavaFX application thread.
+     * @param paint The object that draws the document.
+     */
+    public PixelBufferView(AdvancedPaint paint) {
+        this.paint = paint;
+        this.renderer = new PixelBufferRenderer(paint.getCanvasWidth(), paint.getCanvasHeight());
+        view.setImage(renderer.getImage());
+        getChildren().add(view);
+
+        view.setOnMousePressed(this::mousePressed);
+        view.setOnMouseDragged(paint::mouseDragged);
+        view.setOnMouseReleased(this::mouseReleased);
+
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null) oldScene.removePostLayoutPulseListener(pulseListener);
+            if (newScene != null) newScene.addPostLayoutPulseListener(pulseListener);
+        });
+
+        paint.setPixelBufferView(this);
+    }
+
+    /**
+     * Gets the object that renders the drawing.
+     * @return The {@code PixelBufferRenderer} of this view.
+     */
+    public PixelBufferRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Stops the render thread. The view doesn't change anymore.
+     */
+    public void close() {
+        renderer.close();
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return renderer.getWidth();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return renderer.getHeight();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        view.relocate(0, 0);
+    }
+
+    /**
+     * Called at the end of each pulse.
+     */
+    private void onPulse() {
+        WritableImage image = renderer.pulse();
+        if (image != null) {
+            view.setImage(image);
+        }
+    }
+
+    private void mousePressed(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mousePressed(evt);
+        }
+    }
+
+    private void mouseReleased(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mouseReleased(evt);
+        }
+    }
+}
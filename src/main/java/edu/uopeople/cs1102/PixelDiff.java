@@ -0,0 +1,150 @@
+package edu.uopeople.cs1102;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares two images pixel by pixel, for instance a replayed session with a
+ * golden image. Two pixels are equal when none of their channels (alpha, red,
+ * green and blue) differ by more than a tolerance, which absorbs the small
+ * differences of anti-aliasing between renderers.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class PixelDiff {
+    private final int width, height, tolerance;
+    private int differentPixels, maxDelta;
+    private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+
+    private PixelDiff(int width, int height, int tolerance) {
+        this.width = width;
+        this.height = height;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Compares two images of the same size.
+     * @param actual The pixels of the image to check, in ARGB format, row by row.
+     * @param expected The pixels of the reference image, in ARGB format, row by row.
+     * @param width The width of the images.
+     * @param height The height of the images.
+     * @param tolerance The largest difference allowed on any channel, between 0 and 255.
+     * @return A new {@code PixelDiff} object that describes the differences.
+     * @throws IllegalArgumentException An image is smaller than {@code width * height}
+     * pixels, or the tolerance is out of range.
+     */
+    public static PixelDiff compare(int[] actual, int[] expected, int width, int height, int tolerance)
+            throws IllegalArgumentException {
+        if (actual.length < width * height || expected.length < width * height) {
+            throw new IllegalArgumentException("An image is smaller than " + width + "x" + height + ".");
+        }
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("The tolerance must be between 0 and 255.");
+        }
+        PixelDiff diff = new PixelDiff(width, height, tolerance);
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                int a = actual[i], b = expected[i];
+                if (a == b) continue;
+
+                int delta = Math.max(Math.max(Math.abs((a >>> 24) - (b >>> 24)), Math.abs((a >> 16 & 0xFF) - (b >> 16 & 0xFF))),
+                    Math.max(Math.abs((a >> 8 & 0xFF) - (b >> 8 & 0xFF)), Math.abs((a & 0xFF) - (b & 0xFF))));
+                diff.maxDelta = Math.max(diff.maxDelta, delta);
+                if (delta > tolerance) {
+                    diff.differentPixels++;
+                    diff.minX = Math.min(diff.minX, x);
+                    diff.minY = Math.min(diff.minY, y);
+                    diff.maxX = Math.max(diff.maxX, x);
+                    diff.maxY = Math.max(diff.maxY, y);
+                }
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Compares an image with an image file.
+     * @param actual The pixels of the image to check, in ARGB format, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param golden The reference image, in any format supported by {@code ImageIO} (e.g. PNG).
+     * @param tolerance The largest difference allowed on any channel, between 0 and 255.
+     * @return A new {@code PixelDiff} object that describes the differences.
+     * @throws IOException The file cannot be read, or its size is not {@code width x height}.
+     */
+    public static PixelDiff compare(int[] actual, int width, int height, Path golden, int tolerance) throws IOException {
+        BufferedImage image = ImageIO.read(golden.toFile());
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + golden);
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IOException("The golden image is " + image.getWidth() + "x" + image.getHeight()
+                + ", not " + width + "x" + height + ": " + golden);
+        }
+        return compare(actual, image.getRGB(0, 0, width, height, null, 0, width), width, height, tolerance);
+    }
+
+    /**
+     * Writes an image as a PNG file, for instance to create a golden image.
+     * @param argb The pixels of the image, in ARGB format, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException An I/O error occurs.
+     */
+    public static void writePng(int[] argb, int width, int height, Path path) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, argb, 0, width);
+        if (!ImageIO.write(image, "png", path.toFile())) {
+            throw new IOException("No PNG writer is available.");
+        }
+    }
+
+    /**
+     * Gets the number of pixels that differ by more than the tolerance.
+     * @return The number of different pixels.
+     */
+    public int getDifferentPixels() {
+        return differentPixels;
+    }
+
+    /**
+     * Gets the largest difference found on any channel of any pixel, tolerated or not.
+     * @return The difference, between 0 and 255.
+     */
+    public int getMaxDelta() {
+        return maxDelta;
+    }
+
+    /**
+     * Gets the tolerance of the comparison.
+     * @return The largest difference allowed on any channel.
+     */
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Indicates whether the images match.
+     * @param maxDifferentPixels The number of different pixels allowed.
+     * @return true if no more than {@code maxDifferentPixels} pixels differ; otherwise, false.
+     */
+    public boolean matches(int maxDifferentPixels) {
+        return differentPixels <= maxDifferentPixels;
+    }
+
+    /**
+     * Describes the differences: their number, their bounding box and the largest difference.
+     */
+    @Override
+    public String toString() {
+        if (differentPixels == 0) {
+            return String.format("%dx%d images match (tolerance %d, max delta %d)", width, height, tolerance, maxDelta);
+        }
+        return String.format("%d of %d pixels differ by more than %d in [%d, %d]-[%d, %d] (max delta %d)",
+            differentPixels, width * height, tolerance, minX, minY, maxX, maxY, maxDelta);
+    }
+}
@@ -0,0 +1,360 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes images as PNG files, compressing horizontal bands in parallel.
+ * <p>
+ * The image is read from a {@code Source} one band of rows at a time, so
+ * the whole image is never in memory. Each band is filtered (every row
+ * with the PNG filter that gives the smallest sum of absolute values) and
+ * compressed by its own {@code Deflater} on a worker thread. A band ends
+ * with a sync flush, which aligns it on a byte boundary, so the compressed
+ * bands simply follow each other in the zlib stream, as in pigz; the Adler-32
+ * checksums of the bands are combined in order. Each band is written as an
+ * {@code IDAT} chunk as soon as the bands before it are, and at most
+ * {@code 2 * threads} bands are in flight, so the memory used depends on
+ * the size of a band and on the number of threads, not on the image.
+ * </p>
+ * <p>
+ * The images are written as 8-bit RGB, without alpha: the drawings are opaque.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class PngExport {
+    /** The approximate number of bytes of the rows of a band, before compression. */
+    public static final int BAND_BYTES = 1 << 18;
+
+    private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int BYTES_PER_PIXEL = 3;
+
+    // The modulus of Adler-32.
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * Provides the pixels of an image, one band of rows at a time.
+     */
+    public interface Source {
+        /**
+         * Reads rows of the image. Called on the thread that writes the file,
+         * from the first row to the last.
+         * @param y The index of the first row to read.
+         * @param rows The number of rows to read.
+         * @param argb The array that receives the pixels, in ARGB format, row after row.
+         * @throws IOException The pixels cannot be read.
+         */
+        void read(int y, int rows, int[] argb) throws IOException;
+    }
+
+    /**
+     * A band of rows, read and then compressed.
+     */
+    private static final class Band {
+        final int[] argb;
+        final int[] previousRow; // the row above the band, or null for the first band
+        final int rows;
+        final boolean last;
+        byte[] compressed;
+        int length, adler, rawLength;
+
+        Band(int[] argb, int[] previousRow, int rows, boolean last) {
+            this.argb = argb;
+            this.previousRow = previousRow;
+            this.rows = rows;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private PngExport() {
+    }
+
+    /**
+     * Writes an image as a PNG file with the default compression, using all processors.
+     * @param path The file to write, which is replaced if it exists.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param source The pixels of the image.
+     * @return The number of bytes written.
+     * @throws IOException An I/O error occurs, or the source fails.
+     */
+    public static long write(Path path, int width, int height, Source source) throws IOException {
+        return write(path, width, height, source, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Writes an image as a PNG file.
+     * @param path The file to write, which is replaced if it exists.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param source The pixels of the image.
+     * @param level The compression level, from 0 to 9, or {@code Deflater.DEFAULT_COMPRESSION}.
+     * @param threads The number of bands compressed at the same time.
+     * @return The number of bytes written.
+     * @throws IllegalArgumentException The size, the level or the number of threads is not valid.
+     * @throws IOException An I/O error occurs, or the source fails.
+     */
+    public static long write(Path path, int width, int height, Source source, int level, int threads)
+            throws IllegalArgumentException, IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and the height must be positive.");
+        }
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("The compression level must be between 0 and 9.");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive.");
+        }
+        int bandRows = Math.max(1, Math.min(height, BAND_BYTES / (width * BYTES_PER_PIXEL)));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "PngExport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChunkWriter writer = new ChunkWriter(channel);
+            channel.write(ByteBuffer.wrap(SIGNATURE));
+            ByteBuffer header = ByteBuffer.allocate(13);
+            header.putInt(width).putInt(height).put((byte)8).put((byte)2) // 8-bit RGB
+                .put((byte)0).put((byte)0).put((byte)0); // deflate, adaptive filtering, not interlaced
+            writer.chunk("IHDR", header.array(), 0, 13, null, null);
+
+            ArrayDeque<Future<Band>> inFlight = new ArrayDeque<>();
+            int[] previousRow = null;
+            int adler = 1;
+            for (int y = 0; y < height; y += bandRows) {
+                int rows = Math.min(bandRows, height - y);
+                int[] argb = new int[rows * width];
+                source.read(y, rows, argb);
+
+                Band band = new Band(argb, previousRow, rows, y + rows == height);
+                previousRow = new int[width];
+                System.arraycopy(argb, (rows - 1) * width, previousRow, 0, width);
+                inFlight.add(pool.submit(() -> compress(band, width, level)));
+
+                if (inFlight.size() >= 2 * threads) {
+                    adler = writeBand(writer, await(inFlight.poll()), adler);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                adler = writeBand(writer, await(inFlight.poll()), adler);
+            }
+            writer.chunk("IEND", null, 0, 0, null, null);
+            return channel.position();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Band await(Future<Band> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting the image.");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress the image.", e.getCause());
+        }
+    }
+
+    /**
+     * Writes a compressed band as an {@code IDAT} chunk, with the zlib
+     * header before the first band and the checksum after the last one.
+     * @return The Adler-32 checksum of the bands written so far.
+     */
+    private static int writeBand(ChunkWriter writer, Band band, int adler) throws IOException {
+        boolean first = band.previousRow == null;
+        adler = adler32Combine(adler, band.adler, band.rawLength);
+        byte[] prefix = first ? new byte[] { 0x78, 0x01 } : null; // deflate, 32K window, no dictionary
+        byte[] suffix = band.last ? ByteBuffer.allocate(4).putInt(adler).array() : null;
+        writer.chunk("IDAT", band.compressed, 0, band.length, prefix, suffix);
+        return adler;
+    }
+
+    /**
+     * Filters and compresses a band, on a worker thread.
+     */
+    private static Band compress(Band band, int width, int level) {
+        int stride = width * BYTES_PER_PIXEL;
+        byte[] filtered = new byte[band.rows * (stride + 1)];
+        byte[] previous = new byte[stride], current = new byte[stride];
+        byte[][] candidates = new byte[5][stride];
+        if (band.previousRow != null) {
+            toRgb(band.previousRow, 0, width, previous);
+        }
+        for (int row = 0; row < band.rows; row++) {
+            toRgb(band.argb, row * width, width, current);
+            filterRow(previous, current, candidates, filtered, row * (stride + 1));
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        Adler32 checksum = new Adler32();
+        checksum.update(filtered);
+        band.adler = (int)checksum.getValue();
+        band.rawLength = filtered.length;
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(filtered);
+            if (band.last) deflater.finish();
+            byte[] out = new byte[Math.max(1024, filtered.length / 4)];
+            int n = 0;
+            while (true) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                n += deflater.deflate(out, n, out.length - n, band.last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // the output is complete when the deflater stops before the end of the buffer
+                if (band.last ? deflater.finished() : n < out.length) break;
+            }
+            band.compressed = out;
+            band.length = n;
+        } finally {
+            deflater.end();
+        }
+        return band;
+    }
+
+    private static void toRgb(int[] argb, int offset, int width, byte[] rgb) {
+        for (int x = 0, i = 0; x < width; x++) {
+            int p = argb[offset + x];
+            rgb[i++] = (byte)(p >> 16);
+            rgb[i++] = (byte)(p >> 8);
+            rgb[i++] = (byte)p;
+        }
+    }
+
+    /**
+     * Writes a row with the filter whose output has the smallest sum of
+     * absolute values, the heuristic recommended by the PNG specification.
+     * The five filtered rows are computed in one pass, into {@code candidates}.
+     */
+    private static void filterRow(byte[] previous, byte[] current, byte[][] candidates, byte[] out, int offset) {
+        byte[] none = candidates[0], sub = candidates[1], up = candidates[2], average = candidates[3], paeth = candidates[4];
+        int length = current.length;
+        long[] sums = new long[5];
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+        for (int i = 0; i < length; i++) {
+            int x = current[i] & 0xFF, b = previous[i] & 0xFF, a = 0, c = 0;
+            if (i >= BYTES_PER_PIXEL) {
+                a = current[i - BYTES_PER_PIXEL] & 0xFF;
+                c = previous[i - BYTES_PER_PIXEL] & 0xFF;
+            }
+            byte v;
+            none[i] = v = (byte)x;
+            sumNone += v < 0 ? -v : v;
+            sub[i] = v = (byte)(x - a);
+            sumSub += v < 0 ? -v : v;
+            up[i] = v = (byte)(x - b);
+            sumUp += v < 0 ? -v : v;
+            average[i] = v = (byte)(x - ((a + b) >> 1));
+            sumAverage += v < 0 ? -v : v;
+            paeth[i] = v = (byte)(x - paethPredictor(a, b, c));
+            sumPaeth += v < 0 ? -v : v;
+        }
+        sums[0] = sumNone;
+        sums[1] = sumSub;
+        sums[2] = sumUp;
+        sums[3] = sumAverage;
+        sums[4] = sumPaeth;
+        int filter = 0;
+        for (int f = 1; f < 5; f++) {
+            if (sums[f] < sums[filter]) filter = f;
+        }
+        out[offset] = (byte)filter;
+        System.arraycopy(candidates[filter], 0, out, offset + 1, length);
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        // the distances from a + b - c to a, b and c
+        int pa = b - c, pb = a - c, pc = pa + pb;
+        pa = pa < 0 ? -pa : pa;
+        pb = pb < 0 ? -pb : pb;
+        pc = pc < 0 ? -pc : pc;
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Computes the Adler-32 checksum of two blocks from their checksums, as
+     * zlib's {@code adler32_combine()}.
+     * @param adler1 The checksum of the first block.
+     * @param adler2 The checksum of the second block.
+     * @param length2 The length of the second block.
+     * @return The checksum of the first block followed by the second.
+     */
+    static int adler32Combine(int adler1, int adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= (long)ADLER_BASE << 1) sum2 -= (long)ADLER_BASE << 1;
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return (int)(sum1 | sum2 << 16);
+    }
+
+    /**
+     * Writes PNG chunks: length, type, data and CRC-32 of the type and data.
+     */
+    private static final class ChunkWriter {
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer header = ByteBuffer.allocate(8), trailer = ByteBuffer.allocate(4);
+
+        ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void chunk(String type, byte[] data, int offset, int length, byte[] prefix, byte[] suffix) throws IOException {
+            int total = length + (prefix == null ? 0 : prefix.length) + (suffix == null ? 0 : suffix.length);
+            header.clear();
+            header.putInt(total);
+            for (int i = 0; i < 4; i++) header.put((byte)type.charAt(i));
+            header.flip();
+
+            crc.reset();
+            crc.update(header.array(), 4, 4);
+            ByteBuffer[] buffers = {
+                header,
+                ByteBuffer.wrap(prefix == null ? new byte[0] : prefix),
+                ByteBuffer.wrap(data == null ? new byte[0] : data, offset, length),
+                ByteBuffer.wrap(suffix == null ? new byte[0] : suffix),
+                trailer
+            };
+            for (int i = 1; i < 4; i++) {
+                crc.update(buffers[i].duplicate());
+            }
+            trailer.clear();
+            trailer.putInt((int)crc.getValue()).flip();
+
+            long remaining = 8 + total + 4;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+    }
+}
@@ -1,7 +1,21 @@
 package edu.uopeople.cs1102;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
 import javafx.application.Application;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 /**
@@ -21,6 +35,18 @@ import javafx.stage.Stage;
  */
 public final class Program extends Application {
 
+    // Measures the drawing latency when -Dpaint.latencyLog=<file> is set; otherwise, null.
+    private LatencyMonitor latencyMonitor;
+
+    // Reports the stalls of the application thread when -Dpaint.stallLog=<file> is set; otherwise, null.
+    private StallWatchdog stallWatchdog;
+
+    // The drawing, disconnected from the collaboration server on exit.
+    private AdvancedPaint paint;
+
+    // The file where the session is saved on exit when -Dpaint.record=<file> is set; otherwise, null.
+    private Path recordingPath;
+
     /**
      * This main routine allows this class to be run as a program.
      */
@@ -34,19 +60,280 @@ public final class Program extends Application {
     @Override
     public void start(Stage stage) {
         
-        final int width = 600;  // width of the canvas
-        final int height = 400; // height of the canvas
+        final int width = 600;  // initial width of the view
+        final int height = 400; // initial height of the view
         final int paletteWidth = 56;
+        final int documentWidth = 1600;  // width of the drawing
+        final int documentHeight = 1200; // height of the drawing
 
         // Creating an AdvancedPaint object with a GridPane
         // handles the boilerplate code required to get started.
-        AdvancedPaint paint = AdvancedPaint.createWithGridPane(width, height, PalettePos.Left);
+        // -Dpaint.display=pixelbuffer renders off the application thread, at the actual size;
+        // -Dpaint.display=tiles opens a 20000x20000 tiled document, at the actual size,
+        // with as many layers as -Dpaint.layers=<count> (1 by default).
+        String display = System.getProperty("paint.display");
+        AdvancedPaint paint;
+        if ("pixelbuffer".equalsIgnoreCase(display)) {
+            paint = AdvancedPaint.createWithPixelBuffer(documentWidth, documentHeight, PalettePos.Left);
+        } else if ("tiles".equalsIgnoreCase(display)) {
+            paint = AdvancedPaint.createWithTiles(20000, 20000, width, height, PalettePos.Left);
+            for (int i = 1, n = Integer.getInteger("paint.layers", 1); i < n; i++) {
+                paint.addLayer("Layer " + (i + 1));
+            }
+        } else {
+            paint = AdvancedPaint.createWithViewport(documentWidth, documentHeight, PalettePos.Left);
+        }
+        ViewportPane view = paint.getViewportPane();
         
         /* Configure the GUI and show the window. */
         Scene scene = new Scene(paint.getGridPane(), width + paletteWidth, height);
+        
+        // Ctrl+Z to undo, Ctrl+Y or Ctrl+Shift+Z to redo (Cmd on macOS)
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN), paint::undo);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN), paint::redo);
+        scene.getAccelerators().put(
+            new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN), paint::redo);
+        
+        // Ctrl+S to save the drawing, Ctrl+O to open one
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.S, KeyCombination.SHORTCUT_DOWN), () -> save(stage, paint));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.O, KeyCombination.SHORTCUT_DOWN), () -> open(stage, paint));
+        
+        // Ctrl+E to export the drawing as a PNG image, Ctrl+Shift+E as an SVG document
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.E, KeyCombination.SHORTCUT_DOWN), () -> exportPng(stage, paint));
+        scene.getAccelerators().put(
+            new KeyCodeCombination(KeyCode.E, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN), () -> exportSvg(stage, paint));
+        
+        // Ctrl+I to import an image to trace over, Ctrl+Shift+I to remove it
+        if (view != null) {
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.I, KeyCombination.SHORTCUT_DOWN), () -> importImage(stage, paint));
+            scene.getAccelerators().put(
+                new KeyCodeCombination(KeyCode.I, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN), paint::removeImage);
+        }
+        
+        // P for the pen, E for the eraser, S to select strokes, F to fill, B for the brush;
+        // Delete erases the selection
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.P), () -> paint.setTool(PaintTool.Pen));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.E), () -> paint.setTool(PaintTool.Eraser));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.S), () -> paint.setTool(PaintTool.Select));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.F), () -> paint.setTool(PaintTool.Fill));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.B), () -> paint.setTool(PaintTool.Brush));
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.DELETE), paint::eraseSelection);
+        
+        // Ctrl+L to add a layer to a tiled document, Ctrl+Page Up and Ctrl+Page Down
+        // to draw on the layer above or below
+        LayerStack layers = paint.getLayerStack();
+        if (layers != null) {
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.L, KeyCombination.SHORTCUT_DOWN),
+                () -> paint.addLayer("Layer " + (layers.getLayerCount() + 1)));
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.PAGE_UP, KeyCombination.SHORTCUT_DOWN),
+                () -> paint.setActiveLayer(Math.min(layers.getActiveIndex() + 1, layers.getLayerCount() - 1)));
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.PAGE_DOWN, KeyCombination.SHORTCUT_DOWN),
+                () -> paint.setActiveLayer(Math.max(layers.getActiveIndex() - 1, 0)));
+        }
+        
+        // Ctrl+= and Ctrl+- to zoom around the center of the view, Ctrl+0 for the actual size;
+        // the mouse wheel zooms around the mouse, and the right or middle button scrolls
+        if (view != null) {
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.EQUALS, KeyCombination.SHORTCUT_DOWN),
+                () -> view.zoomAt(2, view.getWidth() / 2, view.getHeight() / 2));
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.MINUS, KeyCombination.SHORTCUT_DOWN),
+                () -> view.zoomAt(0.5, view.getWidth() / 2, view.getHeight() / 2));
+            scene.getAccelerators().put(new KeyCodeCombination(KeyCode.DIGIT0, KeyCombination.SHORTCUT_DOWN), view::resetView);
+        }
+        
+        // -Dpaint.latencyLog=<file> logs the event-to-pulse latency every second
+        String latencyLog = System.getProperty("paint.latencyLog");
+        if (latencyLog != null) {
+            latencyMonitor = new LatencyMonitor();
+            latencyMonitor.attach(scene);
+            paint.setLatencyMonitor(latencyMonitor);
+            try {
+                latencyMonitor.startLogging(Paths.get(latencyLog), 1000);
+            } catch (IOException e) {
+                new Alert(AlertType.ERROR, "Could not open the latency log: " + e.getMessage()).showAndWait();
+            }
+        }
+        
+        // -Dpaint.stallLog=<file> reports the stalls of the application thread longer than
+        // -Dpaint.stallThreshold=<ms> (200 by default) into a rolling log
+        String stallLog = System.getProperty("paint.stallLog");
+        if (stallLog != null) {
+            try {
+                long threshold = Long.getLong("paint.stallThreshold", StallWatchdog.DEFAULT_THRESHOLD_MILLIS);
+                stallWatchdog = new StallWatchdog(paint.getStats(), threshold, StallWatchdog.DEFAULT_SAMPLE_MILLIS);
+                stallWatchdog.start(Paths.get(stallLog));
+            } catch (IllegalArgumentException e) {
+                new Alert(AlertType.ERROR, "Could not start the stall watchdog: " + e.getMessage()).showAndWait();
+            }
+        }
+        
+        // -Dpaint.collab=<host>:<port> shares the strokes through a CollabServer
+        String collab = System.getProperty("paint.collab");
+        if (collab != null) {
+            int colon = collab.lastIndexOf(':');
+            try {
+                paint.startCollaboration(collab.substring(0, colon), Integer.parseInt(collab.substring(colon + 1)));
+            } catch (IOException | RuntimeException e) {
+                new Alert(AlertType.ERROR, "Could not join the collaboration server " + collab + ": " + e.getMessage()).showAndWait();
+            }
+        }
+        
+        // -Dpaint.record=<file> records the session and saves it on exit,
+        // -Dpaint.replay=<file> replays a recorded session in real time
+        String record = System.getProperty("paint.record");
+        String replay = System.getProperty("paint.replay");
+        
+        // The drawing is saved continuously into ~/.advancedpaint/autosave.* and
+        // recovered at the next start; -Dpaint.autosave=<path> changes the path
+        // of the files (without extension), -Dpaint.autosave=off disables it.
+        // A recording or a replay starts from a blank drawing and isn't autosaved.
+        String autosave = System.getProperty("paint.autosave",
+            Paths.get(System.getProperty("user.home"), ".advancedpaint", "autosave").toString());
+        if (!"off".equalsIgnoreCase(autosave) && record == null && replay == null) {
+            Path base = Paths.get(autosave).toAbsolutePath();
+            try {
+                Files.createDirectories(base.getParent());
+                paint.startAutosave(base);
+            } catch (IOException e) {
+                // another instance may autosave into the same files
+                new Alert(AlertType.ERROR, "Could not start the autosave: " + e.getMessage()).showAndWait();
+            }
+        }
+        
+        if (record != null) {
+            recordingPath = Paths.get(record);
+            paint.setRecording(new SessionRecording(documentWidth, documentHeight));
+        }
+        this.paint = paint;
         stage.setScene(scene);
-        stage.setResizable(false);
         stage.setTitle("Advanced Paint");
         stage.show();
+        
+        if (replay != null) {
+            try {
+                SessionReplay.play(SessionRecording.load(Paths.get(replay)), paint, null);
+            } catch (IOException | IllegalArgumentException e) {
+                new Alert(AlertType.ERROR, "Could not replay the session: " + e.getMessage()).showAndWait();
+            }
+        }
+    }
+
+    /**
+     * Closes the latency log, the stall watchdog, the collaboration and the
+     * imported image, folds the autosave journal, and saves the session
+     * recording, if any.
+     */
+    @Override
+    public void stop() {
+        if (paint != null) {
+            paint.stopCollaboration();
+            AutosaveJournal journal = paint.getAutosaveJournal();
+            paint.stopAutosave();
+            if (journal != null && journal.getLastError() != null) {
+                new Alert(AlertType.ERROR, "Could not autosave the drawing: " + journal.getLastError().getMessage()).showAndWait();
+            }
+            paint.removeImage();
+            if (paint.getPixelBufferView() != null) {
+                paint.getPixelBufferView().close();
+            }
+            if (recordingPath != null && paint.getRecording() != null) {
+                try {
+                    paint.getRecording().save(recordingPath);
+                } catch (IOException e) {
+                    new Alert(AlertType.ERROR, "Could not save the session: " + e.getMessage()).showAndWait();
+                }
+            }
+        }
+        if (latencyMonitor != null) {
+            latencyMonitor.stopLogging();
+        }
+        if (stallWatchdog != null) {
+            stallWatchdog.stop();
+        }
+    }
+
+    /**
+     * Asks the user for a file and saves the drawing into it.
+     */
+    private static void save(Stage stage, AdvancedPaint paint) {
+        File file = createFileChooser().showSaveDialog(stage);
+        if (file == null) return;
+        try {
+            paint.save(file.toPath());
+        } catch (IOException e) {
+            new Alert(AlertType.ERROR, "Could not save the drawing: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Asks the user for a drawing file and opens it.
+     */
+    private static void open(Stage stage, AdvancedPaint paint) {
+        File file = createFileChooser().showOpenDialog(stage);
+        if (file == null) return;
+        try {
+            paint.load(file.toPath());
+        } catch (IOException | IllegalStateException e) {
+            new Alert(AlertType.ERROR, "Could not open the drawing: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Asks the user for a file and exports the drawing into it, as a PNG image.
+     */
+    private static void exportPng(Stage stage, AdvancedPaint paint) {
+        FileChooser chooser = new FileChooser();
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG images (*.png)", "*.png"));
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) return;
+        boolean started = paint.exportPng(file.toPath(), error -> {
+            if (error != null) {
+                new Alert(AlertType.ERROR, "Could not export the drawing: " + error.getMessage()).showAndWait();
+            }
+        });
+        if (!started) {
+            new Alert(AlertType.ERROR, "The drawing cannot be exported while it is being edited or exported.").showAndWait();
+        }
+    }
+
+    /**
+     * Asks the user for a file and exports the strokes into it, as an SVG
+     * document simplified to a quarter of a pixel, with one decimal.
+     */
+    private static void exportSvg(Stage stage, AdvancedPaint paint) {
+        FileChooser chooser = new FileChooser();
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("SVG documents (*.svg)", "*.svg"));
+        File file = chooser.showSaveDialog(stage);
+        if (file == null) return;
+        try {
+            paint.exportSvg(file.toPath(), 0.25, 1);
+        } catch (IOException e) {
+            new Alert(AlertType.ERROR, "Could not export the drawing: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Asks the user for an image and shows it under the strokes.
+     */
+    private static void importImage(Stage stage, AdvancedPaint paint) {
+        FileChooser chooser = new FileChooser();
+        String[] suffixes = ImageIO.getReaderFileSuffixes();
+        for (int i = 0; i < suffixes.length; i++) {
+            suffixes[i] = "*." + suffixes[i];
+        }
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Images", suffixes));
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) return;
+        try {
+            paint.importImage(file.toPath());
+        } catch (IOException e) {
+            new Alert(AlertType.ERROR, "Could not import the image: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    private static FileChooser createFileChooser() {
+        FileChooser chooser = new FileChooser();
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Drawings (*.apd)", "*.apd"));
+        return chooser;
     }
 }
@@ -0,0 +1,354 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A spatial index over the segments of the strokes of a {@code StrokeStore},
+ * used to find the strokes under the cursor or inside a rectangle without
+ * scanning every segment.
+ * <p>
+ * The canvas is divided into a uniform grid of square cells. Each cell lists
+ * the segments whose bounding box (widened by half the line width) overlaps
+ * it, as (stroke, first point) pairs. The index doesn't copy coordinates: the
+ * candidates found in the cells are tested against the points of the store,
+ * so the index only needs to be updated when segments are added or removed.
+ * </p>
+ * <p>
+ * Segments are inserted one at a time while a stroke is being drawn, or in
+ * bulk with {@code build()}, which sizes every cell exactly. Entries are kept
+ * in stroke order, so the strokes that follow a given one can be removed from
+ * the end of each cell.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class SegmentIndex {
+    /** The default width and height of a cell, in pixels. */
+    public static final int DEFAULT_CELL_SIZE = 32;
+
+    private final int cellSize;
+    private final int columns, rows;
+
+    // Each cell holds stroke, point pairs; cells are allocated on first use.
+    private final int[][] cells;
+    private final int[] counts;
+
+    /**
+     * Initializes a new instance of the {@code SegmentIndex} class with cells of the default size.
+     * @param width The width of the indexed area.
+     * @param height The height of the indexed area.
+     */
+    public SegmentIndex(int width, int height) {
+        this(width, height, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Initializes a new instance of the {@code SegmentIndex} class. Segments
+     * outside of the indexed area are kept in the cells of its edges.
+     * @param width The width of the indexed area.
+     * @param height The height of the indexed area.
+     * @param cellSize The width and height of a cell.
+     * @throws IllegalArgumentException One of the dimensions is not positive.
+     */
+    public SegmentIndex(int width, int height, int cellSize) throws IllegalArgumentException {
+        if (width <= 0 || height <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("The dimensions of the index must be positive.");
+        }
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.cells = new int[columns * rows][];
+        this.counts = new int[columns * rows];
+    }
+
+    /**
+     * Removes all segments. The cells already allocated are kept for reuse.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Replaces the content of the index with all segments of a store.
+     * The cells are sized exactly by a first counting pass.
+     * @param store The strokes to index.
+     */
+    public void build(StrokeStore store) {
+        clear();
+        for (int s = 0; s < store.getStrokeCount(); s++) {
+            forEachCell(store, s, true);
+        }
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] > 0 && (cells[c] == null || cells[c].length < counts[c])) {
+                cells[c] = new int[counts[c]];
+            }
+        }
+        clear();
+        for (int s = 0; s < store.getStrokeCount(); s++) {
+            forEachCell(store, s, false);
+        }
+    }
+
+    /**
+     * Adds all segments of a stroke.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke, which must not precede a stroke already indexed.
+     */
+    public void insertStroke(StrokeStore store, int stroke) {
+        forEachCell(store, stroke, false);
+    }
+
+    /**
+     * Adds the segment that starts at the specified point. Call it after a point
+     * has been appended to a stroke (or after its last point has been moved),
+     * with the index of the point that precedes it.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke, which must not precede a stroke already indexed.
+     * @param point The global index of the segment's first point.
+     */
+    public void insertSegment(StrokeStore store, int stroke, int point) {
+        float pad = store.getLineWidth(stroke) / 2;
+        insert(stroke, point, store.getX(point), store.getY(point), store.getX(point + 1), store.getY(point + 1), pad, false);
+    }
+
+    /**
+     * Removes the segments of the strokes that follow the specified number of strokes.
+     * @param strokeCount The number of strokes to keep.
+     */
+    public void truncate(int strokeCount) {
+        for (int c = 0; c < counts.length; c++) {
+            int n = counts[c];
+            if (n == 0) continue;
+            int[] cell = cells[c];
+            while (n > 0 && cell[n - 2] >= strokeCount) n -= 2;
+            counts[c] = n;
+        }
+    }
+
+    /**
+     * Finds the topmost stroke that passes within a given distance of a point.
+     * Erased strokes are ignored.
+     * @param store The indexed strokes.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param radius The distance from the point, in addition to half the line width.
+     * @return The index of the last stroke drawn under the point, or -1 if there is none.
+     */
+    public int hitTest(StrokeStore store, double x, double y, double radius) {
+        int best = -1;
+        int c0 = column(x - radius), c1 = column(x + radius);
+        int r0 = row(y - radius), r1 = row(y + radius);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                int[] entries = cells[cell];
+                // the entries are in stroke order: visit the topmost first
+                for (int i = counts[cell] - 2; i >= 0; i -= 2) {
+                    int s = entries[i];
+                    if (s <= best) break;
+                    if (!store.isErased(s) && hitsPoint(store, s, entries[i + 1], x, y, radius)) {
+                        best = s;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds all strokes that pass within a given distance of a point.
+     * Erased strokes are ignored.
+     * @param store The indexed strokes.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param radius The distance from the point, in addition to half the line width.
+     * @param result The set to which the indices of the strokes found are added.
+     * @return The number of strokes added to {@code result}.
+     */
+    public int queryPoint(StrokeStore store, double x, double y, double radius, BitSet result) {
+        int found = 0;
+        int c0 = column(x - radius), c1 = column(x + radius);
+        int r0 = row(y - radius), r1 = row(y + radius);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                int[] entries = cells[cell];
+                for (int i = 0, n = counts[cell]; i < n; i += 2) {
+                    int s = entries[i];
+                    if (result.get(s) || store.isErased(s)) continue;
+                    if (hitsPoint(store, s, entries[i + 1], x, y, radius)) {
+                        result.set(s);
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds all strokes that have a segment inside or across a rectangle.
+     * Erased strokes are ignored.
+     * @param store The indexed strokes.
+     * @param minX The left edge of the rectangle.
+     * @param minY The top edge of the rectangle.
+     * @param maxX The right edge of the rectangle.
+     * @param maxY The bottom edge of the rectangle.
+     * @param result The set to which the indices of the strokes found are added.
+     * @return The number of strokes added to {@code result}.
+     */
+    public int queryRect(StrokeStore store, double minX, double minY, double maxX, double maxY, BitSet result) {
+        int found = 0;
+        int c0 = column(minX), c1 = column(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                int[] entries = cells[cell];
+                for (int i = 0, n = counts[cell]; i < n; i += 2) {
+                    int s = entries[i];
+                    if (result.get(s) || store.isErased(s)) continue;
+                    if (hitsRect(store, s, entries[i + 1], minX, minY, maxX, maxY)) {
+                        result.set(s);
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the number of segment entries in the cells. A segment is
+     * counted once per cell that it overlaps.
+     * @return The number of entries.
+     */
+    public int getEntryCount() {
+        int n = 0;
+        for (int count : counts) n += count;
+        return n / 2;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this index.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = (long)counts.length * (Integer.BYTES + 8);
+        for (int[] cell : cells) {
+            if (cell != null) bytes += (long)cell.length * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Visits the cells overlapped by the segments of a stroke, either to count
+     * the entries (without storing them) or to add them.
+     */
+    private void forEachCell(StrokeStore store, int stroke, boolean countOnly) {
+        int first = store.getStrokeStart(stroke);
+        int end = first + store.getStrokePointCount(stroke);
+        float pad = store.getLineWidth(stroke) / 2;
+
+        for (int p = first; p < end - 1; p++) {
+            insert(stroke, p, store.getX(p), store.getY(p), store.getX(p + 1), store.getY(p + 1), pad, countOnly);
+        }
+    }
+
+    private void insert(int stroke, int point, float x0, float y0, float x1, float y1, float pad, boolean countOnly) {
+        int c0 = column(Math.min(x0, x1) - pad), c1 = column(Math.max(x0, x1) + pad);
+        int r0 = row(Math.min(y0, y1) - pad), r1 = row(Math.max(y0, y1) + pad);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                int n = counts[cell];
+                if (!countOnly) {
+                    int[] entries = cells[cell];
+                    if (entries == null) {
+                        entries = cells[cell] = new int[16];
+                    } else if (n == entries.length) {
+                        entries = cells[cell] = Arrays.copyOf(entries, n * 2);
+                    }
+                    entries[n] = stroke;
+                    entries[n + 1] = point;
+                }
+                counts[cell] = n + 2;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the segment that starts at {@code point} passes within
+     * {@code radius} (plus half the line width) of (x, y).
+     */
+    private static boolean hitsPoint(StrokeStore store, int stroke, int point, double x, double y, double radius) {
+        int end = store.getStrokeStart(stroke) + store.getStrokePointCount(stroke);
+        if (point + 1 >= end) return false; // a stale entry
+
+        double reach = radius + store.getLineWidth(stroke) / 2;
+        double ax = store.getX(point), ay = store.getY(point);
+        double dx = store.getX(point + 1) - ax, dy = store.getY(point + 1) - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSq;
+
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+
+        double ex = ax + t * dx - x, ey = ay + t * dy - y;
+        return ex * ex + ey * ey <= reach * reach;
+    }
+
+    /**
+     * Checks whether the segment that starts at {@code point} intersects the
+     * rectangle widened by half the line width (Liang-Barsky clipping).
+     */
+    private static boolean hitsRect(StrokeStore store, int stroke, int point,
+            double minX, double minY, double maxX, double maxY) {
+        int end = store.getStrokeStart(stroke) + store.getStrokePointCount(stroke);
+        if (point + 1 >= end) return false; // a stale entry
+
+        double pad = store.getLineWidth(stroke) / 2;
+        double ax = store.getX(point), ay = store.getY(point);
+        double dx = store.getX(point + 1) - ax, dy = store.getY(point + 1) - ay;
+        double t0 = 0, t1 = 1;
+
+        // clip the parameter range of the segment against each edge
+        for (int edge = 0; edge < 4; edge++) {
+            double p, q;
+            switch (edge) {
+                case 0: p = -dx; q = ax - (minX - pad); break;
+                case 1: p = dx; q = (maxX + pad) - ax; break;
+                case 2: p = -dy; q = ay - (minY - pad); break;
+                default: p = dy; q = (maxY + pad) - ay;
+            }
+            if (p == 0) {
+                if (q < 0) return false; // parallel to the edge, and outside
+                continue;
+            }
+            double r = q / p;
+            if (p < 0) {
+                if (r > t1) return false;
+                if (r > t0) t0 = r;
+            } else {
+                if (r < t0) return false;
+                if (r < t1) t1 = r;
+            }
+        }
+        return true;
+    }
+
+    private int column(double x) {
+        int c = (int)Math.floor(x / cellSize);
+        return c < 0 ? 0 : c >= columns ? columns - 1 : c;
+    }
+
+    private int row(double y) {
+        int r = (int)Math.floor(y / cellSize);
+        return r < 0 ? 0 : r >= rows ? rows - 1 : r;
+    }
+}
@@ -0,0 +1,375 @@
+package edu.uopeople.cs1102;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Records the input of an {@code AdvancedPaint} object, so that the session
+ * can be replayed by {@code SessionReplay}.
+ * <p>
+ * The mouse events are recorded in document space, as they reach the
+ * {@code onMouse...} handlers of {@code MouseDraggedBase}, with their exact
+ * coordinates; so are the palette clicks, the tool changes, the undo and redo
+ * commands, the erasures of the selection, the pulses that render the
+ * coalesced points and the settings that change what is drawn. A drawing
+ * loaded from a file is recorded with its strokes, since the file may be
+ * gone by the time of the replay. Every event is timestamped with
+ * {@code System.nanoTime()}, relative to the first one.
+ * </p>
+ * <pre>
+ * file    := "APSR" u16:version i32:width i32:height i32:eventCount event*
+ * event   := u8:type i64:nanos (f64:x f64:y | f64:value) [drawing if type == LOAD (version 2)]
+ * drawing := i32:strokeCount stroke*
+ * stroke  := i32:colorIndex i32:argb f32:lineWidth u8:variable i32:pointCount (f32:x f32:y [f32:width if variable])*
+ * </pre>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class SessionRecording {
+    /** The first four bytes of a recording file: "APSR". */
+    public static final int MAGIC = 0x41505352;
+
+    /** The version of the format written by this class. */
+    public static final int VERSION = 2;
+
+    /** The mouse button has been pressed at (x, y). */
+    public static final byte PRESS = 1;
+
+    /** The mouse has been dragged to (x, y). */
+    public static final byte DRAG = 2;
+
+    /** The mouse button has been released at (x, y). */
+    public static final byte RELEASE = 3;
+
+    /** A pulse has rendered the pending points. */
+    public static final byte PULSE = 4;
+
+    /** A palette color has been selected; the value is its index. */
+    public static final byte COLOR = 5;
+
+    /** A custom color has been selected; the value is its ARGB code. */
+    public static final byte ARGB = 6;
+
+    /** The drawing has been cleared. */
+    public static final byte CLEAR = 7;
+
+    /** A tool has been selected; the value is the ordinal of the {@code PaintTool}. */
+    public static final byte TOOL = 8;
+
+    /** The last command has been undone. */
+    public static final byte UNDO = 9;
+
+    /** The last command undone has been redone. */
+    public static final byte REDO = 10;
+
+    /** The simplification tolerance has been set; the value is the tolerance, 0 when off. */
+    public static final byte SIMPLIFY = 11;
+
+    /** Coalescing has been turned on (value 1) or off (value 0). */
+    public static final byte COALESCE = 12;
+
+    /** The fill tolerance has been set; the value is the tolerance. */
+    public static final byte FILL_TOLERANCE = 13;
+
+    /** The selected strokes have been erased. */
+    public static final byte ERASE_SELECTION = 14;
+
+    /** A drawing has replaced the strokes; see {@code getDrawing()}. */
+    public static final byte LOAD = 15;
+
+    private final int width, height;
+    private byte[] types = new byte[256];
+    private long[] times = new long[256];
+    private double[] xs = new double[256], ys = new double[256];
+    private StrokeStore[] drawings = new StrokeStore[256];
+    private int count;
+    private long start = Long.MIN_VALUE;
+
+    /**
+     * Initializes a new, empty instance of the {@code SessionRecording} class.
+     * @param width The width of the canvas recorded.
+     * @param height The height of the canvas recorded.
+     */
+    public SessionRecording(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Records a mouse event.
+     * @param type {@code PRESS}, {@code DRAG} or {@code RELEASE}.
+     * @param x The x-coordinate of the mouse, in document space.
+     * @param y The y-coordinate of the mouse, in document space.
+     */
+    public void mouse(byte type, double x, double y) {
+        add(type, x, y, System.nanoTime());
+    }
+
+    /**
+     * Records a mouse event received at the specified time.
+     * @param type {@code PRESS}, {@code DRAG} or {@code RELEASE}.
+     * @param x The x-coordinate of the mouse, in document space.
+     * @param y The y-coordinate of the mouse, in document space.
+     * @param nanos The value of {@code System.nanoTime()} when the event was received.
+     */
+    public void mouse(byte type, double x, double y, long nanos) {
+        add(type, x, y, nanos);
+    }
+
+    /**
+     * Records an event without coordinates.
+     * @param type The type of the event, other than a mouse event.
+     * @param value The value of the event, or 0.
+     */
+    public void command(byte type, double value) {
+        add(type, value, 0, System.nanoTime());
+    }
+
+    /**
+     * Records the drawing that replaced the strokes. The strokes are copied.
+     * @param drawing The strokes loaded.
+     */
+    public void load(StrokeStore drawing) {
+        StrokeStore copy = new StrokeStore();
+        int end = drawing.getStrokeCount();
+        if (drawing.isRecording()) end--;
+        for (int s = 0; s < end; s++) {
+            if (!drawing.isErased(s)) copy.appendStroke(drawing, s);
+        }
+        copy.trimToSize();
+        synchronized (this) {
+            add(LOAD, 0, 0, System.nanoTime());
+            drawings[count - 1] = copy;
+        }
+    }
+
+    private synchronized void add(byte type, double x, double y, long now) {
+        if (start == Long.MIN_VALUE) start = now;
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            times = Arrays.copyOf(times, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            drawings = Arrays.copyOf(drawings, capacity);
+        }
+        types[count] = type;
+        times[count] = now - start;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * Gets the width of the canvas recorded.
+     * @return The width, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the canvas recorded.
+     * @return The height, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of events recorded.
+     * @return The number of events.
+     */
+    public synchronized int getEventCount() {
+        return count;
+    }
+
+    /**
+     * Gets the type of an event.
+     * @param event The index of the event.
+     * @return One of the event constants of this class.
+     */
+    public synchronized byte getType(int event) {
+        return types[event];
+    }
+
+    /**
+     * Gets the time of an event.
+     * @param event The index of the event.
+     * @return The number of nanoseconds since the first event.
+     */
+    public synchronized long getTime(int event) {
+        return times[event];
+    }
+
+    /**
+     * Gets the x-coordinate of a mouse event.
+     * @param event The index of the event.
+     * @return The x-coordinate, in document space.
+     */
+    public synchronized double getX(int event) {
+        return xs[event];
+    }
+
+    /**
+     * Gets the y-coordinate of a mouse event.
+     * @param event The index of the event.
+     * @return The y-coordinate, in document space.
+     */
+    public synchronized double getY(int event) {
+        return ys[event];
+    }
+
+    /**
+     * Gets the value of an event without coordinates.
+     * @param event The index of the event.
+     * @return The palette index, ARGB code, tool ordinal or setting of the event.
+     */
+    public synchronized double getValue(int event) {
+        return xs[event];
+    }
+
+    /**
+     * Gets the strokes of a {@code LOAD} event.
+     * @param event The index of the event.
+     * @return The strokes of the drawing loaded, which must not be modified,
+     * or null if the event isn't a {@code LOAD}.
+     */
+    public synchronized StrokeStore getDrawing(int event) {
+        return drawings[event];
+    }
+
+    /**
+     * Saves the recording, replacing the file if it exists.
+     * @param path The file to write.
+     * @throws IOException An I/O error occurs.
+     */
+    public synchronized void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeByte(types[i]);
+                out.writeLong(times[i]);
+                out.writeDouble(xs[i]);
+                if (isMouse(types[i])) {
+                    out.writeDouble(ys[i]);
+                } else if (types[i] == LOAD) {
+                    writeDrawing(out, drawings[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads a recording.
+     * @param path The file to read.
+     * @return A new {@code SessionRecording} object.
+     * @throws IOException An I/O error occurs, or the file is not a recording.
+     */
+    public static SessionRecording load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a session recording: " + path);
+            }
+            int version = in.readUnsignedShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported session recording version: " + version);
+            }
+            SessionRecording recording = new SessionRecording(in.readInt(), in.readInt());
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Invalid event count: " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                if (type < PRESS || type > (version < 2 ? FILL_TOLERANCE : LOAD)) {
+                    throw new IOException("Unknown event type " + type + " at event " + i);
+                }
+                long time = in.readLong();
+                double value = in.readDouble();
+                recording.add(type, value, isMouse(type) ? in.readDouble() : 0, 0);
+                recording.times[i] = time;
+                if (type == LOAD) {
+                    recording.drawings[i] = readDrawing(in, i);
+                }
+            }
+            return recording;
+        } catch (EOFException e) {
+            throw new IOException("Truncated session recording: " + path, e);
+        }
+    }
+
+    private static void writeDrawing(DataOutputStream out, StrokeStore drawing) throws IOException {
+        int strokeCount = drawing.getStrokeCount();
+        out.writeInt(strokeCount);
+        for (int s = 0; s < strokeCount; s++) {
+            boolean variable = drawing.isVariableWidth(s);
+            out.writeInt(drawing.getColorIndex(s));
+            out.writeInt(drawing.getArgb(s));
+            out.writeFloat(drawing.getLineWidth(s));
+            out.writeByte(variable ? 1 : 0);
+            out.writeInt(drawing.getStrokePointCount(s));
+            for (int i = drawing.getStrokeStart(s), end = i + drawing.getStrokePointCount(s); i < end; i++) {
+                out.writeFloat(drawing.getX(i));
+                out.writeFloat(drawing.getY(i));
+                if (variable) out.writeFloat(drawing.getWidth(i));
+            }
+        }
+    }
+
+    private static StrokeStore readDrawing(DataInputStream in, int event) throws IOException {
+        StrokeStore drawing = new StrokeStore();
+        int strokeCount = in.readInt();
+        if (strokeCount < 0) {
+            throw new IOException("Invalid stroke count " + strokeCount + " at event " + event);
+        }
+        for (int s = 0; s < strokeCount; s++) {
+            int colorIndex = in.readInt(), argb = in.readInt();
+            float lineWidth = in.readFloat();
+            boolean variable = in.readByte() != 0;
+            int pointCount = in.readInt();
+            if (colorIndex != StrokeStore.CUSTOM_COLOR && (colorIndex < 0 || colorIndex >= ColorUtil.standardPaletteArgb.length)) {
+                throw new IOException("Invalid color index " + colorIndex + " at event " + event);
+            }
+            if (pointCount < 0) {
+                throw new IOException("Invalid point count " + pointCount + " at event " + event);
+            }
+            if (colorIndex == StrokeStore.CUSTOM_COLOR) {
+                drawing.beginCustomStroke(argb, lineWidth);
+            } else {
+                drawing.beginStroke(colorIndex, lineWidth);
+            }
+            for (int i = 0; i < pointCount; i++) {
+                float x = in.readFloat(), y = in.readFloat();
+                if (variable) {
+                    drawing.addPoint(x, y, in.readFloat());
+                } else {
+                    drawing.addPoint(x, y);
+                }
+            }
+            drawing.endStroke();
+        }
+        drawing.trimToSize();
+        return drawing;
+    }
+
+    /**
+     * Indicates whether an event type has coordinates.
+     * @param type The type of the event.
+     * @return true for {@code PRESS}, {@code DRAG} and {@code RELEASE}; otherwise, false.
+     */
+    public static boolean isMouse(byte type) {
+        return type >= PRESS && type <= RELEASE;
+    }
+}
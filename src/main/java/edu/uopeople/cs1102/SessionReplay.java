@@ -0,0 +1,284 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Replays a {@code SessionRecording} against an {@code AdvancedPaint} object,
+ * either as fast as possible or in real time.
+ * <p>
+ * The recorded events go through the same handlers as the live ones, and the
+ * recorded pulses replace the pulse timer, so a replay draws the same strokes
+ * whatever the speed. {@code render()} replays without any UI and rasterizes
+ * the strokes with the {@code SoftwareRasterizer}: the image doesn't depend
+ * on the graphics pipeline, which makes it suitable for golden images.
+ * </p>
+ * <p>
+ * The {@code main} method replays a recording from the command line and
+ * compares the result with a golden image (see {@code PixelDiff}).
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class SessionReplay {
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private SessionReplay() {
+    }
+
+    /**
+     * Replays a recording as fast as possible, on the calling thread.
+     * @param recording The recording to replay.
+     * @param paint The object to replay on, whose canvas has the size of the recording.
+     * @throws IllegalArgumentException The size of the canvas is not the size of the recording.
+     */
+    public static void replay(SessionRecording recording, AdvancedPaint paint) throws IllegalArgumentException {
+        checkSize(recording, paint);
+        SessionRecording live = paint.getRecording();
+        paint.setRecording(null);
+        paint.setReplaying(true);
+        try {
+            for (int i = 0; i < recording.getEventCount(); i++) {
+                dispatch(recording, i, paint, 0);
+            }
+        } finally {
+            paint.setReplaying(false);
+            paint.setRecording(live);
+        }
+    }
+
+    /**
+     * Replays a recording in real time, from the next pulse, on the JavaFX application thread.
+     * @param recording The recording to replay.
+     * @param paint The object to replay on, whose canvas has the size of the recording.
+     * @param onFinished The action to run when the replay ends or is stopped, or null.
+     * @return The timer of the replay, which can be stopped before the end.
+     * @throws IllegalArgumentException The size of the canvas is not the size of the recording.
+     */
+    public static AnimationTimer play(SessionRecording recording, AdvancedPaint paint, Runnable onFinished)
+            throws IllegalArgumentException {
+        checkSize(recording, paint);
+        SessionRecording live = paint.getRecording();
+        paint.setRecording(null);
+        paint.setReplaying(true);
+
+        AnimationTimer timer = new AnimationTimer() {
+            private long start = -1;
+            private int next;
+            private boolean finished;
+
+            @Override
+            public void handle(long now) {
+                if (start < 0) start = now;
+                while (next < recording.getEventCount() && recording.getTime(next) <= now - start) {
+                    dispatch(recording, next++, paint, start);
+                }
+                if (next == recording.getEventCount()) stop();
+            }
+
+            @Override
+            public void stop() {
+                super.stop();
+                if (finished) return;
+                finished = true;
+                paint.setReplaying(false);
+                paint.setRecording(live);
+                if (onFinished != null) onFinished.run();
+            }
+        };
+        timer.start();
+        return timer;
+    }
+
+    /**
+     * Replays a recording without any UI and rasterizes the strokes. Doesn't
+     * need the JavaFX toolkit, unless the recording contains fills.
+     * @param recording The recording to replay.
+     * @return The pixels of the drawing, in ARGB format, row by row.
+     * @throws IllegalArgumentException The recording contains fills: they are raster operations,
+     * which need the canvas of a running JavaFX toolkit (use {@code replay()} and {@code snapshot()}).
+     */
+    public static int[] render(SessionRecording recording) throws IllegalArgumentException {
+        if (containsFill(recording)) {
+            throw new IllegalArgumentException("A recording with fills can only be replayed on a JavaFX canvas.");
+        }
+        AdvancedPaint paint = new AdvancedPaint(new Canvas(recording.getWidth(), recording.getHeight()));
+        try {
+            replay(recording, paint);
+            return rasterize(paint);
+        } finally {
+            paint.unregisterStats();
+        }
+    }
+
+    /**
+     * Renders the strokes of an {@code AdvancedPaint} object with the {@code SoftwareRasterizer}.
+     * @param paint The object whose strokes are rendered.
+     * @return The pixels of the drawing, in ARGB format, row by row.
+     */
+    public static int[] rasterize(AdvancedPaint paint) {
+        return new SoftwareRasterizer().render(paint.getStrokes(), paint.getCanvasWidth(), paint.getCanvasHeight());
+    }
+
+    /**
+     * Takes a snapshot of the canvas of an {@code AdvancedPaint} object, fills
+     * included, or of the whole composite of its tiled document. Must be called on the JavaFX
+     * application thread.
+     * @param paint The object whose canvas is captured.
+     * @return The pixels of the canvas, in ARGB format, row by row.
+     */
+    public static int[] snapshot(AdvancedPaint paint) {
+        int width = paint.getCanvasWidth(), height = paint.getCanvasHeight();
+        LayerStack layers = paint.getLayerStack();
+        if (layers != null) {
+            int[] argb = new int[width * height];
+            layers.update();
+            layers.getComposite().getPixels(0, 0, width, height, argb, 0, width);
+            return argb;
+        }
+        WritableImage image = paint.getCanvas().snapshot(null, null);
+        int[] argb = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+        return argb;
+    }
+
+    /**
+     * Indicates whether a recording clicks with the fill tool.
+     * @param recording The recording to check.
+     * @return true if the recording contains a fill; otherwise, false.
+     */
+    public static boolean containsFill(SessionRecording recording) {
+        boolean fillTool = false;
+        for (int i = 0; i < recording.getEventCount(); i++) {
+            byte type = recording.getType(i);
+            if (type == SessionRecording.TOOL) {
+                fillTool = (int)recording.getValue(i) == PaintTool.Fill.ordinal();
+            } else if (type == SessionRecording.PRESS && fillTool) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends an event to the handler that received it when it was recorded.
+     */
+    private static void dispatch(SessionRecording recording, int i, AdvancedPaint paint, long start) {
+        if (SessionRecording.isMouse(recording.getType(i))) {
+            paint.setEventTime(recording.getTime(i)); // the brush width depends on the speed
+        }
+        switch (recording.getType(i)) {
+            case SessionRecording.PRESS:
+                paint.onMousePressed(recording.getX(i), recording.getY(i));
+                break;
+            case SessionRecording.DRAG:
+                paint.onMouseDragged(recording.getX(i), recording.getY(i));
+                break;
+            case SessionRecording.RELEASE:
+                paint.onMouseReleased(recording.getX(i), recording.getY(i));
+                break;
+            case SessionRecording.PULSE:
+                paint.onPulse(start + recording.getTime(i));
+                break;
+            case SessionRecording.COLOR:
+                paint.selectColor((int)recording.getValue(i));
+                break;
+            case SessionRecording.ARGB:
+                paint.setCurrentArgb((int)recording.getValue(i));
+                break;
+            case SessionRecording.CLEAR:
+                paint.clear();
+                break;
+            case SessionRecording.TOOL:
+                paint.setTool(PaintTool.values()[(int)recording.getValue(i)]);
+                break;
+            case SessionRecording.UNDO:
+                paint.undo();
+                break;
+            case SessionRecording.REDO:
+                paint.redo();
+                break;
+            case SessionRecording.SIMPLIFY:
+                paint.setSimplification(recording.getValue(i));
+                break;
+            case SessionRecording.COALESCE:
+                paint.setCoalescing(recording.getValue(i) != 0);
+                break;
+            case SessionRecording.FILL_TOLERANCE:
+                paint.setFillTolerance((int)recording.getValue(i));
+                break;
+            case SessionRecording.ERASE_SELECTION:
+                paint.eraseSelection();
+                break;
+            case SessionRecording.LOAD:
+                paint.load(recording.getDrawing(i));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + recording.getType(i));
+        }
+    }
+
+    private static void checkSize(SessionRecording recording, AdvancedPaint paint) throws IllegalArgumentException {
+        if (recording.getWidth() != paint.getCanvasWidth() || recording.getHeight() != paint.getCanvasHeight()) {
+            throw new IllegalArgumentException("The recording is " + recording.getWidth() + "x" + recording.getHeight()
+                + ", the canvas " + paint.getCanvasWidth() + "x" + paint.getCanvasHeight() + ".");
+        }
+    }
+
+    /**
+     * Replays a recording without any UI, then writes the image or compares it with a golden image.
+     * <p>
+     * Usage: {@code SessionReplay <recording> [--golden <png>] [--tolerance <0-255>]
+     * [--max-diff <pixels>] [--out <png>] [--repeat <n>]}. The exit code is 1
+     * when the image doesn't match the golden image.
+     * </p>
+     * @param args The command line arguments.
+     * @throws IOException A file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: SessionReplay <recording> [--golden <png>] [--tolerance <0-255>]"
+                + " [--max-diff <pixels>] [--out <png>] [--repeat <n>]");
+            System.exit(2);
+        }
+        Path golden = null, out = null;
+        int tolerance = 8, maxDiff = 0, repeat = 1;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--golden": golden = Paths.get(args[i + 1]); break;
+                case "--out": out = Paths.get(args[i + 1]); break;
+                case "--tolerance": tolerance = Integer.parseInt(args[i + 1]); break;
+                case "--max-diff": maxDiff = Integer.parseInt(args[i + 1]); break;
+                case "--repeat": repeat = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SessionRecording recording = SessionRecording.load(Paths.get(args[0]));
+        int[] argb = null;
+        for (int r = 0; r < repeat; r++) {
+            long start = System.nanoTime();
+            argb = render(recording);
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("replayed %d events in %.1f ms (%.0f events/s)%n", recording.getEventCount(),
+                millis, recording.getEventCount() / millis * 1000);
+        }
+
+        int width = recording.getWidth(), height = recording.getHeight();
+        if (out != null) {
+            PixelDiff.writePng(argb, width, height, out);
+        }
+        if (golden != null) {
+            PixelDiff diff = PixelDiff.compare(argb, width, height, golden, tolerance);
+            System.out.println(diff);
+            if (!diff.matches(maxDiff)) System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A pure-Java rasterizer that draws recorded strokes into an {@code int[]}
+ * ARGB buffer, without the JavaFX toolkit (no display and no GPU needed).
+ * <p>
+ * The output matches what {@code AdvancedPaint} draws on its canvas: a white
+ * background with a 3-pixel gray border, and the strokes with their own line
+ * widths and the colors of {@code ColorUtil.standardPalette}. Lines are
+ * anti-aliased; consecutive segments of a stroke are joined with round joins
+ * and each pixel is blended once per stroke, so that joins aren't darker than
+ * the rest of the line. Variable-width strokes are sampled along the same
+ * curve pieces as the ones {@code BrushEngine} draws on the canvas.
+ * </p>
+ * <p>
+ * The image is split into square tiles rendered in parallel on a
+ * {@code ForkJoinPool}. Strokes are first binned by bounding box, so each tile
+ * only processes the strokes that intersect it.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class SoftwareRasterizer {
+    /** The color of the canvas. */
+    public static final int BACKGROUND = 0xFFFFFFFF;
+
+    /** The color of the canvas's border. */
+    public static final int BORDER = 0xFF808080;
+
+    /** The width of the canvas's border, in pixels. */
+    public static final int BORDER_WIDTH = 3;
+
+    // The number of segments binned together.
+    private static final int RUN = 32;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    // One coverage buffer per worker thread.
+    private final ThreadLocal<float[]> coverage;
+
+    /**
+     * Initializes a new instance of the {@code SoftwareRasterizer} class that
+     * renders 64x64 tiles on the common fork/join pool.
+     */
+    public SoftwareRasterizer() {
+        this(ForkJoinPool.commonPool(), 64);
+    }
+
+    /**
+     * Initializes a new instance of the {@code SoftwareRasterizer} class.
+     * @param pool The pool on which tiles are rendered.
+     * @param tileSize The width and height of a tile, in pixels.
+     * @throws IllegalArgumentException {@code tileSize} is not positive.
+     */
+    public SoftwareRasterizer(ForkJoinPool pool, int tileSize) throws IllegalArgumentException {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size must be positive.");
+        }
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.coverage = ThreadLocal.withInitial(() -> new float[tileSize * tileSize]);
+    }
+
+    /**
+     * Renders the specified strokes into a new image.
+     * @param store The strokes to render.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The pixels of the image, in ARGB format, row by row.
+     */
+    public int[] render(StrokeStore store, int width, int height) {
+        int[] argb = new int[width * height];
+        render(store, argb, width, height);
+        return argb;
+    }
+
+    /**
+     * Renders the specified strokes into an existing image, replacing its content.
+     * @param store The strokes to render.
+     * @param argb The pixels of the image, in ARGB format, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     */
+    public void render(StrokeStore store, int[] argb, int width, int height) {
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        int[][] bins = bin(store, tilesX, tilesY);
+        pool.invoke(new TileTask(store, bins, argb, width, height, tilesX, 0, tilesX * tilesY));
+    }
+
+    /**
+     * Groups the strokes by the tiles they intersect, in drawing order. Long
+     * strokes are split into runs of {@code RUN} segments, binned separately,
+     * so that a tile only visits the parts of a stroke that are near it.
+     * Element 0 of each array is the number of values that follow; each run
+     * takes three values: the stroke, its first point and its end point.
+     */
+    private int[][] bin(StrokeStore store, int tilesX, int tilesY) {
+        int[][] bins = new int[tilesX * tilesY][];
+
+        for (int s = 0; s < store.getStrokeCount(); s++) {
+            int first = store.getStrokeStart(s);
+            int end = first + store.getStrokePointCount(s);
+            boolean variable = store.isVariableWidth(s);
+            // a variable-width stroke of one point is a dot
+            if (end - first < (variable ? 1 : 2) || store.isErased(s)) continue; // nothing is drawn
+
+            float r = store.getLineWidth(s) / 2 + 1;
+
+            for (int p = first; p < Math.max(end - 1, first + 1); p += RUN) {
+                int runEnd = Math.min(p + RUN + 1, end);
+                float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+                float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+
+                // the curve of a variable-width stroke also depends on the points around the run
+                int from = variable ? Math.max(first, p - 1) : p, to = variable ? Math.min(end, runEnd + 1) : runEnd;
+                for (int i = from; i < to; i++) {
+                    float x = store.getX(i), y = store.getY(i);
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+
+                int tx0 = Math.max(0, (int)Math.floor((minX - r) / tileSize));
+                int ty0 = Math.max(0, (int)Math.floor((minY - r) / tileSize));
+                int tx1 = Math.min(tilesX - 1, (int)Math.floor((maxX + r) / tileSize));
+                int ty1 = Math.min(tilesY - 1, (int)Math.floor((maxY + r) / tileSize));
+
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    for (int tx = tx0; tx <= tx1; tx++) {
+                        int index = ty * tilesX + tx;
+                        int[] bin = bins[index];
+                        if (bin == null) {
+                            bins[index] = bin = new int[16];
+                        } else if (bin[0] + 4 > bin.length) {
+                            bins[index] = bin = Arrays.copyOf(bin, bin.length * 2);
+                        }
+                        bin[++bin[0]] = s;
+                        bin[++bin[0]] = p;
+                        bin[++bin[0]] = runEnd;
+                    }
+                }
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * Renders a range of tiles, splitting it in halves until it is small enough.
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final StrokeStore store;
+        private final int[][] bins;
+        private final int[] argb;
+        private final int width, height, tilesX;
+        private final int from, to;
+
+        TileTask(StrokeStore store, int[][] bins, int[] argb, int width, int height, int tilesX, int from, int to) {
+            this.store = store;
+            this.bins = bins;
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 2) {
+                for (int i = from; i < to; i++) {
+                    renderTile(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(store, bins, argb, width, height, tilesX, from, middle),
+                      new TileTask(store, bins, argb, width, height, tilesX, middle, to));
+        }
+
+        private void renderTile(int index) {
+            int x0 = (index % tilesX) * tileSize, y0 = (index / tilesX) * tileSize;
+            int x1 = Math.min(x0 + tileSize, width), y1 = Math.min(y0 + tileSize, height);
+
+            fillBackground(argb, width, height, x0, y0, x1, y1);
+
+            int[] bin = bins[index];
+            if (bin == null) return;
+
+            float[] cov = coverage.get();
+            float[] samples = null;
+            int[] box = new int[4];
+            int w = x1 - x0;
+
+            for (int k = 1; k <= bin[0]; ) {
+                int s = bin[k];
+                box[0] = x1;
+                box[1] = y1;
+                box[2] = x0;
+                box[3] = y0;
+
+                // accumulate the coverage of all the runs of the stroke
+                if (store.isVariableWidth(s)) {
+                    if (samples == null) samples = new float[3 * (BrushEngine.MAX_STEPS + 1)];
+                    int first = store.getStrokeStart(s), end = first + store.getStrokePointCount(s);
+                    for (; k <= bin[0] && bin[k] == s; k += 3) {
+                        brushCoverage(store, first, end, bin[k + 1], bin[k + 2], samples, cov, x0, y0, x1, y1, box);
+                    }
+                } else {
+                    float radius = store.getLineWidth(s) / 2;
+                    for (; k <= bin[0] && bin[k] == s; k += 3) {
+                        coverage(store, bin[k + 1], bin[k + 2], radius, cov, x0, y0, x1, y1, box);
+                    }
+                }
+                blend(cov, w, x0, y0, box, store.getArgb(s), argb, width, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Draws a part of a stroke over an existing image, clipped to a rectangle,
+     * on the calling thread: the segments between the points [from, to) of a
+     * constant-width stroke, or the pieces between them for a variable-width
+     * stroke (a dot if there is only one point).
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke.
+     * @param from The index of the first point drawn.
+     * @param to The index that follows the last point drawn.
+     * @param argb The pixels of the image, in ARGB format, row by row.
+     * @param width The width of the image.
+     * @param x0 The left edge of the clip rectangle, inclusive.
+     * @param y0 The top edge of the clip rectangle, inclusive.
+     * @param x1 The right edge of the clip rectangle, exclusive.
+     * @param y1 The bottom edge of the clip rectangle, exclusive.
+     * @return The bounds {x0, y0, x1, y1} of the pixels that may have changed, empty if none.
+     */
+    public int[] draw(StrokeStore store, int stroke, int from, int to, int[] argb, int width,
+            int x0, int y0, int x1, int y1) {
+        int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+        boolean variable = store.isVariableWidth(stroke);
+        int[] bounds = { x1, y1, x0, y0 };
+        if (to - from < (variable ? 1 : 2)) return bounds;
+
+        int[] reach = reach(store, stroke, from, to, x0, y0, x1, y1);
+        int bx0 = reach[0], by0 = reach[1], bx1 = reach[2], by1 = reach[3];
+
+        float[] cov = coverage.get();
+        float[] samples = variable ? new float[3 * (BrushEngine.MAX_STEPS + 1)] : null;
+        int[] box = new int[4];
+        int color = store.getArgb(stroke);
+
+        // one tile at a time, so that the coverage buffer is large enough
+        for (int ty = by0; ty < by1; ty += tileSize) {
+            for (int tx = bx0; tx < bx1; tx += tileSize) {
+                int tx1 = Math.min(tx + tileSize, bx1), ty1 = Math.min(ty + tileSize, by1);
+                box[0] = tx1;
+                box[1] = ty1;
+                box[2] = tx;
+                box[3] = ty;
+                if (variable) {
+                    brushCoverage(store, first, end, from, to, samples, cov, tx, ty, tx1, ty1, box);
+                } else {
+                    coverage(store, from, to, store.getLineWidth(stroke) / 2, cov, tx, ty, tx1, ty1, box);
+                }
+                if (box[0] >= box[2]) continue;
+                blend(cov, tx1 - tx, tx, ty, box, color, argb, width, 0, 0);
+
+                bounds[0] = Math.min(bounds[0], box[0]);
+                bounds[1] = Math.min(bounds[1], box[1]);
+                bounds[2] = Math.max(bounds[2], box[2]);
+                bounds[3] = Math.max(bounds[3], box[3]);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Draws a part of a stroke over a tiled raster, clipped to a rectangle, on
+     * the calling thread, like {@code draw()} does over an image. Only the
+     * tiles that the stroke covers are allocated, and they are marked as dirty.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke.
+     * @param from The index of the first point drawn.
+     * @param to The index that follows the last point drawn.
+     * @param raster The raster drawn on.
+     * @param x0 The left edge of the clip rectangle, inclusive.
+     * @param y0 The top edge of the clip rectangle, inclusive.
+     * @param x1 The right edge of the clip rectangle, exclusive.
+     * @param y1 The bottom edge of the clip rectangle, exclusive.
+     * @return The bounds {x0, y0, x1, y1} of the pixels that may have changed, empty if none.
+     */
+    public int[] draw(StrokeStore store, int stroke, int from, int to, TiledRaster raster,
+            int x0, int y0, int x1, int y1) {
+        int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+        boolean variable = store.isVariableWidth(stroke);
+        int[] bounds = { x1, y1, x0, y0 };
+        if (to - from < (variable ? 1 : 2)) return bounds;
+
+        int[] reach = reach(store, stroke, from, to, Math.max(x0, 0), Math.max(y0, 0),
+            Math.min(x1, raster.getWidth()), Math.min(y1, raster.getHeight()));
+
+        float[] cov = coverage.get();
+        float[] samples = variable ? new float[3 * (BrushEngine.MAX_STEPS + 1)] : null;
+        int[] box = new int[4];
+        int color = store.getArgb(stroke);
+        int size = TiledRaster.TILE_SIZE;
+
+        // one piece at a time, within a single tile, so that the coverage buffer is large enough
+        for (int ty = reach[1]; ty < reach[3]; ) {
+            int top = ty & -size, ty1 = Math.min(Math.min(ty + tileSize, top + size), reach[3]);
+            for (int tx = reach[0]; tx < reach[2]; ) {
+                int left = tx & -size, tx1 = Math.min(Math.min(tx + tileSize, left + size), reach[2]);
+                box[0] = tx1;
+                box[1] = ty1;
+                box[2] = tx;
+                box[3] = ty;
+                if (variable) {
+                    brushCoverage(store, first, end, from, to, samples, cov, tx, ty, tx1, ty1, box);
+                } else {
+                    coverage(store, from, to, store.getLineWidth(stroke) / 2, cov, tx, ty, tx1, ty1, box);
+                }
+                if (box[0] < box[2]) {
+                    int[] tile = raster.getTile(tx >>> TiledRaster.TILE_SHIFT, ty >>> TiledRaster.TILE_SHIFT, true);
+                    blend(cov, tx1 - tx, tx, ty, box, color, tile, size, left, top);
+
+                    bounds[0] = Math.min(bounds[0], box[0]);
+                    bounds[1] = Math.min(bounds[1], box[1]);
+                    bounds[2] = Math.max(bounds[2], box[2]);
+                    bounds[3] = Math.max(bounds[3], box[3]);
+                }
+                tx = tx1;
+            }
+            ty = ty1;
+        }
+        if (bounds[0] < bounds[2]) {
+            raster.markDirty(bounds[0], bounds[1], bounds[2] - bounds[0], bounds[3] - bounds[1]);
+        }
+        return bounds;
+    }
+
+    /**
+     * Gets the pixels of a clip rectangle that the points [from, to) of a
+     * stroke, and the curve around them, can reach.
+     * @return The bounds {x0, y0, x1, y1} of the pixels.
+     */
+    private static int[] reach(StrokeStore store, int stroke, int from, int to, int x0, int y0, int x1, int y1) {
+        int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+        boolean variable = store.isVariableWidth(stroke);
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = variable ? Math.max(first, from - 1) : from, n = variable ? Math.min(end, to + 1) : to; i < n; i++) {
+            float x = store.getX(i), y = store.getY(i);
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        float r = store.getLineWidth(stroke) / 2 + 1;
+        return new int[] {
+            Math.max(x0, (int)Math.floor(minX - r)), Math.max(y0, (int)Math.floor(minY - r)),
+            Math.min(x1, (int)Math.ceil(maxX + r) + 1), Math.min(y1, (int)Math.ceil(maxY + r) + 1)
+        };
+    }
+
+    /**
+     * Blends a color into the pixels of the coverage box, and resets their
+     * coverage. The pixel (x, y) is at {@code (y - imageY) * width + x - imageX} in the image.
+     */
+    private static void blend(float[] cov, int stride, int originX, int originY, int[] box,
+            int color, int[] argb, int width, int imageX, int imageY) {
+        for (int y = box[1]; y < box[3]; y++) {
+            int c = (y - originY) * stride - originX, d = (y - imageY) * width - imageX;
+            for (int x = box[0]; x < box[2]; x++) {
+                float a = cov[c + x];
+                if (a > 0) {
+                    argb[d + x] = ColorUtil.blendOver(color, argb[d + x], a);
+                    cov[c + x] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the rectangle [x0, x1) x [y0, y1) of an image with the background
+     * and the parts of the border it contains.
+     */
+    static void fillBackground(int[] argb, int width, int height, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            if (y < BORDER_WIDTH || y >= height - BORDER_WIDTH) {
+                Arrays.fill(argb, row + x0, row + x1, BORDER);
+                continue;
+            }
+            Arrays.fill(argb, row + x0, row + x1, BACKGROUND);
+            for (int x = x0; x < Math.min(x1, BORDER_WIDTH); x++) {
+                argb[row + x] = BORDER;
+            }
+            for (int x = Math.max(x0, width - BORDER_WIDTH); x < x1; x++) {
+                argb[row + x] = BORDER;
+            }
+        }
+    }
+
+    /**
+     * Computes the coverage of the polyline made of the points [first, end)
+     * over the rectangle [x0, x1) x [y0, y1). The coverage of each pixel is the
+     * maximum coverage of the segments, so that overlapping segments of the
+     * same stroke don't blend twice.
+     * @param store The store that contains the points.
+     * @param first The index of the first point.
+     * @param end The index that follows the last point.
+     * @param radius Half the width of the line.
+     * @param cov The coverage buffer, whose rows are {@code x1 - x0} wide.
+     * @param box The bounds {x0, y0, x1, y1} of the pixels covered so far,
+     * which are extended with the pixels covered by the polyline.
+     */
+    static void coverage(StrokeStore store, int first, int end, float radius,
+            float[] cov, int x0, int y0, int x1, int y1, int[] box) {
+        int minX = box[0], minY = box[1], maxX = box[2], maxY = box[3];
+
+        for (int i = first + 1; i < end; i++) {
+            float ax = store.getX(i - 1), ay = store.getY(i - 1);
+            float bx = store.getX(i), by = store.getY(i);
+
+            // skip the segments that are far from the rectangle
+            if (Math.max(ax, bx) + radius + 1 < x0 || Math.min(ax, bx) - radius - 1 >= x1
+                    || Math.max(ay, by) + radius + 1 < y0 || Math.min(ay, by) - radius - 1 >= y1) continue;
+
+            // the pixels whose centers may be within radius + 0.5 of the segment
+            int sx0 = Math.max(x0, (int)Math.floor(Math.min(ax, bx) - radius - 1));
+            int sy0 = Math.max(y0, (int)Math.floor(Math.min(ay, by) - radius - 1));
+            int sx1 = Math.min(x1, (int)Math.ceil(Math.max(ax, bx) + radius + 1));
+            int sy1 = Math.min(y1, (int)Math.ceil(Math.max(ay, by) + radius + 1));
+            if (sx0 >= sx1 || sy0 >= sy1) continue;
+
+            segmentCoverage(cov, x1 - x0, x0, y0, sx0, sy0, sx1, sy1, ax, ay, bx, by, radius);
+
+            if (sx0 < minX) minX = sx0;
+            if (sy0 < minY) minY = sy0;
+            if (sx1 > maxX) maxX = sx1;
+            if (sy1 > maxY) maxY = sy1;
+        }
+        box[0] = minX;
+        box[1] = minY;
+        box[2] = maxX;
+        box[3] = maxY;
+    }
+
+    /**
+     * Computes the coverage of the points [from, to) of a variable-width
+     * stroke over the rectangle [x0, x1) x [y0, y1): each piece between two
+     * points is sampled as {@code BrushEngine} does, and each step between
+     * two samples is a segment whose width is the mean of their widths.
+     * @param store The store that contains the stroke.
+     * @param first The index of the first point of the stroke.
+     * @param end The index that follows the last point of the stroke.
+     * @param from The index of the first point of the run.
+     * @param to The index that follows the last point of the run.
+     * @param samples A buffer for the samples of a piece.
+     * @param cov The coverage buffer, whose rows are {@code x1 - x0} wide.
+     * @param box The bounds {x0, y0, x1, y1} of the pixels covered so far,
+     * which are extended with the pixels covered by the run.
+     */
+    static void brushCoverage(StrokeStore store, int first, int end, int from, int to, float[] samples,
+            float[] cov, int x0, int y0, int x1, int y1, int[] box) {
+        if (to - from == 1) {
+            // a stroke of one point
+            samples[0] = samples[3] = store.getX(from);
+            samples[1] = samples[4] = store.getY(from);
+            samples[2] = samples[5] = store.getWidth(from);
+            sampleCoverage(samples, 2, cov, x0, y0, x1, y1, box);
+            return;
+        }
+        for (int i = from; i < to - 1; i++) {
+            int n = BrushEngine.samplePiece(store, first, end, i, samples);
+            sampleCoverage(samples, n, cov, x0, y0, x1, y1, box);
+        }
+    }
+
+    private static void sampleCoverage(float[] samples, int n, float[] cov, int x0, int y0, int x1, int y1, int[] box) {
+        for (int j = 1; j < n; j++) {
+            float ax = samples[j * 3 - 3], ay = samples[j * 3 - 2];
+            float bx = samples[j * 3], by = samples[j * 3 + 1];
+            float radius = (samples[j * 3 - 1] + samples[j * 3 + 2]) / 4;
+
+            int sx0 = Math.max(x0, (int)Math.floor(Math.min(ax, bx) - radius - 1));
+            int sy0 = Math.max(y0, (int)Math.floor(Math.min(ay, by) - radius - 1));
+            int sx1 = Math.min(x1, (int)Math.ceil(Math.max(ax, bx) + radius + 1));
+            int sy1 = Math.min(y1, (int)Math.ceil(Math.max(ay, by) + radius + 1));
+            if (sx0 >= sx1 || sy0 >= sy1) continue;
+
+            segmentCoverage(cov, x1 - x0, x0, y0, sx0, sy0, sx1, sy1, ax, ay, bx, by, radius);
+
+            if (sx0 < box[0]) box[0] = sx0;
+            if (sy0 < box[1]) box[1] = sy0;
+            if (sx1 > box[2]) box[2] = sx1;
+            if (sy1 > box[3]) box[3] = sy1;
+        }
+    }
+
+    /**
+     * Accumulates (with max) the coverage of a thick anti-aliased segment over
+     * the pixels [sx0, sx1) x [sy0, sy1), using the distance from each pixel's
+     * center to the segment.
+     */
+    static void segmentCoverage(float[] cov, int stride, int originX, int originY,
+            int sx0, int sy0, int sx1, int sy1, float ax, float ay, float bx, float by, float radius) {
+        float dx = bx - ax, dy = by - ay;
+        float lengthSq = dx * dx + dy * dy;
+        float inv = lengthSq == 0 ? 0 : 1 / lengthSq;
+        float edge = radius + 0.5f;
+        float edgeSq = edge * edge;
+
+        for (int y = sy0; y < sy1; y++) {
+            float py = y + 0.5f - ay;
+            int row = (y - originY) * stride - originX;
+
+            for (int x = sx0; x < sx1; x++) {
+                float px = x + 0.5f - ax;
+                float t = (px * dx + py * dy) * inv;
+                if (t < 0) t = 0;
+                else if (t > 1) t = 1;
+
+                float ex = px - t * dx, ey = py - t * dy;
+                float d = ex * ex + ey * ey;
+                if (d >= edgeSq) continue; // most pixels of the box are outside
+
+                float a = edge - (float)Math.sqrt(d);
+                if (a > 1) a = 1;
+                if (a > cov[row + x]) cov[row + x] = a;
+            }
+        }
+    }
+}
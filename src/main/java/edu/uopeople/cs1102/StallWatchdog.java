@@ -0,0 +1,323 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javafx.application.Platform;
+
+/**
+ * Detects the stalls of the JavaFX application thread and reports what it
+ * was doing during each of them.
+ * <p>
+ * A background thread posts a heartbeat with {@code Platform.runLater()}
+ * every half threshold. The heartbeat is queued with the events and the
+ * pulses, so while a handler such as {@code onMouseDragged()} or
+ * {@code clearCanvas()} keeps the thread busy, neither the heartbeat nor
+ * the next pulse runs. When a heartbeat hasn't run within the threshold,
+ * the stall starts: the watchdog samples the stack of the application
+ * thread at a fixed interval until the heartbeat runs, then appends a
+ * report to a rolling log: the duration, the thread states, the frames
+ * found in most samples and the most frequent stacks. The duration is
+ * measured from the post of the late heartbeat, so it can miss up to half a
+ * threshold at the start of the stall.
+ * </p>
+ * <p>
+ * Without a stall, the cost is one small task queued per half threshold;
+ * the stacks are only sampled during a stall. The stalls are counted by
+ * the {@code PaintStats} of the drawing, as soon as they are detected, so
+ * a thread that never recovers still shows in the metrics.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class StallWatchdog implements AutoCloseable {
+    /** The default stall threshold, in milliseconds. */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 200;
+
+    /** The default interval between two stack samples, in milliseconds. */
+    public static final long DEFAULT_SAMPLE_MILLIS = 10;
+
+    /** The largest size of the log file before it is rolled over, in bytes. */
+    public static final long MAX_LOG_BYTES = 1 << 20;
+
+    /** The number of rolled-over log files kept: {@code <log>.1} is the most recent. */
+    public static final int LOG_BACKUPS = 3;
+
+    // The number of samples of a stall beyond which the stacks are no longer sampled.
+    private static final int MAX_SAMPLES = 10_000;
+
+    // The number of frames that identify a stack, and the number of frames and stacks reported.
+    private static final int STACK_DEPTH = 16;
+    private static final int TOP_FRAMES = 10;
+    private static final int TOP_STACKS = 3;
+
+    private final PaintStats stats;
+    private final long thresholdNanos, sampleNanos;
+
+    private Path log;
+    private Thread watcher;
+    private volatile boolean running;
+
+    // The application thread, known after its first heartbeat.
+    private volatile Thread fxThread;
+
+    // The post time of the last heartbeat run by the application thread, and when it ran.
+    private volatile long answered, answeredAt;
+
+    // The aggregated samples of the stall in progress (watcher thread only):
+    // the number of samples of each frame, and its smallest depth.
+    private int samples;
+    private final Map<Thread.State, int[]> states = new EnumMap<>(Thread.State.class);
+    private final Map<StackTraceElement, int[]> frames = new HashMap<>();
+    private final Map<List<StackTraceElement>, int[]> stacks = new HashMap<>();
+    private final Set<StackTraceElement> seen = new HashSet<>();
+
+    private volatile IOException lastError;
+
+    /**
+     * Initializes a new instance of the {@code StallWatchdog} class, with the
+     * default threshold and sample interval.
+     * @param stats The statistics that count the stalls, or null.
+     */
+    public StallWatchdog(PaintStats stats) {
+        this(stats, DEFAULT_THRESHOLD_MILLIS, DEFAULT_SAMPLE_MILLIS);
+    }
+
+    /**
+     * Initializes a new instance of the {@code StallWatchdog} class.
+     * @param stats The statistics that count the stalls, or null.
+     * @param thresholdMillis The time without a heartbeat after which the
+     * application thread is stalled, in milliseconds.
+     * @param sampleMillis The interval between two samples of its stack during a stall, in milliseconds.
+     * @throws IllegalArgumentException A time is not positive.
+     */
+    public StallWatchdog(PaintStats stats, long thresholdMillis, long sampleMillis) throws IllegalArgumentException {
+        if (thresholdMillis <= 0 || sampleMillis <= 0) {
+            throw new IllegalArgumentException("The threshold and the sample interval must be positive.");
+        }
+        this.stats = stats;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleNanos = TimeUnit.MILLISECONDS.toNanos(sampleMillis);
+    }
+
+    /**
+     * Starts watching the application thread. Stops the previous watch, if any.
+     * @param log The file where the reports are appended, created if needed,
+     * or null to only count the stalls.
+     */
+    public synchronized void start(Path log) {
+        stop();
+        this.log = log;
+        running = true;
+        watcher = new Thread(this::watch, "StallWatchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching, after reporting the stall in progress, if any.
+     */
+    public synchronized void stop() {
+        if (watcher == null) return;
+        running = false;
+        LockSupport.unpark(watcher);
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        watcher = null;
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Gets the last error that occurred while writing the log.
+     * @return An {@code IOException} object, or null.
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Posts heartbeats, and samples the application thread while one is late.
+     */
+    private void watch() {
+        Thread self = Thread.currentThread();
+        while (running) {
+            long posted = System.nanoTime();
+            try {
+                Platform.runLater(() -> {
+                    if (fxThread == null) fxThread = Thread.currentThread();
+                    answeredAt = System.nanoTime();
+                    answered = posted;
+                    LockSupport.unpark(self);
+                });
+            } catch (IllegalStateException e) {
+                return; // the toolkit has exited
+            }
+
+            if (!await(posted, posted + thresholdNanos) && running) {
+                stalled(posted);
+            }
+            // the next heartbeat, half a threshold after this one
+            sleepUntil(posted + thresholdNanos / 2);
+        }
+    }
+
+    /**
+     * Waits for the heartbeat posted at a time, until a deadline.
+     * @return true if the heartbeat has run; otherwise, false.
+     */
+    private boolean await(long posted, long deadline) {
+        while (running && answered != posted) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            LockSupport.parkNanos(this, remaining);
+        }
+        return answered == posted;
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Samples the stack of the application thread until the heartbeat runs, then reports the stall.
+     */
+    private void stalled(long posted) {
+        if (stats != null) stats.stallStarted(posted);
+        clearSamples();
+        while (running && answered != posted) {
+            Thread thread = fxThread;
+            if (thread != null && samples < MAX_SAMPLES) {
+                sample(thread);
+            }
+            LockSupport.parkNanos(this, sampleNanos);
+        }
+        boolean ended = answered == posted;
+        long duration = (ended ? answeredAt : System.nanoTime()) - posted;
+        if (stats != null) stats.stallEnded(duration);
+        if (log != null) {
+            writeReport(duration, ended);
+        }
+        clearSamples();
+    }
+
+    private void sample(Thread thread) {
+        StackTraceElement[] stack = thread.getStackTrace();
+        if (stack.length == 0) return; // not running Java code right now
+        samples++;
+        states.computeIfAbsent(thread.getState(), s -> new int[1])[0]++;
+        seen.clear();
+        for (int depth = 0; depth < stack.length; depth++) {
+            if (seen.add(stack[depth])) { // once per sample, even if recursive
+                int[] count = frames.computeIfAbsent(stack[depth], f -> new int[] { 0, Integer.MAX_VALUE });
+                count[0]++;
+                count[1] = Math.min(count[1], depth);
+            }
+        }
+        List<StackTraceElement> top = Arrays.asList(stack).subList(0, Math.min(STACK_DEPTH, stack.length));
+        stacks.computeIfAbsent(top, s -> new int[1])[0]++;
+    }
+
+    private void clearSamples() {
+        samples = 0;
+        states.clear();
+        frames.clear();
+        stacks.clear();
+    }
+
+    /**
+     * Appends the report of the stall to the log, rolling it over first if it is full.
+     */
+    private void writeReport(long durationNanos, boolean ended) {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(Instant.now()).append(String.format(" stall %.1f ms%s, %d samples every %d ms%n",
+            durationNanos / 1e6, ended ? "" : " (in progress)", samples, TimeUnit.NANOSECONDS.toMillis(sampleNanos)));
+        if (samples > 0) {
+            sb.append("  states:");
+            for (Map.Entry<Thread.State, int[]> e : states.entrySet()) {
+                sb.append(String.format(" %s %.0f%%", e.getKey(), percent(e.getValue()[0])));
+            }
+            sb.append(String.format("%n  top frames:%n"));
+            for (Map.Entry<StackTraceElement, int[]> e : top(frames, TOP_FRAMES)) {
+                sb.append(String.format("    %5.1f%%  %s%n", percent(e.getValue()[0]), e.getKey()));
+            }
+            sb.append(String.format("  top stacks:%n"));
+            for (Map.Entry<List<StackTraceElement>, int[]> e : top(stacks, TOP_STACKS)) {
+                sb.append(String.format("    %5.1f%% (%d samples)%n", percent(e.getValue()[0]), e.getValue()[0]));
+                for (StackTraceElement frame : e.getKey()) {
+                    sb.append("      at ").append(frame).append(System.lineSeparator());
+                }
+            }
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (Files.exists(log) && Files.size(log) + bytes.length > MAX_LOG_BYTES) {
+                rollOver();
+            }
+            Files.write(log, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            lastError = e;
+        }
+    }
+
+    /**
+     * Renames the log into {@code <log>.1}, and the previous backups into the next numbers.
+     */
+    private void rollOver() throws IOException {
+        Files.deleteIfExists(backup(LOG_BACKUPS));
+        for (int i = LOG_BACKUPS - 1; i >= 1; i--) {
+            if (Files.exists(backup(i))) {
+                Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(log, backup(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path backup(int number) {
+        return log.resolveSibling(log.getFileName() + "." + number);
+    }
+
+    private double percent(int count) {
+        return 100.0 * count / samples;
+    }
+
+    /**
+     * Gets the entries of a map with the largest counts, largest first; the
+     * frames found in as many samples are sorted from the top of the stack.
+     */
+    private static <K> List<Map.Entry<K, int[]>> top(Map<K, int[]> counts, int limit) {
+        List<Map.Entry<K, int[]>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> {
+            int[] x = a.getValue(), y = b.getValue();
+            return x[0] != y[0] ? Integer.compare(y[0], x[0]) : x.length > 1 ? Integer.compare(x[1], y[1]) : 0;
+        });
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+}
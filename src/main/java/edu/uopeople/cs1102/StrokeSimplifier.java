@@ -0,0 +1,381 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the number of points of a stroke while it is being drawn.
+ * <p>
+ * Points are filtered as they arrive: a point closer than the tolerance to the
+ * last kept point is rejected (radial distance), and a kept point that lies on
+ * the line between its neighbors, within the tolerance, is replaced by the next
+ * one (collinear merge), provided that the points dropped since the previous
+ * kept point stay within the tolerance of the new line too, so that the error
+ * doesn't accumulate along a curve. When the stroke is released, {@code end()}
+ * appends the last point received if it was dropped, so that the stroke ends
+ * where the input ended, then {@code finish()} runs a final
+ * Ramer-Douglas-Peucker pass over the stroke's recorded points. Each stage
+ * gets half of the tolerance, since the final pass only sees the points kept
+ * by the filter.
+ * </p>
+ * <p>
+ * The class keeps the number of points received and kept, and the time spent
+ * per point, so that fidelity can be traded against throughput.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class StrokeSimplifier {
+    /** The point must be appended to the stroke. */
+    public static final int APPEND = 0;
+
+    /** The point must replace the last point of the stroke. */
+    public static final int REPLACE = 1;
+
+    /** The point must be dropped. */
+    public static final int REJECT = 2;
+
+    // The largest number of dropped points checked against a new segment; past
+    // it, the points are kept, so that the cost per point stays bounded.
+    private static final int MAX_DROPPED = 256;
+
+    private double tolerance;
+
+    // The square of the error allowed to each stage: the filter drops points
+    // within half the tolerance of the input, and the final pass within half
+    // the tolerance of the points kept, so the errors add up to the tolerance at most.
+    private double toleranceSq;
+
+    // The last point that can no longer be replaced.
+    private double anchorX, anchorY;
+
+    // The last point kept; it may still be replaced by the next one.
+    private double lastX, lastY;
+    private boolean hasLast;
+
+    // The points dropped since the anchor, as x, y pairs: the segment from the
+    // anchor to a replacing point must pass within the tolerance of all of
+    // them, not only of the last point. The ones from droppedSinceLast on
+    // were dropped after the last point, and stay when it becomes the anchor.
+    private double[] dropped = new double[64];
+    private int droppedCount, droppedSinceLast;
+
+    // The last point received, while it is rejected: the end of the stroke.
+    private double endX, endY;
+    private boolean endRejected;
+
+    // Reusable buffers for the final pass.
+    private float[] xy = new float[256];
+    private boolean[] keep = new boolean[128];
+    private int[] stack = new int[64];
+
+    // Metrics
+    private long pointsIn, pointsOut, nanos;
+
+    /**
+     * Initializes a new instance of the {@code StrokeSimplifier} class.
+     * @param tolerance The maximum distance, in pixels, between the original
+     * and the simplified stroke.
+     */
+    public StrokeSimplifier(double tolerance) {
+        setTolerance(tolerance);
+    }
+
+    /**
+     * Gets the tolerance used to drop points.
+     * @return The maximum distance, in pixels, between the original and the simplified stroke.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the tolerance used to drop points.
+     * @param tolerance The maximum distance, in pixels, between the original
+     * and the simplified stroke. Cannot be negative.
+     * @throws IllegalArgumentException {@code tolerance} is negative.
+     */
+    public void setTolerance(double tolerance) throws IllegalArgumentException {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("The tolerance cannot be negative.");
+        }
+        this.tolerance = tolerance;
+        this.toleranceSq = tolerance * tolerance / 4;
+    }
+
+    /**
+     * Starts a new stroke at the specified location.
+     * @param x The x-coordinate of the first point.
+     * @param y The y-coordinate of the first point.
+     */
+    public void begin(double x, double y) {
+        anchorX = x;
+        anchorY = y;
+        hasLast = false;
+        endRejected = false;
+        droppedCount = droppedSinceLast = 0;
+        pointsIn++;
+        pointsOut++;
+    }
+
+    /**
+     * Decides what to do with the next point of the stroke.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return {@code APPEND} if the point must be appended to the stroke,
+     * {@code REPLACE} if it must replace the stroke's last point, or
+     * {@code REJECT} if it must be dropped.
+     */
+    public int add(double x, double y) {
+        long start = System.nanoTime();
+        int result = classify(x, y);
+        endRejected = result == REJECT;
+        endX = x;
+        endY = y;
+        nanos += System.nanoTime() - start;
+        pointsIn++;
+        if (result == APPEND) pointsOut++;
+        return result;
+    }
+
+    private int classify(double x, double y) {
+        double refX = hasLast ? lastX : anchorX;
+        double refY = hasLast ? lastY : anchorY;
+
+        // radial distance: ignore the points that are too close to the last one
+        double dx = x - refX, dy = y - refY;
+        if (dx * dx + dy * dy < toleranceSq && droppedCount < MAX_DROPPED) {
+            drop(x, y);
+            return REJECT;
+        }
+
+        if (hasLast && droppedCount < MAX_DROPPED && withinTolerance(x, y)) {
+            // the last point, and the ones dropped before, lie on the way to the new one: move it
+            drop(lastX, lastY);
+            droppedSinceLast = droppedCount;
+            lastX = x;
+            lastY = y;
+            return REPLACE;
+        }
+
+        if (hasLast) {
+            anchorX = lastX;
+            anchorY = lastY;
+            // only the points dropped after the new anchor still matter
+            int kept = droppedCount - droppedSinceLast;
+            System.arraycopy(dropped, droppedSinceLast << 1, dropped, 0, kept << 1);
+            droppedCount = kept;
+        }
+        droppedSinceLast = droppedCount;
+        lastX = x;
+        lastY = y;
+        hasLast = true;
+        return APPEND;
+    }
+
+    /**
+     * Indicates whether the segment from the anchor to a point passes within
+     * the tolerance of the last point and of all the points dropped since the anchor.
+     */
+    private boolean withinTolerance(double x, double y) {
+        if (segmentDistanceSq(lastX, lastY, anchorX, anchorY, x, y) > toleranceSq) {
+            return false;
+        }
+        for (int i = 0; i < droppedCount; i++) {
+            if (segmentDistanceSq(dropped[i << 1], dropped[(i << 1) + 1], anchorX, anchorY, x, y) > toleranceSq) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void drop(double x, double y) {
+        if (dropped.length < (droppedCount + 1) << 1) {
+            dropped = Arrays.copyOf(dropped, dropped.length * 2);
+        }
+        dropped[droppedCount << 1] = x;
+        dropped[(droppedCount << 1) + 1] = y;
+        droppedCount++;
+    }
+
+    /**
+     * Indicates whether the last point received has been rejected: it must
+     * still end the stroke (see {@code end()}).
+     * @return true if the last call to {@code add()} returned {@code REJECT}; otherwise, false.
+     */
+    public boolean isEndRejected() {
+        return endRejected;
+    }
+
+    /**
+     * Gets the x-coordinate of the last point received.
+     * @return The x-coordinate passed to the last call to {@code add()}.
+     */
+    public double getEndX() {
+        return endX;
+    }
+
+    /**
+     * Gets the y-coordinate of the last point received.
+     * @return The y-coordinate passed to the last call to {@code add()}.
+     */
+    public double getEndY() {
+        return endY;
+    }
+
+    /**
+     * Appends the last point received to the stroke being recorded in the
+     * specified store, if it has been rejected, so that the stroke ends where
+     * the input ended. Call it when the stroke is released, before {@code finish()}.
+     * @param store The store that records the stroke.
+     * @return true if the point has been appended; otherwise, false.
+     */
+    public boolean end(StrokeStore store) {
+        if (!endRejected) return false;
+        endRejected = false;
+        store.addPoint((float)endX, (float)endY);
+        pointsOut++;
+        return true;
+    }
+
+    /**
+     * Runs a Ramer-Douglas-Peucker pass over the last stroke of the specified
+     * store and removes the points that are not needed to keep the stroke
+     * within the tolerance.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke, which must be the last one of the store.
+     * @return The number of points left in the stroke.
+     */
+    public int finish(StrokeStore store, int stroke) {
+        long start = System.nanoTime();
+        int count = store.getStrokePointCount(stroke);
+
+        if (count < 3) {
+            nanos += System.nanoTime() - start;
+            return count;
+        }
+
+        ensureCapacity(count);
+        store.copyPoints(stroke, xy, 0);
+        mark(count);
+
+        // compact the kept points in place
+        int first = store.getStrokeStart(stroke);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                store.setPoint(first + kept++, xy[i << 1], xy[(i << 1) + 1]);
+            }
+        }
+        store.truncateLastStroke(kept);
+
+        pointsOut -= count - kept;
+        nanos += System.nanoTime() - start;
+        return kept;
+    }
+
+    /**
+     * Marks the points to keep, using an explicit stack instead of recursion.
+     */
+    private void mark(int count) {
+        for (int i = 1; i < count - 1; i++) {
+            keep[i] = false;
+        }
+        keep[0] = keep[count - 1] = true;
+
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            double ax = xy[first << 1], ay = xy[(first << 1) + 1];
+            double bx = xy[last << 1], by = xy[(last << 1) + 1];
+            double maxSq = -1;
+            int index = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(xy[i << 1], xy[(i << 1) + 1], ax, ay, bx, by);
+                if (d > maxSq) {
+                    maxSq = d;
+                    index = i;
+                }
+            }
+
+            if (index != -1 && maxSq > toleranceSq) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (xy.length < count * 2) {
+            xy = new float[count * 2];
+        }
+        if (keep.length < count) {
+            keep = new boolean[count];
+        }
+    }
+
+    /**
+     * Computes the squared distance between point (px, py) and the segment (ax, ay)-(bx, by).
+     */
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Gets the number of points received since the last reset.
+     * @return The number of input points.
+     */
+    public long getPointsIn() {
+        return pointsIn;
+    }
+
+    /**
+     * Gets the number of points kept since the last reset.
+     * @return The number of output points.
+     */
+    public long getPointsOut() {
+        return pointsOut;
+    }
+
+    /**
+     * Gets the fraction of the input points that have been dropped.
+     * @return A number between 0.0 (nothing dropped) and 1.0.
+     */
+    public double getReduction() {
+        return pointsIn == 0 ? 0 : 1.0 - (double)pointsOut / pointsIn;
+    }
+
+    /**
+     * Gets the average processing time per input point.
+     * @return The average time per point, in nanoseconds.
+     */
+    public double getNanosPerPoint() {
+        return pointsIn == 0 ? 0 : (double)nanos / pointsIn;
+    }
+
+    /**
+     * Resets the metrics.
+     */
+    public void resetMetrics() {
+        pointsIn = pointsOut = nanos = 0;
+    }
+}
@@ -0,0 +1,550 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+
+/**
+ * A retained model of the strokes drawn by the user.
+ * <p>
+ * Every stroke records its points, the index of its color in
+ * {@code ColorUtil.standardPalette} and its line width; the points of a
+ * variable-width stroke (see {@code BrushEngine}) also have their own
+ * width. The coordinates of all
+ * strokes are stored one after the other in fixed-size {@code float[]} chunks
+ * that are allocated as the drawing grows, so that a drawing made of millions
+ * of points doesn't create one object per point, and growing the store never
+ * copies the points already recorded.
+ * </p>
+ * <p>
+ * Points are addressed by a global index. The points of stroke {@code s} are
+ * the ones in the range {@code [getStrokeStart(s), getStrokeStart(s) + getStrokePointCount(s))},
+ * so strokes and points can be iterated with plain loops and without allocating:
+ * </p>
+ * <pre>
+ * for (int s = 0; s &lt; store.getStrokeCount(); s++) {
+ *     int start = store.getStrokeStart(s), end = start + store.getStrokePointCount(s);
+ *     for (int i = start; i &lt; end; i++) {
+ *         float x = store.getX(i), y = store.getY(i);
+ *     }
+ * }
+ * </pre>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class StrokeStore {
+    /**
+     * The color index of a stroke whose color is not in the palette.
+     */
+    public static final int CUSTOM_COLOR = -1;
+
+    // Each chunk holds 4096 points, stored as x0, y0, x1, y1, ...
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_POINTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_POINTS - 1;
+
+    private float[][] chunks = new float[4][];
+    private int chunkCount;
+    private int pointCount;
+
+    // The widths of the points of the variable-width strokes, in chunks parallel to
+    // the coordinate chunks; a chunk is only allocated when such a point is stored in it.
+    private float[][] widthChunks = new float[4][];
+
+    // Per-stroke attributes, indexed by stroke number.
+    private int[] strokeStart = new int[64];
+    private int[] strokeLength = new int[64];
+    private int[] strokeColor = new int[64];
+    private int[] strokeArgb = new int[64];
+    private float[] strokeWidth = new float[64];
+    private boolean[] strokeErased = new boolean[64];
+    private boolean[] strokeVariable = new boolean[64];
+    private int[] strokeLayer = new int[64];
+    private int strokeCount;
+
+    // Bounding boxes of the strokes' points, stored as minX, minY, maxX, maxY.
+    // They may be larger than needed after points are moved or removed.
+    private float[] bounds = new float[64 * 4];
+
+    // true between beginStroke() and endStroke()
+    private boolean open;
+
+    /**
+     * Starts recording a new stroke.
+     * @param colorIndex The index of the stroke's color in {@code ColorUtil.standardPalette}.
+     * @param lineWidth The width of the stroke's line.
+     * @return The index of the new stroke.
+     * @throws IllegalStateException A stroke is already being recorded.
+     */
+    public int beginStroke(int colorIndex, float lineWidth) throws IllegalStateException {
+        return begin(colorIndex, ColorUtil.standardPaletteArgb[colorIndex], lineWidth);
+    }
+
+    /**
+     * Starts recording a new stroke whose color is not in the palette.
+     * @param argb The color of the stroke, in ARGB format.
+     * @param lineWidth The width of the stroke's line.
+     * @return The index of the new stroke.
+     * @throws IllegalStateException A stroke is already being recorded.
+     */
+    public int beginCustomStroke(int argb, float lineWidth) throws IllegalStateException {
+        return begin(CUSTOM_COLOR, argb, lineWidth);
+    }
+
+    private int begin(int colorIndex, int argb, float lineWidth) throws IllegalStateException {
+        if (open) {
+            throw new IllegalStateException("A stroke is already being recorded.");
+        }
+        if (strokeCount == strokeStart.length) {
+            growStrokes();
+        }
+        int s = strokeCount++;
+        strokeStart[s] = pointCount;
+        strokeLength[s] = 0;
+        strokeColor[s] = colorIndex;
+        strokeArgb[s] = argb;
+        strokeWidth[s] = lineWidth;
+        strokeErased[s] = false;
+        strokeVariable[s] = false;
+        strokeLayer[s] = 0;
+        bounds[s << 2] = bounds[(s << 2) + 1] = Float.POSITIVE_INFINITY;
+        bounds[(s << 2) + 2] = bounds[(s << 2) + 3] = Float.NEGATIVE_INFINITY;
+        open = true;
+        return s;
+    }
+
+    /**
+     * Appends a point to the stroke being recorded.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @throws IllegalStateException No stroke is being recorded.
+     */
+    public void addPoint(float x, float y) throws IllegalStateException {
+        if (!open) {
+            throw new IllegalStateException("No stroke is being recorded.");
+        }
+        int chunk = pointCount >>> CHUNK_SHIFT;
+        if (chunk == chunkCount) {
+            addChunk();
+        }
+        int offset = (pointCount & CHUNK_MASK) << 1;
+        float[] c = chunks[chunk];
+        c[offset] = x;
+        c[offset + 1] = y;
+        pointCount++;
+        strokeLength[strokeCount - 1]++;
+        include(strokeCount - 1, x, y);
+    }
+
+    /**
+     * Appends a point with its own width to the stroke being recorded, which
+     * becomes a variable-width stroke. The line width of such a stroke is the
+     * largest width of its points.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param width The width of the stroke at the point.
+     * @throws IllegalStateException No stroke is being recorded.
+     */
+    public void addPoint(float x, float y, float width) throws IllegalStateException {
+        addPoint(x, y);
+        int s = strokeCount - 1;
+        if (!strokeVariable[s]) {
+            // the points added without a width get the line width
+            for (int i = strokeStart[s]; i < pointCount - 1; i++) {
+                setWidth(i, strokeWidth[s]);
+            }
+            strokeVariable[s] = true;
+            strokeWidth[s] = width;
+        } else if (width > strokeWidth[s]) {
+            strokeWidth[s] = width;
+        }
+        setWidth(pointCount - 1, width);
+    }
+
+    /**
+     * Replaces the coordinates of the specified point.
+     * @param point The global index of the point.
+     * @param x The new x-coordinate of the point.
+     * @param y The new y-coordinate of the point.
+     */
+    public void setPoint(int point, float x, float y) {
+        float[] c = chunks[point >>> CHUNK_SHIFT];
+        int offset = (point & CHUNK_MASK) << 1;
+        c[offset] = x;
+        c[offset + 1] = y;
+
+        // the point may belong to the last stroke only
+        if (strokeCount > 0 && point >= strokeStart[strokeCount - 1]) {
+            include(strokeCount - 1, x, y);
+        }
+    }
+
+    /**
+     * Drops the trailing points of the last stroke.
+     * @param count The number of points to keep in the last stroke.
+     * @throws IllegalArgumentException {@code count} is negative or greater
+     * than the number of points of the last stroke.
+     */
+    public void truncateLastStroke(int count) throws IllegalArgumentException {
+        int s = strokeCount - 1;
+        if (s < 0 || count < 0 || count > strokeLength[s]) {
+            throw new IllegalArgumentException();
+        }
+        pointCount -= strokeLength[s] - count;
+        strokeLength[s] = count;
+    }
+
+    /**
+     * Appends a copy of a stroke of another store.
+     * @param src The store that contains the stroke to copy.
+     * @param stroke The index of the stroke in {@code src}.
+     * @return The index of the new stroke in this store.
+     * @throws IllegalStateException A stroke is already being recorded.
+     */
+    public int appendStroke(StrokeStore src, int stroke) throws IllegalStateException {
+        int s = begin(src.strokeColor[stroke], src.strokeArgb[stroke], src.strokeWidth[stroke]);
+        int point = src.strokeStart[stroke];
+        int end = point + src.strokeLength[stroke];
+
+        while (point < end) {
+            int chunk = pointCount >>> CHUNK_SHIFT;
+            if (chunk == chunkCount) {
+                addChunk();
+            }
+            // copy as many points as fit in both the source and the destination chunks
+            int srcOffset = point & CHUNK_MASK, dstOffset = pointCount & CHUNK_MASK;
+            int n = Math.min(end - point, Math.min(CHUNK_POINTS - srcOffset, CHUNK_POINTS - dstOffset));
+            System.arraycopy(src.chunks[point >>> CHUNK_SHIFT], srcOffset << 1, chunks[chunk], dstOffset << 1, n << 1);
+            point += n;
+            pointCount += n;
+        }
+        strokeLength[s] = src.strokeLength[stroke];
+        strokeErased[s] = src.strokeErased[stroke];
+        strokeLayer[s] = src.strokeLayer[stroke];
+        if (src.strokeVariable[stroke]) {
+            strokeVariable[s] = true;
+            for (int i = 0, from = src.strokeStart[stroke], to = strokeStart[s]; i < strokeLength[s]; i++) {
+                setWidth(to + i, src.getWidth(from + i));
+            }
+        }
+        System.arraycopy(src.bounds, stroke << 2, bounds, s << 2, 4);
+        open = false;
+        return s;
+    }
+
+    /**
+     * Removes the strokes that follow the specified number of strokes.
+     * @param count The number of strokes to keep.
+     * @throws IllegalArgumentException {@code count} is negative or greater than the number of strokes.
+     */
+    public void truncate(int count) throws IllegalArgumentException {
+        if (count < 0 || count > strokeCount) {
+            throw new IllegalArgumentException();
+        }
+        if (count < strokeCount) {
+            pointCount = strokeStart[count];
+            strokeCount = count;
+            open = false;
+        }
+    }
+
+    /**
+     * Finishes recording the current stroke. Does nothing if no stroke is being recorded.
+     */
+    public void endStroke() {
+        open = false;
+    }
+
+    /**
+     * Indicates whether a stroke is being recorded.
+     * @return true if {@code beginStroke()} has been called without a matching {@code endStroke()}.
+     */
+    public boolean isRecording() {
+        return open;
+    }
+
+    /**
+     * Removes all strokes. The chunks already allocated are kept for reuse;
+     * call {@code trimToSize()} to release them.
+     */
+    public void clear() {
+        strokeCount = 0;
+        pointCount = 0;
+        open = false;
+    }
+
+    /**
+     * Releases the chunks and the stroke slots that are not in use.
+     */
+    public void trimToSize() {
+        int used = (pointCount + CHUNK_MASK) >>> CHUNK_SHIFT;
+        for (int i = used; i < chunkCount; i++) {
+            chunks[i] = null;
+        }
+        for (int i = used; i < widthChunks.length; i++) {
+            widthChunks[i] = null;
+        }
+        chunkCount = used;
+
+        int capacity = Math.max(strokeCount, 16);
+        if (capacity < strokeStart.length) {
+            resizeStrokes(capacity);
+        }
+    }
+
+    /**
+     * Gets the number of strokes, including the one being recorded.
+     * @return The number of strokes.
+     */
+    public int getStrokeCount() {
+        return strokeCount;
+    }
+
+    /**
+     * Gets the total number of points of all strokes.
+     * @return The number of points.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Gets the global index of the first point of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The index of the stroke's first point.
+     */
+    public int getStrokeStart(int stroke) {
+        return strokeStart[stroke];
+    }
+
+    /**
+     * Gets the number of points of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The number of points of the stroke.
+     */
+    public int getStrokePointCount(int stroke) {
+        return strokeLength[stroke];
+    }
+
+    /**
+     * Gets the index of the color of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return An index into {@code ColorUtil.standardPalette}, or {@code CUSTOM_COLOR}
+     * if the stroke's color is not in the palette.
+     */
+    public int getColorIndex(int stroke) {
+        return strokeColor[stroke];
+    }
+
+    /**
+     * Gets the color of the specified stroke, whether it comes from the palette or not.
+     * @param stroke The index of the stroke.
+     * @return The color of the stroke, in ARGB format.
+     */
+    public int getArgb(int stroke) {
+        return strokeArgb[stroke];
+    }
+
+    /**
+     * Gets the line width of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The width of the stroke's line.
+     */
+    public float getLineWidth(int stroke) {
+        return strokeWidth[stroke];
+    }
+
+    /**
+     * Indicates whether the points of the specified stroke have their own width.
+     * @param stroke The index of the stroke.
+     * @return true if the stroke has been recorded with {@code addPoint(float, float, float)}; otherwise, false.
+     */
+    public boolean isVariableWidth(int stroke) {
+        return strokeVariable[stroke];
+    }
+
+    /**
+     * Gets the layer of the specified stroke, in a document made of layers.
+     * @param stroke The index of the stroke.
+     * @return The index of the layer in the {@code LayerStack}, 0 by default.
+     */
+    public int getLayer(int stroke) {
+        return strokeLayer[stroke];
+    }
+
+    /**
+     * Sets the layer that the specified stroke is drawn on. The layer is
+     * copied by {@code appendStroke()}, but isn't saved by {@code DrawingFile}.
+     * @param stroke The index of the stroke.
+     * @param layer The index of the layer in the {@code LayerStack}.
+     */
+    public void setLayer(int stroke, int layer) {
+        strokeLayer[stroke] = layer;
+    }
+
+    /**
+     * Marks a stroke as erased, or restores it. An erased stroke keeps its
+     * index and its points (it is a tombstone), so that the indices of the
+     * strokes that follow it don't change, but it must not be drawn.
+     * @param stroke The index of the stroke.
+     * @param erased true to erase the stroke; false to restore it.
+     */
+    public void setErased(int stroke, boolean erased) {
+        strokeErased[stroke] = erased;
+    }
+
+    /**
+     * Indicates whether the specified stroke has been erased.
+     * @param stroke The index of the stroke.
+     * @return true if the stroke is erased and must not be drawn; otherwise, false.
+     */
+    public boolean isErased(int stroke) {
+        return strokeErased[stroke];
+    }
+
+    /**
+     * Gets the smallest x-coordinate of the points of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The left edge of the stroke's bounding box, not including the line width.
+     */
+    public float getMinX(int stroke) {
+        return bounds[stroke << 2];
+    }
+
+    /**
+     * Gets the smallest y-coordinate of the points of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The top edge of the stroke's bounding box, not including the line width.
+     */
+    public float getMinY(int stroke) {
+        return bounds[(stroke << 2) + 1];
+    }
+
+    /**
+     * Gets the largest x-coordinate of the points of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The right edge of the stroke's bounding box, not including the line width.
+     */
+    public float getMaxX(int stroke) {
+        return bounds[(stroke << 2) + 2];
+    }
+
+    /**
+     * Gets the largest y-coordinate of the points of the specified stroke.
+     * @param stroke The index of the stroke.
+     * @return The bottom edge of the stroke's bounding box, not including the line width.
+     */
+    public float getMaxY(int stroke) {
+        return bounds[(stroke << 2) + 3];
+    }
+
+    /**
+     * Gets the x-coordinate of the specified point.
+     * @param point The global index of the point.
+     * @return The x-coordinate of the point.
+     */
+    public float getX(int point) {
+        return chunks[point >>> CHUNK_SHIFT][(point & CHUNK_MASK) << 1];
+    }
+
+    /**
+     * Gets the y-coordinate of the specified point.
+     * @param point The global index of the point.
+     * @return The y-coordinate of the point.
+     */
+    public float getY(int point) {
+        return chunks[point >>> CHUNK_SHIFT][((point & CHUNK_MASK) << 1) + 1];
+    }
+
+    /**
+     * Gets the width of the stroke at the specified point, which must belong to a variable-width stroke.
+     * @param point The global index of the point.
+     * @return The width of the stroke at the point.
+     */
+    public float getWidth(int point) {
+        return widthChunks[point >>> CHUNK_SHIFT][point & CHUNK_MASK];
+    }
+
+    /**
+     * Copies the points of the specified stroke into the given array as x0, y0, x1, y1, ...
+     * @param stroke The index of the stroke.
+     * @param dst The destination array, which must have room for
+     * {@code 2 * getStrokePointCount(stroke)} values starting at {@code offset}.
+     * @param offset The index in {@code dst} of the first value to write.
+     * @return The number of points copied.
+     */
+    public int copyPoints(int stroke, float[] dst, int offset) {
+        int point = strokeStart[stroke];
+        int remaining = strokeLength[stroke];
+        int count = remaining;
+
+        // copy chunk by chunk
+        while (remaining > 0) {
+            int inChunk = point & CHUNK_MASK;
+            int n = Math.min(remaining, CHUNK_POINTS - inChunk);
+            System.arraycopy(chunks[point >>> CHUNK_SHIFT], inChunk << 1, dst, offset, n << 1);
+            offset += n << 1;
+            point += n;
+            remaining -= n;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this store.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = (long)chunkCount * CHUNK_POINTS * 2 * Float.BYTES;
+        for (float[] widths : widthChunks) {
+            if (widths != null) bytes += (long)CHUNK_POINTS * Float.BYTES;
+        }
+        bytes += (long)strokeStart.length * (5 * Integer.BYTES + 5 * Float.BYTES + 2);
+        return bytes;
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            float[][] grown = new float[chunks.length * 2][];
+            System.arraycopy(chunks, 0, grown, 0, chunkCount);
+            chunks = grown;
+        }
+        if (chunks[chunkCount] == null) {
+            chunks[chunkCount] = new float[CHUNK_POINTS * 2];
+        }
+        chunkCount++;
+    }
+
+    private void setWidth(int point, float width) {
+        int chunk = point >>> CHUNK_SHIFT;
+        if (chunk >= widthChunks.length) {
+            widthChunks = Arrays.copyOf(widthChunks, Math.max(chunk + 1, widthChunks.length * 2));
+        }
+        if (widthChunks[chunk] == null) {
+            widthChunks[chunk] = new float[CHUNK_POINTS];
+        }
+        widthChunks[chunk][point & CHUNK_MASK] = width;
+    }
+
+    private void growStrokes() {
+        resizeStrokes(strokeStart.length * 2);
+    }
+
+    private void resizeStrokes(int capacity) {
+        strokeStart = Arrays.copyOf(strokeStart, capacity);
+        strokeLength = Arrays.copyOf(strokeLength, capacity);
+        strokeColor = Arrays.copyOf(strokeColor, capacity);
+        strokeArgb = Arrays.copyOf(strokeArgb, capacity);
+        strokeWidth = Arrays.copyOf(strokeWidth, capacity);
+        strokeErased = Arrays.copyOf(strokeErased, capacity);
+        strokeVariable = Arrays.copyOf(strokeVariable, capacity);
+        strokeLayer = Arrays.copyOf(strokeLayer, capacity);
+        bounds = Arrays.copyOf(bounds, capacity * 4);
+    }
+
+    private void include(int stroke, float x, float y) {
+        int b = stroke << 2;
+        if (x < bounds[b]) bounds[b] = x;
+        if (y < bounds[b + 1]) bounds[b + 1] = y;
+        if (x > bounds[b + 2]) bounds[b + 2] = x;
+        if (y > bounds[b + 3]) bounds[b + 3] = y;
+    }
+}
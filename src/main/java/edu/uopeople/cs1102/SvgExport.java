@@ -0,0 +1,413 @@
+package edu.uopeople.cs1102;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the strokes of a drawing as an SVG document, for output that
+ * doesn't depend on a resolution, such as print.
+ * <p>
+ * The document is streamed: each stroke is formatted into a fixed buffer of
+ * characters, which is written when full, so the memory used doesn't depend
+ * on the number of strokes or points, and no DOM is built. The colors are
+ * formatted by {@code ColorUtil.formatHex()} and the numbers by this class,
+ * directly into the buffer, without creating strings.
+ * </p>
+ * <p>
+ * A stroke of constant width is a path with the width, caps and joins of
+ * the canvas ({@code GraphicsContext} defaults: square caps, miter joins,
+ * miter limit 10); consecutive strokes of the same color and width share
+ * their attributes through a group. A variable-width stroke of the
+ * {@code Brush} tool is a group of filled shapes: the same pieces and round
+ * joins as the ones filled on the canvas (see {@code BrushEngine}).
+ * </p>
+ * <p>
+ * To shrink the output, the coordinates are quantized to a number of
+ * decimals and written relative to the previous point, the points that
+ * quantize to the same position are skipped, and the constant-width strokes
+ * can be simplified as they are written, by the radial-distance and
+ * collinear-merge pass of a {@code StrokeSimplifier}. The stroke store
+ * isn't modified. Flood fills are pixels, not strokes, and aren't exported.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public final class SvgExport {
+    /** The default number of decimals of the coordinates. */
+    public static final int DEFAULT_DECIMALS = 2;
+
+    /** The largest number of decimals of the coordinates. */
+    public static final int MAX_DECIMALS = 4;
+
+    // The number of decimals of the line widths and the radii of the round joins.
+    private static final int WIDTH_DECIMALS = 3;
+
+    // The size of the buffer, and the room left for one number or attribute before it is written.
+    private static final int BUFFER_CHARS = 1 << 16;
+    private static final int RESERVE = 64;
+
+    private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000 };
+
+    /**
+     * Private constructor for the 'static' class.
+     */
+    private SvgExport() {
+    }
+
+    /**
+     * Writes the strokes of a drawing as an SVG file, with the default
+     * number of decimals and without simplification.
+     * @param path The file to write, which is replaced if it exists.
+     * @param store The strokes; erased ones are skipped.
+     * @param width The width of the drawing, in pixels.
+     * @param height The height of the drawing, in pixels.
+     * @return The number of characters written.
+     * @throws IOException An I/O error occurs.
+     */
+    public static long write(Path path, StrokeStore store, int width, int height) throws IOException {
+        return write(path, store, width, height, 0, DEFAULT_DECIMALS);
+    }
+
+    /**
+     * Writes the strokes of a drawing as an SVG file.
+     * @param path The file to write, which is replaced if it exists.
+     * @param store The strokes; erased ones are skipped.
+     * @param width The width of the drawing, in pixels.
+     * @param height The height of the drawing, in pixels.
+     * @param tolerance The largest distance, in pixels, between a constant-width
+     * stroke and its simplified path, or 0 to keep all the points.
+     * @param decimals The number of decimals of the coordinates, from 0 to {@code MAX_DECIMALS}.
+     * @return The number of characters written.
+     * @throws IllegalArgumentException The size, the tolerance or the number of decimals is not valid.
+     * @throws IOException An I/O error occurs.
+     */
+    public static long write(Path path, StrokeStore store, int width, int height, double tolerance, int decimals)
+            throws IllegalArgumentException, IOException {
+        // the document is ASCII; the buffer of this class replaces a BufferedWriter
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.US_ASCII)) {
+            return write(out, store, width, height, tolerance, decimals);
+        }
+    }
+
+    /**
+     * Writes the strokes of a drawing as an SVG document.
+     * @param out The destination, which is flushed but not closed.
+     * @param store The strokes; erased ones are skipped.
+     * @param width The width of the drawing, in pixels.
+     * @param height The height of the drawing, in pixels.
+     * @param tolerance The largest distance, in pixels, between a constant-width
+     * stroke and its simplified path, or 0 to keep all the points.
+     * @param decimals The number of decimals of the coordinates, from 0 to {@code MAX_DECIMALS}.
+     * @return The number of characters written.
+     * @throws IllegalArgumentException The size, the tolerance or the number of decimals is not valid.
+     * @throws IOException An I/O error occurs.
+     */
+    public static long write(Writer out, StrokeStore store, int width, int height, double tolerance, int decimals)
+            throws IllegalArgumentException, IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and the height must be positive.");
+        }
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("The tolerance cannot be negative.");
+        }
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("The number of decimals must be between 0 and " + MAX_DECIMALS + ".");
+        }
+        SvgWriter svg = new SvgWriter(out, decimals, tolerance > 0 ? new StrokeSimplifier(tolerance) : null);
+        svg.begin(width, height);
+        for (int s = 0; s < store.getStrokeCount(); s++) {
+            if (store.isErased(s)) continue;
+            if (store.isVariableWidth(s)) {
+                svg.variableStroke(store, s);
+            } else if (store.getStrokePointCount(s) > 1) {
+                svg.stroke(store, s); // a single point draws nothing on the canvas
+            }
+        }
+        svg.end();
+        return svg.written;
+    }
+
+    /**
+     * Formats the document into a buffer of characters.
+     */
+    private static final class SvgWriter {
+        private final Writer out;
+        private final char[] buffer = new char[BUFFER_CHARS];
+        private final int decimals, factor;
+        private final StrokeSimplifier simplifier;
+        private final BrushEngine brush = new BrushEngine();
+        private int position;
+        long written;
+
+        // The color and width of the open group of constant-width strokes; no group when groupOpen is false.
+        private boolean groupOpen;
+        private int groupArgb;
+        private float groupWidth;
+
+        // The last point of the path, in quantized units, and the number of
+        // relative coordinates written since the last command letter.
+        private long lastX, lastY;
+        private int relative;
+
+        SvgWriter(Writer out, int decimals, StrokeSimplifier simplifier) {
+            this.out = out;
+            this.decimals = decimals;
+            this.factor = POWERS_OF_TEN[decimals];
+            this.simplifier = simplifier;
+        }
+
+        void begin(int width, int height) throws IOException {
+            text("<?xml version=\"1.0\" encoding=\"US-ASCII\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+            integer(width);
+            text("\" height=\"");
+            integer(height);
+            text("\" viewBox=\"0 0 ");
+            integer(width);
+            put(' ');
+            integer(height);
+            text("\">\n<g fill=\"none\" stroke-linecap=\"square\" stroke-linejoin=\"miter\" stroke-miterlimit=\"10\">\n");
+        }
+
+        void end() throws IOException {
+            closeGroup();
+            text("</g>\n</svg>\n");
+            flush();
+            out.flush();
+        }
+
+        /**
+         * Writes a constant-width stroke, in the group of its color and width.
+         */
+        void stroke(StrokeStore store, int stroke) throws IOException {
+            int argb = argb(store, stroke);
+            float width = store.getLineWidth(stroke);
+            if (!groupOpen || argb != groupArgb || width != groupWidth) {
+                closeGroup();
+                text("<g stroke=\"");
+                color(argb);
+                text("\" stroke-width=\"");
+                fixed(Math.round(width * (double)POWERS_OF_TEN[WIDTH_DECIMALS]), WIDTH_DECIMALS);
+                put('"');
+                opacity(" stroke-opacity=\"", argb);
+                text(">\n");
+                groupOpen = true;
+                groupArgb = argb;
+                groupWidth = width;
+            }
+
+            int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+            text("<path d=\"");
+            moveTo(store.getX(first), store.getY(first));
+            put('l');
+            if (simplifier == null) {
+                for (int i = first + 1; i < end; i++) {
+                    lineTo(store.getX(i), store.getY(i));
+                }
+            } else {
+                simplify(store, first, end);
+            }
+            if (relative == 0) {
+                text("0 0"); // all the points quantize to the first one
+            }
+            text("\"/>\n");
+        }
+
+        /**
+         * Writes the points kept by the simplifier: a point is written once the
+         * next one can no longer replace it, and the last point is always written.
+         */
+        private void simplify(StrokeStore store, int first, int end) throws IOException {
+            simplifier.begin(store.getX(first), store.getY(first));
+            boolean pending = false, rejected = false;
+            float pendingX = 0, pendingY = 0;
+            for (int i = first + 1; i < end; i++) {
+                float x = store.getX(i), y = store.getY(i);
+                switch (simplifier.add(x, y)) {
+                    case StrokeSimplifier.APPEND:
+                        if (pending) lineTo(pendingX, pendingY);
+                        // fall through
+                    case StrokeSimplifier.REPLACE:
+                        pending = true;
+                        pendingX = x;
+                        pendingY = y;
+                        rejected = false;
+                        break;
+                    default:
+                        rejected = true;
+                        break;
+                }
+            }
+            if (pending) lineTo(pendingX, pendingY);
+            if (rejected) lineTo(store.getX(end - 1), store.getY(end - 1));
+        }
+
+        /**
+         * Writes a variable-width stroke as a group of filled shapes: the
+         * outline of each piece and a circle at each point, as they are
+         * filled on the canvas.
+         */
+        void variableStroke(StrokeStore store, int stroke) throws IOException {
+            closeGroup();
+            int argb = argb(store, stroke);
+            text("<g stroke=\"none\" fill=\"");
+            color(argb);
+            put('"');
+            opacity(" fill-opacity=\"", argb);
+            text(">\n");
+
+            int first = store.getStrokeStart(stroke), end = first + store.getStrokePointCount(stroke);
+            for (int i = first; i < end; i++) {
+                if (i < end - 1) {
+                    int n = brush.outline(store, first, end, i);
+                    double[] xs = brush.getOutlineX(), ys = brush.getOutlineY();
+                    text("<path d=\"");
+                    moveTo(xs[0], ys[0]);
+                    put('l');
+                    for (int j = 1; j < n; j++) {
+                        lineTo(xs[j], ys[j]);
+                    }
+                    text("z\"/>\n");
+                }
+                long r = Math.round(store.getWidth(i) / 2 * POWERS_OF_TEN[WIDTH_DECIMALS]);
+                if (r > 0) {
+                    text("<circle cx=\"");
+                    fixed(Math.round(store.getX(i) * (double)factor), decimals);
+                    text("\" cy=\"");
+                    fixed(Math.round(store.getY(i) * (double)factor), decimals);
+                    text("\" r=\"");
+                    fixed(r, WIDTH_DECIMALS);
+                    text("\"/>\n");
+                }
+            }
+            text("</g>\n");
+        }
+
+        private void moveTo(double x, double y) throws IOException {
+            long qx = Math.round(x * factor), qy = Math.round(y * factor);
+            put('M');
+            fixed(qx, decimals);
+            separator(qy);
+            fixed(qy, decimals);
+            lastX = qx;
+            lastY = qy;
+            relative = 0;
+        }
+
+        /**
+         * Writes the relative coordinates of a point, unless it quantizes to the last one.
+         */
+        private void lineTo(double x, double y) throws IOException {
+            long qx = Math.round(x * factor), qy = Math.round(y * factor);
+            long dx = qx - lastX, dy = qy - lastY;
+            if (dx == 0 && dy == 0) return;
+            if (relative++ > 0) separator(dx);
+            fixed(dx, decimals);
+            separator(dy);
+            fixed(dy, decimals);
+            lastX = qx;
+            lastY = qy;
+        }
+
+        private void closeGroup() throws IOException {
+            if (groupOpen) {
+                text("</g>\n");
+                groupOpen = false;
+            }
+        }
+
+        private void color(int argb) throws IOException {
+            reserve();
+            position = ColorUtil.formatHex(argb, buffer, position);
+        }
+
+        /**
+         * Writes an opacity attribute, followed by a quote, for a translucent color.
+         */
+        private void opacity(String attribute, int argb) throws IOException {
+            int alpha = ColorUtil.alpha(argb);
+            if (alpha == 255) return;
+            text(attribute);
+            fixed(Math.round(alpha * 1000 / 255.0), 3);
+            put('"');
+        }
+
+        /**
+         * Writes a space before a number, unless its minus sign separates it.
+         */
+        private void separator(long units) throws IOException {
+            if (units >= 0) put(' ');
+        }
+
+        /**
+         * Writes a fixed-point number without trailing zeros.
+         */
+        private void fixed(long units, int digits) throws IOException {
+            reserve();
+            if (units < 0) {
+                buffer[position++] = '-';
+                units = -units;
+            }
+            int scale = POWERS_OF_TEN[digits];
+            writeDigits(units / scale);
+            int fraction = (int)(units % scale);
+            if (fraction == 0) return;
+            buffer[position++] = '.';
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            for (int i = position + digits - 1; i >= position; i--) {
+                buffer[i] = (char)('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += digits;
+        }
+
+        private void integer(long value) throws IOException {
+            fixed(value, 0);
+        }
+
+        private void writeDigits(long value) {
+            int count = 1;
+            for (long v = value; v >= 10; v /= 10) count++;
+            for (int i = position + count - 1; i >= position; i--) {
+                buffer[i] = (char)('0' + value % 10);
+                value /= 10;
+            }
+            position += count;
+        }
+
+        private void text(String s) throws IOException {
+            if (position + s.length() > buffer.length) flush();
+            s.getChars(0, s.length(), buffer, position);
+            position += s.length();
+        }
+
+        private void put(char c) throws IOException {
+            if (position == buffer.length) flush();
+            buffer[position++] = c;
+        }
+
+        /**
+         * Makes room for a number or a color.
+         */
+        private void reserve() throws IOException {
+            if (position > buffer.length - RESERVE) flush();
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+
+        private static int argb(StrokeStore store, int stroke) {
+            int colorIndex = store.getColorIndex(stroke);
+            return colorIndex == StrokeStore.CUSTOM_COLOR ? store.getArgb(stroke) : ColorUtil.standardPaletteArgb[colorIndex];
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package edu.uopeople.cs1102;
+
+import java.util.function.IntConsumer;
+
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.layout.Region;
+
+/**
+ * A color palette that draws all of its swatches on a single {@code Canvas}.
+ * <p>
+ * Unlike the palette of {@code Button} objects created by {@code AdvancedPaint},
+ * this component doesn't create a node (or a CSS style) per color: the colors
+ * are kept as packed ARGB values, a click is converted to a color index with
+ * arithmetic, and only the rows visible in the viewport are rendered when the
+ * palette is scrolled. Building a palette of thousands of colors costs the
+ * same as building one of a few colors.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class SwatchPalette extends Region {
+    /** The default width and height of a swatch, in pixels. */
+    public static final int DEFAULT_SWATCH_SIZE = 28;
+
+    // The color of a swatch's border, and of the selected swatch's inner border.
+    private static final int BORDER = 0xFF808080;
+    private static final int HIGHLIGHT = 0xFFFFFFFF;
+
+    // The color of the empty cells after the last swatch.
+    private static final int BACKGROUND = 0xFFFFFFFF;
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+
+    private final int[] colors;
+    private final int columns;
+    private final int rows;
+    private final int swatchSize;
+
+    private int selectedIndex = -1;
+    private IntConsumer onSelect;
+
+    // The pixels of the viewport, reused from one rendering to the next.
+    private int[] pixels = new int[0];
+
+    // The number of rows rendered by the last call to redraw().
+    private int renderedRows;
+
+    /**
+     * Initializes a new instance of the {@code SwatchPalette} class
+     * with two columns of swatches of the default size.
+     * @param colors The colors of the palette, as packed ARGB values. The array
+     * is not copied; call {@code redraw()} after changing its content.
+     */
+    public SwatchPalette(int[] colors) {
+        this(colors, 2, DEFAULT_SWATCH_SIZE);
+    }
+
+    /**
+     * Initializes a new instance of the {@code SwatchPalette} class.
+     * @param colors The colors of the palette, as packed ARGB values. The array
+     * is not copied; call {@code redraw()} after changing its content.
+     * @param columns The number of swatches per row.
+     * @param swatchSize The width and height of a swatch, in pixels.
+     * @throws IllegalArgumentException {@code columns} is less than 1, or
+     * {@code swatchSize} is less than 5.
+     */
+    public SwatchPalette(int[] colors, int columns, int swatchSize) throws IllegalArgumentException {
+        if (columns < 1) {
+            throw new IllegalArgumentException("A palette needs at least one column.");
+        }
+        if (swatchSize < 5) {
+            throw new IllegalArgumentException("The swatch size must be at least 5 pixels.");
+        }
+        this.colors = colors;
+        this.columns = columns;
+        this.rows = (colors.length + columns - 1) / columns;
+        this.swatchSize = swatchSize;
+
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setMax(0); // until the first layout
+        scrollBar.setUnitIncrement(swatchSize);
+        scrollBar.valueProperty().addListener((obs, oldValue, newValue) -> redraw());
+
+        canvas.setOnMousePressed(e -> setSelectedIndex(indexAt(e.getX(), e.getY())));
+        setOnScroll(e -> scrollBar.setValue(clamp(scrollBar.getValue() - e.getDeltaY())));
+
+        getChildren().addAll(canvas, scrollBar);
+    }
+
+    /**
+     * Gets the color index of the swatch at the specified location of the viewport.
+     * @param x The x-coordinate, relative to the palette.
+     * @param y The y-coordinate, relative to the palette.
+     * @return The index of the color under the location, or -1 if there is none.
+     */
+    public int indexAt(double x, double y) {
+        if (x < 0 || y < 0 || x >= columns * swatchSize || y >= canvas.getHeight()) {
+            return -1;
+        }
+        int column = (int)x / swatchSize;
+        int row = (int)(y + scrollBar.getValue()) / swatchSize;
+        int index = row * columns + column;
+        return index < colors.length ? index : -1;
+    }
+
+    /**
+     * Gets the index of the selected color.
+     * @return The index of the selected color, or -1 if no color is selected.
+     */
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    /**
+     * Selects a color, scrolls it into view and notifies the {@code onSelect}
+     * handler. Does nothing if the index is -1 or is already selected.
+     * @param index The index of the color to select, or -1.
+     * @throws IllegalArgumentException {@code index} is out of range.
+     */
+    public void setSelectedIndex(int index) throws IllegalArgumentException {
+        if (index < -1 || index >= colors.length) {
+            throw new IllegalArgumentException("The color index is out of range: " + index);
+        }
+        if (index == -1 || index == selectedIndex) return;
+
+        selectedIndex = index;
+        scrollIntoView(index);
+        redraw();
+
+        if (onSelect != null) {
+            onSelect.accept(index);
+        }
+    }
+
+    /**
+     * Sets the handler called with the color index when a color is selected.
+     * @param handler The handler, or null.
+     */
+    public void setOnSelect(IntConsumer handler) {
+        onSelect = handler;
+    }
+
+    /**
+     * Gets a color of the palette.
+     * @param index The index of the color.
+     * @return The color, as a packed ARGB value.
+     */
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    /**
+     * Gets the number of colors of the palette.
+     * @return The number of colors.
+     */
+    public int getColorCount() {
+        return colors.length;
+    }
+
+    /**
+     * Gets the number of rows rendered by the last redraw, which depends
+     * on the height of the viewport and not on the number of colors.
+     * @return The number of rows rendered.
+     */
+    public int getRenderedRows() {
+        return renderedRows;
+    }
+
+    /**
+     * Scrolls the palette vertically so that the row of the specified color is visible.
+     */
+    private void scrollIntoView(int index) {
+        double top = index / columns * swatchSize;
+        double height = canvas.getHeight();
+        double value = scrollBar.getValue();
+
+        if (top < value) {
+            scrollBar.setValue(clamp(top));
+        } else if (top + swatchSize > value + height) {
+            scrollBar.setValue(clamp(top + swatchSize - height));
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(0, Math.min(scrollBar.getMax(), value));
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return columns * swatchSize + scrollBar.prefWidth(-1);
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return rows * swatchSize;
+    }
+
+    @Override
+    protected double computeMinHeight(double width) {
+        return swatchSize;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        int width = columns * swatchSize;
+        int height = (int)getHeight();
+        double barWidth = scrollBar.prefWidth(-1);
+        int overflow = Math.max(0, rows * swatchSize - height);
+
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        scrollBar.resizeRelocate(width, 0, barWidth, height);
+        scrollBar.setVisible(overflow > 0);
+        scrollBar.setMax(overflow);
+        scrollBar.setVisibleAmount(overflow == 0 ? 0 : (double)height * overflow / (rows * swatchSize));
+        scrollBar.setBlockIncrement(Math.max(swatchSize, height - swatchSize));
+        scrollBar.setValue(clamp(scrollBar.getValue()));
+
+        redraw();
+    }
+
+    /**
+     * Renders the rows of swatches that are visible in the viewport.
+     */
+    public void redraw() {
+        int width = (int)canvas.getWidth();
+        int height = (int)canvas.getHeight();
+        if (width == 0 || height == 0) return;
+
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+
+        int top = (int)scrollBar.getValue();
+        int firstRow = top / swatchSize;
+        int lastRow = Math.min(rows - 1, (top + height - 1) / swatchSize);
+
+        for (int y = 0; y < height; y++) {
+            int row = (y + top) / swatchSize;
+            int sy = (y + top) - row * swatchSize; // the y-coordinate within the swatch
+            int offset = y * width;
+
+            for (int column = 0; column < columns; column++) {
+                int index = row * columns + column;
+                int argb = row <= lastRow && index < colors.length
+                    ? ColorUtil.blend(colors[index], BACKGROUND) | 0xFF000000
+                    : BACKGROUND;
+                boolean selected = index == selectedIndex;
+
+                for (int sx = 0; sx < swatchSize; sx++) {
+                    int edge = Math.min(Math.min(sx, sy), Math.min(swatchSize - 1 - sx, swatchSize - 1 - sy));
+                    int p;
+                    if (edge == 0) p = BORDER;
+                    else if (selected && edge <= 2) p = HIGHLIGHT;
+                    else p = argb;
+                    pixels[offset++] = p;
+                }
+            }
+        }
+
+        canvas.getGraphicsContext2D().getPixelWriter()
+            .setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        renderedRows = lastRow - firstRow + 1;
+    }
+}
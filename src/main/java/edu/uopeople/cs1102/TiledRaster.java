@@ -0,0 +1,473 @@
+package edu.uopeople.cs1102;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+
+/**
+ * A raster image split into fixed-size tiles of 256x256 ARGB pixels.
+ * <p>
+ * Tiles are allocated the first time something is drawn on them; the pixels
+ * of a tile that has never been drawn on have the background color. The memory
+ * used by a document is therefore proportional to the area actually painted,
+ * not to its size, which allows documents far larger than a {@code Canvas}
+ * (whose size is bounded by the GPU texture limit).
+ * </p>
+ * <p>
+ * Every write marks the tiles it touches as dirty, so that only the dirty
+ * tiles need to be uploaded to the screen (see {@code uploadDirtyTiles()}).
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class TiledRaster {
+    /** The base-2 logarithm of the tile size. */
+    public static final int TILE_SHIFT = 8;
+
+    /** The width and height of a tile, in pixels. */
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+    private final int width, height;
+    private final int tilesX, tilesY;
+
+    // null entries are tiles that have never been drawn on
+    private final int[][] tiles;
+    private int allocatedTiles;
+
+    // one bit per tile
+    private final long[] dirty;
+    private int dirtyCount;
+
+    private int background;
+
+    // A tile filled with the background color, used to upload unallocated tiles.
+    private int[] backgroundTile;
+
+    /**
+     * Initializes a new instance of the {@code TiledRaster} class with a white background.
+     * @param width The width of the raster, in pixels.
+     * @param height The height of the raster, in pixels.
+     */
+    public TiledRaster(int width, int height) {
+        this(width, height, 0xFFFFFFFF);
+    }
+
+    /**
+     * Initializes a new instance of the {@code TiledRaster} class.
+     * @param width The width of the raster, in pixels.
+     * @param height The height of the raster, in pixels.
+     * @param background The ARGB color of the pixels that have never been drawn on.
+     * @throws IllegalArgumentException {@code width} or {@code height} is not positive.
+     */
+    public TiledRaster(int width, int height, int background) throws IllegalArgumentException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and height must be positive.");
+        }
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_MASK) >>> TILE_SHIFT;
+        this.tilesY = (height + TILE_MASK) >>> TILE_SHIFT;
+        this.tiles = new int[tilesX * tilesY][];
+        this.dirty = new long[(tiles.length + 63) >>> 6];
+        this.background = background;
+    }
+
+    /**
+     * Gets the width of the raster.
+     * @return The width, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the raster.
+     * @return The height, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of tile columns.
+     * @return The number of tiles along the x-axis.
+     */
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    /**
+     * Gets the number of tile rows.
+     * @return The number of tiles along the y-axis.
+     */
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    /**
+     * Gets the color of the pixels that have never been drawn on.
+     * @return An ARGB color.
+     */
+    public int getBackground() {
+        return background;
+    }
+
+    /**
+     * Gets the pixels of the specified tile, allocating it if requested.
+     * The pixel at (x, y) within the tile is at index {@code y * TILE_SIZE + x}.
+     * <p>
+     * The caller is responsible for calling {@code markDirty()} after writing into the tile.
+     * </p>
+     * @param tx The column of the tile.
+     * @param ty The row of the tile.
+     * @param create true to allocate the tile if it doesn't exist yet.
+     * @return The tile's pixels, or null if the tile doesn't exist and {@code create} is false.
+     */
+    public int[] getTile(int tx, int ty, boolean create) {
+        int index = ty * tilesX + tx;
+        int[] tile = tiles[index];
+        if (tile == null && create) {
+            tile = new int[TILE_PIXELS];
+            Arrays.fill(tile, background);
+            tiles[index] = tile;
+            allocatedTiles++;
+        }
+        return tile;
+    }
+
+    /**
+     * Gets the color of the specified pixel.
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @return An ARGB color.
+     */
+    public int getPixel(int x, int y) {
+        int[] tile = tiles[(y >>> TILE_SHIFT) * tilesX + (x >>> TILE_SHIFT)];
+        return tile == null ? background : tile[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)];
+    }
+
+    /**
+     * Sets the color of the specified pixel. Pixels outside the raster are ignored.
+     * @param x The x-coordinate of the pixel.
+     * @param y The y-coordinate of the pixel.
+     * @param argb An ARGB color.
+     */
+    public void setPixel(int x, int y, int argb) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return;
+
+        int tx = x >>> TILE_SHIFT, ty = y >>> TILE_SHIFT;
+        getTile(tx, ty, true)[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)] = argb;
+        setDirty(ty * tilesX + tx);
+    }
+
+    /**
+     * Fills the specified rectangle with a color. The rectangle is clipped to the raster.
+     * @param x The x-coordinate of the rectangle's upper-left corner.
+     * @param y The y-coordinate of the rectangle's upper-left corner.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param argb An ARGB color.
+     */
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width), y1 = Math.min(y + h, height);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int ty = y0 >>> TILE_SHIFT; ty <= (y1 - 1) >>> TILE_SHIFT; ty++) {
+            int top = Math.max(y0, ty << TILE_SHIFT), bottom = Math.min(y1, (ty + 1) << TILE_SHIFT);
+
+            for (int tx = x0 >>> TILE_SHIFT; tx <= (x1 - 1) >>> TILE_SHIFT; tx++) {
+                int left = Math.max(x0, tx << TILE_SHIFT), right = Math.min(x1, (tx + 1) << TILE_SHIFT);
+                int[] tile = tiles[ty * tilesX + tx];
+
+                // filling an untouched tile with the background is a no-op
+                if (tile == null && argb == background) continue;
+
+                tile = getTile(tx, ty, true);
+                for (int row = top; row < bottom; row++) {
+                    int offset = (row & TILE_MASK) << TILE_SHIFT;
+                    Arrays.fill(tile, offset + (left & TILE_MASK), offset + ((right - 1) & TILE_MASK) + 1, argb);
+                }
+                setDirty(ty * tilesX + tx);
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the specified rectangle into an array. Pixels outside
+     * the raster are left untouched in the array.
+     * @param x The x-coordinate of the rectangle's upper-left corner.
+     * @param y The y-coordinate of the rectangle's upper-left corner.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param dst The destination array.
+     * @param offset The index in {@code dst} of the pixel (x, y).
+     * @param stride The distance in {@code dst} between two rows.
+     */
+    public void getPixels(int x, int y, int w, int h, int[] dst, int offset, int stride) {
+        int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width), y1 = Math.min(y + h, height);
+
+        for (int row = y0; row < y1; row++) {
+            int ty = row >>> TILE_SHIFT;
+            int rowOffset = offset + (row - y) * stride;
+
+            for (int col = x0; col < x1; ) {
+                int tx = col >>> TILE_SHIFT;
+                int n = Math.min(x1, (tx + 1) << TILE_SHIFT) - col;
+                int[] tile = tiles[ty * tilesX + tx];
+                int d = rowOffset + col - x;
+
+                if (tile == null) {
+                    Arrays.fill(dst, d, d + n, background);
+                } else {
+                    System.arraycopy(tile, ((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK), dst, d, n);
+                }
+                col += n;
+            }
+        }
+    }
+
+    /**
+     * Copies an array of pixels into the specified rectangle, which is clipped
+     * to the raster, and marks the tiles it touches as dirty. The rows of
+     * background pixels that fall in a tile that has never been drawn on
+     * don't allocate it.
+     * @param x The x-coordinate of the rectangle's upper-left corner.
+     * @param y The y-coordinate of the rectangle's upper-left corner.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     * @param src The source array, in ARGB format.
+     * @param offset The index in {@code src} of the pixel (x, y).
+     * @param stride The distance in {@code src} between two rows.
+     */
+    public void setPixels(int x, int y, int w, int h, int[] src, int offset, int stride) {
+        int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width), y1 = Math.min(y + h, height);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int row = y0; row < y1; row++) {
+            int ty = row >>> TILE_SHIFT;
+            int rowOffset = offset + (row - y) * stride;
+
+            for (int col = x0; col < x1; ) {
+                int tx = col >>> TILE_SHIFT;
+                int n = Math.min(x1, (tx + 1) << TILE_SHIFT) - col;
+                int from = rowOffset + col - x;
+                if (tiles[ty * tilesX + tx] != null || !isBackground(src, from, from + n)) {
+                    System.arraycopy(src, from, getTile(tx, ty, true),
+                        ((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK), n);
+                }
+                col += n;
+            }
+        }
+        markDirty(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Releases a tile, which resets its pixels to the background color, and
+     * marks it as dirty if it was allocated.
+     * @param tx The column of the tile.
+     * @param ty The row of the tile.
+     */
+    public void clearTile(int tx, int ty) {
+        int index = ty * tilesX + tx;
+        if (tiles[index] == null) return;
+        tiles[index] = null;
+        allocatedTiles--;
+        setDirty(index);
+    }
+
+    /**
+     * Releases all tiles, which resets the raster to the background color.
+     * Only the tiles that have been allocated are marked as dirty, so clearing
+     * costs nothing for the parts of the document that have never been drawn on.
+     */
+    public void clear() {
+        clear(background);
+    }
+
+    /**
+     * Releases all tiles and changes the background color.
+     * @param argb The new ARGB background color.
+     */
+    public void clear(int argb) {
+        boolean all = argb != background;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null || all) {
+                tiles[i] = null;
+                setDirty(i);
+            }
+        }
+        allocatedTiles = 0;
+        if (all) {
+            background = argb;
+            backgroundTile = null;
+        }
+    }
+
+    /**
+     * Marks the tiles that intersect the specified rectangle as dirty.
+     * @param x The x-coordinate of the rectangle's upper-left corner.
+     * @param y The y-coordinate of the rectangle's upper-left corner.
+     * @param w The width of the rectangle.
+     * @param h The height of the rectangle.
+     */
+    public void markDirty(int x, int y, int w, int h) {
+        int x0 = Math.max(x, 0), y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width), y1 = Math.min(y + h, height);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        for (int ty = y0 >>> TILE_SHIFT; ty <= (y1 - 1) >>> TILE_SHIFT; ty++) {
+            for (int tx = x0 >>> TILE_SHIFT; tx <= (x1 - 1) >>> TILE_SHIFT; tx++) {
+                setDirty(ty * tilesX + tx);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the specified tile has changed since the last call to {@code clearDirty()}.
+     * @param tx The column of the tile.
+     * @param ty The row of the tile.
+     * @return true if the tile is dirty; otherwise, false.
+     */
+    public boolean isDirty(int tx, int ty) {
+        int index = ty * tilesX + tx;
+        return (dirty[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Gets the index of the next dirty tile, starting at the specified index.
+     * The tile's column is {@code index % getTilesX()} and its row {@code index / getTilesX()}.
+     * @param from The index of the first tile to examine.
+     * @return The index of the next dirty tile, or -1 if there is none.
+     */
+    public int nextDirtyTile(int from) {
+        int word = from >>> 6;
+        if (word >= dirty.length) return -1;
+
+        long bits = dirty[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return index < tiles.length ? index : -1;
+            }
+            if (++word == dirty.length) return -1;
+            bits = dirty[word];
+        }
+    }
+
+    /**
+     * Gets the number of dirty tiles.
+     * @return The number of tiles changed since the last call to {@code clearDirty()}.
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Marks all tiles as clean.
+     */
+    public void clearDirty() {
+        Arrays.fill(dirty, 0);
+        dirtyCount = 0;
+    }
+
+    /**
+     * Writes the dirty tiles that intersect the specified view to a {@code PixelWriter}
+     * and marks the tiles that lie entirely in the view as clean. The other
+     * dirty tiles stay dirty, so that the part of them that was not written is
+     * uploaded when the view moves over it. Tile pixels are written at their
+     * document location minus the view's origin.
+     * @param writer The destination, for instance the pixel writer of a {@code Canvas}.
+     * @param viewX The x-coordinate of the view's upper-left corner, in document space.
+     * @param viewY The y-coordinate of the view's upper-left corner, in document space.
+     * @param viewWidth The width of the view.
+     * @param viewHeight The height of the view.
+     * @return The number of tiles uploaded.
+     */
+    public int uploadDirtyTiles(PixelWriter writer, int viewX, int viewY, int viewWidth, int viewHeight) {
+        PixelFormat<IntBuffer> format = PixelFormat.getIntArgbInstance();
+        int uploaded = 0;
+
+        for (int index = nextDirtyTile(0); index != -1; index = nextDirtyTile(index + 1)) {
+            int tx = index % tilesX, ty = index / tilesX;
+            int x0 = Math.max(tx << TILE_SHIFT, viewX);
+            int y0 = Math.max(ty << TILE_SHIFT, viewY);
+            int x1 = Math.min(Math.min((tx + 1) << TILE_SHIFT, width), viewX + viewWidth);
+            int y1 = Math.min(Math.min((ty + 1) << TILE_SHIFT, height), viewY + viewHeight);
+            if (x0 >= x1 || y0 >= y1) continue;
+
+            int[] tile = tiles[index];
+            if (tile == null) {
+                tile = getBackgroundTile();
+            }
+            int offset = ((y0 & TILE_MASK) << TILE_SHIFT) | (x0 & TILE_MASK);
+            writer.setPixels(x0 - viewX, y0 - viewY, x1 - x0, y1 - y0, format, tile, offset, TILE_SIZE);
+            uploaded++;
+
+            if (x0 == tx << TILE_SHIFT && y0 == ty << TILE_SHIFT
+                && x1 == Math.min((tx + 1) << TILE_SHIFT, width) && y1 == Math.min((ty + 1) << TILE_SHIFT, height)) {
+                clearDirty(index);
+            }
+        }
+        return uploaded;
+    }
+
+    /**
+     * Gets the number of tiles that have been allocated.
+     * @return The number of tiles in memory.
+     */
+    public int getAllocatedTileCount() {
+        return allocatedTiles;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this raster.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        long bytes = (long)allocatedTiles * TILE_PIXELS * Integer.BYTES;
+        bytes += (long)tiles.length * 8 + (long)dirty.length * Long.BYTES;
+        if (backgroundTile != null) bytes += (long)TILE_PIXELS * Integer.BYTES;
+        return bytes;
+    }
+
+    private void setDirty(int index) {
+        long bit = 1L << index;
+        long word = dirty[index >>> 6];
+        if ((word & bit) == 0) {
+            dirty[index >>> 6] = word | bit;
+            dirtyCount++;
+        }
+    }
+
+    private void clearDirty(int index) {
+        long bit = 1L << index;
+        long word = dirty[index >>> 6];
+        if ((word & bit) != 0) {
+            dirty[index >>> 6] = word & ~bit;
+            dirtyCount--;
+        }
+    }
+
+    private boolean isBackground(int[] src, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (src[i] != background) return false;
+        }
+        return true;
+    }
+
+    private int[] getBackgroundTile() {
+        if (backgroundTile == null) {
+            backgroundTile = new int[TILE_PIXELS];
+            Arrays.fill(backgroundTile, background);
+        }
+        return backgroundTile;
+    }
+}
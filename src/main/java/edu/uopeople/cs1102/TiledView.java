@@ -0,0 +1,266 @@
+package edu.uopeople.cs1102;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * Shows the part of a tiled document of an {@code AdvancedPaint} that fits in
+ * its canvas, at the actual size.
+ * <p>
+ * The document is a {@code LayerStack}, which can be far larger than a
+ * {@code Canvas}; the canvas of the {@code AdvancedPaint} is only as large as
+ * the view. At the end of each pulse, the tiles of the layers drawn on are
+ * recomposited, and the dirty tiles of the composite that intersect the view
+ * are uploaded into the canvas (see {@code LayerStack.uploadDirtyTiles()}),
+ * so drawing a segment costs the composite and the upload of the tiles it
+ * touches, whatever the size of the document and the number of layers.
+ * </p>
+ * <p>
+ * The primary button draws, in document space; the other buttons and the
+ * mouse wheel scroll the document.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class TiledView extends Region {
+    // The color of the view outside the document.
+    private static final Color OUTSIDE = Color.rgb(0xA0, 0xA0, 0xA0);
+
+    private final AdvancedPaint paint;
+    private final LayerStack layers;
+    private final Canvas view;
+    private final double prefWidth, prefHeight;
+
+    // The document point at the upper-left corner of the view.
+    private int originX, originY;
+
+    // The rubber band drawn over the view, in document space, if visible.
+    private boolean bandVisible;
+    private int bandX0, bandY0, bandX1, bandY1;
+
+    private boolean updateRequested;
+    private final Runnable pulseListener = this::onPulse;
+
+    // The last mouse position of a scroll drag.
+    private double panX, panY;
+
+    /**
+     * Initializes a new instance of the {@code TiledView} class, which becomes
+     * the view of the specified {@code AdvancedPaint} object and takes its
+     * canvas, whose initial size is the preferred size of the view.
+     * @param paint The object that draws the document, created by {@code createWithTiles()}.
+     * @throws IllegalArgumentException {@code paint} has no tiled document.
+     */
+    public TiledView(AdvancedPaint paint) throws IllegalArgumentException {
+        if (paint.getLayerStack() == null) {
+            throw new IllegalArgumentException("The drawing must be created by createWithTiles().");
+        }
+        this.paint = paint;
+        this.layers = paint.getLayerStack();
+        this.view = paint.getCanvas();
+        this.prefWidth = view.getWidth();
+        this.prefHeight = view.getHeight();
+        getChildren().add(view);
+
+        view.setOnMousePressed(this::mousePressed);
+        view.setOnMouseDragged(this::mouseDragged);
+        view.setOnMouseReleased(this::mouseReleased);
+        view.setOnScroll(this::scroll);
+
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null) oldScene.removePostLayoutPulseListener(pulseListener);
+            if (newScene != null) newScene.addPostLayoutPulseListener(pulseListener);
+        });
+
+        paint.setTiledView(this);
+        refresh();
+    }
+
+    /**
+     * Gets the x-coordinate of the document point shown at the left edge of the view.
+     * @return The x-coordinate, in document space.
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Gets the y-coordinate of the document point shown at the top edge of the view.
+     * @return The y-coordinate, in document space.
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Scrolls the document so that the specified point is shown at the
+     * upper-left corner of the view, as far as the document allows.
+     * @param x The x-coordinate of the point, in document space.
+     * @param y The y-coordinate of the point, in document space.
+     */
+    public void scrollTo(int x, int y) {
+        int maxX = Math.max(0, layers.getWidth() - (int)view.getWidth());
+        int maxY = Math.max(0, layers.getHeight() - (int)view.getHeight());
+        x = Math.max(0, Math.min(x, maxX));
+        y = Math.max(0, Math.min(y, maxY));
+        if (x == originX && y == originY) return;
+        originX = x;
+        originY = y;
+        refresh();
+    }
+
+    /**
+     * Converts an x-coordinate of the view into document space.
+     * @param x The x-coordinate, relative to the view.
+     * @return The x-coordinate in document space.
+     */
+    public double toDocumentX(double x) {
+        return x + originX;
+    }
+
+    /**
+     * Converts a y-coordinate of the view into document space.
+     * @param y The y-coordinate, relative to the view.
+     * @return The y-coordinate in document space.
+     */
+    public double toDocumentY(double y) {
+        return y + originY;
+    }
+
+    /**
+     * Uploads the whole view again at the end of the next pulse, for instance
+     * after the properties of a layer have changed.
+     */
+    public void refresh() {
+        GraphicsContext g = view.getGraphicsContext2D();
+        g.setFill(OUTSIDE);
+        g.fillRect(0, 0, view.getWidth(), view.getHeight());
+        layers.getComposite().markDirty(originX, originY, (int)view.getWidth(), (int)view.getHeight());
+        requestUpdate();
+    }
+
+    /**
+     * Uploads the dirty tiles that intersect the view at the end of the next
+     * pulse. Called by {@code AdvancedPaint} when it draws.
+     */
+    void requestUpdate() {
+        if (!updateRequested) {
+            updateRequested = true;
+            Platform.requestNextPulse();
+        }
+    }
+
+    /**
+     * Recomposites the tiles drawn on, uploads the dirty tiles that intersect
+     * the view now, and draws the rubber band over them.
+     * @return The number of tiles uploaded.
+     */
+    int update() {
+        updateRequested = false;
+        int uploaded = layers.uploadDirtyTiles(view.getGraphicsContext2D().getPixelWriter(),
+            originX, originY, (int)view.getWidth(), (int)view.getHeight());
+        if (bandVisible) {
+            GraphicsContext g = view.getGraphicsContext2D();
+            g.save();
+            g.setStroke(Color.BLACK);
+            g.setLineWidth(1);
+            g.setLineDashes(4);
+            g.strokeRect(bandX0 - originX + 0.5, bandY0 - originY + 0.5, bandX1 - bandX0, bandY1 - bandY0);
+            g.restore();
+        }
+        return uploaded;
+    }
+
+    /**
+     * Draws the rubber band over the view, which isn't part of the document.
+     * @param x0 The left edge of the band, in document space.
+     * @param y0 The top edge of the band, in document space.
+     * @param x1 The right edge of the band, in document space.
+     * @param y1 The bottom edge of the band, in document space.
+     */
+    void showBand(int x0, int y0, int x1, int y1) {
+        bandX0 = x0;
+        bandY0 = y0;
+        bandX1 = x1;
+        bandY1 = y1;
+        bandVisible = true;
+        requestUpdate();
+    }
+
+    /**
+     * Removes the rubber band: the tiles under its edges are uploaded again.
+     */
+    void hideBand() {
+        if (!bandVisible) return;
+        bandVisible = false;
+        layers.getComposite().markDirty(bandX0 - 2, bandY0 - 2, bandX1 - bandX0 + 4, 4); // top
+        layers.getComposite().markDirty(bandX0 - 2, bandY1 - 2, bandX1 - bandX0 + 4, 4); // bottom
+        layers.getComposite().markDirty(bandX0 - 2, bandY0 - 2, 4, bandY1 - bandY0 + 4); // left
+        layers.getComposite().markDirty(bandX1 - 2, bandY0 - 2, 4, bandY1 - bandY0 + 4); // right
+        requestUpdate();
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return prefWidth;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return prefHeight;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = Math.floor(getWidth()), height = Math.floor(getHeight());
+        if (width == view.getWidth() && height == view.getHeight()) return;
+        view.setWidth(width);
+        view.setHeight(height);
+        refresh();
+        scrollTo(originX, originY); // keep as much of the document in view as possible
+    }
+
+    /**
+     * Called at the end of each pulse.
+     */
+    private void onPulse() {
+        if (updateRequested) {
+            update();
+        }
+    }
+
+    private void mousePressed(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mousePressed(evt);
+        } else {
+            panX = evt.getX();
+            panY = evt.getY();
+        }
+    }
+
+    private void mouseDragged(MouseEvent evt) {
+        if (evt.isPrimaryButtonDown()) {
+            paint.mouseDragged(evt);
+        } else {
+            scrollTo(originX - (int)Math.round(evt.getX() - panX), originY - (int)Math.round(evt.getY() - panY));
+            panX = evt.getX();
+            panY = evt.getY();
+        }
+    }
+
+    private void mouseReleased(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mouseReleased(evt);
+        }
+    }
+
+    private void scroll(ScrollEvent evt) {
+        scrollTo(originX - (int)Math.round(evt.getDeltaX()), originY - (int)Math.round(evt.getDeltaY()));
+    }
+}
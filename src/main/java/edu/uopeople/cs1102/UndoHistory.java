@@ -0,0 +1,649 @@
+package edu.uopeople.cs1102;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Provides undo and redo for a drawing, based on a log of stroke, clear,
+ * erase and fill commands plus periodic raster checkpoints.
+ * <p>
+ * Every {@code checkpointInterval} commands, or once the commands recorded
+ * since the last checkpoint contain {@code checkpointCost} points, the raster
+ * is captured and compressed. Undoing restores the nearest checkpoint (or the
+ * nearest clear, which is a free checkpoint) and replays only the commands
+ * that follow it. The checkpoints are bounded by a memory cap; when it is
+ * exceeded, the oldest checkpoints are evicted first.
+ * </p>
+ * <p>
+ * The history doesn't know how to draw; it drives a {@code Target}, which is
+ * implemented by the owner of the drawing (see {@code AdvancedPaint}).
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class UndoHistory {
+
+    /**
+     * Receives the commands applied by {@code replay()}, for instance to
+     * encode them (see {@code AutosaveJournal}).
+     */
+    public interface Recorder {
+        /**
+         * Removes all strokes from the document.
+         * @param render true to clear the raster as well.
+         */
+        void clear(boolean render);
+
+        /**
+         * Appends a stroke to the document.
+         * @param log The store that contains the stroke.
+         * @param stroke The index of the stroke in {@code log}.
+         * @param render true to draw the stroke on the raster as well.
+         */
+        void stroke(StrokeStore log, int stroke, boolean render);
+
+        /**
+         * Erases strokes of the document (they become tombstones and keep their index).
+         * @param strokes An array that contains the indices of the strokes to erase.
+         * @param from The index in {@code strokes} of the first stroke to erase.
+         * @param to The index in {@code strokes} that follows the last stroke to erase.
+         * @param render true to remove the strokes from the raster as well.
+         */
+        void erase(int[] strokes, int from, int to, boolean render);
+
+        /**
+         * Fills the region of the raster connected to a pixel. A fill only
+         * changes the raster, so it is only called when rendering.
+         * @param x The x-coordinate of the seed pixel.
+         * @param y The y-coordinate of the seed pixel.
+         * @param argb The fill color, in ARGB format.
+         * @param tolerance The largest channel difference with the seed's color.
+         */
+        void fill(int x, int y, int argb, int tolerance);
+    }
+
+    /**
+     * The drawing whose history is kept, which is also restored by undo and redo.
+     */
+    public interface Target extends Recorder {
+        /**
+         * Keeps only the first strokes of the document, without touching the raster.
+         * @param count The number of strokes to keep.
+         */
+        void truncate(int count);
+
+        /**
+         * Captures the raster.
+         * @return The pixels of the raster, in ARGB format, or null if the
+         * raster is too large to be captured; no checkpoint is taken then, and
+         * undoing replays the commands that follow the last clear.
+         */
+        int[] capture();
+
+        /**
+         * Replaces the raster.
+         * @param argb The pixels returned by a previous call to {@code capture()}.
+         */
+        void restore(int[] argb);
+    }
+
+    /** The command of a finished stroke. */
+    private static final byte STROKE = 0;
+
+    /** The command of a cleared canvas. */
+    private static final byte CLEAR = 1;
+
+    /** The command of erased strokes. */
+    private static final byte ERASE = 2;
+
+    /** The command of a filled region. */
+    private static final byte FILL = 3;
+
+    /**
+     * A compressed raster captured after a given number of commands.
+     */
+    private static final class Checkpoint {
+        final int position;
+        final int pixelCount;
+        final byte[] data;
+
+        Checkpoint(int position, int pixelCount, byte[] data) {
+            this.position = position;
+            this.pixelCount = pixelCount;
+            this.data = data;
+        }
+    }
+
+    private final Target target;
+
+    // The strokes referenced by the STROKE commands.
+    private final StrokeStore log = new StrokeStore();
+
+    private byte[] kinds = new byte[256];
+    private int[] args = new int[256];
+    private int size;
+
+    // The strokes referenced by the ERASE commands, stored as count, stroke, stroke, ...
+    private int[] erased = new int[256];
+    private int erasedSize;
+
+    // The parameters of the FILL commands, stored as x, y, argb, tolerance.
+    private int[] fills = new int[64];
+    private int fillsSize;
+
+    // The number of commands applied; commands at or after it can be redone.
+    private int cursor;
+
+    // The commands before it cannot be undone (they make up a loaded drawing).
+    private int floor;
+
+    // ordered by position
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long checkpointBytes;
+
+    private int checkpointInterval = 32;
+    private long checkpointCost = 20_000;
+    private long memoryCap = 64L << 20;
+
+    // Commands and points since the state of the last checkpoint (or clear).
+    private int opsSinceCheckpoint;
+    private long costSinceCheckpoint;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[0];
+    private byte[] output = new byte[64 * 1024];
+
+    // Latency of undo/redo.
+    private long lastNanos, maxNanos, totalNanos, count;
+
+    /**
+     * Initializes a new instance of the {@code UndoHistory} class.
+     * @param target The drawing whose history is kept. Cannot be null.
+     */
+    public UndoHistory(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Records a finished stroke.
+     * @param store The store that contains the stroke.
+     * @param stroke The index of the stroke in {@code store}.
+     */
+    public void recordStroke(StrokeStore store, int stroke) {
+        discardRedo();
+        add(STROKE, log.appendStroke(store, stroke));
+        cursor = size;
+        afterApply(store.getStrokePointCount(stroke));
+    }
+
+    /**
+     * Records that the canvas has been cleared.
+     */
+    public void recordClear() {
+        discardRedo();
+        add(CLEAR, 0);
+        cursor = size;
+        afterApply(0);
+    }
+
+    /**
+     * Records that strokes have been erased.
+     * @param strokes An array that contains the indices of the erased strokes in the document.
+     * @param count The number of strokes in {@code strokes}.
+     */
+    public void recordErase(int[] strokes, int count) {
+        if (count == 0) return;
+
+        discardRedo();
+        if (erasedSize + count + 1 > erased.length) {
+            erased = Arrays.copyOf(erased, Math.max(erased.length * 2, erasedSize + count + 1));
+        }
+        add(ERASE, erasedSize);
+        erased[erasedSize] = count;
+        System.arraycopy(strokes, 0, erased, erasedSize + 1, count);
+        erasedSize += count + 1;
+        cursor = size;
+        afterApply(count);
+    }
+
+    /**
+     * Records that a region has been filled. Replaying a fill needs the whole
+     * raster, so a checkpoint is taken right after it.
+     * @param x The x-coordinate of the seed pixel.
+     * @param y The y-coordinate of the seed pixel.
+     * @param argb The fill color, in ARGB format.
+     * @param tolerance The largest channel difference with the seed's color.
+     */
+    public void recordFill(int x, int y, int argb, int tolerance) {
+        discardRedo();
+        if (fillsSize + 4 > fills.length) {
+            fills = Arrays.copyOf(fills, fills.length * 2);
+        }
+        add(FILL, fillsSize);
+        fills[fillsSize++] = x;
+        fills[fillsSize++] = y;
+        fills[fillsSize++] = argb;
+        fills[fillsSize++] = tolerance;
+        cursor = size;
+        afterApply(checkpointCost);
+    }
+
+    /**
+     * Starts a new history whose initial state is the specified drawing, which
+     * cannot be undone. The target must already display the drawing.
+     * @param store The strokes of the drawing.
+     */
+    public void recordLoad(StrokeStore store) {
+        reset();
+        for (int s = 0; s < store.getStrokeCount(); s++) {
+            add(STROKE, log.appendStroke(store, s));
+        }
+        cursor = floor = size;
+        if (size > 0) {
+            addCheckpoint(cursor, target.capture());
+        }
+    }
+
+    /**
+     * Indicates whether there is a command to undo.
+     * @return true if {@code undo()} would change the drawing; otherwise, false.
+     */
+    public boolean canUndo() {
+        return cursor > floor;
+    }
+
+    /**
+     * Indicates whether there is a command to redo.
+     * @return true if {@code redo()} would change the drawing; otherwise, false.
+     */
+    public boolean canRedo() {
+        return cursor < size;
+    }
+
+    /**
+     * Cancels the last command.
+     * @return true if a command has been undone; otherwise, false.
+     */
+    public boolean undo() {
+        if (cursor <= floor) return false;
+
+        long start = System.nanoTime();
+        int p = cursor - 1;
+        int clear = lastClear(p);
+        Checkpoint checkpoint = findCheckpoint(clear, p);
+        int from = checkpoint != null ? checkpoint.position : clear + 1;
+
+        if (checkpoint == null) {
+            target.clear(true);
+        } else {
+            if (clear == lastClear(cursor) && !hasErase(from, cursor)) {
+                // the document already holds the strokes we need, and more
+                target.truncate(countStrokes(clear + 1, from));
+            } else {
+                target.clear(false);
+                apply(clear + 1, from, false);
+            }
+            target.restore(inflate(checkpoint));
+        }
+        costSinceCheckpoint = apply(from, p, true);
+        opsSinceCheckpoint = p - from;
+        cursor = p;
+
+        recordLatency(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Applies the last command undone.
+     * @return true if a command has been redone; otherwise, false.
+     */
+    public boolean redo() {
+        if (cursor == size) return false;
+
+        long start = System.nanoTime();
+        long cost = apply(cursor, cursor + 1, true);
+        cursor++;
+        afterApply(cost);
+
+        recordLatency(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Removes all commands and checkpoints.
+     */
+    public void reset() {
+        size = cursor = floor = 0;
+        erasedSize = fillsSize = 0;
+        log.clear();
+        log.trimToSize();
+        checkpoints.clear();
+        checkpointBytes = 0;
+        opsSinceCheckpoint = 0;
+        costSinceCheckpoint = 0;
+    }
+
+    /**
+     * Sets the number of commands after which a checkpoint is taken.
+     * @param value The number of commands between two checkpoints. Must be positive.
+     */
+    public void setCheckpointInterval(int value) {
+        if (value <= 0) throw new IllegalArgumentException();
+        checkpointInterval = value;
+    }
+
+    /**
+     * Sets the replay cost after which a checkpoint is taken.
+     * @param points The number of points that can be replayed before a checkpoint is taken.
+     */
+    public void setCheckpointCost(long points) {
+        if (points <= 0) throw new IllegalArgumentException();
+        checkpointCost = points;
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the checkpoints.
+     * The oldest checkpoints are evicted first when the cap is exceeded.
+     * @param bytes The memory cap, in bytes.
+     */
+    public void setMemoryCap(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException();
+        memoryCap = bytes;
+        evict();
+    }
+
+    /**
+     * Gets the number of commands recorded, including those that can be redone.
+     * @return The number of commands.
+     */
+    public int getCommandCount() {
+        return size;
+    }
+
+    /**
+     * Gets the number of checkpoints in memory.
+     * @return The number of checkpoints.
+     */
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Gets the number of bytes used by the compressed checkpoints.
+     * @return The size of the checkpoints, in bytes.
+     */
+    public long getCheckpointBytes() {
+        return checkpointBytes;
+    }
+
+    /**
+     * Gets the approximate number of bytes used by this history.
+     * @return The estimated memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        return checkpointBytes + log.getMemoryUsage() + kinds.length
+            + (long)(args.length + erased.length + fills.length) * Integer.BYTES + buffer.length + output.length;
+    }
+
+    /**
+     * Gets the duration of the last undo or redo.
+     * @return The latency, in nanoseconds.
+     */
+    public long getLastLatency() {
+        return lastNanos;
+    }
+
+    /**
+     * Gets the longest duration of an undo or redo.
+     * @return The latency, in nanoseconds.
+     */
+    public long getMaxLatency() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets the average duration of an undo or redo.
+     * @return The latency, in nanoseconds.
+     */
+    public double getAverageLatency() {
+        return count == 0 ? 0 : (double)totalNanos / count;
+    }
+
+    /**
+     * Gets the number of commands applied: the commands before it make up the
+     * drawing, the ones after it can be redone.
+     * @return The position of the history.
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Gets the first command of the drawing: the one that follows the last
+     * clear applied, or 0.
+     * @return The index of the command.
+     */
+    public int getDrawingStart() {
+        return lastClear(cursor) + 1;
+    }
+
+    /**
+     * Applies recorded commands to another target, which renders them, for
+     * instance to copy or save the drawing. The history itself doesn't change.
+     * @param from The index of the first command to apply.
+     * @param to The index that follows the last command to apply, at most {@code getCommandCount()}.
+     * @param other The target of the commands.
+     * @throws IllegalArgumentException The range is out of bounds.
+     */
+    public void replay(int from, int to, Recorder other) throws IllegalArgumentException {
+        if (from < 0 || from > to || to > size) {
+            throw new IllegalArgumentException("The commands must be between 0 and " + size + ".");
+        }
+        apply(other, from, to, true);
+    }
+
+    /**
+     * Applies the commands in [from, to) and returns the number of points drawn.
+     */
+    private long apply(int from, int to, boolean render) {
+        return apply(target, from, to, render);
+    }
+
+    private long apply(Recorder target, int from, int to, boolean render) {
+        long cost = 0;
+        for (int i = from; i < to; i++) {
+            if (kinds[i] == CLEAR) {
+                target.clear(render);
+            } else if (kinds[i] == ERASE) {
+                int offset = args[i];
+                target.erase(erased, offset + 1, offset + 1 + erased[offset], render);
+                cost += erased[offset];
+            } else if (kinds[i] == FILL) {
+                if (render) {
+                    int offset = args[i];
+                    target.fill(fills[offset], fills[offset + 1], fills[offset + 2], fills[offset + 3]);
+                }
+                cost += checkpointCost;
+            } else {
+                target.stroke(log, args[i], render);
+                cost += log.getStrokePointCount(args[i]);
+            }
+        }
+        return cost;
+    }
+
+    private void afterApply(long cost) {
+        if (kinds[cursor - 1] == CLEAR) {
+            // a clear is a free checkpoint
+            opsSinceCheckpoint = 0;
+            costSinceCheckpoint = 0;
+            return;
+        }
+        opsSinceCheckpoint++;
+        costSinceCheckpoint += cost;
+
+        if (opsSinceCheckpoint >= checkpointInterval || costSinceCheckpoint >= checkpointCost) {
+            if (!hasCheckpoint(cursor)) {
+                addCheckpoint(cursor, target.capture());
+            }
+            opsSinceCheckpoint = 0;
+            costSinceCheckpoint = 0;
+        }
+    }
+
+    private void add(byte kind, int arg) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            args = Arrays.copyOf(args, size * 2);
+        }
+        kinds[size] = kind;
+        args[size++] = arg;
+    }
+
+    /**
+     * Drops the commands that can be redone, along with their strokes and checkpoints.
+     */
+    private void discardRedo() {
+        if (cursor == size) return;
+
+        for (int i = cursor; i < size; i++) {
+            if (kinds[i] == STROKE) {
+                log.truncate(args[i]);
+                break;
+            }
+        }
+        for (int i = cursor; i < size; i++) {
+            if (kinds[i] == ERASE) {
+                erasedSize = args[i];
+                break;
+            }
+        }
+        for (int i = cursor; i < size; i++) {
+            if (kinds[i] == FILL) {
+                fillsSize = args[i];
+                break;
+            }
+        }
+        size = cursor;
+
+        for (int i = checkpoints.size() - 1; i >= 0 && checkpoints.get(i).position > cursor; i--) {
+            checkpointBytes -= checkpoints.remove(i).data.length;
+        }
+    }
+
+    private int lastClear(int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (kinds[i] == CLEAR) return i;
+        }
+        return -1;
+    }
+
+    private boolean hasErase(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (kinds[i] == ERASE) return true;
+        }
+        return false;
+    }
+
+    private int countStrokes(int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (kinds[i] == STROKE) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Finds the latest checkpoint in (clear, position].
+     */
+    private Checkpoint findCheckpoint(int clear, int position) {
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+            Checkpoint c = checkpoints.get(i);
+            if (c.position <= position) {
+                return c.position > clear + 1 ? c : null;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasCheckpoint(int position) {
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+            int p = checkpoints.get(i).position;
+            if (p == position) return true;
+            if (p < position) return false;
+        }
+        return false;
+    }
+
+    private void addCheckpoint(int position, int[] argb) {
+        if (argb == null) return; // the target can't capture its raster
+
+        byte[] data = deflate(argb);
+        int i = checkpoints.size();
+        while (i > 0 && checkpoints.get(i - 1).position > position) i--;
+        checkpoints.add(i, new Checkpoint(position, argb.length, data));
+        checkpointBytes += data.length;
+        evict();
+    }
+
+    private void evict() {
+        while (checkpointBytes > memoryCap && !checkpoints.isEmpty()) {
+            checkpointBytes -= checkpoints.remove(0).data.length;
+        }
+    }
+
+    private byte[] deflate(int[] argb) {
+        int length = argb.length * Integer.BYTES;
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+        ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(argb);
+
+        deflater.reset();
+        deflater.setInput(buffer, 0, length);
+        deflater.finish();
+
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            n += deflater.deflate(output, n, output.length - n);
+        }
+        return Arrays.copyOf(output, n);
+    }
+
+    private int[] inflate(Checkpoint checkpoint) {
+        int length = checkpoint.pixelCount * Integer.BYTES;
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+        inflater.reset();
+        inflater.setInput(checkpoint.data);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(buffer, n, length - n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted checkpoint.", e);
+        }
+        int[] argb = new int[checkpoint.pixelCount];
+        ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(argb);
+        return argb;
+    }
+
+    private void recordLatency(long nanos) {
+        lastNanos = nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+        totalNanos += nanos;
+        count++;
+    }
+}
@@ -0,0 +1,139 @@
+package edu.uopeople.cs1102;
+
+/**
+ * Maps the coordinates of a view to the coordinates of a document, for a
+ * given zoom factor and scroll position.
+ * <p>
+ * A view pixel at (vx, vy) shows the document point
+ * {@code (originX + vx / zoom, originY + vy / zoom)}.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class Viewport {
+    /** The smallest zoom factor. */
+    public static final double MIN_ZOOM = 1.0 / 64;
+
+    /** The largest zoom factor. */
+    public static final double MAX_ZOOM = 32;
+
+    private double zoom = 1;
+    private double originX, originY;
+
+    /**
+     * Gets the zoom factor.
+     * @return The number of view pixels per document pixel.
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Sets the zoom factor, keeping the document point at the view's upper-left corner.
+     * @param value The number of view pixels per document pixel, clamped
+     * between {@code MIN_ZOOM} and {@code MAX_ZOOM}.
+     */
+    public void setZoom(double value) {
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, value));
+    }
+
+    /**
+     * Gets the x-coordinate of the document point shown at the view's upper-left corner.
+     * @return The x-coordinate, in document space.
+     */
+    public double getOriginX() {
+        return originX;
+    }
+
+    /**
+     * Gets the y-coordinate of the document point shown at the view's upper-left corner.
+     * @return The y-coordinate, in document space.
+     */
+    public double getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Sets the document point shown at the view's upper-left corner.
+     * @param x The x-coordinate, in document space.
+     * @param y The y-coordinate, in document space.
+     */
+    public void setOrigin(double x, double y) {
+        originX = x;
+        originY = y;
+    }
+
+    /**
+     * Multiplies the zoom factor, keeping the document point under a view point in place.
+     * @param factor The factor by which to multiply the zoom.
+     * @param viewX The x-coordinate of the fixed point, in view space.
+     * @param viewY The y-coordinate of the fixed point, in view space.
+     */
+    public void zoomAt(double factor, double viewX, double viewY) {
+        double x = toDocumentX(viewX), y = toDocumentY(viewY);
+        setZoom(zoom * factor);
+        originX = x - viewX / zoom;
+        originY = y - viewY / zoom;
+    }
+
+    /**
+     * Scrolls the document so that it follows the mouse.
+     * @param dx The horizontal distance, in view pixels.
+     * @param dy The vertical distance, in view pixels.
+     */
+    public void panBy(double dx, double dy) {
+        originX -= dx / zoom;
+        originY -= dy / zoom;
+    }
+
+    /**
+     * Converts an x-coordinate from view space to document space.
+     * @param viewX The x-coordinate, in view space.
+     * @return The x-coordinate, in document space.
+     */
+    public double toDocumentX(double viewX) {
+        return originX + viewX / zoom;
+    }
+
+    /**
+     * Converts a y-coordinate from view space to document space.
+     * @param viewY The y-coordinate, in view space.
+     * @return The y-coordinate, in document space.
+     */
+    public double toDocumentY(double viewY) {
+        return originY + viewY / zoom;
+    }
+
+    /**
+     * Converts an x-coordinate from document space to view space.
+     * @param x The x-coordinate, in document space.
+     * @return The x-coordinate, in view space.
+     */
+    public double toViewX(double x) {
+        return (x - originX) * zoom;
+    }
+
+    /**
+     * Converts a y-coordinate from document space to view space.
+     * @param y The y-coordinate, in document space.
+     * @return The y-coordinate, in view space.
+     */
+    public double toViewY(double y) {
+        return (y - originY) * zoom;
+    }
+
+    /**
+     * Gets the level of a mip pyramid to sample at the current zoom: the
+     * smallest level that is still at least as detailed as the view.
+     * @param maxLevel The last level of the pyramid.
+     * @return 0 when zoomed in; otherwise, {@code floor(log2(1 / zoom))}, up to {@code maxLevel}.
+     */
+    public int getLevel(int maxLevel) {
+        if (zoom >= 1) return 0;
+        int level = 0;
+        while (level < maxLevel && zoom * (2 << level) <= 1 + 1e-9) {
+            level++;
+        }
+        return level;
+    }
+}
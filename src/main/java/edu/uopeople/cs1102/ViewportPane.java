@@ -0,0 +1,269 @@
+package edu.uopeople.cs1102;
+
+import java.util.Arrays;
+
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+
+/**
+ * Shows the drawing of an {@code AdvancedPaint} at any zoom level and scroll position.
+ * <p>
+ * The canvas of the {@code AdvancedPaint} stays the full-resolution document
+ * and is not part of the scene. At the end of each pulse, the rectangle of
+ * the document changed since the previous one (see
+ * {@code AdvancedPaint.takeDirtyRegion()}) is copied into level 0 of a
+ * {@code MipPyramid}, whose smaller levels are updated for that rectangle
+ * only. The view then samples the level that matches the zoom, so a
+ * zoomed-out view never resamples the full-resolution image. An image
+ * imported by {@code AdvancedPaint.importImage()} is multiplied into the
+ * view, under the strokes, from the tiles of its {@code ImageUnderlay}.
+ * </p>
+ * <p>
+ * The primary button draws, in document space; the other buttons scroll the
+ * document, and the mouse wheel zooms around the mouse.
+ * </p>
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class ViewportPane extends Region {
+    // The color of the view outside the document.
+    private static final int OUTSIDE = 0xFFA0A0A0;
+
+    // Enough levels for the smallest zoom factor.
+    private static final int LEVELS = 7;
+
+    private final AdvancedPaint paint;
+    private final Canvas view = new Canvas();
+    private final Viewport viewport = new Viewport();
+    private final MipPyramid pyramid;
+
+    // The pixels of the view, and the source column and row of each view pixel.
+    private int[] pixels = new int[0];
+    private int[] columns = new int[0], rows = new int[0];
+
+    private WritableImage snapshot;
+    private boolean refreshRequested, viewChanged = true;
+    private final Runnable pulseListener = this::onPulse;
+
+    // The last mouse position of a scroll drag.
+    private double panX, panY;
+
+    /**
+     * Initializes a new instance of the {@code ViewportPane} class, which
+     * becomes the view of the specified {@code AdvancedPaint} object.
+     * @param paint The object that draws the document.
+     */
+    public ViewportPane(AdvancedPaint paint) {
+        this.paint = paint;
+        this.pyramid = new MipPyramid(paint.getCanvasWidth(), paint.getCanvasHeight(), LEVELS);
+        getChildren().add(view);
+
+        view.setOnMousePressed(this::mousePressed);
+        view.setOnMouseDragged(this::mouseDragged);
+        view.setOnMouseReleased(this::mouseReleased);
+        view.setOnScroll(this::scroll);
+
+        sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null) oldScene.removePostLayoutPulseListener(pulseListener);
+            if (newScene != null) newScene.addPostLayoutPulseListener(pulseListener);
+        });
+
+        paint.setViewportPane(this);
+    }
+
+    /**
+     * Gets the zoom factor and scroll position. Call {@code requestRefresh()}
+     * after changing them directly.
+     * @return The {@code Viewport} object of the view.
+     */
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Gets the mip pyramid of the document.
+     * @return The {@code MipPyramid} object sampled by the view.
+     */
+    public MipPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Multiplies the zoom factor, keeping the document point under a view point in place.
+     * @param factor The factor by which to multiply the zoom.
+     * @param x The x-coordinate of the fixed point, in view space.
+     * @param y The y-coordinate of the fixed point, in view space.
+     */
+    public void zoomAt(double factor, double x, double y) {
+        viewport.zoomAt(factor, x, y);
+        requestRefresh();
+    }
+
+    /**
+     * Shows the document at its actual size, from its upper-left corner.
+     */
+    public void resetView() {
+        viewport.setZoom(1);
+        viewport.setOrigin(0, 0);
+        requestRefresh();
+    }
+
+    /**
+     * Renders the view again at the end of the next pulse.
+     */
+    public void requestRefresh() {
+        viewChanged = true;
+        requestUpdate();
+    }
+
+    /**
+     * Copies the changed part of the document at the end of the next pulse.
+     * Called by {@code AdvancedPaint} when it draws.
+     */
+    void requestUpdate() {
+        if (!refreshRequested) {
+            refreshRequested = true;
+            Platform.requestNextPulse();
+        }
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return paint.getCanvasWidth();
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return paint.getCanvasHeight();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        view.setWidth(Math.floor(getWidth()));
+        view.setHeight(Math.floor(getHeight()));
+        requestRefresh();
+    }
+
+    /**
+     * Called at the end of each pulse.
+     */
+    private void onPulse() {
+        if (!refreshRequested) return;
+        refreshRequested = false;
+
+        Rectangle2D dirty = paint.takeDirtyRegion();
+        if (dirty != null) {
+            copyDocument((int)dirty.getMinX(), (int)dirty.getMinY(), (int)dirty.getWidth(), (int)dirty.getHeight());
+            viewChanged = true;
+        }
+        if (viewChanged) {
+            viewChanged = false;
+            render();
+        }
+    }
+
+    /**
+     * Copies a rectangle of the document into the pyramid.
+     */
+    private void copyDocument(int x, int y, int w, int h) {
+        SnapshotParameters params = new SnapshotParameters();
+        params.setViewport(new Rectangle2D(x, y, w, h));
+        if (snapshot != null && ((int)snapshot.getWidth() != w || (int)snapshot.getHeight() != h)) {
+            snapshot = null; // the size of the image is the size of the snapshot
+        }
+        snapshot = paint.getCanvas().snapshot(params, snapshot);
+
+        int width = pyramid.getWidth(0);
+        snapshot.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(),
+            pyramid.getLevel(0), y * width + x, width);
+        pyramid.update(x, y, w, h);
+    }
+
+    /**
+     * Samples the pyramid level that matches the zoom into the view, multiplied
+     * by the imported image, if any, with one {@code setPixels} call.
+     */
+    private void render() {
+        int width = (int)view.getWidth(), height = (int)view.getHeight();
+        if (width <= 0 || height <= 0) return;
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+        if (columns.length < width) columns = new int[width];
+        if (rows.length < height) rows = new int[height];
+
+        int level = viewport.getLevel(pyramid.getLevelCount() - 1);
+        int[] src = pyramid.getLevel(level);
+        int sw = pyramid.getWidth(level), sh = pyramid.getHeight(level);
+        double scale = 1 << level;
+
+        // the source pixel of each column and row, or -1 outside the document
+        for (int x = 0; x < width; x++) {
+            int sx = (int)Math.floor(viewport.toDocumentX(x + 0.5) / scale);
+            columns[x] = sx >= 0 && sx < sw ? sx : -1;
+        }
+        for (int y = 0; y < height; y++) {
+            int sy = (int)Math.floor(viewport.toDocumentY(y + 0.5) / scale);
+            rows[y] = sy >= 0 && sy < sh ? sy * sw : -1;
+        }
+
+        for (int y = 0, out = 0; y < height; y++) {
+            int row = rows[y];
+            if (row < 0) {
+                Arrays.fill(pixels, out, out + width, OUTSIDE);
+                out += width;
+                continue;
+            }
+            for (int x = 0; x < width; x++, out++) {
+                int col = columns[x];
+                pixels[out] = col < 0 ? OUTSIDE : src[row + col];
+            }
+        }
+        ImageUnderlay underlay = paint.getImageUnderlay();
+        if (underlay != null) {
+            underlay.draw(viewport, pixels, width, height);
+        }
+        view.getGraphicsContext2D().getPixelWriter().setPixels(0, 0, width, height,
+            PixelFormat.getIntArgbInstance(), pixels, 0, width);
+    }
+
+    private void mousePressed(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mousePressed(evt);
+        } else {
+            panX = evt.getX();
+            panY = evt.getY();
+        }
+    }
+
+    private void mouseDragged(MouseEvent evt) {
+        if (evt.isPrimaryButtonDown()) {
+            paint.mouseDragged(evt);
+        } else {
+            viewport.panBy(evt.getX() - panX, evt.getY() - panY);
+            panX = evt.getX();
+            panY = evt.getY();
+            requestRefresh();
+        }
+    }
+
+    private void mouseReleased(MouseEvent evt) {
+        if (evt.getButton() == MouseButton.PRIMARY) {
+            paint.mouseReleased(evt);
+        }
+    }
+
+    private void scroll(ScrollEvent evt) {
+        if (evt.getDeltaY() != 0) {
+            zoomAt(Math.pow(2, evt.getDeltaY() / 200), evt.getX(), evt.getY());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 module edu.uopeople.cs1102 {
     requires transitive javafx.controls;
     requires transitive javafx.fxml;
+    requires transitive java.management;
+    requires java.desktop;
 
     opens edu.uopeople.cs1102 to javafx.fxml;
     exports edu.uopeople.cs1102;
@@ -0,0 +1,55 @@
+package edu.uopeople.cs1102;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@code ColorUtil} class.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class ColorUtilTest {
+    /**
+     * The values between 0.0 and 1.0 give two lowercase digits.
+     */
+    @Test
+    public void formatsChannels() {
+        for (int channel = 0; channel <= 0xFF; channel++) {
+            assertEquals(legacyHexString(channel / 255.0), ColorUtil.toHexString(channel / 255.0));
+        }
+        assertEquals("00", ColorUtil.toHexString(0.0));
+        assertEquals("ff", ColorUtil.toHexString(1.0));
+    }
+
+    /**
+     * The values out of range, negative ones included, keep the output of
+     * {@code Integer.toHexString()} instead of throwing.
+     */
+    @Test
+    public void keepsLegacyOutputOutOfRange() {
+        for (double value : new double[] { -0.1, -1.0, -0.003, 1.1, 2.0 }) {
+            assertEquals(legacyHexString(value), ColorUtil.toHexString(value));
+        }
+        assertEquals("ffffffe7", ColorUtil.toHexString(-0.1));
+    }
+
+    /**
+     * A partly covered transparent pixel takes the color, with the coverage as
+     * alpha, instead of being darkened by the black of its channels.
+     */
+    @Test
+    public void blendsOverTransparentPixels() {
+        assertEquals(0x80FF0000, ColorUtil.blendOver(0xFFFF0000, 0, 0.5f));
+        assertEquals(0, ColorUtil.blendOver(0xFFFF0000, 0, 0));
+        assertEquals(ColorUtil.blend(0xFFFF0000, 0xFF0000FF, 0.5f), ColorUtil.blendOver(0xFFFF0000, 0xFF0000FF, 0.5f));
+    }
+
+    /**
+     * The implementation of {@code toHexString(double)} before it was optimized.
+     */
+    private static String legacyHexString(double value) {
+        String colorHex = Integer.toHexString((int)Math.round(255 * value));
+        return colorHex.length() == 1 ? "0" + colorHex : colorHex;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.uopeople.cs1102;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the {@code DrawingFile} class.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class DrawingFileTest {
+    @TempDir
+    Path dir;
+
+    /**
+     * The strokes saved are loaded back.
+     */
+    @Test
+    public void loadsSavedStrokes() throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(2, 2);
+        store.addPoint(10, 20);
+        store.addPoint(30.5f, 40.25f);
+        store.endStroke();
+        Path path = dir.resolve("drawing.apnt");
+        DrawingFile.save(store, 100, 100, path);
+
+        StrokeStore loaded = new StrokeStore();
+        DrawingFile.load(path, loaded);
+        assertEquals(1, loaded.getStrokeCount());
+        assertEquals(2, loaded.getColorIndex(0));
+        assertEquals(30.5f, loaded.getX(1));
+        assertEquals(40.25f, loaded.getY(1));
+    }
+
+    /**
+     * A palette index out of the palette is an {@code IOException}, not an
+     * {@code ArrayIndexOutOfBoundsException}.
+     */
+    @Test
+    public void rejectsInvalidColorIndex() throws IOException {
+        ByteArrayOutputStream out = header(16, 1);
+        varint(out, ColorUtil.standardPaletteArgb.length + 1); // index + 1
+        varint(out, 2 * 16 << 1);
+        varint(out, 0);
+        assertThrows(IOException.class, () -> load(out));
+    }
+
+    /**
+     * A scale of 0 is rejected when the file is opened.
+     */
+    @Test
+    public void rejectsZeroScale() throws IOException {
+        ByteArrayOutputStream out = header(0, 0);
+        assertThrows(IOException.class, () -> load(out));
+    }
+
+    /**
+     * A point count larger than the rest of the file is rejected before anything is allocated.
+     */
+    @Test
+    public void rejectsInvalidPointCount() throws IOException {
+        ByteArrayOutputStream out = header(16, 1);
+        varint(out, 1);
+        varint(out, 2 * 16 << 1);
+        varint(out, Integer.MAX_VALUE);
+        varint(out, 0);
+        varint(out, 0);
+        assertThrows(IOException.class, () -> load(out));
+    }
+
+    private void load(ByteArrayOutputStream out) throws IOException {
+        Path path = dir.resolve("corrupt.apnt");
+        Files.write(path, out.toByteArray());
+        DrawingFile.load(path, new StrokeStore());
+    }
+
+    private static ByteArrayOutputStream header(int scale, int strokeCount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[] { 'A', 'P', 'N', 'T', 0, (byte)DrawingFile.VERSION });
+        varint(out, scale);
+        varint(out, 100);
+        varint(out, 100);
+        varint(out, strokeCount);
+        return out;
+    }
+
+    private static void varint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,127 @@
+package edu.uopeople.cs1102;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@code StrokeSimplifier} class.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class StrokeSimplifierTest {
+    private static final double TOLERANCE = 1.0;
+
+    /**
+     * A curve must not collapse into a few chords: every point received stays
+     * within the tolerance of the simplified stroke.
+     */
+    @Test
+    public void keepsArcWithinTolerance() {
+        List<double[]> input = new ArrayList<>();
+        for (int degrees = 0; degrees <= 180; degrees++) {
+            double angle = Math.toRadians(degrees);
+            input.add(new double[] { 200 + 100 * Math.cos(angle), 200 + 100 * Math.sin(angle) });
+        }
+        List<double[]> kept = simplify(input);
+
+        assertTrue(kept.size() > 4, "The arc kept only " + kept.size() + " points.");
+        double max = maxDeviation(input, kept);
+        assertTrue(max <= TOLERANCE + 1e-9, "The largest deviation is " + max + " pixels.");
+    }
+
+    /**
+     * A straight line still reduces to its two ends.
+     */
+    @Test
+    public void mergesStraightLine() {
+        List<double[]> input = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            input.add(new double[] { i * 3, i * 2 });
+        }
+        List<double[]> kept = simplify(input);
+
+        assertTrue(kept.size() == 2, "The line kept " + kept.size() + " points.");
+        assertTrue(maxDeviation(input, kept) <= TOLERANCE);
+    }
+
+    /**
+     * The points dropped at the end of a stroke don't shorten it: the stroke
+     * still ends at the last point received.
+     */
+    @Test
+    public void endsAtLastPoint() {
+        List<double[]> input = new ArrayList<>();
+        for (int i = 0; i <= 50; i++) {
+            input.add(new double[] { 10 + i * 4, 10 });
+        }
+        input.add(new double[] { 210.25, 10.25 }); // within the tolerance of the previous point
+        List<double[]> kept = simplify(input);
+
+        double[] last = kept.get(kept.size() - 1);
+        assertEquals(210.25, last[0]);
+        assertEquals(10.25, last[1]);
+    }
+
+    /**
+     * Records a stroke as {@code AdvancedPaint} does: applies the decisions of
+     * the simplifier to a {@code StrokeStore}, then calls {@code end()} and
+     * {@code finish()} at the release.
+     */
+    private static List<double[]> simplify(List<double[]> input) {
+        StrokeSimplifier simplifier = new StrokeSimplifier(TOLERANCE);
+        StrokeStore store = new StrokeStore();
+        double[] first = input.get(0);
+        store.beginStroke(0, 2);
+        store.addPoint((float)first[0], (float)first[1]);
+        simplifier.begin(first[0], first[1]);
+        for (double[] p : input.subList(1, input.size())) {
+            switch (simplifier.add(p[0], p[1])) {
+                case StrokeSimplifier.APPEND:
+                    store.addPoint((float)p[0], (float)p[1]);
+                    break;
+                case StrokeSimplifier.REPLACE:
+                    store.setPoint(store.getPointCount() - 1, (float)p[0], (float)p[1]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        simplifier.end(store);
+        simplifier.finish(store, 0);
+        store.endStroke();
+
+        List<double[]> kept = new ArrayList<>();
+        for (int i = 0; i < store.getPointCount(); i++) {
+            kept.add(new double[] { store.getX(i), store.getY(i) });
+        }
+        return kept;
+    }
+
+    /**
+     * Gets the largest distance between a point received and the simplified polyline.
+     */
+    private static double maxDeviation(List<double[]> input, List<double[]> kept) {
+        double max = 0;
+        for (double[] p : input) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i + 1 < kept.size(); i++) {
+                best = Math.min(best, segmentDistance(p, kept.get(i), kept.get(i + 1)));
+            }
+            max = Math.max(max, best);
+        }
+        return max;
+    }
+
+    private static double segmentDistance(double[] p, double[] a, double[] b) {
+        double dx = b[0] - a[0], dy = b[1] - a[1];
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((p[0] - a[0]) * dx + (p[1] - a[1]) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(a[0] + t * dx - p[0], a[1] + t * dy - p[1]);
+    }
+}
@@ -0,0 +1,146 @@
+package edu.uopeople.cs1102;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.paint.Color;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the {@code TiledRaster} class.
+ * @author https://github.com/bigabdoul
+ * @version 1.0
+ */
+public class TiledRasterTest {
+    private static final int SIZE = TiledRaster.TILE_SIZE;
+    private static final int RED = 0xFFFF0000;
+
+    /**
+     * A dirty tile outside the view is not uploaded, and stays dirty until the
+     * view moves over it.
+     */
+    @Test
+    public void keepsTilesOutsideTheViewDirty() {
+        TiledRaster raster = new TiledRaster(4 * SIZE, SIZE);
+        raster.fillRect(0, 0, 4 * SIZE, SIZE, RED);
+        raster.clearDirty();
+        raster.fillRect(SIZE / 2, 0, 3 * SIZE, SIZE, 0xFF0000FF);
+
+        Screen screen = new Screen(SIZE, SIZE);
+        assertEquals(1, raster.uploadDirtyTiles(screen, 0, 0, SIZE, SIZE));
+        assertFalse(raster.isDirty(0, 0));
+        assertTrue(raster.isDirty(3, 0));
+
+        assertEquals(1, raster.uploadDirtyTiles(screen, 3 * SIZE, 0, SIZE, SIZE));
+        assertEquals(0xFF0000FF, screen.pixels[0], "The tile panned into view is stale.");
+        assertFalse(raster.isDirty(3, 0));
+    }
+
+    /**
+     * A tile partly in the view stays dirty, since only a part of it has been uploaded.
+     */
+    @Test
+    public void keepsTilesPartlyInTheViewDirty() {
+        TiledRaster raster = new TiledRaster(2 * SIZE, SIZE);
+        raster.fillRect(0, 0, 2 * SIZE, SIZE, RED);
+
+        Screen screen = new Screen(SIZE, SIZE);
+        assertEquals(2, raster.uploadDirtyTiles(screen, SIZE / 2, 0, SIZE, SIZE));
+        assertTrue(raster.isDirty(0, 0));
+        assertTrue(raster.isDirty(1, 0));
+
+        assertEquals(1, raster.uploadDirtyTiles(screen, 0, 0, SIZE, SIZE));
+        assertFalse(raster.isDirty(0, 0));
+        assertEquals(1, raster.getDirtyCount());
+    }
+
+    /**
+     * A stroke drawn into the tiles has the pixels of the same stroke drawn
+     * into an image, and only the tiles it covers are allocated.
+     */
+    @Test
+    public void drawsStrokesIntoTheTilesTheyCover() {
+        StrokeStore store = new StrokeStore();
+        store.beginStroke(0, 3);
+        store.addPoint(SIZE - 20, 40);
+        store.addPoint(SIZE + 30, 60);
+        store.endStroke();
+
+        int width = 4 * SIZE, height = 4 * SIZE;
+        TiledRaster raster = new TiledRaster(width, height);
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+        rasterizer.draw(store, 0, 0, 2, raster, 0, 0, width, height);
+        assertEquals(2, raster.getAllocatedTileCount());
+
+        int[] expected = new int[width * height];
+        Arrays.fill(expected, raster.getBackground());
+        rasterizer.draw(store, 0, 0, 2, expected, width, 0, 0, width, height);
+        int[] actual = new int[width * height];
+        raster.getPixels(0, 0, width, height, actual, 0, width);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Receives the pixels written in ARGB format into an array.
+     */
+    private static final class Screen implements PixelWriter {
+        final int width;
+        final int[] pixels;
+
+        Screen(int width, int height) {
+            this.width = width;
+            this.pixels = new int[width * height];
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, PixelFormat<IntBuffer> format,
+                int[] buffer, int offset, int stride) {
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(buffer, offset + row * stride, pixels, (y + row) * width + x, w);
+            }
+        }
+
+        @Override
+        public PixelFormat<?> getPixelFormat() {
+            return PixelFormat.getIntArgbInstance();
+        }
+
+        @Override
+        public void setArgb(int x, int y, int argb) {
+            pixels[y * width + x] = argb;
+        }
+
+        @Override
+        public void setColor(int x, int y, Color c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends Buffer> void setPixels(int x, int y, int w, int h, PixelFormat<T> format,
+                T buffer, int stride) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, PixelFormat<ByteBuffer> format,
+                byte[] buffer, int offset, int stride) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, PixelReader reader, int srcx, int srcy) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}